@@ -8,10 +8,28 @@ public class KafkaConfig {
   // Application ID
   public static final String APPLICATION_ID = "span-translating";
 
+  // Schema registry
+  public static final String REGISTRY_URL = "http://localhost:8081";
+
   // Topic to read from
-  public static final String IN_TOPIC = "cluster-dump-spans";
+  public static final String IN_TOPIC = DumpTranslationConfig.DEFAULT_IN_TOPIC;
 
   // Target topic
   public static final String OUT_TOPIC = "explorviz-spans";
 
+  // Target topic for spans that are batched by trace id
+  public static final String BATCH_OUT_TOPIC = "explorviz-span-batches";
+
+  // Compacted topic that maps dictionary ids to operation names, host names and app names
+  public static final String DICTIONARY_TOPIC = "explorviz-span-dictionary";
+
+  // Topic of names that need a dictionary id, all of which are assigned by a single task
+  public static final String DICTIONARY_REQUEST_TOPIC = "explorviz-span-dictionary-requests";
+
+  // Topic of dumps and spans that cannot be translated
+  public static final String DEAD_LETTER_TOPIC = DumpTranslationConfig.DEFAULT_DEAD_LETTER_TOPIC;
+
+  // Port of the Prometheus metrics endpoint
+  public static final int METRICS_PORT = 9101;
+
 }
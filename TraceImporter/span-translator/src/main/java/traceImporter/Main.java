@@ -3,12 +3,22 @@ package traceImporter;
 import io.confluent.kafka.schemaregistry.client.CachedSchemaRegistryClient;
 import io.confluent.kafka.schemaregistry.client.SchemaRegistryClient;
 import java.io.IOException;
+import org.apache.kafka.common.config.ConfigException;
 
 public class Main {
 
   public static void main(String[] args) throws IOException, InterruptedException {
+    TranslatorConfig config;
+    try {
+      config = TranslatorConfig.load(args, System.getenv());
+    } catch (ConfigException e) {
+      System.err.println("Invalid configuration: " + e.getMessage());
+      System.exit(1);
+      return;
+    }
+
     SchemaRegistryClient schemaRegistryClient =
-        new CachedSchemaRegistryClient("http://localhost:8081", 10);
-    new SpanTranslator(schemaRegistryClient).run();
+        new CachedSchemaRegistryClient(config.getString(TranslatorConfig.REGISTRY_URL), 10);
+    new SpanTranslator(schemaRegistryClient, config).run();
   }
 }
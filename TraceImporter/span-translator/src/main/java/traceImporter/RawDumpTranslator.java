@@ -0,0 +1,108 @@
+package traceImporter;
+
+import io.confluent.kafka.schemaregistry.client.SchemaRegistryClient;
+import io.confluent.kafka.schemaregistry.client.rest.exceptions.RestClientException;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.metrics.Sensor;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.kstream.Transformer;
+import org.apache.kafka.streams.processor.ProcessorContext;
+
+/**
+ * Translates a dump of opencensus spans to serialized {@link EVSpan}s keyed by trace id, which
+ * are encoded by the {@link RawSpanEncoder} and written to the output topic as they are. Validates
+ * the spans and measures the same {@link PipelineMetrics} as the {@link DumpTranslator}.
+ *
+ * <p>The {@link EVSpan} schema is registered on initialization under the subject of the output
+ * topic's values, as the Confluent serializer does by default.
+ */
+public class RawDumpTranslator
+    implements Transformer<byte[], byte[], Iterable<KeyValue<String, byte[]>>> {
+
+  private final DumpDecoder decoder;
+
+  private final SchemaRegistryClient registry;
+
+  private final String subject;
+
+  private final SpanValidator validator;
+
+  private final DeadLetterQueue deadLetters;
+
+  private RejectionHandler rejections;
+
+  private DumpDecoder.SpanReader<Object> reader;
+
+  private Sensor dumpSensor;
+
+  private Sensor spanSensor;
+
+  private Sensor latencySensor;
+
+  /**
+   * Creates a new translator.
+   *
+   * @param decoder decodes the dumps
+   * @param registry the schema registry
+   * @param outTopic the topic the spans are written to
+   * @param validator validates the spans
+   * @param deadLetters receives dumps and spans that cannot be translated
+   */
+  public RawDumpTranslator(DumpDecoder decoder, SchemaRegistryClient registry, String outTopic,
+                           SpanValidator validator, DeadLetterQueue deadLetters) {
+    this.decoder = decoder;
+    this.registry = registry;
+    this.subject = outTopic + "-value";
+    this.validator = validator;
+    this.deadLetters = deadLetters;
+  }
+
+  @Override
+  public void init(ProcessorContext context) {
+    RawSpanEncoder encoder;
+    try {
+      encoder = new RawSpanEncoder(registry.register(subject, EVSpan.SCHEMA$));
+    } catch (IOException | RestClientException e) {
+      throw new SerializationException("Cannot register the schema of " + subject, e);
+    }
+
+    dumpSensor = PipelineMetrics.throughputSensor(context.metrics(), DumpTranslator.STAGE,
+        DumpTranslator.DUMPS);
+    spanSensor = PipelineMetrics.throughputSensor(context.metrics(), DumpTranslator.STAGE,
+        DumpTranslator.SPANS);
+    latencySensor = PipelineMetrics.histogramSensor(context.metrics(), DumpTranslator.STAGE,
+        DumpTranslator.TRANSLATION_LATENCY, PipelineMetrics.MICROS_BUCKETS);
+    rejections = new RejectionHandler(context, deadLetters);
+    reader = validator.reader(encoder::encode, rejections.getDefaultedSensor());
+  }
+
+  @Override
+  public Iterable<KeyValue<String, byte[]>> transform(byte[] key, byte[] value) {
+    final long start = System.nanoTime();
+
+    List<Object> results;
+    try {
+      results = decoder.decode(value, reader);
+    } catch (IOException | RuntimeException e) {
+      rejections.reject(key, value, Rejection.Reason.MALFORMED_DUMP, e.toString());
+      return Collections.emptyList();
+    }
+    List<KeyValue<String, byte[]>> spans = rejections.accept(key, value, results);
+
+    latencySensor.record((System.nanoTime() - start) / 1000.0);
+    dumpSensor.record();
+    for (int i = 0; i < spans.size(); i++) {
+      spanSensor.record();
+    }
+    return spans;
+  }
+
+  @Override
+  public void close() {
+    // Sensors are shared by all tasks of a thread, thus they are not removed on close
+  }
+
+}
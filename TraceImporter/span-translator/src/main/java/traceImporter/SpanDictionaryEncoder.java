@@ -0,0 +1,216 @@
+package traceImporter;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.avro.specific.SpecificRecord;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.kstream.Transformer;
+import org.apache.kafka.streams.processor.AbstractProcessor;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.processor.PunctuationType;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.KeyValueStore;
+
+/**
+ * Replaces the operation name, host name and app name of {@link EVSpan}s, or of all spans of an
+ * {@link EVSpanBatch}, by ids of the span dictionary, and clears the names.
+ *
+ * <p>
+ * Ids are small sequential numbers, which the {@link SpanDictionaryOwner} assigns and publishes
+ * to the compacted dictionary topic, from which they are read into a global store. Thus all
+ * partitions and instances of the translator use the same id for the same name, and an id takes
+ * one or two bytes of a span. A name that is not in the store yet is forwarded as
+ * {@link SpanDictionaryRequest} to the owner, and the spans of its trace are held back in a local
+ * store until the ids of all of their names are known. Later spans of a held back trace are held
+ * back as well, such that the spans of a trace are forwarded in order. Held back spans are retried
+ * in a fixed interval of wall-clock time.
+ * </p>
+ */
+public class SpanDictionaryEncoder
+    implements Transformer<String, SpecificRecord, Iterable<KeyValue<String, SpecificRecord>>> {
+
+  /**
+   * Interval in wall-clock time in which held back spans are encoded again.
+   */
+  private static final Duration RETRY_INTERVAL = Duration.ofSeconds(1);
+
+  private final String idStoreName;
+
+  private final String heldStoreName;
+
+  private final boolean batching;
+
+  /**
+   * Ids that have been read from the global store, which never change once assigned.
+   */
+  private final Map<String, Long> ids = new HashMap<>();
+
+  /**
+   * Names that have been requested since startup.
+   */
+  private final Set<String> requested = new HashSet<>();
+
+  private ProcessorContext context;
+
+  private KeyValueStore<String, Long> idStore;
+
+  private KeyValueStore<String, EVSpanBatch> heldStore;
+
+  /**
+   * Creates a new encoder.
+   *
+   * @param idStoreName name of the global store of the ids of all names
+   * @param heldStoreName name of the store of spans that are held back, by trace id
+   * @param batching whether spans are forwarded as {@link EVSpanBatch}es
+   */
+  public SpanDictionaryEncoder(final String idStoreName, final String heldStoreName,
+                               final boolean batching) {
+    this.idStoreName = idStoreName;
+    this.heldStoreName = heldStoreName;
+    this.batching = batching;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public void init(final ProcessorContext context) {
+    this.context = context;
+    this.idStore = (KeyValueStore<String, Long>) context.getStateStore(this.idStoreName);
+    this.heldStore = (KeyValueStore<String, EVSpanBatch>) context.getStateStore(this.heldStoreName);
+
+    context.schedule(RETRY_INTERVAL, PunctuationType.WALL_CLOCK_TIME, timestamp -> this.retry());
+  }
+
+  @Override
+  public Iterable<KeyValue<String, SpecificRecord>> transform(final String traceId,
+                                                              final SpecificRecord record) {
+    final List<KeyValue<String, SpecificRecord>> result = new ArrayList<>(4);
+    final List<EVSpan> spans = record instanceof EVSpanBatch
+        ? ((EVSpanBatch) record).getSpans() : List.of((EVSpan) record);
+
+    final EVSpanBatch held = this.heldStore.get(traceId);
+    if (held == null && this.encode(spans)) {
+      result.add(KeyValue.pair(traceId, record));
+      return result;
+    }
+
+    this.request(traceId, spans, result);
+    final EVSpanBatch batch = held != null ? held : new EVSpanBatch(traceId, new ArrayList<>());
+    batch.getSpans().addAll(spans);
+    this.heldStore.put(traceId, batch);
+    return result;
+  }
+
+  /**
+   * Forwards all held back spans whose ids are known by now, and requests the names of the others
+   * again if they have not been requested since startup.
+   */
+  private void retry() {
+    final List<EVSpanBatch> encoded = new ArrayList<>();
+    final List<KeyValue<String, SpecificRecord>> requests = new ArrayList<>();
+    try (KeyValueIterator<String, EVSpanBatch> iterator = this.heldStore.all()) {
+      iterator.forEachRemaining(entry -> {
+        if (this.encode(entry.value.getSpans())) {
+          encoded.add(entry.value);
+        } else {
+          this.request(entry.key, entry.value.getSpans(), requests);
+        }
+      });
+    }
+
+    for (final EVSpanBatch batch : encoded) {
+      this.heldStore.delete(batch.getTraceId());
+      if (this.batching) {
+        this.context.forward(batch.getTraceId(), batch);
+      } else {
+        batch.getSpans().forEach(span -> this.context.forward(batch.getTraceId(), span));
+      }
+    }
+    requests.forEach(request -> this.context.forward(request.key, request.value));
+  }
+
+  /**
+   * Replaces the names of all spans by their ids, unless an id is not yet known.
+   *
+   * @return whether the spans have been encoded
+   */
+  private boolean encode(final List<EVSpan> spans) {
+    for (final EVSpan span : spans) {
+      if (this.idOf(span.getOperationName()) == null || this.idOf(span.getHostname()) == null
+          || this.idOf(span.getAppName()) == null) {
+        return false;
+      }
+    }
+
+    for (final EVSpan span : spans) {
+      span.setDictionaryIds(new SpanDictionaryIds(this.idOf(span.getOperationName()),
+          this.idOf(span.getHostname()), this.idOf(span.getAppName())));
+      span.setOperationName(null);
+      span.setHostname(null);
+      span.setAppName(null);
+    }
+    return true;
+  }
+
+  /**
+   * Adds a request for each name without id that has not been requested since startup.
+   */
+  private void request(final String traceId, final List<EVSpan> spans,
+                       final List<KeyValue<String, SpecificRecord>> result) {
+    for (final EVSpan span : spans) {
+      for (final String name : List.of(span.getOperationName(), span.getHostname(),
+          span.getAppName())) {
+        if (this.idOf(name) == null && this.requested.add(name)) {
+          result.add(KeyValue.pair(traceId, new SpanDictionaryRequest(name)));
+        }
+      }
+    }
+  }
+
+  private Long idOf(final String name) {
+    Long id = this.ids.get(name);
+    if (id == null) {
+      id = this.idStore.get(name);
+      if (id != null) {
+        this.ids.put(name, id);
+      }
+    }
+    return id;
+  }
+
+  @Override
+  public void close() {
+    // Held back spans remain in the store
+  }
+
+  /**
+   * Writes the entries of the dictionary topic to the global store of the ids of all names.
+   */
+  public static class StoreUpdater extends AbstractProcessor<Long, String> {
+
+    private final String storeName;
+
+    private KeyValueStore<String, Long> idStore;
+
+    public StoreUpdater(final String storeName) {
+      this.storeName = storeName;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void init(final ProcessorContext context) {
+      super.init(context);
+      this.idStore = (KeyValueStore<String, Long>) context.getStateStore(this.storeName);
+    }
+
+    @Override
+    public void process(final Long id, final String value) {
+      this.idStore.put(value, id);
+    }
+  }
+
+}
@@ -0,0 +1,65 @@
+package traceImporter;
+
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.kstream.Transformer;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.KeyValueStore;
+
+/**
+ * Assigns the ids of the span dictionary to the names requested by the
+ * {@link SpanDictionaryEncoder}s of all partitions and instances, and forwards each new entry to
+ * the compacted dictionary topic.
+ *
+ * <p>All requests carry the same key, hence they are processed by a single task, which is the only
+ * one to assign ids. Thus ids are consecutive from zero without any coordination, and a name that
+ * is requested repeatedly, e.g., by several encoders, keeps its first id. The assignments are kept
+ * in a local store, from which the next id is restored on startup.
+ */
+public class SpanDictionaryOwner implements Transformer<String, String, KeyValue<Long, String>> {
+
+  /**
+   * Key of all requests.
+   */
+  public static final String OWNER_KEY = "owner";
+
+  private final String storeName;
+
+  private KeyValueStore<String, Long> assignments;
+
+  private long nextId;
+
+  /**
+   * Creates a new owner.
+   *
+   * @param storeName name of the store of the ids of all names that have been assigned
+   */
+  public SpanDictionaryOwner(final String storeName) {
+    this.storeName = storeName;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public void init(final ProcessorContext context) {
+    this.assignments = (KeyValueStore<String, Long>) context.getStateStore(this.storeName);
+    try (KeyValueIterator<String, Long> iterator = this.assignments.all()) {
+      iterator.forEachRemaining(entry -> this.nextId = Math.max(this.nextId, entry.value + 1));
+    }
+  }
+
+  @Override
+  public KeyValue<Long, String> transform(final String key, final String name) {
+    if (this.assignments.get(name) != null) {
+      return null;
+    }
+    final long id = this.nextId++;
+    this.assignments.put(name, id);
+    return KeyValue.pair(id, name);
+  }
+
+  @Override
+  public void close() {
+    // Assignments remain in the store
+  }
+
+}
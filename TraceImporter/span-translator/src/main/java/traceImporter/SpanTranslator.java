@@ -1,17 +1,9 @@
 package traceImporter;
 
-import com.google.common.io.BaseEncoding;
 import io.confluent.kafka.schemaregistry.client.SchemaRegistryClient;
 import io.confluent.kafka.serializers.AbstractKafkaAvroSerDeConfig;
 import io.confluent.kafka.streams.serdes.avro.SpecificAvroSerde;
-import io.opencensus.proto.dump.DumpSpans;
-import io.opencensus.proto.trace.v1.AttributeValue;
 import io.opencensus.proto.trace.v1.Span;
-import java.io.IOException;
-import java.time.Duration;
-import java.time.Instant;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import org.apache.avro.specific.SpecificRecord;
@@ -19,30 +11,83 @@ import org.apache.kafka.common.serialization.Serdes;
 import org.apache.kafka.streams.KafkaStreams;
 import org.apache.kafka.streams.KeyValue;
 import org.apache.kafka.streams.StreamsBuilder;
-import org.apache.kafka.streams.StreamsConfig;
 import org.apache.kafka.streams.Topology;
 import org.apache.kafka.streams.kstream.Consumed;
 import org.apache.kafka.streams.kstream.KStream;
 import org.apache.kafka.streams.kstream.Produced;
+import org.apache.kafka.streams.state.Stores;
 
 /**
  * Translates opencensus {@link Span} objects to {@link EVSpan}s.
  */
 public class SpanTranslator {
 
+  /**
+   * Global store of the dictionary ids of all names.
+   */
+  public static final String DICTIONARY_ID_STORE = "span-dictionary-ids";
 
+  /**
+   * Store of spans whose names have no dictionary id yet, by trace id.
+   */
+  public static final String UNENCODED_SPAN_STORE = "unencoded-spans";
 
-  private final Properties streamsConfig = new Properties();
+  /**
+   * Store of the dictionary ids assigned by the {@link SpanDictionaryOwner}.
+   */
+  public static final String DICTIONARY_OWNER_STORE = "span-dictionary-assignments";
+
+  private final Properties streamsConfig;
 
   private Topology topology;
 
   private final SchemaRegistryClient registry;
 
+  private final TranslatorConfig config;
+
+  private final boolean dictionaryEncoding;
+
+  private final boolean batching;
+
+  private final boolean rawEncoding;
+
+  private final DumpDecoder decoder;
+
+  private final SpanValidator validator;
+
+  private final DeadLetterQueue deadLetters;
+
   public SpanTranslator(SchemaRegistryClient registry) {
+    this(registry, new TranslatorConfig(Map.of()));
+  }
+
+  public SpanTranslator(SchemaRegistryClient registry, TranslatorConfig config) {
+    this(registry, config, config.createDeadLetterQueue());
+  }
+
+  /**
+   * Creates a new translator.
+   *
+   * @param registry the schema registry
+   * @param config the configuration, which selects the topics, whether spans are dictionary
+   *        encoded (see {@link SpanDictionaryEncoder}), batched by trace id or encoded without
+   *        intermediate records (see {@link RawSpanEncoder}), whether large dumps are decoded in
+   *        parallel (see {@link DumpDecoder}) and which defaults replace missing attributes (see
+   *        {@link SpanValidator}), see {@link TranslatorConfig}
+   * @param deadLetters receives dumps and spans that cannot be translated
+   */
+  public SpanTranslator(SchemaRegistryClient registry, TranslatorConfig config,
+                        DeadLetterQueue deadLetters) {
 
     this.registry = registry;
-    streamsConfig.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, KafkaConfig.BROKER);
-    streamsConfig.put(StreamsConfig.APPLICATION_ID_CONFIG, KafkaConfig.APPLICATION_ID);
+    this.config = config;
+    this.dictionaryEncoding = config.getBoolean(TranslatorConfig.DICTIONARY_ENCODING);
+    this.batching = config.getBoolean(TranslatorConfig.BATCHING);
+    this.rawEncoding = config.getBoolean(TranslatorConfig.RAW_ENCODING);
+    this.decoder = config.createDumpDecoder();
+    this.validator = config.createSpanValidator();
+    this.deadLetters = deadLetters;
+    this.streamsConfig = config.streamsProperties();
 
     buildTopology();
   }
@@ -57,68 +102,63 @@ public class SpanTranslator {
 
     // Stream 1
 
-    KStream<byte[], byte[]> dumpSpanStream =
-        builder.stream(KafkaConfig.IN_TOPIC, Consumed.with(Serdes.ByteArray(), Serdes.ByteArray()));
-
-    KStream<String, EVSpan> traceIdSpanStream = dumpSpanStream.flatMap((key, value) -> {
-
-      DumpSpans dumpSpan;
-      List<KeyValue<String, EVSpan>> result = new LinkedList<>();
-      try {
-
-        dumpSpan = DumpSpans.parseFrom(value);
-
-        for (Span s : dumpSpan.getSpansList()) {
-          String traceId =
-              BaseEncoding.base16().lowerCase().encode(s.getTraceId().toByteArray(), 0, 16);
-
-          String spanId =
-              BaseEncoding.base16().lowerCase().encode(s.getSpanId().toByteArray(), 0, 8);
-
-
-
-          Timestamp startTime = new Timestamp(s.getStartTime().getSeconds(), s.getStartTime().getNanos());
-
-          long endTime =
-              Instant.ofEpochSecond(s.getEndTime().getSeconds(), s.getEndTime().getNanos()).toEpochMilli();
-
-
-          long duration = endTime -
-              Duration.ofSeconds(startTime.getSeconds(), startTime.getNanoAdjust()).toMillis();
-
-
-
-          // System.out.println(startTime + " und " + s.getStartTime().getSeconds());
-
-          // System.out.println(Duration
-          // .ofNanos(Duration
-          // .ofSeconds(s.getStartTime().getSeconds(), s.getStartTime().getNanos()).toNanos())
-          // .toMillis());
-
-          // System.out.println(duration + " und " + Duration.between(t, t1).getNano());
-
-          Map<String, AttributeValue> attributes = s.getAttributes().getAttributeMapMap();
-          String operationName = attributes.get("method_fqn").getStringValue().getValue();
-          String hostname = attributes.get("host").getStringValue().getValue();
-          String appName = attributes.get("application_name").getStringValue().getValue();
-
-
-          EVSpan span = new EVSpan(spanId, traceId, startTime, endTime, duration, operationName, 1,
-              hostname, appName);
-
-          result.add(KeyValue.pair(traceId, span));
-        }
-
-      } catch (IOException e) {
-        e.printStackTrace();
-      }
-
-      return result;
-
-
-    });
-
-    traceIdSpanStream.to(KafkaConfig.OUT_TOPIC, Produced.with(Serdes.String(), getValueSerde()));
+    KStream<byte[], byte[]> dumpSpanStream = builder.stream(
+        config.getString(TranslatorConfig.IN_TOPIC),
+        Consumed.with(Serdes.ByteArray(), Serdes.ByteArray()));
+
+    if (rawEncoding) {
+      String outTopic = config.getString(TranslatorConfig.OUT_TOPIC);
+      dumpSpanStream
+          .flatTransform(() -> new RawDumpTranslator(decoder, registry, outTopic, validator,
+              deadLetters))
+          .to(outTopic, Produced.with(Serdes.String(), Serdes.ByteArray()));
+      this.topology = builder.build();
+      return;
+    }
+
+    KStream<String, SpecificRecord> traceIdSpanStream =
+        dumpSpanStream.flatTransform(
+            () -> new DumpTranslator(batching, decoder, validator, deadLetters));
+
+    if (dictionaryEncoding) {
+      String dictionaryTopic = config.getString(TranslatorConfig.DICTIONARY_TOPIC);
+      builder.addGlobalStore(
+          Stores.keyValueStoreBuilder(Stores.inMemoryKeyValueStore(DICTIONARY_ID_STORE),
+              Serdes.String(), Serdes.Long()).withLoggingDisabled(),
+          dictionaryTopic, Consumed.with(Serdes.Long(), Serdes.String()),
+          () -> new SpanDictionaryEncoder.StoreUpdater(DICTIONARY_ID_STORE));
+      builder.addStateStore(Stores.keyValueStoreBuilder(
+          Stores.persistentKeyValueStore(UNENCODED_SPAN_STORE), Serdes.String(),
+          getValueSerde()));
+      builder.addStateStore(Stores.keyValueStoreBuilder(
+          Stores.persistentKeyValueStore(DICTIONARY_OWNER_STORE), Serdes.String(),
+          Serdes.Long()));
+
+      KStream<String, SpecificRecord> encodedStream = traceIdSpanStream.flatTransform(
+          () -> new SpanDictionaryEncoder(DICTIONARY_ID_STORE, UNENCODED_SPAN_STORE, batching),
+          UNENCODED_SPAN_STORE);
+
+      @SuppressWarnings("unchecked")
+      KStream<String, SpecificRecord>[] branches = encodedStream.branch(
+          (key, value) -> value instanceof SpanDictionaryRequest,
+          (key, value) -> true);
+
+      // All requests share a key, thus a single task assigns the ids
+      branches[0]
+          .map((key, value) -> KeyValue.pair(SpanDictionaryOwner.OWNER_KEY,
+              ((SpanDictionaryRequest) value).getValue()))
+          .through(config.getString(TranslatorConfig.DICTIONARY_REQUEST_TOPIC),
+              Produced.with(Serdes.String(), Serdes.String()))
+          .transform(() -> new SpanDictionaryOwner(DICTIONARY_OWNER_STORE),
+              DICTIONARY_OWNER_STORE)
+          .to(dictionaryTopic, Produced.with(Serdes.Long(), Serdes.String()));
+
+      traceIdSpanStream = branches[1];
+    }
+
+    String outTopic = config.getString(
+        batching ? TranslatorConfig.BATCH_OUT_TOPIC : TranslatorConfig.OUT_TOPIC);
+    traceIdSpanStream.to(outTopic, Produced.with(Serdes.String(), getValueSerde()));
 
     this.topology = builder.build();
   }
@@ -126,7 +166,8 @@ public class SpanTranslator {
   private <T extends SpecificRecord> SpecificAvroSerde<T> getValueSerde() {
     final SpecificAvroSerde<T> valueSerde = new SpecificAvroSerde<>(registry);
     valueSerde.configure(
-        Map.of(AbstractKafkaAvroSerDeConfig.SCHEMA_REGISTRY_URL_CONFIG, "http://localhost:8081"),
+        Map.of(AbstractKafkaAvroSerDeConfig.SCHEMA_REGISTRY_URL_CONFIG,
+            config.getString(TranslatorConfig.REGISTRY_URL)),
         false);
     return valueSerde;
   }
@@ -137,7 +178,18 @@ public class SpanTranslator {
     streams.cleanUp();
     streams.start();
 
-    Runtime.getRuntime().addShutdownHook(new Thread(streams::close));
+    final int metricsPort = config.getInt(TranslatorConfig.METRICS_PORT);
+    final PrometheusExporter exporter = new PrometheusExporter(metricsPort, streams::metrics);
+    if (metricsPort > 0) {
+      exporter.start();
+    }
+
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      exporter.close();
+      streams.close();
+      decoder.close();
+      deadLetters.close();
+    }));
   }
 
 }
@@ -0,0 +1,148 @@
+package traceImporter;
+
+import java.util.Map;
+import java.util.Properties;
+import org.apache.kafka.common.config.ConfigDef;
+import org.apache.kafka.common.config.ConfigDef.Importance;
+import org.apache.kafka.common.config.ConfigDef.Range;
+import org.apache.kafka.common.config.ConfigDef.Type;
+import org.apache.kafka.common.config.ConfigDef.ValidString;
+import org.apache.kafka.common.config.ConfigException;
+import org.apache.kafka.streams.StreamsConfig;
+
+/**
+ * External configuration of the span translator. Defaults are taken from {@link KafkaConfig}
+ * and can be overridden, in increasing order of precedence, by a properties file, environment
+ * variables and command line arguments:
+ *
+ * <ul>
+ *   <li>the properties file is given by {@code --config=<path>} or {@value #CONFIG_FILE_ENV}</li>
+ *   <li>environment variables are prefixed with {@value #ENV_PREFIX} and use underscores instead
+ *   of dots, e.g., {@code SPAN_TRANSLATOR_BATCHING} for {@value #BATCHING}</li>
+ *   <li>command line arguments have the form {@code --<key>=<value>}</li>
+ * </ul>
+ *
+ * <p>Keys starting with {@value #STREAMS_PREFIX} are passed on to Kafka Streams with the prefix
+ * removed, e.g., {@code streams.num.stream.threads} or {@code streams.producer.linger.ms}. All
+ * values are validated on construction, which throws a {@link ConfigException} otherwise. The
+ * keys of the translation of the dumps are defined by {@link DumpTranslationConfig}.
+ */
+public class TranslatorConfig extends DumpTranslationConfig {
+
+  public static final String CONFIG_FILE_ARG = ConfigLoader.CONFIG_FILE_ARG;
+  public static final String CONFIG_FILE_ENV = "SPAN_TRANSLATOR_CONFIG";
+  public static final String ENV_PREFIX = "SPAN_TRANSLATOR_";
+  public static final String STREAMS_PREFIX = "streams.";
+
+  public static final String BROKER = "broker";
+  public static final String APPLICATION_ID = "application.id";
+  public static final String REGISTRY_URL = "schema.registry.url";
+  public static final String OUT_TOPIC = "topic.out";
+  public static final String BATCH_OUT_TOPIC = "topic.batch.out";
+  public static final String DICTIONARY_TOPIC = "topic.dictionary";
+  public static final String DICTIONARY_REQUEST_TOPIC = "topic.dictionary.requests";
+  public static final String DICTIONARY_ENCODING = "dictionary.encoding";
+  public static final String BATCHING = "batching";
+  public static final String RAW_ENCODING = "raw.encoding";
+  public static final String METRICS_PORT = "metrics.port";
+  public static final String TUNING_PROFILE = "tuning.profile";
+
+  private static final ConfigDef CONFIG = DumpTranslationConfig.define(new ConfigDef()
+      .define(BROKER, Type.STRING, KafkaConfig.BROKER, Importance.HIGH,
+          "Kafka bootstrap servers")
+      .define(APPLICATION_ID, Type.STRING, KafkaConfig.APPLICATION_ID, Importance.HIGH,
+          "Kafka Streams application id")
+      .define(REGISTRY_URL, Type.STRING, KafkaConfig.REGISTRY_URL, Importance.HIGH,
+          "Schema registry URL")
+      .define(OUT_TOPIC, Type.STRING, KafkaConfig.OUT_TOPIC, Importance.MEDIUM,
+          "Topic of translated spans")
+      .define(BATCH_OUT_TOPIC, Type.STRING, KafkaConfig.BATCH_OUT_TOPIC, Importance.MEDIUM,
+          "Topic of translated spans batched by trace id")
+      .define(DICTIONARY_TOPIC, Type.STRING, KafkaConfig.DICTIONARY_TOPIC, Importance.MEDIUM,
+          "Topic of span dictionary entries")
+      .define(DICTIONARY_REQUEST_TOPIC, Type.STRING, KafkaConfig.DICTIONARY_REQUEST_TOPIC,
+          Importance.LOW, "Topic of names that need a span dictionary id")
+      .define(DICTIONARY_ENCODING, Type.BOOLEAN, false, Importance.MEDIUM,
+          "Whether operation, host and app names are replaced by dictionary ids")
+      .define(BATCHING, Type.BOOLEAN, false, Importance.MEDIUM,
+          "Whether spans are batched by trace id")
+      .define(RAW_ENCODING, Type.BOOLEAN, false, Importance.MEDIUM,
+          "Whether spans are encoded straight from the dumps, without intermediate records, "
+              + "requires neither batching nor dictionary encoding")
+      .define(METRICS_PORT, Type.INT, KafkaConfig.METRICS_PORT, Range.between(0, 65535),
+          Importance.LOW, "Port of the Prometheus metrics endpoint, 0 disables it")
+      .define(TUNING_PROFILE, Type.STRING, TuningProfile.DEFAULT.name(),
+          ValidString.in(TuningProfile.names()), Importance.MEDIUM,
+          "Producer and consumer settings that trade latency for throughput, see TuningProfile"));
+
+  /**
+   * Creates a configuration of the given values, missing values are set to their default.
+   *
+   * @param values configuration values, including pass-through Kafka Streams values
+   * @throws ConfigException if a value is invalid or a key is unknown
+   */
+  public TranslatorConfig(final Map<String, ?> values) {
+    super(CONFIG, values);
+
+    for (final String key : values.keySet()) {
+      if (!CONFIG.names().contains(key) && !key.startsWith(STREAMS_PREFIX)) {
+        throw new ConfigException("Unknown configuration key " + key);
+      }
+    }
+
+    if (this.getBoolean(RAW_ENCODING)
+        && (this.getBoolean(BATCHING) || this.getBoolean(DICTIONARY_ENCODING))) {
+      throw new ConfigException(RAW_ENCODING, true,
+          "Raw encoding requires neither batching nor dictionary encoding");
+    }
+
+    // Fail on startup rather than on stream creation
+    StreamsConfig.configDef().parse(this.streamsProperties());
+  }
+
+  /**
+   * Loads the configuration from the properties file, environment variables and command line
+   * arguments, see {@link ConfigLoader}.
+   *
+   * @param args command line arguments
+   * @param env environment variables
+   * @return the configuration
+   * @throws ConfigException if the configuration cannot be read or is invalid
+   */
+  public static TranslatorConfig load(final String[] args, final Map<String, String> env) {
+    return new TranslatorConfig(ConfigLoader.load(args, env, ENV_PREFIX, CONFIG_FILE_ENV));
+  }
+
+  /**
+   * Creates the queue of dumps and spans that cannot be translated, which is disabled if
+   * {@value #DEAD_LETTER_TOPIC} is empty. Its producer connects to the same broker as the
+   * streams and takes the pass-through values of the streams' producers, e.g.,
+   * {@code streams.producer.compression.type}.
+   */
+  public DeadLetterQueue createDeadLetterQueue() {
+    return this.createDeadLetterQueue(this.getString(BROKER), this.getString(APPLICATION_ID),
+        this.getTuningProfile(),
+        this.originalsWithPrefix(STREAMS_PREFIX + StreamsConfig.PRODUCER_PREFIX));
+  }
+
+  public TuningProfile getTuningProfile() {
+    return TuningProfile.valueOf(this.getString(TUNING_PROFILE));
+  }
+
+  /**
+   * Creates the Kafka Streams configuration, i.e., the connection settings of this
+   * configuration, the settings of the {@link TuningProfile} and all pass-through values with
+   * the {@value #STREAMS_PREFIX} prefix removed, which take precedence over the profile.
+   *
+   * @return the Kafka Streams properties
+   */
+  public Properties streamsProperties() {
+    final Properties props = new Properties();
+    props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, this.getString(BROKER));
+    props.put(StreamsConfig.APPLICATION_ID_CONFIG, this.getString(APPLICATION_ID));
+    props.putAll(this.getTuningProfile().streamsConfigs());
+    props.putAll(this.originalsWithPrefix(STREAMS_PREFIX));
+    return props;
+  }
+
+}
@@ -0,0 +1,152 @@
+package traceImporter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+import io.opencensus.proto.dump.DumpSpans;
+import io.opencensus.proto.trace.v1.AttributeValue;
+import io.opencensus.proto.trace.v1.Span;
+import io.opencensus.proto.trace.v1.Status;
+import io.opencensus.proto.trace.v1.TruncatableString;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+
+class SpanExtractorTest {
+
+  @Test
+  void testEqualsConverter() throws IOException {
+    final URL dumpspan = getClass().getClassLoader().getResource("dumpspan50");
+    final byte[] dumpbytes;
+    try (FileInputStream fis = new FileInputStream(dumpspan.getFile())) {
+      dumpbytes = fis.readAllBytes();
+    }
+
+    for (final Span span : DumpSpans.parseFrom(dumpbytes).getSpansList()) {
+      assertEquals(SpanConverter.toEVSpan(span), extract(span.toByteArray()));
+    }
+  }
+
+  @Test
+  void testSkipsUnusedFields() throws IOException {
+    final Span span = baseSpan()
+        .setParentSpanId(ByteString.copyFrom(new byte[8]))
+        .setName(string("operation"))
+        .setKind(Span.SpanKind.SERVER)
+        .setStatus(Status.newBuilder().setCode(2).setMessage("failed"))
+        .setTimeEvents(Span.TimeEvents.newBuilder()
+            .addTimeEvent(Span.TimeEvent.newBuilder()
+                .setAnnotation(Span.TimeEvent.Annotation.newBuilder()
+                    .setDescription(string("annotation")))))
+        .setLinks(Span.Links.newBuilder()
+            .addLink(Span.Link.newBuilder().setTraceId(ByteString.copyFrom(new byte[16]))))
+        .setAttributes(Span.Attributes.newBuilder()
+            .putAttributeMap("thread", stringValue("main"))
+            .putAttributeMap("method_fqn", stringValue("a.B.c"))
+            .putAttributeMap("line", AttributeValue.newBuilder().setIntValue(42).build())
+            .putAttributeMap("host", stringValue("samplehost"))
+            .putAttributeMap("application_name", stringValue("sampleapp"))
+            .setDroppedAttributesCount(3))
+        .build();
+
+    assertEquals(SpanConverter.toEVSpan(span), extract(span.toByteArray()));
+  }
+
+  @Test
+  void testParentSpanId() throws IOException {
+    final Span.Builder root = baseSpan()
+        .setAttributes(Span.Attributes.newBuilder()
+            .putAttributeMap("method_fqn", stringValue("a.B.c"))
+            .putAttributeMap("host", stringValue("samplehost"))
+            .putAttributeMap("application_name", stringValue("sampleapp")));
+    final Span child = root.clone()
+        .setParentSpanId(ByteString.copyFrom(new byte[] {0x01, 0x23, 0x45, 0x67, (byte) 0x89,
+            (byte) 0xab, (byte) 0xcd, (byte) 0xef}))
+        .build();
+
+    assertNull(extract(root.build().toByteArray()).getParentSpanId());
+    assertEquals("0123456789abcdef", extract(child.toByteArray()).getParentSpanId());
+    assertEquals(SpanConverter.toEVSpan(child), extract(child.toByteArray()));
+  }
+
+  @Test
+  void testMapEntryWithKeyAfterValue() throws IOException {
+    final ByteArrayOutputStream attributes = new ByteArrayOutputStream();
+    final CodedOutputStream attributesOut = CodedOutputStream.newInstance(attributes);
+    for (final String key : Arrays.asList("method_fqn", "host", "application_name")) {
+      final ByteArrayOutputStream entry = new ByteArrayOutputStream();
+      final CodedOutputStream entryOut = CodedOutputStream.newInstance(entry);
+      entryOut.writeMessage(2, stringValue(key + "-value"));
+      entryOut.writeString(1, key);
+      entryOut.flush();
+      attributesOut.writeByteArray(Span.Attributes.ATTRIBUTE_MAP_FIELD_NUMBER,
+          entry.toByteArray());
+    }
+    attributesOut.flush();
+
+    final ByteArrayOutputStream span = new ByteArrayOutputStream();
+    final CodedOutputStream spanOut = CodedOutputStream.newInstance(span);
+    spanOut.writeRawBytes(baseSpan().build().toByteArray());
+    spanOut.writeByteArray(Span.ATTRIBUTES_FIELD_NUMBER, attributes.toByteArray());
+    spanOut.flush();
+
+    final EVSpan extracted = extract(span.toByteArray());
+    assertEquals(SpanConverter.toEVSpan(Span.parseFrom(span.toByteArray())), extracted);
+    assertEquals("method_fqn-value", extracted.getOperationName());
+  }
+
+  @Test
+  void testMissingAttribute() {
+    final Span span = baseSpan()
+        .setAttributes(Span.Attributes.newBuilder()
+            .putAttributeMap("method_fqn", stringValue("a.B.c"))
+            .putAttributeMap("host", stringValue("samplehost")))
+        .build();
+
+    assertThrows(IllegalArgumentException.class, () -> extract(span.toByteArray()));
+  }
+
+  @Test
+  void testTruncatedSpan() {
+    final byte[] bytes = baseSpan().build().toByteArray();
+
+    assertThrows(IOException.class, () -> extract(Arrays.copyOf(bytes, bytes.length - 1)));
+  }
+
+  private static EVSpan extract(final byte[] span) throws IOException {
+    // Surround the span by other bytes, as it is when extracted from a dump
+    final byte[] buffer = new byte[span.length + 8];
+    Arrays.fill(buffer, (byte) 0x0A);
+    System.arraycopy(span, 0, buffer, 4, span.length);
+    return SpanExtractor.extract(buffer, 4, span.length);
+  }
+
+  private static Span.Builder baseSpan() {
+    return Span.newBuilder()
+        .setTraceId(ByteString.copyFrom(new byte[] {
+            0x50, (byte) 0xc2, 0x46, (byte) 0xad, (byte) 0x9c, (byte) 0x98, (byte) 0x83,
+            (byte) 0xd1, 0x55, (byte) 0x8d, (byte) 0xf9, (byte) 0xf1, (byte) 0x9b,
+            (byte) 0x9a, (byte) 0xe7, (byte) 0xa6}))
+        .setSpanId(ByteString.copyFrom(new byte[] {0x7e, (byte) 0xf8, 0x3c, 0x66, (byte) 0xea,
+            (byte) 0xbd, 0x5f, (byte) 0xbb}))
+        .setStartTime(com.google.protobuf.Timestamp.newBuilder()
+            .setSeconds(1581938395L).setNanos(702319100))
+        .setEndTime(com.google.protobuf.Timestamp.newBuilder()
+            .setSeconds(1581938395L).setNanos(705319100));
+  }
+
+  private static TruncatableString string(final String value) {
+    return TruncatableString.newBuilder().setValue(value).build();
+  }
+
+  private static AttributeValue stringValue(final String value) {
+    return AttributeValue.newBuilder().setStringValue(string(value)).build();
+  }
+
+}
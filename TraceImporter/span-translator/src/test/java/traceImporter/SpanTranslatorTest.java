@@ -1,20 +1,38 @@
 package traceImporter;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
 import io.confluent.kafka.schemaregistry.client.MockSchemaRegistryClient;
 import io.confluent.kafka.schemaregistry.client.rest.exceptions.RestClientException;
 import io.confluent.kafka.serializers.AbstractKafkaAvroSerDeConfig;
 import io.confluent.kafka.streams.serdes.avro.SpecificAvroSerde;
 import io.opencensus.proto.dump.DumpSpans;
+import io.opencensus.proto.trace.v1.AttributeValue;
 import io.opencensus.proto.trace.v1.Span;
 import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.net.URL;
+import java.time.Duration;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.stream.Collectors;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.config.ConfigException;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.apache.kafka.common.serialization.Deserializer;
 import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.KeyValue;
 import org.apache.kafka.streams.StreamsConfig;
 import org.apache.kafka.streams.TestInputTopic;
 import org.apache.kafka.streams.TestOutputTopic;
@@ -92,6 +110,199 @@ class SpanTranslatorTest {
     inputTopic.pipeInput(id, dumpbytes);
 
     assertEquals(dump.getSpansList().size(), outputTopic.readValuesToList().size());
+
+    assertEquals(1.0, pipelineMetric(DumpTranslator.DUMPS + "-total"));
+    assertEquals(dump.getSpansCount(), pipelineMetric(DumpTranslator.SPANS + "-total"));
+    assertEquals(1.0, pipelineMetric(DumpTranslator.TRANSLATION_LATENCY + "-count"));
+  }
+
+  private double pipelineMetric(String name) {
+    return pipelineMetric(driver, name);
+  }
+
+  private static double pipelineMetric(TopologyTestDriver driver, String name) {
+    return driver.metrics().entrySet().stream()
+        .filter(e -> PipelineMetrics.METRICS_GROUP.equals(e.getKey().group())
+            && name.equals(e.getKey().name())
+            && DumpTranslator.STAGE.equals(e.getKey().tags().get(PipelineMetrics.STAGE_TAG)))
+        .mapToDouble(e -> (Double) e.getValue().metricValue())
+        .sum();
+  }
+
+  @Test
+  void testParallelDecoding() throws IOException, RestClientException {
+    final MockSchemaRegistryClient schemaRegistryClient = new MockSchemaRegistryClient();
+    final Deserializer<EVSpan> evSpanDeserializer =
+        new SpecificAvroSerde<EVSpan>(schemaRegistryClient).deserializer();
+    schemaRegistryClient.register(KafkaConfig.OUT_TOPIC + "-value", EVSpan.SCHEMA$);
+    evSpanDeserializer.configure(
+        Map.of(AbstractKafkaAvroSerDeConfig.SCHEMA_REGISTRY_URL_CONFIG, "http://dummy"), false);
+
+    // Decode even the small test dump in several chunks
+    Topology topology = new SpanTranslator(schemaRegistryClient,
+        new TranslatorConfig(Map.of(TranslatorConfig.DECODING_THREADS, 4,
+            TranslatorConfig.DECODING_PARALLEL_MIN_SPANS, 1))).getTopology();
+
+    Properties props = new Properties();
+    props.put(StreamsConfig.APPLICATION_ID_CONFIG, "test-parallel");
+    props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:1234");
+
+    byte[] dumpbytes = getDumpSpan();
+    inputTopic.pipeInput(dumpbytes);
+    List<KeyValue<String, EVSpan>> expected = outputTopic.readKeyValuesToList();
+
+    try (TopologyTestDriver parallelDriver = new TopologyTestDriver(topology, props)) {
+      TestInputTopic<byte[], byte[]> dumpTopic =
+          parallelDriver.createInputTopic(KafkaConfig.IN_TOPIC, Serdes.ByteArray().serializer(),
+              Serdes.ByteArray().serializer());
+      TestOutputTopic<String, EVSpan> spanTopic =
+          parallelDriver.createOutputTopic(KafkaConfig.OUT_TOPIC,
+              Serdes.String().deserializer(), evSpanDeserializer);
+
+      dumpTopic.pipeInput(dumpbytes);
+
+      // Same spans in the same order
+      assertEquals(expected, spanTopic.readKeyValuesToList());
+    }
+  }
+
+  @Test
+  void testRawEncoding() throws IOException {
+    final MockSchemaRegistryClient schemaRegistryClient = new MockSchemaRegistryClient();
+    Topology topology = new SpanTranslator(schemaRegistryClient,
+        new TranslatorConfig(Map.of(TranslatorConfig.RAW_ENCODING, true))).getTopology();
+
+    Properties props = new Properties();
+    props.put(StreamsConfig.APPLICATION_ID_CONFIG, "test-raw");
+    props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:1234");
+
+    byte[] dumpbytes = getDumpSpan();
+    TestOutputTopic<String, byte[]> recordTopic = driver.createOutputTopic(KafkaConfig.OUT_TOPIC,
+        Serdes.String().deserializer(), Serdes.ByteArray().deserializer());
+    inputTopic.pipeInput(dumpbytes);
+    List<KeyValue<String, byte[]>> expected = recordTopic.readKeyValuesToList();
+
+    try (TopologyTestDriver rawDriver = new TopologyTestDriver(topology, props)) {
+      TestInputTopic<byte[], byte[]> dumpTopic =
+          rawDriver.createInputTopic(KafkaConfig.IN_TOPIC, Serdes.ByteArray().serializer(),
+              Serdes.ByteArray().serializer());
+      TestOutputTopic<String, byte[]> rawTopic =
+          rawDriver.createOutputTopic(KafkaConfig.OUT_TOPIC, Serdes.String().deserializer(),
+              Serdes.ByteArray().deserializer());
+
+      dumpTopic.pipeInput(dumpbytes);
+      List<KeyValue<String, byte[]>> encoded = rawTopic.readKeyValuesToList();
+
+      // Byte for byte the output of the Avro serializer, as both registries assign the same id
+      assertEquals(expected.size(), encoded.size());
+      for (int i = 0; i < expected.size(); i++) {
+        assertEquals(expected.get(i).key, encoded.get(i).key);
+        assertArrayEquals(expected.get(i).value, encoded.get(i).value);
+      }
+      assertEquals(List.of(KafkaConfig.OUT_TOPIC + "-value"),
+          new ArrayList<>(schemaRegistryClient.getAllSubjects()));
+    }
+
+    assertThrows(ConfigException.class, () -> new TranslatorConfig(
+        Map.of(TranslatorConfig.RAW_ENCODING, true, TranslatorConfig.BATCHING, true)));
+  }
+
+  @Test
+  void testRejections() throws IOException {
+    Span s = DumpSpans.parseFrom(getDumpSpan()).getSpans(0);
+    Span withoutHost = s.toBuilder()
+        .setAttributes(s.getAttributes().toBuilder().removeAttributeMap("host"))
+        .build();
+    Span withoutTraceId = s.toBuilder().clearTraceId().build();
+    Span endsBeforeStart = s.toBuilder()
+        .setEndTime(s.getStartTime().toBuilder().setSeconds(s.getStartTime().getSeconds() - 1))
+        .build();
+    DumpSpans dump = DumpSpans.newBuilder()
+        .addSpans(s).addSpans(withoutHost).addSpans(withoutTraceId).addSpans(endsBeforeStart)
+        .build();
+
+    // A truncated span after the valid ones
+    ByteArrayOutputStream dumpBytes = new ByteArrayOutputStream();
+    dumpBytes.writeBytes(dump.toByteArray());
+    dumpBytes.writeBytes(new byte[] {0x0A, 0x02, 0x0A, 0x10});
+    byte[] malformedDump = {0x0A, 0x7F, 0x01};
+
+    MockProducer<byte[], byte[]> producer =
+        new MockProducer<>(true, new ByteArraySerializer(), new ByteArraySerializer());
+    DeadLetterQueue deadLetters = new DeadLetterQueue("dead-letters", () -> producer);
+    Topology topology = new SpanTranslator(new MockSchemaRegistryClient(),
+        new TranslatorConfig(Map.of()), deadLetters).getTopology();
+
+    Properties props = new Properties();
+    props.put(StreamsConfig.APPLICATION_ID_CONFIG, "test-rejections");
+    props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:1234");
+
+    try (TopologyTestDriver rejectingDriver = new TopologyTestDriver(topology, props)) {
+      TestInputTopic<byte[], byte[]> dumpTopic =
+          rejectingDriver.createInputTopic(KafkaConfig.IN_TOPIC, Serdes.ByteArray().serializer(),
+              Serdes.ByteArray().serializer());
+      TestOutputTopic<String, byte[]> spanTopic =
+          rejectingDriver.createOutputTopic(KafkaConfig.OUT_TOPIC, Serdes.String().deserializer(),
+              Serdes.ByteArray().deserializer());
+
+      dumpTopic.pipeInput(new byte[] {1}, dumpBytes.toByteArray());
+      dumpTopic.pipeInput(new byte[] {2}, malformedDump);
+
+      // Only the valid span is translated, the stream keeps running
+      assertEquals(1, spanTopic.readValuesToList().size());
+
+      List<ProducerRecord<byte[], byte[]>> letters = producer.history();
+      assertEquals(List.of("missing-attribute", "missing-id", "invalid-time", "malformed-span",
+          "malformed-dump"),
+          letters.stream().map(r -> header(r, DeadLetterQueue.REASON_HEADER))
+              .collect(Collectors.toList()));
+      assertEquals(withoutHost, Span.parseFrom(letters.get(0).value()));
+      assertArrayEquals(new byte[] {1}, letters.get(0).key());
+      assertEquals("Span without attribute host",
+          header(letters.get(0), DeadLetterQueue.DETAIL_HEADER));
+      assertEquals(KafkaConfig.IN_TOPIC + "-0@0",
+          header(letters.get(0), DeadLetterQueue.SOURCE_HEADER));
+      assertArrayEquals(malformedDump, letters.get(4).value());
+      assertEquals(KafkaConfig.IN_TOPIC + "-0@1",
+          header(letters.get(4), DeadLetterQueue.SOURCE_HEADER));
+      letters.forEach(letter -> assertEquals("dead-letters", letter.topic()));
+
+      for (Rejection.Reason reason : Rejection.Reason.values()) {
+        assertEquals(1.0, pipelineMetric(rejectingDriver, reason.getLabel() + "-total"));
+      }
+      assertEquals(1.0, pipelineMetric(rejectingDriver, DumpTranslator.DUMPS + "-total"));
+      assertEquals(1.0, pipelineMetric(rejectingDriver, DumpTranslator.SPANS + "-total"));
+    }
+
+    // With a default hostname, the span without host is translated as well
+    for (boolean rawEncoding : new boolean[] {false, true}) {
+      Topology defaultingTopology = new SpanTranslator(new MockSchemaRegistryClient(),
+          new TranslatorConfig(Map.of(TranslatorConfig.DEFAULT_HOSTNAME, "unknown-host",
+              TranslatorConfig.RAW_ENCODING, rawEncoding)),
+          DeadLetterQueue.disabled()).getTopology();
+      try (TopologyTestDriver defaultingDriver =
+               new TopologyTestDriver(defaultingTopology, props)) {
+        TestInputTopic<byte[], byte[]> dumpTopic = defaultingDriver.createInputTopic(
+            KafkaConfig.IN_TOPIC, Serdes.ByteArray().serializer(),
+            Serdes.ByteArray().serializer());
+        TestOutputTopic<String, byte[]> spanTopic = defaultingDriver.createOutputTopic(
+            KafkaConfig.OUT_TOPIC, Serdes.String().deserializer(),
+            Serdes.ByteArray().deserializer());
+
+        dumpTopic.pipeInput(dumpBytes.toByteArray());
+
+        List<byte[]> spans = spanTopic.readValuesToList();
+        assertEquals(2, spans.size());
+        assertTrue(new String(spans.get(1), StandardCharsets.UTF_8).contains("unknown-host"));
+        assertEquals(1.0, pipelineMetric(defaultingDriver,
+            RejectionHandler.DEFAULTED_SPANS + "-total"));
+        assertEquals(0.0, pipelineMetric(defaultingDriver, "missing-attribute-total"));
+      }
+    }
+  }
+
+  private static String header(ProducerRecord<byte[], byte[]> record, String key) {
+    return new String(record.headers().lastHeader(key).value(), StandardCharsets.UTF_8);
   }
 
   @Test
@@ -108,8 +319,11 @@ class SpanTranslatorTest {
 
     String expectedTraceId = "50c246ad9c9883d1558df9f19b9ae7a6";
     String expectedSpanId = "7ef83c66eabd5fbb";
-    long expectedStartTime = 1581938395702319100L;
-    long expectedEndTime = 1581938395705981005L;
+    Timestamp expectedStartTime = new Timestamp(1581938395L, 702319100);
+    long expectedEndTime = 1581938395705L;
+    Timestamp expectedEndTimestamp = new Timestamp(1581938395L, 705981005);
+    long expectedDuration = 3L;
+    long expectedDurationNanos = 3661905L;
     String expectedAppName = "UNKNOWN-APPLICATION";
     String expectedOperationName =
         "net.explorviz.sampleApplication.database.helper.SQLConnectionHandler.createDatabase";
@@ -119,13 +333,126 @@ class SpanTranslatorTest {
     assertEquals(expectedTraceId, result.getTraceId());
 
     // Start and End time
-    assertEquals(expectedStartTime, (long) result.getStartTime());
+    assertEquals(expectedStartTime, result.getStartTime());
     assertEquals(expectedEndTime, (long) result.getEndTime());
+    assertEquals(expectedEndTimestamp, result.getEndTimestamp());
+    assertEquals(expectedDuration, (long) result.getDuration());
+    assertEquals(expectedDurationNanos, (long) result.getDurationNanos());
     assertEquals(expectedOperationName, result.getOperationName());
     assertEquals(expectedAppName, result.getAppName());
 
   }
 
+  @Test
+  void testDictionaryEncoding() throws IOException, RestClientException {
+    final MockSchemaRegistryClient schemaRegistryClient = new MockSchemaRegistryClient();
+    final Deserializer<EVSpan> evSpanDeserializer =
+        new SpecificAvroSerde<EVSpan>(schemaRegistryClient).deserializer();
+    schemaRegistryClient.register(KafkaConfig.OUT_TOPIC + "-value", EVSpan.SCHEMA$);
+    evSpanDeserializer.configure(
+        Map.of(AbstractKafkaAvroSerDeConfig.SCHEMA_REGISTRY_URL_CONFIG, "http://dummy"), false);
+
+    Topology topology = new SpanTranslator(schemaRegistryClient,
+        new TranslatorConfig(Map.of(TranslatorConfig.DICTIONARY_ENCODING, true))).getTopology();
+
+    Properties props = new Properties();
+    props.put(StreamsConfig.APPLICATION_ID_CONFIG, "test-dictionary");
+    props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:1234");
+
+    try (TopologyTestDriver dictionaryDriver = new TopologyTestDriver(topology, props)) {
+      TestInputTopic<byte[], byte[]> dumpTopic =
+          dictionaryDriver.createInputTopic(KafkaConfig.IN_TOPIC, Serdes.ByteArray().serializer(),
+              Serdes.ByteArray().serializer());
+      TestOutputTopic<String, EVSpan> spanTopic =
+          dictionaryDriver.createOutputTopic(KafkaConfig.OUT_TOPIC,
+              Serdes.String().deserializer(), evSpanDeserializer);
+      TestOutputTopic<Long, String> dictionaryTopic =
+          dictionaryDriver.createOutputTopic(KafkaConfig.DICTIONARY_TOPIC,
+              Serdes.Long().deserializer(), Serdes.String().deserializer());
+
+      byte[] dumpbytes = getDumpSpan();
+      DumpSpans dump = DumpSpans.parseFrom(dumpbytes);
+
+      // Pipe twice, each name must be published only once. The spans of the first dump are held
+      // back until the ids of their names are assigned, the spans of the second are not
+      dumpTopic.pipeInput(dumpbytes);
+      assertTrue(spanTopic.isEmpty());
+      dictionaryDriver.advanceWallClockTime(Duration.ofSeconds(1));
+      dumpTopic.pipeInput(dumpbytes);
+
+      List<KeyValue<Long, String>> entries = dictionaryTopic.readKeyValuesToList();
+      Map<Long, String> dictionary = new HashMap<>();
+      entries.forEach(entry -> dictionary.put(entry.key, entry.value));
+      List<EVSpan> spans = spanTopic.readValuesToList();
+
+      assertEquals(2 * dump.getSpansCount(), spans.size());
+      assertEquals(entries.size(), dictionary.size());
+      assertEquals(dictionary.size(), new HashSet<>(dictionary.values()).size());
+      // Ids are sequential
+      for (int i = 0; i < entries.size(); i++) {
+        assertEquals(i, entries.get(i).key);
+      }
+
+      // Held back spans are released by trace, thus spans are matched by their ids
+      Map<String, Span> originals = new HashMap<>();
+      dump.getSpansList().forEach(s -> originals.put(SpanConverter.toEVSpan(s).getSpanId(), s));
+      for (EVSpan encoded : spans) {
+        Span original = originals.get(encoded.getSpanId());
+        Map<String, AttributeValue> attributes = original.getAttributes().getAttributeMapMap();
+
+        assertNull(encoded.getOperationName());
+        assertNull(encoded.getHostname());
+        assertNull(encoded.getAppName());
+        assertEquals(attributes.get("method_fqn").getStringValue().getValue(),
+            dictionary.get(encoded.getDictionaryIds().getOperationId()));
+        assertEquals(attributes.get("host").getStringValue().getValue(),
+            dictionary.get(encoded.getDictionaryIds().getHostnameId()));
+        assertEquals(attributes.get("application_name").getStringValue().getValue(),
+            dictionary.get(encoded.getDictionaryIds().getAppNameId()));
+      }
+    }
+  }
+
+  @Test
+  void testBatching() throws IOException, RestClientException {
+    final MockSchemaRegistryClient schemaRegistryClient = new MockSchemaRegistryClient();
+    final Deserializer<EVSpanBatch> batchDeserializer =
+        new SpecificAvroSerde<EVSpanBatch>(schemaRegistryClient).deserializer();
+    schemaRegistryClient.register(KafkaConfig.BATCH_OUT_TOPIC + "-value", EVSpanBatch.SCHEMA$);
+    batchDeserializer.configure(
+        Map.of(AbstractKafkaAvroSerDeConfig.SCHEMA_REGISTRY_URL_CONFIG, "http://dummy"), false);
 
+    Topology topology = new SpanTranslator(schemaRegistryClient,
+        new TranslatorConfig(Map.of(TranslatorConfig.BATCHING, true))).getTopology();
+
+    Properties props = new Properties();
+    props.put(StreamsConfig.APPLICATION_ID_CONFIG, "test-batching");
+    props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:1234");
+
+    try (TopologyTestDriver batchDriver = new TopologyTestDriver(topology, props)) {
+      TestInputTopic<byte[], byte[]> dumpTopic =
+          batchDriver.createInputTopic(KafkaConfig.IN_TOPIC, Serdes.ByteArray().serializer(),
+              Serdes.ByteArray().serializer());
+      TestOutputTopic<String, EVSpanBatch> batchTopic =
+          batchDriver.createOutputTopic(KafkaConfig.BATCH_OUT_TOPIC,
+              Serdes.String().deserializer(), batchDeserializer);
+
+      byte[] dumpbytes = getDumpSpan();
+      DumpSpans dump = DumpSpans.parseFrom(dumpbytes);
+      dumpTopic.pipeInput(dumpbytes);
+
+      List<KeyValue<String, EVSpanBatch>> batches = batchTopic.readKeyValuesToList();
+
+      // One batch per trace, containing all spans of the trace
+      assertEquals(batches.size(),
+          batches.stream().map(batch -> batch.key).distinct().count());
+      assertEquals(dump.getSpansCount(),
+          batches.stream().mapToInt(batch -> batch.value.getSpans().size()).sum());
+      for (KeyValue<String, EVSpanBatch> batch : batches) {
+        assertEquals(batch.key, batch.value.getTraceId());
+        batch.value.getSpans().forEach(span -> assertEquals(batch.key, span.getTraceId()));
+      }
+    }
+  }
 
 }
@@ -0,0 +1,89 @@
+package traceImporter;
+
+import io.confluent.kafka.schemaregistry.client.MockSchemaRegistryClient;
+import io.confluent.kafka.serializers.AbstractKafkaAvroSerDeConfig;
+import io.confluent.kafka.streams.serdes.avro.SpecificAvroSerde;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures serialization round trips of {@link EVSpan}s and {@link Trace}s through the
+ * {@link SpecificAvroSerde}, as done for every record on the topics and in the state stores.
+ * Spans are also deserialized by the {@link EVSpanDeserializer} of the reconstructor.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AvroSerdeBenchmark {
+
+  private static final String SPAN_TOPIC = "benchmark-spans";
+  private static final String TRACE_TOPIC = "benchmark-traces";
+
+  @Param({"10", "1000"})
+  public int distinctOperations;
+
+  private EVSpan span;
+  private Trace trace;
+
+  private Serializer<EVSpan> spanSerializer;
+  private Deserializer<EVSpan> spanDeserializer;
+  private Deserializer<EVSpan> directSpanDeserializer;
+  private byte[] serializedSpan;
+  private Serializer<Trace> traceSerializer;
+  private Deserializer<Trace> traceDeserializer;
+
+  @Setup
+  public void setUp() {
+    this.trace = BenchmarkData.trace(this.distinctOperations, 42L);
+    this.span = this.trace.getSpanList().get(0);
+
+    final MockSchemaRegistryClient registry = new MockSchemaRegistryClient();
+    final Map<String, String> conf =
+        Map.of(AbstractKafkaAvroSerDeConfig.SCHEMA_REGISTRY_URL_CONFIG, "http://dummy");
+
+    final SpecificAvroSerde<EVSpan> spanSerde = new SpecificAvroSerde<>(registry);
+    spanSerde.configure(conf, false);
+    this.spanSerializer = spanSerde.serializer();
+    this.spanDeserializer = spanSerde.deserializer();
+    this.directSpanDeserializer = new EVSpanDeserializer(registry, this.spanDeserializer);
+    this.serializedSpan = this.spanSerializer.serialize(SPAN_TOPIC, this.span);
+
+    final SpecificAvroSerde<Trace> traceSerde = new SpecificAvroSerde<>(registry);
+    traceSerde.configure(conf, false);
+    this.traceSerializer = traceSerde.serializer();
+    this.traceDeserializer = traceSerde.deserializer();
+  }
+
+  @Benchmark
+  public EVSpan spanRoundTrip() {
+    return this.spanDeserializer.deserialize(SPAN_TOPIC,
+        this.spanSerializer.serialize(SPAN_TOPIC, this.span));
+  }
+
+  @Benchmark
+  public EVSpan spanDeserialize() {
+    return this.spanDeserializer.deserialize(SPAN_TOPIC, this.serializedSpan);
+  }
+
+  @Benchmark
+  public EVSpan spanDeserializeDirect() {
+    return this.directSpanDeserializer.deserialize(SPAN_TOPIC, this.serializedSpan);
+  }
+
+  @Benchmark
+  public Trace traceRoundTrip() {
+    return this.traceDeserializer.deserialize(TRACE_TOPIC,
+        this.traceSerializer.serialize(TRACE_TOPIC, this.trace));
+  }
+
+}
@@ -0,0 +1,162 @@
+package traceImporter;
+
+import com.google.protobuf.BoolValue;
+import com.google.protobuf.ByteString;
+import io.opencensus.proto.dump.DumpSpans;
+import io.opencensus.proto.trace.v1.AttributeValue;
+import io.opencensus.proto.trace.v1.Span;
+import io.opencensus.proto.trace.v1.Status;
+import io.opencensus.proto.trace.v1.TruncatableString;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates synthetic, but realistically shaped, input data for the benchmarks.
+ */
+final class BenchmarkData {
+
+  private static final long BASE_SECONDS = 1581938395L;
+
+  private BenchmarkData() {
+    // Utility class
+  }
+
+  /**
+   * Creates a dump of opencensus spans, distributed over a few traces.
+   *
+   * @param spansPerDump number of spans in the dump
+   * @param distinctOperations number of distinct operation names
+   * @param seed random seed
+   * @return the dump
+   */
+  static DumpSpans dump(final int spansPerDump, final int distinctOperations, final long seed) {
+    return dump(spansPerDump, distinctOperations, false, seed);
+  }
+
+  /**
+   * Creates a dump of opencensus spans, distributed over a few traces.
+   *
+   * @param spansPerDump number of spans in the dump
+   * @param distinctOperations number of distinct operation names
+   * @param instrumented whether spans carry the fields of a typical instrumentation, i.e., a
+   *        name, parent id, status, annotations and further attributes, in addition to the
+   *        fields that are translated
+   * @param seed random seed
+   * @return the dump
+   */
+  static DumpSpans dump(final int spansPerDump, final int distinctOperations,
+                        final boolean instrumented, final long seed) {
+    final Random random = new Random(seed);
+    final byte[][] traceIds = new byte[Math.max(1, spansPerDump / 50)][16];
+    for (final byte[] traceId : traceIds) {
+      random.nextBytes(traceId);
+    }
+
+    final DumpSpans.Builder builder = DumpSpans.newBuilder();
+    final byte[] spanId = new byte[8];
+    for (int i = 0; i < spansPerDump; i++) {
+      random.nextBytes(spanId);
+      final int startNanos = random.nextInt(1_000_000_000);
+      final long startSeconds = BASE_SECONDS + random.nextInt(4);
+
+      final Span.Builder span = Span.newBuilder()
+          .setTraceId(ByteString.copyFrom(traceIds[random.nextInt(traceIds.length)]))
+          .setSpanId(ByteString.copyFrom(spanId))
+          .setStartTime(com.google.protobuf.Timestamp.newBuilder()
+              .setSeconds(startSeconds)
+              .setNanos(startNanos))
+          .setEndTime(com.google.protobuf.Timestamp.newBuilder()
+              .setSeconds(startSeconds + 1)
+              .setNanos(startNanos / 2))
+          .setAttributes(Span.Attributes.newBuilder()
+              .putAttributeMap("method_fqn",
+                  stringValue(operationName(random.nextInt(distinctOperations))))
+              .putAttributeMap("host", stringValue("samplehost"))
+              .putAttributeMap("application_name", stringValue("sampleapp")));
+      if (instrumented) {
+        instrument(span, random);
+      }
+      builder.addSpans(span);
+    }
+    return builder.build();
+  }
+
+  /**
+   * Creates the spans of a single trace.
+   *
+   * @param spansPerTrace number of spans of the trace
+   * @param distinctOperations number of distinct operation names
+   * @param seed random seed
+   * @return list of spans, all sharing the same trace id, whose calls form a tree in which each
+   *         span calls up to four others
+   */
+  static List<EVSpan> spans(final int spansPerTrace, final int distinctOperations,
+                            final long seed) {
+    final Random random = new Random(seed);
+    final List<EVSpan> spans = new ArrayList<>(spansPerTrace);
+    for (int i = 0; i < spansPerTrace; i++) {
+      final Timestamp start = new Timestamp(BASE_SECONDS, random.nextInt(1_000_000_000));
+      final Timestamp end = new Timestamp(start.getSeconds() + 1, start.getNanoAdjust());
+      spans.add(new EVSpan(Integer.toHexString(i), "50c246ad9c9883d1558df9f19b9ae7a6", start,
+          end.getSeconds() * 1000L + end.getNanoAdjust() / 1_000_000, 1_000L,
+          operationName(i % distinctOperations), 1, "samplehost", "sampleapp", null, end, null,
+          i == 0 ? null : Integer.toHexString((i - 1) / 4), null, 1_000_000_000L));
+    }
+    return spans;
+  }
+
+  /**
+   * Creates an aggregated trace with the given number of distinct operations.
+   *
+   * @param distinctOperations number of distinct operations, i.e., size of the span list
+   * @param seed random seed
+   * @return the trace
+   */
+  static Trace trace(final int distinctOperations, final long seed) {
+    final IndexedTraceAggregator aggregator = new IndexedTraceAggregator();
+    IndexedTrace indexedTrace = new IndexedTrace();
+    for (final EVSpan span : spans(distinctOperations, distinctOperations, seed)) {
+      indexedTrace = aggregator.apply(span.getTraceId(), span, indexedTrace);
+    }
+    return indexedTrace.getTrace();
+  }
+
+  private static void instrument(final Span.Builder span, final Random random) {
+    final byte[] parentSpanId = new byte[8];
+    random.nextBytes(parentSpanId);
+    span.setParentSpanId(ByteString.copyFrom(parentSpanId))
+        .setName(TruncatableString.newBuilder().setValue("/sampleApplication/database"))
+        .setKind(Span.SpanKind.SERVER)
+        .setStatus(Status.newBuilder().setCode(0))
+        .setSameProcessAsParentSpan(BoolValue.of(true));
+    span.getAttributesBuilder()
+        .putAttributeMap("thread", stringValue("http-nio-8080-exec-" + random.nextInt(10)))
+        .putAttributeMap("class", stringValue("SQLConnectionHandler"))
+        .putAttributeMap("http.method", stringValue("GET"))
+        .putAttributeMap("http.status_code",
+            AttributeValue.newBuilder().setIntValue(200).build())
+        .putAttributeMap("line", AttributeValue.newBuilder().setIntValue(random.nextInt(500))
+            .build())
+        .putAttributeMap("sampled", AttributeValue.newBuilder().setBoolValue(true).build());
+    for (int i = 0; i < 2; i++) {
+      span.getTimeEventsBuilder().addTimeEvent(Span.TimeEvent.newBuilder()
+          .setTime(span.getStartTime())
+          .setAnnotation(Span.TimeEvent.Annotation.newBuilder()
+              .setDescription(TruncatableString.newBuilder().setValue("annotation " + i))
+              .setAttributes(Span.Attributes.newBuilder()
+                  .putAttributeMap("event", stringValue("event-" + i)))));
+    }
+  }
+
+  private static String operationName(final int i) {
+    return "net.explorviz.sampleApplication.database.helper.SQLConnectionHandler.operation" + i;
+  }
+
+  private static AttributeValue stringValue(final String value) {
+    return AttributeValue.newBuilder()
+        .setStringValue(TruncatableString.newBuilder().setValue(value))
+        .build();
+  }
+
+}
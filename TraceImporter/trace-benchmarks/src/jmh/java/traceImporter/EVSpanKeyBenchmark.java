@@ -0,0 +1,43 @@
+package traceImporter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the construction of the {@link EVSpanKey} that traces are rekeyed by.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EVSpanKeyBenchmark {
+
+  @Param({"10", "1000"})
+  public int distinctOperations;
+
+  private Trace trace;
+
+  @Setup
+  public void setUp() {
+    this.trace = BenchmarkData.trace(this.distinctOperations, 42L);
+  }
+
+  @Benchmark
+  public EVSpanKey createKey() {
+    final List<EVSpanData> spanDataList = new ArrayList<>();
+    for (final EVSpan span : this.trace.getSpanList()) {
+      spanDataList.add(
+          new EVSpanData(span.getOperationName(), span.getHostname(), span.getAppName(), null));
+    }
+    return new EVSpanKey(spanDataList);
+  }
+
+}
@@ -0,0 +1,119 @@
+package traceImporter;
+
+import io.confluent.kafka.schemaregistry.client.MockSchemaRegistryClient;
+import io.confluent.kafka.serializers.AbstractKafkaAvroSerDeConfig;
+import io.confluent.kafka.streams.serdes.avro.SpecificAvroSerde;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the heap retained by open traces, held as {@link IndexedTrace} records like the
+ * windowed aggregation does, and held as {@link ColumnarTrace}s like the
+ * {@link OpenTraceTransformer} does. Spans are deserialized before aggregation, such that they do
+ * not share their strings, as on the input topic.
+ *
+ * <p>The retained heap and the number of distinct spans it holds are summed up over all operations
+ * as the secondary results {@code retainedBytes} and {@code retainedSpans}, their ratio is the
+ * retained heap per span.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class OpenTraceMemoryBenchmark {
+
+  private static final String SPAN_TOPIC = "benchmark-spans";
+
+  private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+  @Param({"1000"})
+  public int traces;
+
+  @Param({"10", "100"})
+  public int distinctOperations;
+
+  /**
+   * Serialized spans of all traces, each trace with twice as many spans as operations.
+   */
+  private List<byte[]> serializedSpans;
+
+  private Deserializer<EVSpan> deserializer;
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class RetainedMemory {
+    public long retainedBytes;
+    public long retainedSpans;
+  }
+
+  @Setup
+  public void setUp() {
+    final SpecificAvroSerde<EVSpan> serde =
+        new SpecificAvroSerde<>(new MockSchemaRegistryClient());
+    serde.configure(
+        Map.of(AbstractKafkaAvroSerDeConfig.SCHEMA_REGISTRY_URL_CONFIG, "http://dummy"), false);
+    final Serializer<EVSpan> serializer = serde.serializer();
+    this.deserializer = serde.deserializer();
+
+    this.serializedSpans = new ArrayList<>();
+    for (int t = 0; t < this.traces; t++) {
+      for (final EVSpan span : BenchmarkData.spans(2 * this.distinctOperations,
+          this.distinctOperations, t)) {
+        span.setTraceId(Integer.toHexString(t));
+        this.serializedSpans.add(serializer.serialize(SPAN_TOPIC, span));
+      }
+    }
+  }
+
+  @Benchmark
+  public Map<String, IndexedTrace> indexed(final RetainedMemory memory) {
+    final long before = usedHeap();
+    final IndexedTraceAggregator aggregator = new IndexedTraceAggregator();
+    final Map<String, IndexedTrace> openTraces = new HashMap<>();
+    for (final byte[] serializedSpan : this.serializedSpans) {
+      final EVSpan span = this.deserializer.deserialize(SPAN_TOPIC, serializedSpan);
+      aggregator.apply(span.getTraceId(), span,
+          openTraces.computeIfAbsent(span.getTraceId(), id -> new IndexedTrace()));
+    }
+    memory.retainedBytes += usedHeap() - before;
+    memory.retainedSpans += (long) this.traces * this.distinctOperations;
+    return openTraces;
+  }
+
+  @Benchmark
+  public Map<String, ColumnarTrace> columnar(final RetainedMemory memory) {
+    final long before = usedHeap();
+    final StringPool pool = new StringPool();
+    final Map<String, ColumnarTrace> openTraces = new HashMap<>();
+    for (final byte[] serializedSpan : this.serializedSpans) {
+      final EVSpan span = this.deserializer.deserialize(SPAN_TOPIC, serializedSpan);
+      openTraces.computeIfAbsent(span.getTraceId(), id -> new ColumnarTrace(id, pool)).add(span);
+    }
+    memory.retainedBytes += usedHeap() - before;
+    memory.retainedSpans += (long) this.traces * this.distinctOperations;
+    return openTraces;
+  }
+
+  private static long usedHeap() {
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return MEMORY.getHeapMemoryUsage().getUsed();
+  }
+
+}
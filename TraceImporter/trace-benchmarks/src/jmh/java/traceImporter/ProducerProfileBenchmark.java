@@ -0,0 +1,152 @@
+package traceImporter;
+
+import io.confluent.kafka.schemaregistry.client.MockSchemaRegistryClient;
+import io.confluent.kafka.schemaregistry.client.rest.exceptions.RestClientException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.record.CompressionType;
+import org.apache.kafka.common.record.MemoryRecords;
+import org.apache.kafka.common.record.MemoryRecordsBuilder;
+import org.apache.kafka.common.record.TimestampType;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.StreamsConfig;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the bytes on the wire and the producer throughput of each {@link TuningProfile} for
+ * the spans of the span topic. Kafka is replaced by a stand-in that batches and compresses the
+ * records of a partition like the record accumulator of the producer: a batch is sent once it
+ * holds {@code batch.size} bytes or {@code linger.ms} after its first record, for records that
+ * arrive at a fixed rate. The producer settings are those of a Kafka Streams producer.
+ *
+ * <p>The {@link WireCounters} report the spans and the bytes on the wire per second, their ratio
+ * is the number of bytes per span. Request overheads and consumer fetches are not modelled.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ProducerProfileBenchmark {
+
+  private static final String TOPIC = "benchmark-spans";
+
+  private static final Header[] NO_HEADERS = new Header[0];
+
+  @Param({"DEFAULT", "THROUGHPUT", "LOW_LATENCY"})
+  public TuningProfile profile;
+
+  @Param({"1000", "100000"})
+  public int spansPerSecond;
+
+  @Param({"10", "1000"})
+  public int distinctOperations;
+
+  private byte[][] keys;
+
+  private byte[][] values;
+
+  private CompressionType compressionType;
+
+  private ByteBuffer buffer;
+
+  private long lingerNanos;
+
+  /**
+   * Counts the spans and bytes sent in each iteration.
+   */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class WireCounters {
+
+    public long spans;
+
+    public long wireBytes;
+
+    public long batches;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      this.spans = 0;
+      this.wireBytes = 0;
+      this.batches = 0;
+    }
+  }
+
+  @Setup
+  public void setUp() throws IOException, RestClientException {
+    final MockSchemaRegistryClient registry = new MockSchemaRegistryClient();
+    final RawSpanEncoder encoder =
+        new RawSpanEncoder(registry.register(TOPIC + "-value", EVSpan.SCHEMA$));
+    final List<KeyValue<String, byte[]>> records = DumpDecoder.sequential().decode(
+        BenchmarkData.dump(5000, this.distinctOperations, 42L).toByteArray(), encoder);
+    this.keys = new byte[records.size()][];
+    this.values = new byte[records.size()][];
+    for (int i = 0; i < records.size(); i++) {
+      this.keys[i] = records.get(i).key.getBytes(StandardCharsets.UTF_8);
+      this.values[i] = records.get(i).value;
+    }
+
+    // Settings of a Kafka Streams producer, including the defaults of Kafka Streams
+    final Map<String, Object> streamsProps = new HashMap<>(this.profile.streamsConfigs());
+    streamsProps.put(StreamsConfig.APPLICATION_ID_CONFIG, "benchmark");
+    streamsProps.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:1234");
+    final Map<String, Object> producerProps =
+        new StreamsConfig(streamsProps).getProducerConfigs("benchmark-producer");
+    producerProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+    producerProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+    final ProducerConfig producerConfig = new ProducerConfig(producerProps);
+
+    this.compressionType = CompressionType.forName(
+        producerConfig.getString(ProducerConfig.COMPRESSION_TYPE_CONFIG));
+    // Reused like the buffers of the producer's buffer pool
+    this.buffer = ByteBuffer.allocate(producerConfig.getInt(ProducerConfig.BATCH_SIZE_CONFIG));
+    this.lingerNanos =
+        TimeUnit.MILLISECONDS.toNanos(producerConfig.getLong(ProducerConfig.LINGER_MS_CONFIG));
+  }
+
+  @Benchmark
+  public void produce(final WireCounters counters) {
+    MemoryRecordsBuilder batch = null;
+    long batchStartNanos = 0;
+    for (int i = 0; i < this.values.length; i++) {
+      final long arrivalNanos = i * TimeUnit.SECONDS.toNanos(1) / this.spansPerSecond;
+      final long timestamp = TimeUnit.NANOSECONDS.toMillis(arrivalNanos);
+      if (batch != null && (arrivalNanos - batchStartNanos > this.lingerNanos
+          || !batch.hasRoomFor(timestamp, this.keys[i], this.values[i], NO_HEADERS))) {
+        this.send(batch, counters);
+        batch = null;
+      }
+      if (batch == null) {
+        this.buffer.clear();
+        batch = MemoryRecords.builder(this.buffer, this.compressionType, TimestampType.CREATE_TIME,
+            0L);
+        batchStartNanos = arrivalNanos;
+      }
+      batch.append(timestamp, this.keys[i], this.values[i]);
+    }
+    this.send(batch, counters);
+    counters.spans += this.values.length;
+  }
+
+  private void send(final MemoryRecordsBuilder batch, final WireCounters counters) {
+    counters.wireBytes += batch.build().sizeInBytes();
+    counters.batches++;
+  }
+
+}
@@ -0,0 +1,150 @@
+package traceImporter;
+
+import com.google.common.io.BaseEncoding;
+import com.google.protobuf.InvalidProtocolBufferException;
+import io.confluent.kafka.schemaregistry.client.MockSchemaRegistryClient;
+import io.confluent.kafka.schemaregistry.client.rest.exceptions.RestClientException;
+import io.confluent.kafka.serializers.AbstractKafkaAvroSerDeConfig;
+import io.confluent.kafka.streams.serdes.avro.SpecificAvroSerde;
+import io.opencensus.proto.dump.DumpSpans;
+import io.opencensus.proto.trace.v1.AttributeValue;
+import io.opencensus.proto.trace.v1.Span;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.streams.KeyValue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures parsing a {@link DumpSpans} message and translating its spans to {@link EVSpan}s. Run
+ * with the gc profiler to obtain the allocations per dump (divide by {@link #spansPerDump} for the
+ * allocations per span). Parallel decoding uses all available processors. Instrumented spans
+ * carry further fields, which full parsing decodes and the {@link SpanExtractor} skips.
+ * Serializing the extracted spans is compared to encoding them by the {@link RawSpanEncoder}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SpanTranslationBenchmark {
+
+  private static final String TOPIC = "benchmark-spans";
+
+  @Param({"50", "500", "5000"})
+  public int spansPerDump;
+
+  @Param({"10", "1000"})
+  public int distinctOperations;
+
+  @Param({"false", "true"})
+  public boolean instrumented;
+
+  private byte[] dump;
+
+  private DumpDecoder sequentialDecoder;
+
+  private DumpDecoder parallelDecoder;
+
+  private Serializer<EVSpan> serializer;
+
+  private RawSpanEncoder rawEncoder;
+
+  @Setup
+  public void setUp() throws IOException, RestClientException {
+    this.dump = BenchmarkData.dump(this.spansPerDump, this.distinctOperations, this.instrumented,
+        42L).toByteArray();
+    this.sequentialDecoder = DumpDecoder.sequential();
+    this.parallelDecoder =
+        DumpDecoder.parallel(Runtime.getRuntime().availableProcessors(), 1);
+
+    final MockSchemaRegistryClient registry = new MockSchemaRegistryClient();
+    final SpecificAvroSerde<EVSpan> serde = new SpecificAvroSerde<>(registry);
+    serde.configure(
+        Map.of(AbstractKafkaAvroSerDeConfig.SCHEMA_REGISTRY_URL_CONFIG, "http://dummy"), false);
+    this.serializer = serde.serializer();
+    this.rawEncoder = new RawSpanEncoder(registry.register(TOPIC + "-value", EVSpan.SCHEMA$));
+  }
+
+  @TearDown
+  public void tearDown() {
+    this.parallelDecoder.close();
+  }
+
+  @Benchmark
+  public DumpSpans parse() throws InvalidProtocolBufferException {
+    return DumpSpans.parseFrom(this.dump);
+  }
+
+  @Benchmark
+  public void parseAndTranslate(final Blackhole blackhole) throws InvalidProtocolBufferException {
+    final DumpSpans dumpSpans = DumpSpans.parseFrom(this.dump);
+    for (int i = 0; i < dumpSpans.getSpansCount(); i++) {
+      blackhole.consume(SpanConverter.toEVSpan(dumpSpans.getSpans(i)));
+    }
+  }
+
+  @Benchmark
+  public List<EVSpan> extract() throws IOException {
+    return this.sequentialDecoder.decode(this.dump);
+  }
+
+  @Benchmark
+  public List<EVSpan> extractParallel() throws IOException {
+    return this.parallelDecoder.decode(this.dump);
+  }
+
+  @Benchmark
+  public void extractAndSerialize(final Blackhole blackhole) throws IOException {
+    for (final EVSpan span : this.sequentialDecoder.decode(this.dump)) {
+      blackhole.consume(this.serializer.serialize(TOPIC, span));
+    }
+  }
+
+  @Benchmark
+  public List<KeyValue<String, byte[]>> encodeRaw() throws IOException {
+    return this.sequentialDecoder.decode(this.dump, this.rawEncoder);
+  }
+
+  /**
+   * Baseline: the translation as it was implemented before {@link SpanConverter}.
+   */
+  @Benchmark
+  public void parseAndTranslateLegacy(final Blackhole blackhole)
+      throws InvalidProtocolBufferException {
+    final DumpSpans dumpSpans = DumpSpans.parseFrom(this.dump);
+    for (final Span s : dumpSpans.getSpansList()) {
+      final String traceId =
+          BaseEncoding.base16().lowerCase().encode(s.getTraceId().toByteArray(), 0, 16);
+      final String spanId =
+          BaseEncoding.base16().lowerCase().encode(s.getSpanId().toByteArray(), 0, 8);
+
+      final Timestamp startTime =
+          new Timestamp(s.getStartTime().getSeconds(), s.getStartTime().getNanos());
+      final long endTime = Instant
+          .ofEpochSecond(s.getEndTime().getSeconds(), s.getEndTime().getNanos())
+          .toEpochMilli();
+      final long duration = endTime
+          - Duration.ofSeconds(startTime.getSeconds(), startTime.getNanoAdjust()).toMillis();
+
+      final Map<String, AttributeValue> attributes = s.getAttributes().getAttributeMapMap();
+      blackhole.consume(new EVSpan(spanId, traceId, startTime, endTime, duration,
+          attributes.get("method_fqn").getStringValue().getValue(), 1,
+          attributes.get("host").getStringValue().getValue(),
+          attributes.get("application_name").getStringValue().getValue(), null, null, null, null,
+          null, null));
+    }
+  }
+
+}
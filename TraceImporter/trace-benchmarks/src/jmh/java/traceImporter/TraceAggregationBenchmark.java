@@ -0,0 +1,85 @@
+package traceImporter;
+
+import io.confluent.kafka.schemaregistry.client.MockSchemaRegistryClient;
+import io.confluent.kafka.serializers.AbstractKafkaAvroSerDeConfig;
+import io.confluent.kafka.streams.serdes.avro.SpecificAvroSerde;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures folding the spans of a single trace into a {@link Trace}, once in memory as done by the
+ * {@link OpenTraceTransformer}, and once with the state store round trip of the windowed
+ * aggregation of {@link SpanToTraceReconstructorStream}, i.e., the trace is deserialized and
+ * serialized again for every span.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TraceAggregationBenchmark {
+
+  private static final String STORE_TOPIC = "benchmark-open-traces";
+
+  @Param({"100", "5000"})
+  public int spansPerTrace;
+
+  @Param({"10", "1000"})
+  public int distinctOperations;
+
+  private List<EVSpan> spans;
+
+  private final IndexedTraceAggregator aggregator = new IndexedTraceAggregator();
+
+  private Serializer<IndexedTrace> serializer;
+  private Deserializer<IndexedTrace> deserializer;
+
+  @Setup
+  public void setUp() {
+    this.spans = BenchmarkData.spans(this.spansPerTrace, this.distinctOperations, 42L);
+
+    final SpecificAvroSerde<IndexedTrace> serde =
+        new SpecificAvroSerde<>(new MockSchemaRegistryClient());
+    serde.configure(
+        Map.of(AbstractKafkaAvroSerDeConfig.SCHEMA_REGISTRY_URL_CONFIG, "http://dummy"), false);
+    this.serializer = serde.serializer();
+    this.deserializer = serde.deserializer();
+  }
+
+  @Benchmark
+  public IndexedTrace aggregate() {
+    IndexedTrace indexedTrace = new IndexedTrace();
+    for (final EVSpan span : this.spans) {
+      // The aggregator mutates the spans it keeps, hence fold copies
+      final EVSpan copy = new EVSpan(span.getSpanId(), span.getTraceId(), span.getStartTime(),
+          span.getEndTime(), span.getDuration(), span.getOperationName(), span.getRequestCount(),
+          span.getHostname(), span.getAppName(), null, span.getEndTimestamp(), null,
+          span.getParentSpanId(), null, span.getDurationNanos());
+      indexedTrace = this.aggregator.apply(copy.getTraceId(), copy, indexedTrace);
+    }
+    return indexedTrace;
+  }
+
+  @Benchmark
+  public IndexedTrace aggregateWithStoreRoundTrip() {
+    byte[] stored = null;
+    for (final EVSpan span : this.spans) {
+      // Like the store, start with a fresh aggregate for the first span
+      final IndexedTrace indexedTrace = stored == null
+          ? new IndexedTrace() : this.deserializer.deserialize(STORE_TOPIC, stored);
+      stored = this.serializer.serialize(STORE_TOPIC,
+          this.aggregator.apply(span.getTraceId(), span, indexedTrace));
+    }
+    return this.deserializer.deserialize(STORE_TOPIC, stored);
+  }
+
+}
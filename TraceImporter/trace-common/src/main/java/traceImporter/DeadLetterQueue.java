@@ -0,0 +1,104 @@
+package traceImporter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.Supplier;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes dumps and spans that cannot be translated to a dead letter topic, as they were received,
+ * with the reason of the failure in the headers {@value #REASON_HEADER} and
+ * {@value #DETAIL_HEADER} and their origin in {@value #SOURCE_HEADER}.
+ *
+ * <p>Dead letters are sent by a producer of their own, because the records forwarded in Kafka
+ * Streams share the headers of the input record, which are read-only once the first output
+ * record is sent. The producer is created on the first dead letter and shared by all stream
+ * threads. Failures to send a dead letter are logged and do not fail the stream.
+ */
+public class DeadLetterQueue implements AutoCloseable {
+
+  public static final String REASON_HEADER = "dead-letter-reason";
+
+  public static final String DETAIL_HEADER = "dead-letter-detail";
+
+  public static final String SOURCE_HEADER = "dead-letter-source";
+
+  private static final Logger LOG = LoggerFactory.getLogger(DeadLetterQueue.class);
+
+  private final String topic;
+
+  private final Supplier<Producer<byte[], byte[]>> producerFactory;
+
+  private Producer<byte[], byte[]> producer;
+
+  /**
+   * Creates a new dead letter queue.
+   *
+   * @param topic the dead letter topic
+   * @param producerFactory creates the producer of the dead letters
+   */
+  public DeadLetterQueue(final String topic,
+                         final Supplier<Producer<byte[], byte[]>> producerFactory) {
+    this.topic = topic;
+    this.producerFactory = producerFactory;
+  }
+
+  /**
+   * Creates a dead letter queue that discards all dead letters.
+   */
+  public static DeadLetterQueue disabled() {
+    return new DeadLetterQueue(null, null);
+  }
+
+  public boolean isEnabled() {
+    return this.topic != null;
+  }
+
+  /**
+   * Sends a dead letter, unless the queue is disabled.
+   *
+   * @param key key of the input record
+   * @param value the dump or span that cannot be translated
+   * @param reason the reason of the failure
+   * @param detail a description of the failure
+   * @param source origin of the input record, e.g., its topic, partition and offset
+   */
+  public void send(final byte[] key, final byte[] value, final Rejection.Reason reason,
+                   final String detail, final String source) {
+    if (!this.isEnabled()) {
+      LOG.debug("Discarding dead letter from {}: {} {}", source, reason.getLabel(), detail);
+      return;
+    }
+
+    final RecordHeaders headers = new RecordHeaders();
+    headers.add(REASON_HEADER, reason.getLabel().getBytes(StandardCharsets.UTF_8));
+    headers.add(DETAIL_HEADER, String.valueOf(detail).getBytes(StandardCharsets.UTF_8));
+    headers.add(SOURCE_HEADER, source.getBytes(StandardCharsets.UTF_8));
+
+    this.getProducer().send(new ProducerRecord<>(this.topic, null, key, value, headers),
+        (metadata, exception) -> {
+          if (exception != null) {
+            LOG.warn("Cannot send dead letter from {}: {}", source, reason.getLabel(),
+                exception);
+          }
+        });
+  }
+
+  private synchronized Producer<byte[], byte[]> getProducer() {
+    if (this.producer == null) {
+      this.producer = this.producerFactory.get();
+    }
+    return this.producer;
+  }
+
+  @Override
+  public synchronized void close() {
+    if (this.producer != null) {
+      this.producer.close();
+    }
+  }
+
+}
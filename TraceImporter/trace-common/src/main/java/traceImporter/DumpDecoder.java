@@ -0,0 +1,217 @@
+package traceImporter;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.WireFormat;
+import io.opencensus.proto.dump.DumpSpans;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Decodes a serialized {@link DumpSpans} message to {@link EVSpan}s in the order of the dump.
+ * The dump is scanned for the offsets of its spans, which are then extracted by the
+ * {@link SpanExtractor} without parsing the spans as a whole.
+ *
+ * <p>Large dumps are decoded by a {@link ForkJoinPool} shared by all stream threads, which
+ * extracts the spans in parallel chunks. Each span is written to its position in the result,
+ * hence the order of the dump, and thus the order of the spans of each trace, is preserved.
+ */
+public class DumpDecoder implements AutoCloseable {
+
+  /**
+   * Minimum number of spans decoded by a single task.
+   */
+  private static final int MIN_CHUNK_SIZE = 16;
+
+  /**
+   * Number of tasks per thread, so that threads that finish early take over remaining chunks.
+   */
+  private static final int CHUNKS_PER_THREAD = 4;
+
+  private static final int SPANS_TAG =
+      DumpSpans.SPANS_FIELD_NUMBER << 3 | WireFormat.WIRETYPE_LENGTH_DELIMITED;
+
+  private final ForkJoinPool pool;
+
+  private final int minParallelSpans;
+
+  private DumpDecoder(final ForkJoinPool pool, final int minParallelSpans) {
+    this.pool = pool;
+    this.minParallelSpans = minParallelSpans;
+  }
+
+  /**
+   * Creates a decoder that decodes on the calling thread.
+   */
+  public static DumpDecoder sequential() {
+    return new DumpDecoder(null, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Creates a decoder that decodes dumps with at least {@code minParallelSpans} spans on a pool of
+   * {@code threads} threads.
+   *
+   * @param threads number of threads of the pool, shared by all stream threads
+   * @param minParallelSpans minimum number of spans of a dump to decode it in parallel
+   */
+  public static DumpDecoder parallel(final int threads, final int minParallelSpans) {
+    return new DumpDecoder(new ForkJoinPool(threads), minParallelSpans);
+  }
+
+  /**
+   * Decodes the spans of a dump.
+   *
+   * @param dump the serialized dump
+   * @return the spans in the order of the dump
+   * @throws IOException if the dump or one of its spans is malformed
+   */
+  public List<EVSpan> decode(final byte[] dump) throws IOException {
+    return this.decode(dump, SpanExtractor::extract);
+  }
+
+  /**
+   * Decodes the spans of a dump by the given reader.
+   *
+   * @param dump the serialized dump
+   * @param reader reads a single serialized span, must be thread-safe
+   * @param <T> type of the decoded spans
+   * @return the spans in the order of the dump
+   * @throws IOException if the dump or one of its spans is malformed
+   */
+  public <T> List<T> decode(final byte[] dump, final SpanReader<T> reader) throws IOException {
+    final int[] offsets = scan(dump);
+    final int spanCount = offsets.length / 2;
+    final Object[] spans = new Object[spanCount];
+
+    if (this.pool == null || spanCount < this.minParallelSpans) {
+      for (int i = 0; i < spanCount; i++) {
+        spans[i] = reader.read(dump, offsets[2 * i], offsets[2 * i + 1]);
+      }
+    } else {
+      try {
+        this.pool.invoke(new DecodeChunk(dump, offsets, reader, spans, 0, spanCount,
+            Math.max(MIN_CHUNK_SIZE,
+                spanCount / (this.pool.getParallelism() * CHUNKS_PER_THREAD) + 1)));
+      } catch (final UncheckedIOException e) {
+        throw e.getCause();
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    final List<T> result = (List<T>) Arrays.asList(spans);
+    return result;
+  }
+
+  /**
+   * Returns the offset and length of each span of the dump, without parsing the spans.
+   */
+  private static int[] scan(final byte[] dump) throws IOException {
+    final CodedInputStream input = CodedInputStream.newInstance(dump);
+    int[] offsets = new int[64];
+    int count = 0;
+    int tag;
+    while ((tag = input.readTag()) != 0) {
+      if (tag != SPANS_TAG) {
+        input.skipField(tag);
+        continue;
+      }
+      final int length = input.readRawVarint32();
+      if (length < 0) {
+        throw new InvalidProtocolBufferException("Span of negative length");
+      }
+      if (count + 2 > offsets.length) {
+        offsets = Arrays.copyOf(offsets, 2 * offsets.length);
+      }
+      offsets[count++] = input.getTotalBytesRead();
+      offsets[count++] = length;
+      input.skipRawBytes(length);
+    }
+    return Arrays.copyOf(offsets, count);
+  }
+
+  @Override
+  public void close() {
+    if (this.pool != null) {
+      this.pool.shutdown();
+    }
+  }
+
+  /**
+   * Reads a single span of a dump.
+   *
+   * @param <T> type of the decoded span
+   */
+  @FunctionalInterface
+  public interface SpanReader<T> {
+
+    /**
+     * Reads the span of the given length at the given offset of the buffer.
+     *
+     * @throws IOException if the span is malformed
+     */
+    T read(byte[] buffer, int offset, int length) throws IOException;
+  }
+
+  /**
+   * Decodes a range of spans, split in halves until it is no larger than the chunk size.
+   */
+  private static class DecodeChunk extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final byte[] dump;
+
+    private final int[] offsets;
+
+    private final SpanReader<?> reader;
+
+    private final Object[] spans;
+
+    private final int from;
+
+    private final int to;
+
+    private final int chunkSize;
+
+    DecodeChunk(final byte[] dump, final int[] offsets, final SpanReader<?> reader,
+                final Object[] spans, final int from, final int to, final int chunkSize) {
+      this.dump = dump;
+      this.offsets = offsets;
+      this.reader = reader;
+      this.spans = spans;
+      this.from = from;
+      this.to = to;
+      this.chunkSize = chunkSize;
+    }
+
+    @Override
+    protected void compute() {
+      if (this.to - this.from <= this.chunkSize) {
+        this.decodeRange();
+        return;
+      }
+      final int middle = (this.from + this.to) >>> 1;
+      invokeAll(
+          new DecodeChunk(this.dump, this.offsets, this.reader, this.spans, this.from, middle,
+              this.chunkSize),
+          new DecodeChunk(this.dump, this.offsets, this.reader, this.spans, middle, this.to,
+              this.chunkSize));
+    }
+
+    private void decodeRange() {
+      try {
+        for (int i = this.from; i < this.to; i++) {
+          this.spans[i] =
+              this.reader.read(this.dump, this.offsets[2 * i], this.offsets[2 * i + 1]);
+        }
+      } catch (final IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,141 @@
+package traceImporter;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.config.AbstractConfig;
+import org.apache.kafka.common.config.ConfigDef;
+import org.apache.kafka.common.config.ConfigDef.Importance;
+import org.apache.kafka.common.config.ConfigDef.Range;
+import org.apache.kafka.common.config.ConfigDef.Type;
+import org.apache.kafka.common.config.ConfigException;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+
+/**
+ * Configuration of the translation of span dumps by the {@link DumpTranslator}, i.e., the topic of
+ * dumps, the decoding of large dumps, the defaults of missing attributes and the dead letter
+ * topic. It is shared by the span translator, whose configuration extends it by the keys of the
+ * service, see {@link #define(ConfigDef)}, and the trace reconstructor, which translates dumps in
+ * its own topology.
+ */
+public class DumpTranslationConfig extends AbstractConfig {
+
+  public static final String IN_TOPIC = "topic.in";
+  public static final String DEAD_LETTER_TOPIC = "topic.dead.letter";
+  public static final String DECODING_THREADS = "decoding.threads";
+  public static final String DECODING_PARALLEL_MIN_SPANS = "decoding.parallel.min.spans";
+  public static final String DEFAULT_OPERATION_NAME = "default.operation.name";
+  public static final String DEFAULT_HOSTNAME = "default.hostname";
+  public static final String DEFAULT_APP_NAME = "default.app.name";
+
+  // Topic of the span dumps of the collectors
+  public static final String DEFAULT_IN_TOPIC = "cluster-dump-spans";
+
+  // Topic of dumps and spans that cannot be translated
+  public static final String DEFAULT_DEAD_LETTER_TOPIC = "cluster-dump-spans-dead-letters";
+
+  private static final ConfigDef CONFIG = define(new ConfigDef());
+
+  /**
+   * Creates a configuration of the given values, missing values are set to their default.
+   *
+   * @param values configuration values
+   * @throws ConfigException if a value is invalid or a key is unknown
+   */
+  public DumpTranslationConfig(final Map<String, ?> values) {
+    this(CONFIG, values);
+
+    for (final String key : values.keySet()) {
+      if (!CONFIG.names().contains(key)) {
+        throw new ConfigException("Unknown configuration key " + key);
+      }
+    }
+  }
+
+  /**
+   * Creates a configuration of a definition that extends the definition of the dump
+   * translation. Unknown keys are left to the caller.
+   *
+   * @param definition the definition, see {@link #define(ConfigDef)}
+   * @param values configuration values
+   * @throws ConfigException if a value is invalid
+   */
+  protected DumpTranslationConfig(final ConfigDef definition, final Map<String, ?> values) {
+    super(definition, values, false);
+  }
+
+  /**
+   * Adds the keys of the dump translation to a definition.
+   *
+   * @param definition the definition to extend
+   * @return the definition
+   */
+  public static ConfigDef define(final ConfigDef definition) {
+    return definition
+        .define(IN_TOPIC, Type.STRING, DEFAULT_IN_TOPIC, Importance.MEDIUM,
+            "Topic of opencensus span dumps")
+        .define(DEAD_LETTER_TOPIC, Type.STRING, DEFAULT_DEAD_LETTER_TOPIC, Importance.MEDIUM,
+            "Topic of dumps and spans that cannot be translated, empty to discard them")
+        .define(DECODING_THREADS, Type.INT, 0, Range.atLeast(0), Importance.MEDIUM,
+            "Threads that decode large dumps in parallel, shared by all stream threads, "
+                + "0 decodes all dumps on the stream thread")
+        .define(DECODING_PARALLEL_MIN_SPANS, Type.INT, 1000, Range.atLeast(1), Importance.LOW,
+            "Minimum number of spans of a dump to decode it in parallel")
+        .define(DEFAULT_OPERATION_NAME, Type.STRING, null, Importance.LOW,
+            "Operation name of spans without one, which are rejected if not set")
+        .define(DEFAULT_HOSTNAME, Type.STRING, null, Importance.LOW,
+            "Hostname of spans without one, which are rejected if not set")
+        .define(DEFAULT_APP_NAME, Type.STRING, null, Importance.LOW,
+            "Application name of spans without one, which are rejected if not set");
+  }
+
+  /**
+   * Creates the decoder of span dumps, which decodes large dumps in parallel if
+   * {@value #DECODING_THREADS} is positive.
+   */
+  public DumpDecoder createDumpDecoder() {
+    final int threads = this.getInt(DECODING_THREADS);
+    return threads == 0
+        ? DumpDecoder.sequential()
+        : DumpDecoder.parallel(threads, this.getInt(DECODING_PARALLEL_MIN_SPANS));
+  }
+
+  /**
+   * Creates the validator of spans, which replaces missing attributes by the configured
+   * defaults.
+   */
+  public SpanValidator createSpanValidator() {
+    return new SpanValidator(this.getString(DEFAULT_OPERATION_NAME),
+        this.getString(DEFAULT_HOSTNAME), this.getString(DEFAULT_APP_NAME));
+  }
+
+  /**
+   * Creates the queue of dumps and spans that cannot be translated, which is disabled if
+   * {@value #DEAD_LETTER_TOPIC} is empty. Its producer is configured like the producers of the
+   * streams of the service, such that the dead letters are produced like the spans.
+   *
+   * @param broker the Kafka bootstrap servers
+   * @param applicationId the application id of the streams, which prefixes the client id
+   * @param profile the tuning profile of the streams
+   * @param producerConfigs the settings passed on to the producers of the streams, which take
+   *        precedence over the profile
+   * @return the dead letter queue
+   */
+  public DeadLetterQueue createDeadLetterQueue(final String broker, final String applicationId,
+                                               final TuningProfile profile,
+                                               final Map<String, Object> producerConfigs) {
+    final String topic = this.getString(DEAD_LETTER_TOPIC);
+    if (topic.isEmpty()) {
+      return DeadLetterQueue.disabled();
+    }
+
+    final Map<String, Object> props = new HashMap<>(profile.producerConfigs());
+    props.putAll(producerConfigs);
+    props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, broker);
+    props.put(ProducerConfig.CLIENT_ID_CONFIG, applicationId + "-dead-letters");
+    return new DeadLetterQueue(topic,
+        () -> new KafkaProducer<>(props, new ByteArraySerializer(), new ByteArraySerializer()));
+  }
+
+}
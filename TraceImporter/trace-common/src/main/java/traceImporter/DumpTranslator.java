@@ -0,0 +1,141 @@
+package traceImporter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.avro.specific.SpecificRecord;
+import org.apache.kafka.common.metrics.Sensor;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.kstream.Transformer;
+import org.apache.kafka.streams.processor.ProcessorContext;
+
+/**
+ * Translates a dump of opencensus spans to {@link EVSpan}s, or {@link EVSpanBatch}es if
+ * batching is enabled, keyed by trace id. Dumps are decoded by the given {@link DumpDecoder}.
+ * Measures the dumps and spans per second and the time to translate a dump in the
+ * {@link PipelineMetrics} of stage {@value #STAGE}.
+ *
+ * <p>Spans are validated by the given {@link SpanValidator}. Dumps that cannot be decoded and
+ * invalid spans are skipped, counted and written to the {@link DeadLetterQueue} by a
+ * {@link RejectionHandler}, the other spans of the dump are translated.
+ */
+public class DumpTranslator
+    implements Transformer<byte[], byte[], Iterable<KeyValue<String, SpecificRecord>>> {
+
+  public static final String STAGE = "span-translation";
+
+  public static final String DUMPS = "dumps";
+
+  public static final String SPANS = "spans";
+
+  public static final String TRANSLATION_LATENCY = "translation-latency-us";
+
+  private final boolean batching;
+
+  private final DumpDecoder decoder;
+
+  private final SpanValidator validator;
+
+  private final DeadLetterQueue deadLetters;
+
+  private RejectionHandler rejections;
+
+  private DumpDecoder.SpanReader<Object> reader;
+
+  private Sensor dumpSensor;
+
+  private Sensor spanSensor;
+
+  private Sensor latencySensor;
+
+  /**
+   * Creates a new translator.
+   *
+   * @param batching whether spans are batched by trace id
+   * @param decoder decodes the dumps
+   * @param validator validates the spans
+   * @param deadLetters receives dumps and spans that cannot be translated
+   */
+  public DumpTranslator(boolean batching, DumpDecoder decoder, SpanValidator validator,
+                        DeadLetterQueue deadLetters) {
+    this.batching = batching;
+    this.decoder = decoder;
+    this.validator = validator;
+    this.deadLetters = deadLetters;
+  }
+
+  @Override
+  public void init(ProcessorContext context) {
+    dumpSensor = PipelineMetrics.throughputSensor(context.metrics(), STAGE, DUMPS);
+    spanSensor = PipelineMetrics.throughputSensor(context.metrics(), STAGE, SPANS);
+    latencySensor = PipelineMetrics.histogramSensor(context.metrics(), STAGE,
+        TRANSLATION_LATENCY, PipelineMetrics.MICROS_BUCKETS);
+    rejections = new RejectionHandler(context, deadLetters);
+    reader = validator.reader(SpanExtractor::toEVSpan, rejections.getDefaultedSensor());
+  }
+
+  @Override
+  public Iterable<KeyValue<String, SpecificRecord>> transform(byte[] key, byte[] value) {
+    final long start = System.nanoTime();
+
+    List<Object> results;
+    try {
+      results = decoder.decode(value, reader);
+    } catch (IOException | RuntimeException e) {
+      rejections.reject(key, value, Rejection.Reason.MALFORMED_DUMP, e.toString());
+      return Collections.emptyList();
+    }
+    List<EVSpan> spans = rejections.accept(key, value, results);
+
+    List<KeyValue<String, SpecificRecord>> result = batching ? toBatches(spans) : toSpans(spans);
+
+    latencySensor.record((System.nanoTime() - start) / 1000.0);
+    dumpSensor.record();
+    for (int i = 0; i < spans.size(); i++) {
+      spanSensor.record();
+    }
+    return result;
+  }
+
+  @Override
+  public void close() {
+    // Sensors are shared by all tasks of a thread, thus they are not removed on close
+  }
+
+  /**
+   * Keys each span of the dump by its trace id.
+   */
+  private static List<KeyValue<String, SpecificRecord>> toSpans(List<EVSpan> spans) {
+    List<KeyValue<String, SpecificRecord>> result = new ArrayList<>(spans.size());
+    for (EVSpan span : spans) {
+      result.add(KeyValue.pair(span.getTraceId(), span));
+    }
+    return result;
+  }
+
+  /**
+   * Groups the spans of the dump to one {@link EVSpanBatch} record per trace id. Batches are
+   * ordered by the first occurrence of their trace id in the dump, spans within a batch keep the
+   * order of the dump.
+   */
+  private static List<KeyValue<String, SpecificRecord>> toBatches(List<EVSpan> spans) {
+    Map<String, EVSpanBatch> batches = new LinkedHashMap<>();
+    for (EVSpan span : spans) {
+      batches
+          .computeIfAbsent(span.getTraceId(),
+              traceId -> new EVSpanBatch(traceId, new ArrayList<>()))
+          .getSpans()
+          .add(span);
+    }
+
+    List<KeyValue<String, SpecificRecord>> result = new ArrayList<>(batches.size());
+    for (EVSpanBatch batch : batches.values()) {
+      result.add(KeyValue.pair(batch.getTraceId(), batch));
+    }
+    return result;
+  }
+
+}
@@ -0,0 +1,164 @@
+package traceImporter;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.apache.kafka.streams.KeyValue;
+
+/**
+ * Encodes serialized opencensus spans straight to serialized {@link EVSpan}s in the wire format
+ * of the Confluent Avro serializer, i.e., a magic byte, the id of the {@link EVSpan} schema and
+ * the Avro binary encoding of the span, without creating {@link EVSpan} objects.
+ *
+ * <p>Spans are scanned by the {@link SpanExtractor}; ids are hex-encoded and the UTF-8 bytes of
+ * the attributes are copied from the opencensus span as they are. Each span is encoded into a
+ * reusable per-thread buffer, from which only the encoded bytes are copied.
+ */
+public class RawSpanEncoder implements DumpDecoder.SpanReader<KeyValue<String, byte[]>> {
+
+  public static final byte MAGIC_BYTE = 0;
+
+  /**
+   * Maximum length of a varint encoded long.
+   */
+  private static final int MAX_VARINT_LENGTH = 10;
+
+  /**
+   * Maximum length of an encoded span without its attributes.
+   */
+  private static final int MAX_FIXED_LENGTH = 1 + 4
+      + 1 + 2 * SpanExtractor.SPAN_ID_LENGTH
+      + 1 + 2 * SpanExtractor.TRACE_ID_LENGTH
+      + 4 * MAX_VARINT_LENGTH + 1 + 1 + 1
+      + 3 * MAX_VARINT_LENGTH + 1 + 1
+      + 1 + 2 * MAX_VARINT_LENGTH + 1
+      + 1 + 1 + 2 * SpanExtractor.SPAN_ID_LENGTH + 1
+      + 1 + MAX_VARINT_LENGTH;
+
+  private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> new byte[512]);
+
+  private final int schemaId;
+
+  /**
+   * Creates a new encoder.
+   *
+   * @param schemaId id of the {@link EVSpan} schema in the schema registry
+   */
+  public RawSpanEncoder(final int schemaId) {
+    this.schemaId = schemaId;
+  }
+
+  /**
+   * Encodes a single span.
+   *
+   * @return the encoded span keyed by its trace id
+   * @throws IOException if the span is malformed or lacks an id
+   * @throws IllegalArgumentException if one of the required attributes is missing
+   */
+  @Override
+  public KeyValue<String, byte[]> read(final byte[] buffer, final int offset, final int length)
+      throws IOException {
+    final SpanExtractor.Fields fields = SpanExtractor.scan(buffer, offset, length);
+    if (!fields.hasIds()) {
+      throw new InvalidProtocolBufferException("Span without trace or span id");
+    }
+    for (int i = 0; i < fields.attributePositions.length; i++) {
+      if (fields.attributePositions[i] < 0) {
+        throw new IllegalArgumentException(SpanExtractor.attributeKey(i));
+      }
+    }
+    return this.encode(fields);
+  }
+
+  /**
+   * Encodes the fields of a complete span.
+   *
+   * @return the encoded span keyed by its trace id
+   */
+  KeyValue<String, byte[]> encode(final SpanExtractor.Fields fields) {
+    final byte[] buffer = fields.buffer;
+    final int maxLength = MAX_FIXED_LENGTH + fields.attributeLengths[0]
+        + fields.attributeLengths[1] + fields.attributeLengths[2];
+    byte[] out = BUFFER.get();
+    if (out.length < maxLength) {
+      out = new byte[Math.max(maxLength, 2 * out.length)];
+      BUFFER.set(out);
+    }
+
+    out[0] = MAGIC_BYTE;
+    out[1] = (byte) (this.schemaId >>> 24);
+    out[2] = (byte) (this.schemaId >>> 16);
+    out[3] = (byte) (this.schemaId >>> 8);
+    out[4] = (byte) this.schemaId;
+    int position = 5;
+
+    // Fields in the order of the EVSpan schema
+    position = writeLong(2 * SpanExtractor.SPAN_ID_LENGTH, out, position);
+    position = SpanConverter.writeHex(buffer, fields.spanIdPosition,
+        SpanExtractor.SPAN_ID_LENGTH, out, position);
+    final int traceIdStart = writeLong(2 * SpanExtractor.TRACE_ID_LENGTH, out, position);
+    position = SpanConverter.writeHex(buffer, fields.traceIdPosition,
+        SpanExtractor.TRACE_ID_LENGTH, out, traceIdStart);
+    final String traceId = new String(out, traceIdStart, 2 * SpanExtractor.TRACE_ID_LENGTH,
+        StandardCharsets.US_ASCII);
+    position = writeLong(fields.startSeconds, out, position);
+    position = writeLong(fields.startNanos, out, position);
+    position = writeLong(fields.endTime(), out, position);
+    position = writeLong(fields.duration(), out, position);
+    position = writeString(fields, SpanExtractor.OPERATION_NAME_INDEX, out, position);
+    // Request count of 1
+    position = writeLong(1, out, position);
+    position = writeString(fields, SpanExtractor.HOSTNAME_INDEX, out, position);
+    position = writeString(fields, SpanExtractor.APP_NAME_INDEX, out, position);
+    // Null branch of the dictionary ids union
+    position = writeLong(0, out, position);
+    // Timestamp branch of the end timestamp union
+    position = writeLong(1, out, position);
+    position = writeLong(fields.endSeconds, out, position);
+    position = writeLong(fields.endNanos, out, position);
+    // Null branch of the latency union, a single span has no statistics beyond its duration
+    position = writeLong(0, out, position);
+    if (fields.hasParent()) {
+      position = writeLong(1, out, position);
+      position = writeLong(2 * SpanExtractor.SPAN_ID_LENGTH, out, position);
+      position = SpanConverter.writeHex(buffer, fields.parentSpanIdPosition,
+          SpanExtractor.SPAN_ID_LENGTH, out, position);
+    } else {
+      position = writeLong(0, out, position);
+    }
+    // Null branch of the exclusive duration union, which is only known for aggregated spans
+    position = writeLong(0, out, position);
+    // Long branch of the nanosecond duration union
+    position = writeLong(1, out, position);
+    position = writeLong(fields.durationNanos(), out, position);
+
+    return KeyValue.pair(traceId, Arrays.copyOf(out, position));
+  }
+
+  /**
+   * Writes an attribute as the string branch of its union.
+   */
+  private static int writeString(final SpanExtractor.Fields fields, final int index,
+                                 final byte[] out, final int position) {
+    final int length = fields.attributeLengths[index];
+    final int start = writeLong(length, out, writeLong(1, out, position));
+    System.arraycopy(fields.attributeBuffers[index], fields.attributePositions[index], out, start,
+        length);
+    return start + length;
+  }
+
+  /**
+   * Writes a zig-zag varint, as Avro encodes ints and longs.
+   */
+  private static int writeLong(final long value, final byte[] out, int position) {
+    long n = (value << 1) ^ (value >> 63);
+    while ((n & ~0x7FL) != 0) {
+      out[position++] = (byte) ((n & 0x7F) | 0x80);
+      n >>>= 7;
+    }
+    out[position++] = (byte) n;
+    return position;
+  }
+
+}
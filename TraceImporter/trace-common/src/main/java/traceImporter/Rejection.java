@@ -0,0 +1,84 @@
+package traceImporter;
+
+/**
+ * A dump or a span of a dump that is not translated, with the reason why. Rejected spans are
+ * located by their offset and length in the dump.
+ */
+public final class Rejection {
+
+  /**
+   * The classes of failures, each of which is counted separately.
+   */
+  public enum Reason {
+
+    /**
+     * The dump cannot be decoded, none of its spans is translated.
+     */
+    MALFORMED_DUMP("malformed-dump"),
+
+    /**
+     * The span cannot be decoded.
+     */
+    MALFORMED_SPAN("malformed-span"),
+
+    /**
+     * The span lacks its trace id or span id, or one of them is too short.
+     */
+    MISSING_ID("missing-id"),
+
+    /**
+     * The span lacks one of the translated attributes, which has no default.
+     */
+    MISSING_ATTRIBUTE("missing-attribute"),
+
+    /**
+     * The span ends before it starts.
+     */
+    INVALID_TIME("invalid-time");
+
+    private final String label;
+
+    Reason(final String label) {
+      this.label = label;
+    }
+
+    /**
+     * Returns the label of the reason, as used in metric names and dead letter headers.
+     */
+    public String getLabel() {
+      return this.label;
+    }
+  }
+
+  private final Reason reason;
+
+  private final String detail;
+
+  private final int offset;
+
+  private final int length;
+
+  Rejection(final Reason reason, final String detail, final int offset, final int length) {
+    this.reason = reason;
+    this.detail = detail;
+    this.offset = offset;
+    this.length = length;
+  }
+
+  public Reason getReason() {
+    return this.reason;
+  }
+
+  public String getDetail() {
+    return this.detail;
+  }
+
+  public int getOffset() {
+    return this.offset;
+  }
+
+  public int getLength() {
+    return this.length;
+  }
+
+}
@@ -0,0 +1,80 @@
+package traceImporter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.kafka.common.metrics.Sensor;
+import org.apache.kafka.streams.processor.ProcessorContext;
+
+/**
+ * Handles the dumps and spans rejected by a translator: counts them per
+ * {@link Rejection.Reason} in the {@link PipelineMetrics} of stage {@value DumpTranslator#STAGE},
+ * e.g., as {@code missing-attribute-total}, and writes them to the {@link DeadLetterQueue}.
+ * Spans completed by a default are counted as {@value #DEFAULTED_SPANS}.
+ */
+class RejectionHandler {
+
+  static final String DEFAULTED_SPANS = "defaulted-spans";
+
+  private final ProcessorContext context;
+
+  private final DeadLetterQueue deadLetters;
+
+  private final Map<Rejection.Reason, Sensor> sensors = new EnumMap<>(Rejection.Reason.class);
+
+  private final Sensor defaultedSensor;
+
+  RejectionHandler(final ProcessorContext context, final DeadLetterQueue deadLetters) {
+    this.context = context;
+    this.deadLetters = deadLetters;
+    for (final Rejection.Reason reason : Rejection.Reason.values()) {
+      this.sensors.put(reason, PipelineMetrics.throughputSensor(context.metrics(),
+          DumpTranslator.STAGE, reason.getLabel()));
+    }
+    this.defaultedSensor =
+        PipelineMetrics.throughputSensor(context.metrics(), DumpTranslator.STAGE, DEFAULTED_SPANS);
+  }
+
+  Sensor getDefaultedSensor() {
+    return this.defaultedSensor;
+  }
+
+  /**
+   * Returns the spans of a dump that were read by a {@link SpanValidator}, in the order of the
+   * dump, and rejects the others.
+   *
+   * @param key key of the dump
+   * @param dump the serialized dump
+   * @param results spans or {@link Rejection}s
+   * @param <T> type of the spans
+   * @return the valid spans
+   */
+  @SuppressWarnings("unchecked")
+  <T> List<T> accept(final byte[] key, final byte[] dump, final List<Object> results) {
+    final List<T> spans = new ArrayList<>(results.size());
+    for (final Object result : results) {
+      if (result instanceof Rejection) {
+        final Rejection rejection = (Rejection) result;
+        this.reject(key, Arrays.copyOfRange(dump, rejection.getOffset(),
+            rejection.getOffset() + rejection.getLength()), rejection.getReason(),
+            rejection.getDetail());
+      } else {
+        spans.add((T) result);
+      }
+    }
+    return spans;
+  }
+
+  /**
+   * Rejects a dump or span.
+   */
+  void reject(final byte[] key, final byte[] value, final Rejection.Reason reason,
+              final String detail) {
+    this.sensors.get(reason).record();
+    this.deadLetters.send(key, value, reason, detail,
+        this.context.topic() + "-" + this.context.partition() + "@" + this.context.offset());
+  }
+
+}
@@ -0,0 +1,111 @@
+package traceImporter;
+
+import com.google.protobuf.ByteString;
+import io.opencensus.proto.trace.v1.Span;
+
+/**
+ * Converts opencensus {@link Span} objects to {@link EVSpan}s. Avoids intermediate objects on the
+ * hot path: ids are hex-encoded straight from the {@link ByteString} into a reusable per-thread
+ * buffer and times are computed arithmetically.
+ */
+public final class SpanConverter {
+
+  private static final int TRACE_ID_LENGTH = 16;
+  private static final int SPAN_ID_LENGTH = 8;
+
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  private static final ThreadLocal<char[]> HEX_BUFFER =
+      ThreadLocal.withInitial(() -> new char[2 * TRACE_ID_LENGTH]);
+
+  private SpanConverter() {
+    // Utility class
+  }
+
+  /**
+   * Converts a single opencensus span.
+   *
+   * @param s the span to convert
+   * @return the corresponding {@link EVSpan}
+   */
+  public static EVSpan toEVSpan(final Span s) {
+    final String traceId = toHex(s.getTraceId(), TRACE_ID_LENGTH);
+    final String spanId = toHex(s.getSpanId(), SPAN_ID_LENGTH);
+    // Root spans have no parent span id
+    final String parentSpanId = s.getParentSpanId().size() < SPAN_ID_LENGTH
+        ? null : toHex(s.getParentSpanId(), SPAN_ID_LENGTH);
+
+    final com.google.protobuf.Timestamp start = s.getStartTime();
+    final com.google.protobuf.Timestamp end = s.getEndTime();
+
+    final Timestamp startTime = new Timestamp(start.getSeconds(), start.getNanos());
+    final Timestamp endTimestamp = new Timestamp(end.getSeconds(), end.getNanos());
+    final long endTime = toEpochMilli(end.getSeconds(), end.getNanos());
+    final long duration = endTime - toEpochMilli(start.getSeconds(), start.getNanos());
+    final long durationNanos =
+        durationInNanos(start.getSeconds(), start.getNanos(), end.getSeconds(), end.getNanos());
+
+    final Span.Attributes attributes = s.getAttributes();
+    final String operationName =
+        attributes.getAttributeMapOrThrow("method_fqn").getStringValue().getValue();
+    final String hostname = attributes.getAttributeMapOrThrow("host").getStringValue().getValue();
+    final String appName =
+        attributes.getAttributeMapOrThrow("application_name").getStringValue().getValue();
+
+    return new EVSpan(spanId, traceId, startTime, endTime, duration, operationName, 1, hostname,
+        appName, null, endTimestamp, null, parentSpanId, null, durationNanos);
+  }
+
+  /**
+   * Encodes the first {@code length} bytes of the given id as lower case hex string.
+   */
+  static String toHex(final ByteString id, final int length) {
+    final char[] buffer = HEX_BUFFER.get();
+    for (int i = 0; i < length; i++) {
+      final int b = id.byteAt(i) & 0xFF;
+      buffer[2 * i] = HEX_DIGITS[b >>> 4];
+      buffer[2 * i + 1] = HEX_DIGITS[b & 0x0F];
+    }
+    return new String(buffer, 0, 2 * length);
+  }
+
+  /**
+   * Encodes {@code length} bytes of the given buffer, starting at {@code offset}, as lower case
+   * hex string.
+   */
+  static String toHex(final byte[] id, final int offset, final int length) {
+    final char[] buffer = HEX_BUFFER.get();
+    for (int i = 0; i < length; i++) {
+      final int b = id[offset + i] & 0xFF;
+      buffer[2 * i] = HEX_DIGITS[b >>> 4];
+      buffer[2 * i + 1] = HEX_DIGITS[b & 0x0F];
+    }
+    return new String(buffer, 0, 2 * length);
+  }
+
+  /**
+   * Writes {@code length} bytes of the given id, starting at {@code offset}, as lower case hex
+   * ASCII characters to the target.
+   *
+   * @return the position in the target after the written characters
+   */
+  static int writeHex(final byte[] id, final int offset, final int length, final byte[] target,
+                      final int position) {
+    for (int i = 0; i < length; i++) {
+      final int b = id[offset + i] & 0xFF;
+      target[position + 2 * i] = (byte) HEX_DIGITS[b >>> 4];
+      target[position + 2 * i + 1] = (byte) HEX_DIGITS[b & 0x0F];
+    }
+    return position + 2 * length;
+  }
+
+  static long toEpochMilli(final long seconds, final int nanos) {
+    return seconds * 1000L + nanos / 1_000_000;
+  }
+
+  static long durationInNanos(final long startSeconds, final int startNanos,
+                              final long endSeconds, final int endNanos) {
+    return (endSeconds - startSeconds) * 1_000_000_000L + (endNanos - startNanos);
+  }
+
+}
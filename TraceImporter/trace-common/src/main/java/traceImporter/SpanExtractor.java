@@ -0,0 +1,390 @@
+package traceImporter;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.WireFormat;
+import io.opencensus.proto.trace.v1.AttributeValue;
+import io.opencensus.proto.trace.v1.Span;
+import io.opencensus.proto.trace.v1.TruncatableString;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Extracts an {@link EVSpan} straight from a serialized opencensus {@link Span}, without parsing
+ * the span. Only the ids, the start and end time and the attributes {@value #OPERATION_NAME},
+ * {@value #HOSTNAME} and {@value #APP_NAME} are decoded; all other fields, e.g., annotations,
+ * links, stack traces and other attributes, are skipped. The result equals
+ * {@link SpanConverter#toEVSpan(Span)} of the parsed span.
+ *
+ * <p>Spans are first scanned to their {@link Fields}, which locate ids and strings in the buffer
+ * rather than decoding them, so that they can also be copied to another encoding as they are.
+ * Scanning does not require any of the fields, the {@link SpanValidator} decides how incomplete
+ * spans are handled.
+ */
+public final class SpanExtractor {
+
+  public static final String OPERATION_NAME = "method_fqn";
+  public static final String HOSTNAME = "host";
+  public static final String APP_NAME = "application_name";
+
+  private static final byte[][] ATTRIBUTE_KEYS = {
+      OPERATION_NAME.getBytes(StandardCharsets.UTF_8),
+      HOSTNAME.getBytes(StandardCharsets.UTF_8),
+      APP_NAME.getBytes(StandardCharsets.UTF_8)};
+
+  static final int OPERATION_NAME_INDEX = 0;
+  static final int HOSTNAME_INDEX = 1;
+  static final int APP_NAME_INDEX = 2;
+
+  static final int TRACE_ID_LENGTH = 16;
+  static final int SPAN_ID_LENGTH = 8;
+
+  private static final int TRACE_ID_TAG = lengthDelimitedTag(Span.TRACE_ID_FIELD_NUMBER);
+  private static final int SPAN_ID_TAG = lengthDelimitedTag(Span.SPAN_ID_FIELD_NUMBER);
+  private static final int PARENT_SPAN_ID_TAG =
+      lengthDelimitedTag(Span.PARENT_SPAN_ID_FIELD_NUMBER);
+  private static final int START_TIME_TAG = lengthDelimitedTag(Span.START_TIME_FIELD_NUMBER);
+  private static final int END_TIME_TAG = lengthDelimitedTag(Span.END_TIME_FIELD_NUMBER);
+  private static final int ATTRIBUTES_TAG = lengthDelimitedTag(Span.ATTRIBUTES_FIELD_NUMBER);
+  private static final int ATTRIBUTE_MAP_TAG =
+      lengthDelimitedTag(Span.Attributes.ATTRIBUTE_MAP_FIELD_NUMBER);
+  private static final int MAP_KEY_TAG = lengthDelimitedTag(1);
+  private static final int MAP_VALUE_TAG = lengthDelimitedTag(2);
+  private static final int STRING_VALUE_TAG =
+      lengthDelimitedTag(AttributeValue.STRING_VALUE_FIELD_NUMBER);
+  private static final int TRUNCATABLE_VALUE_TAG =
+      lengthDelimitedTag(TruncatableString.VALUE_FIELD_NUMBER);
+  private static final int SECONDS_TAG =
+      com.google.protobuf.Timestamp.SECONDS_FIELD_NUMBER << 3 | WireFormat.WIRETYPE_VARINT;
+  private static final int NANOS_TAG =
+      com.google.protobuf.Timestamp.NANOS_FIELD_NUMBER << 3 | WireFormat.WIRETYPE_VARINT;
+
+  private SpanExtractor() {
+    // Utility class
+  }
+
+  /**
+   * Extracts a single span.
+   *
+   * @param buffer buffer containing the serialized span, e.g., a whole dump
+   * @param offset offset of the span in the buffer
+   * @param length length of the span
+   * @return the corresponding {@link EVSpan}
+   * @throws IOException if the span is malformed
+   * @throws IllegalArgumentException if one of the required attributes is missing
+   */
+  public static EVSpan extract(final byte[] buffer, final int offset, final int length)
+      throws IOException {
+    final Fields fields = scan(buffer, offset, length);
+
+    if (!fields.hasIds()) {
+      throw new InvalidProtocolBufferException("Span without trace or span id");
+    }
+    for (int i = 0; i < ATTRIBUTE_KEYS.length; i++) {
+      if (fields.attributePositions[i] < 0) {
+        throw new IllegalArgumentException(attributeKey(i));
+      }
+    }
+    return toEVSpan(fields);
+  }
+
+  /**
+   * Converts the fields of a complete span.
+   */
+  static EVSpan toEVSpan(final Fields fields) {
+    final Timestamp startTime = new Timestamp(fields.startSeconds, fields.startNanos);
+    return new EVSpan(
+        SpanConverter.toHex(fields.buffer, fields.spanIdPosition, SPAN_ID_LENGTH),
+        SpanConverter.toHex(fields.buffer, fields.traceIdPosition, TRACE_ID_LENGTH),
+        startTime, fields.endTime(), fields.duration(), fields.attribute(OPERATION_NAME_INDEX),
+        1, fields.attribute(HOSTNAME_INDEX), fields.attribute(APP_NAME_INDEX), null,
+        new Timestamp(fields.endSeconds, fields.endNanos), null,
+        fields.hasParent()
+            ? SpanConverter.toHex(fields.buffer, fields.parentSpanIdPosition, SPAN_ID_LENGTH)
+            : null,
+        null, fields.durationNanos());
+  }
+
+  /**
+   * Returns the key of the translated attribute of the given index.
+   */
+  static String attributeKey(final int index) {
+    return new String(ATTRIBUTE_KEYS[index], StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Scans a single span to the fields that are translated. Ids that are missing or too short and
+   * attributes that are missing are left unset.
+   *
+   * @param buffer buffer containing the serialized span, e.g., a whole dump
+   * @param offset offset of the span in the buffer
+   * @param length length of the span
+   * @return the fields of the span
+   * @throws IOException if the span is malformed
+   */
+  static Fields scan(final byte[] buffer, final int offset, final int length)
+      throws IOException {
+    final CodedInputStream input = CodedInputStream.newInstance(buffer, offset, length);
+    // Bounds the length-delimited fields that are accessed in the buffer directly
+    input.pushLimit(length);
+
+    final Fields fields = new Fields(buffer);
+    final long[] secondsAndNanos = new long[2];
+
+    int tag;
+    while ((tag = input.readTag()) != 0) {
+      if (tag == TRACE_ID_TAG) {
+        fields.traceIdPosition = readId(input, offset, TRACE_ID_LENGTH);
+      } else if (tag == SPAN_ID_TAG) {
+        fields.spanIdPosition = readId(input, offset, SPAN_ID_LENGTH);
+      } else if (tag == PARENT_SPAN_ID_TAG) {
+        fields.parentSpanIdPosition = readId(input, offset, SPAN_ID_LENGTH);
+      } else if (tag == START_TIME_TAG) {
+        secondsAndNanos[0] = fields.startSeconds;
+        secondsAndNanos[1] = fields.startNanos;
+        readTimestamp(input, secondsAndNanos);
+        fields.startSeconds = secondsAndNanos[0];
+        fields.startNanos = (int) secondsAndNanos[1];
+      } else if (tag == END_TIME_TAG) {
+        secondsAndNanos[0] = fields.endSeconds;
+        secondsAndNanos[1] = fields.endNanos;
+        readTimestamp(input, secondsAndNanos);
+        fields.endSeconds = secondsAndNanos[0];
+        fields.endNanos = (int) secondsAndNanos[1];
+      } else if (tag == ATTRIBUTES_TAG) {
+        readAttributes(input, buffer, offset, fields);
+      } else {
+        input.skipField(tag);
+      }
+    }
+    return fields;
+  }
+
+  private static int lengthDelimitedTag(final int fieldNumber) {
+    return fieldNumber << 3 | WireFormat.WIRETYPE_LENGTH_DELIMITED;
+  }
+
+  /**
+   * Reads an id and returns its position in the buffer, or -1 if it is shorter than
+   * {@code idLength} bytes.
+   */
+  private static int readId(final CodedInputStream input, final int offset, final int idLength)
+      throws IOException {
+    final int length = readLength(input);
+    final int position = offset + input.getTotalBytesRead();
+    input.skipRawBytes(length);
+    return length < idLength ? -1 : position;
+  }
+
+  /**
+   * Reads a timestamp into {@code secondsAndNanos}, overwriting the fields it contains.
+   */
+  private static void readTimestamp(final CodedInputStream input, final long[] secondsAndNanos)
+      throws IOException {
+    final int limit = input.pushLimit(input.readRawVarint32());
+    int tag;
+    while ((tag = input.readTag()) != 0) {
+      if (tag == SECONDS_TAG) {
+        secondsAndNanos[0] = input.readInt64();
+      } else if (tag == NANOS_TAG) {
+        secondsAndNanos[1] = input.readInt32();
+      } else {
+        input.skipField(tag);
+      }
+    }
+    input.popLimit(limit);
+  }
+
+  /**
+   * Reads the entries of an attribute map, decoding only the values of the required keys. Like
+   * protobuf, later entries overwrite earlier ones.
+   */
+  private static void readAttributes(final CodedInputStream input, final byte[] buffer,
+                                     final int offset, final Fields fields)
+      throws IOException {
+    final int limit = input.pushLimit(input.readRawVarint32());
+    int tag;
+    while ((tag = input.readTag()) != 0) {
+      if (tag != ATTRIBUTE_MAP_TAG) {
+        input.skipField(tag);
+        continue;
+      }
+
+      final int entryLimit = input.pushLimit(input.readRawVarint32());
+      int key = -1;
+      int valuePosition = -1;
+      int valueLength = 0;
+      int entryTag;
+      while ((entryTag = input.readTag()) != 0) {
+        if (entryTag == MAP_KEY_TAG) {
+          final int keyLength = readLength(input);
+          key = indexOfKey(buffer, offset + input.getTotalBytesRead(), keyLength);
+          input.skipRawBytes(keyLength);
+        } else if (entryTag == MAP_VALUE_TAG) {
+          // The key may follow the value, which is thus only decoded after the entry is read
+          valueLength = readLength(input);
+          valuePosition = offset + input.getTotalBytesRead();
+          input.skipRawBytes(valueLength);
+        } else {
+          input.skipField(entryTag);
+        }
+      }
+      input.popLimit(entryLimit);
+
+      if (key >= 0) {
+        // An absent value is an empty string
+        fields.attributePositions[key] = valuePosition < 0 ? offset : valuePosition;
+        fields.attributeLengths[key] = 0;
+        if (valuePosition >= 0) {
+          readStringValue(buffer, valuePosition, valueLength, fields, key);
+        }
+      }
+    }
+    input.popLimit(limit);
+  }
+
+  /**
+   * Locates the string of a serialized attribute value, which is empty if the value is not a
+   * string.
+   */
+  private static void readStringValue(final byte[] buffer, final int offset, final int length,
+                                      final Fields fields, final int key) throws IOException {
+    final CodedInputStream input = CodedInputStream.newInstance(buffer, offset, length);
+    input.pushLimit(length);
+    int tag;
+    while ((tag = input.readTag()) != 0) {
+      if (tag != STRING_VALUE_TAG) {
+        // Another type of the oneof clears the string
+        fields.attributeLengths[key] = 0;
+        input.skipField(tag);
+        continue;
+      }
+      final int stringLimit = input.pushLimit(input.readRawVarint32());
+      int stringTag;
+      while ((stringTag = input.readTag()) != 0) {
+        if (stringTag == TRUNCATABLE_VALUE_TAG) {
+          final int valueLength = readLength(input);
+          fields.attributePositions[key] = offset + input.getTotalBytesRead();
+          fields.attributeLengths[key] = valueLength;
+          input.skipRawBytes(valueLength);
+        } else {
+          input.skipField(stringTag);
+        }
+      }
+      input.popLimit(stringLimit);
+    }
+  }
+
+  /**
+   * Reads the length of a length-delimited field, which must not exceed the current limit.
+   */
+  private static int readLength(final CodedInputStream input) throws IOException {
+    final int length = input.readRawVarint32();
+    if (length < 0 || length > input.getBytesUntilLimit()) {
+      throw new InvalidProtocolBufferException("Field of " + length + " bytes is truncated");
+    }
+    return length;
+  }
+
+  /**
+   * Returns the index of the required attribute key at the given position, or -1.
+   */
+  private static int indexOfKey(final byte[] buffer, final int position, final int length) {
+    for (int i = 0; i < ATTRIBUTE_KEYS.length; i++) {
+      final byte[] key = ATTRIBUTE_KEYS[i];
+      if (key.length == length && regionEquals(buffer, position, key)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean regionEquals(final byte[] buffer, final int position, final byte[] key) {
+    for (int i = 0; i < key.length; i++) {
+      if (buffer[position + i] != key[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * The translated fields of a serialized span. Ids and strings are located by their position in
+   * the buffer, the ids by their first {@value #TRACE_ID_LENGTH} and {@value #SPAN_ID_LENGTH}
+   * bytes respectively, the attributes by the position and length of their UTF-8 bytes. Missing
+   * ids and attributes have the position -1, attributes may be replaced by another value.
+   */
+  static final class Fields {
+
+    final byte[] buffer;
+
+    int traceIdPosition = -1;
+
+    int spanIdPosition = -1;
+
+    int parentSpanIdPosition = -1;
+
+    long startSeconds;
+
+    int startNanos;
+
+    long endSeconds;
+
+    int endNanos;
+
+    final int[] attributePositions = {-1, -1, -1};
+
+    final int[] attributeLengths = new int[ATTRIBUTE_KEYS.length];
+
+    /**
+     * The buffers of the attributes, which is the span's buffer unless an attribute is replaced.
+     */
+    final byte[][] attributeBuffers;
+
+    Fields(final byte[] buffer) {
+      this.buffer = buffer;
+      this.attributeBuffers = new byte[][] {buffer, buffer, buffer};
+    }
+
+    boolean hasIds() {
+      return this.traceIdPosition >= 0 && this.spanIdPosition >= 0;
+    }
+
+    boolean hasParent() {
+      return this.parentSpanIdPosition >= 0;
+    }
+
+    boolean endsBeforeStart() {
+      return this.endSeconds < this.startSeconds
+          || this.endSeconds == this.startSeconds && this.endNanos < this.startNanos;
+    }
+
+    /**
+     * Replaces the attribute of the given index by the given UTF-8 bytes.
+     */
+    void setAttribute(final int index, final byte[] value) {
+      this.attributeBuffers[index] = value;
+      this.attributePositions[index] = 0;
+      this.attributeLengths[index] = value.length;
+    }
+
+    long endTime() {
+      return SpanConverter.toEpochMilli(this.endSeconds, this.endNanos);
+    }
+
+    long duration() {
+      return this.endTime() - SpanConverter.toEpochMilli(this.startSeconds, this.startNanos);
+    }
+
+    long durationNanos() {
+      return SpanConverter.durationInNanos(this.startSeconds, this.startNanos, this.endSeconds,
+          this.endNanos);
+    }
+
+    String attribute(final int index) {
+      return new String(this.attributeBuffers[index], this.attributePositions[index],
+          this.attributeLengths[index], StandardCharsets.UTF_8);
+    }
+  }
+
+}
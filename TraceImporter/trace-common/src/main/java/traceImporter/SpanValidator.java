@@ -0,0 +1,96 @@
+package traceImporter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Function;
+import org.apache.kafka.common.metrics.Sensor;
+
+/**
+ * Validates the serialized spans of a dump before they are translated, so that a single
+ * malformed span does not fail the whole dump. A span is rejected with a {@link Rejection} if it
+ * cannot be decoded, lacks an id or ends before it starts. Missing attributes are replaced by
+ * their default, spans that lack an attribute without default are rejected as well.
+ */
+public class SpanValidator {
+
+  /**
+   * UTF-8 bytes of the default of each translated attribute, in the order of the
+   * {@link SpanExtractor} indices, null if the attribute is required.
+   */
+  private final byte[][] defaults;
+
+  /**
+   * Creates a new validator.
+   *
+   * @param defaultOperationName replaces a missing {@value SpanExtractor#OPERATION_NAME}, or null
+   *        if it is required
+   * @param defaultHostname replaces a missing {@value SpanExtractor#HOSTNAME}, or null if it is
+   *        required
+   * @param defaultAppName replaces a missing {@value SpanExtractor#APP_NAME}, or null if it is
+   *        required
+   */
+  public SpanValidator(final String defaultOperationName, final String defaultHostname,
+                       final String defaultAppName) {
+    this.defaults = new byte[][] {
+        toBytes(defaultOperationName), toBytes(defaultHostname), toBytes(defaultAppName)};
+  }
+
+  /**
+   * Creates a validator that requires all attributes.
+   */
+  public static SpanValidator strict() {
+    return new SpanValidator(null, null, null);
+  }
+
+  private static byte[] toBytes(final String value) {
+    return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Creates a reader that validates each span and converts the valid ones. The reader returns
+   * either the converted span or a {@link Rejection} and never throws.
+   *
+   * @param converter converts the fields of a valid span
+   * @param defaultedSensor records each span that is completed by a default
+   * @param <T> type of the converted spans
+   * @return the reader, which is thread-safe if the converter is
+   */
+  <T> DumpDecoder.SpanReader<Object> reader(final Function<SpanExtractor.Fields, T> converter,
+                                            final Sensor defaultedSensor) {
+    return (buffer, offset, length) -> {
+      final SpanExtractor.Fields fields;
+      try {
+        fields = SpanExtractor.scan(buffer, offset, length);
+      } catch (final IOException | RuntimeException e) {
+        return new Rejection(Rejection.Reason.MALFORMED_SPAN, e.toString(), offset, length);
+      }
+
+      if (!fields.hasIds()) {
+        return new Rejection(Rejection.Reason.MISSING_ID, "Span without trace or span id",
+            offset, length);
+      }
+      if (fields.endsBeforeStart()) {
+        return new Rejection(Rejection.Reason.INVALID_TIME, "Span ends before it starts",
+            offset, length);
+      }
+
+      boolean defaulted = false;
+      for (int i = 0; i < this.defaults.length; i++) {
+        if (fields.attributePositions[i] >= 0) {
+          continue;
+        }
+        if (this.defaults[i] == null) {
+          return new Rejection(Rejection.Reason.MISSING_ATTRIBUTE,
+              "Span without attribute " + SpanExtractor.attributeKey(i), offset, length);
+        }
+        fields.setAttribute(i, this.defaults[i]);
+        defaulted = true;
+      }
+      if (defaulted) {
+        defaultedSensor.record();
+      }
+      return converter.apply(fields);
+    };
+  }
+
+}
@@ -1,10 +1,20 @@
 package traceImporter;
 
 import java.io.IOException;
+import org.apache.kafka.common.config.ConfigException;
 
 public class Main {
 
   public static void main(String[] args) throws IOException, InterruptedException {
-    new TraceConsumer().run();
+    TraceConsumerConfig config;
+    try {
+      config = TraceConsumerConfig.load(args, System.getenv());
+    } catch (ConfigException e) {
+      System.err.println("Invalid configuration: " + e.getMessage());
+      System.exit(1);
+      return;
+    }
+
+    new TraceConsumer(config).run();
   }
 }
@@ -0,0 +1,152 @@
+package traceImporter;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.kafka.common.metrics.Sensor;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.kstream.Transformer;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.processor.PunctuationType;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.KeyValueStore;
+
+/**
+ * Reassembles full traces from the {@link TraceDelta}s of the reconstructor. The spans of each
+ * group are kept in a store, a delta replaces the spans of the same operation and adds the
+ * others, a snapshot replaces all spans. Deltas that were already applied are skipped, deltas
+ * that follow a missed delta are applied nonetheless and counted as {@value #DELTA_GAPS}.
+ * Groups whose trace ended longer than the retention before the stream time are removed.
+ */
+public class TraceAssembler implements Transformer<String, TraceDelta, KeyValue<String, Trace>> {
+
+  /**
+   * Deltas whose predecessor was not received, counted in the {@link PipelineMetrics}.
+   */
+  public static final String DELTA_GAPS = "delta-gaps";
+
+  /**
+   * Deltas that were received again, counted in the {@link PipelineMetrics}.
+   */
+  public static final String DUPLICATE_DELTAS = "duplicate-deltas";
+
+  private static final Comparator<EVSpan> START_TIME_ORDER = Comparator
+      .comparingLong((EVSpan span) -> span.getStartTime().getSeconds())
+      .thenComparingInt(span -> span.getStartTime().getNanoAdjust());
+
+  private final String storeName;
+
+  private final Duration retention;
+
+  private KeyValueStore<String, TraceDelta> traceStore;
+
+  private Sensor gapSensor;
+
+  private Sensor duplicateSensor;
+
+  /**
+   * Creates a new assembler.
+   *
+   * @param storeName name of the store of the assembled traces by group id
+   * @param retention time after the end of a trace for which its group is kept
+   */
+  public TraceAssembler(String storeName, Duration retention) {
+    this.storeName = storeName;
+    this.retention = retention;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public void init(ProcessorContext context) {
+    traceStore = (KeyValueStore<String, TraceDelta>) context.getStateStore(storeName);
+    gapSensor = PipelineMetrics.throughputSensor(context.metrics(), TraceConsumer.STAGE,
+        DELTA_GAPS);
+    duplicateSensor = PipelineMetrics.throughputSensor(context.metrics(), TraceConsumer.STAGE,
+        DUPLICATE_DELTAS);
+    context.schedule(retention, PunctuationType.STREAM_TIME, this::expire);
+  }
+
+  @Override
+  public KeyValue<String, Trace> transform(String key, TraceDelta delta) {
+    TraceDelta assembled = traceStore.get(delta.getGroupId());
+    if (!delta.getSnapshot()) {
+      if (assembled != null && delta.getSequence() <= assembled.getSequence()) {
+        duplicateSensor.record();
+        return null;
+      }
+      if (assembled == null || delta.getSequence() != assembled.getSequence() + 1) {
+        gapSensor.record();
+      }
+    }
+
+    assembled = apply(assembled, delta);
+    traceStore.put(delta.getGroupId(), assembled);
+    return KeyValue.pair(key, new Trace(assembled.getTraceId(), assembled.getStartTime(),
+        assembled.getEndTime(), assembled.getDuration(), assembled.getOverallRequestCount(),
+        assembled.getTraceCount(), assembled.getSpanList(), false, 0,
+        assembled.getEndTimestamp(), assembled.getSteps()));
+  }
+
+  /**
+   * Applies a delta to an assembled trace.
+   *
+   * @param assembled the trace assembled from the previous deltas of the group, or null
+   * @param delta the delta
+   * @return the assembled trace, a snapshot with the sequence of the delta
+   */
+  static TraceDelta apply(TraceDelta assembled, TraceDelta delta) {
+    List<EVSpan> spans;
+    if (assembled == null || delta.getSnapshot()) {
+      spans = new ArrayList<>(delta.getSpanList());
+    } else {
+      spans = new ArrayList<>(assembled.getSpanList());
+      Map<String, Integer> positions = new HashMap<>();
+      for (int i = 0; i < spans.size(); i++) {
+        positions.put(operationKey(spans.get(i)), i);
+      }
+      for (EVSpan span : delta.getSpanList()) {
+        Integer position = positions.get(operationKey(span));
+        if (position == null) {
+          positions.put(operationKey(span), spans.size());
+          spans.add(span);
+        } else {
+          spans.set(position, span);
+        }
+      }
+    }
+    spans.sort(START_TIME_ORDER);
+
+    return TraceDelta.newBuilder(delta)
+        .setSnapshot(true)
+        .setSpanList(spans)
+        .build();
+  }
+
+  /**
+   * Identifies the operation of a span, like the reconstructor does to compute the deltas.
+   */
+  private static String operationKey(EVSpan span) {
+    SpanDictionaryIds ids = span.getDictionaryIds();
+    return ids == null ? span.getOperationName() : "#" + ids.getOperationId();
+  }
+
+  private void expire(long streamTime) {
+    List<String> expired = new ArrayList<>();
+    try (KeyValueIterator<String, TraceDelta> iterator = traceStore.all()) {
+      iterator.forEachRemaining(entry -> {
+        if (entry.value.getEndTime() < streamTime - retention.toMillis()) {
+          expired.add(entry.key);
+        }
+      });
+    }
+    expired.forEach(traceStore::delete);
+  }
+
+  @Override
+  public void close() {
+  }
+
+}
@@ -1,30 +1,55 @@
 package traceImporter;
 
 import io.confluent.kafka.streams.serdes.avro.SpecificAvroSerde;
-import java.util.List;
+import java.time.Duration;
 import java.util.Properties;
 import org.apache.kafka.common.serialization.Serdes.StringSerde;
 import org.apache.kafka.streams.KafkaStreams;
 import org.apache.kafka.streams.StreamsBuilder;
 import org.apache.kafka.streams.StreamsConfig;
 import org.apache.kafka.streams.kstream.KStream;
+import org.apache.kafka.streams.state.Stores;
 
 /**
  * Consumes {@link Trace} objects.
  */
 public class TraceConsumer {
 
-  private static final String IN_TOPIC = "explorviz-traces";
   private static final String OUT_TOPIC = "nothing-at-the-moment";
 
-  private final Properties streamsConfig = new Properties();
+  /**
+   * Name of the store of the traces reassembled from deltas.
+   */
+  public static final String ASSEMBLED_TRACE_STORE = "assembled-traces";
 
-  public TraceConsumer() {
+  /**
+   * Stage of the pipeline, used to tag the {@link PipelineMetrics}.
+   */
+  public static final String STAGE = "trace-consumption";
 
-    streamsConfig.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "localhost:9091");
-    streamsConfig.put(StreamsConfig.APPLICATION_ID_CONFIG, "trace-consuming");
+  private final String inTopic;
 
-    streamsConfig.put("schema.registry.url", "http://localhost:8081");
+  private final boolean deltaInput;
+
+  private final String deltaInTopic;
+
+  private final Duration deltaRetention;
+
+  private final Properties streamsConfig;
+
+  private final int metricsPort;
+
+  private final TraceDump traceDump;
+
+  public TraceConsumer(TraceConsumerConfig config) {
+
+    inTopic = config.getString(TraceConsumerConfig.IN_TOPIC);
+    deltaInput = config.getBoolean(TraceConsumerConfig.DELTA_INPUT);
+    deltaInTopic = config.getString(TraceConsumerConfig.DELTA_IN_TOPIC);
+    deltaRetention = config.getDeltaRetention();
+    streamsConfig = config.streamsProperties();
+    metricsPort = config.getInt(TraceConsumerConfig.METRICS_PORT);
+    traceDump = config.createTraceDump();
 
     streamsConfig.put(StreamsConfig.DEFAULT_KEY_SERDE_CLASS_CONFIG, StringSerde.class);
     streamsConfig.put(StreamsConfig.DEFAULT_VALUE_SERDE_CLASS_CONFIG, SpecificAvroSerde.class);
@@ -36,29 +61,40 @@ public class TraceConsumer {
 
     // Stream 1
 
-    KStream<String, Trace> traceIdTraceStream = builder.stream(IN_TOPIC);
-
-    traceIdTraceStream.foreach((key, value) -> {
-
-      System.out.printf("New trace with %d spans (id: %s, traceCount: %d)\n",
-          value.getSpanList().size(), key, value.getTraceCount());
-
-      List<EVSpan> list = value.getSpanList();
-
-      list.forEach((val) -> {
-        System.out.println(
-            val.getStartTime() + " : " + val.getEndTime() + " für " + val.getOperationName()
-                + " mit Anzahl " + val.getRequestCount() + " und Trace Id " + val.getTraceId());
-      });
-
-    });
+    KStream<String, Trace> traceIdTraceStream;
+    if (deltaInput) {
+      // Serdes of the store default to those of the stream
+      builder.addStateStore(Stores.keyValueStoreBuilder(
+          Stores.persistentKeyValueStore(ASSEMBLED_TRACE_STORE), null, null));
+      KStream<String, TraceDelta> deltaStream = builder.stream(deltaInTopic);
+      traceIdTraceStream = deltaStream.transform(
+          () -> new TraceAssembler(ASSEMBLED_TRACE_STORE, deltaRetention), ASSEMBLED_TRACE_STORE);
+    } else {
+      traceIdTraceStream = builder.stream(inTopic);
+    }
+
+    traceIdTraceStream.process(() -> new TraceEmissionMeter<>(STAGE,
+        trace -> trace.getSpanList().size(), Trace::getEndTime));
+
+    if (traceDump.isEnabled()) {
+      traceIdTraceStream.process(traceDump.processor());
+    }
 
     // traceIdTraceStream.to(OUT_TOPIC);
     final KafkaStreams streams = new KafkaStreams(builder.build(), streamsConfig);
     streams.cleanUp();
     streams.start();
 
-    Runtime.getRuntime().addShutdownHook(new Thread(streams::close));
+    final PrometheusExporter exporter = new PrometheusExporter(metricsPort, streams::metrics);
+    if (metricsPort > 0) {
+      exporter.start();
+    }
+
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      exporter.close();
+      streams.close();
+      traceDump.close();
+    }));
   }
 
 }
@@ -0,0 +1,142 @@
+package traceImporter;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Properties;
+import org.apache.kafka.common.config.AbstractConfig;
+import org.apache.kafka.common.config.ConfigDef;
+import org.apache.kafka.common.config.ConfigDef.Importance;
+import org.apache.kafka.common.config.ConfigDef.Range;
+import org.apache.kafka.common.config.ConfigDef.Type;
+import org.apache.kafka.common.config.ConfigDef.ValidString;
+import org.apache.kafka.common.config.ConfigException;
+import org.apache.kafka.streams.StreamsConfig;
+
+/**
+ * External configuration of the trace consumer. Defaults can be overridden, in increasing order
+ * of precedence, by a properties file, environment variables and command line arguments:
+ *
+ * <ul>
+ *   <li>the properties file is given by {@code --config=<path>} or {@value #CONFIG_FILE_ENV}</li>
+ *   <li>environment variables are prefixed with {@value #ENV_PREFIX} and use underscores instead
+ *   of dots, e.g., {@code TRACE_CONSUMER_TOPIC_IN} for {@value #IN_TOPIC}</li>
+ *   <li>command line arguments have the form {@code --<key>=<value>}</li>
+ * </ul>
+ *
+ * <p>Keys starting with {@value #STREAMS_PREFIX} are passed on to Kafka Streams with the prefix
+ * removed, e.g., {@code streams.num.stream.threads} or {@code streams.producer.linger.ms}. All
+ * values are validated on construction, which throws a {@link ConfigException} otherwise.
+ */
+public class TraceConsumerConfig extends AbstractConfig {
+
+  public static final String CONFIG_FILE_ARG = ConfigLoader.CONFIG_FILE_ARG;
+  public static final String CONFIG_FILE_ENV = "TRACE_CONSUMER_CONFIG";
+  public static final String ENV_PREFIX = "TRACE_CONSUMER_";
+  public static final String STREAMS_PREFIX = "streams.";
+
+  public static final String BROKER = "broker";
+  public static final String APPLICATION_ID = "application.id";
+  public static final String REGISTRY_URL = "schema.registry.url";
+  public static final String IN_TOPIC = "topic.in";
+  public static final String DELTA_INPUT = "delta.input";
+  public static final String DELTA_IN_TOPIC = "topic.delta.in";
+  public static final String DELTA_RETENTION_MS = "delta.retention.ms";
+  public static final String METRICS_PORT = "metrics.port";
+  public static final String TUNING_PROFILE = "tuning.profile";
+  public static final String TRACE_DUMP_SAMPLE_RATE = "trace.dump.sample.rate";
+  public static final String TRACE_DUMP_MAX_PER_SECOND = "trace.dump.max.per.second";
+  public static final String TRACE_DUMP_QUEUE_SIZE = "trace.dump.queue.size";
+
+  private static final ConfigDef CONFIG = new ConfigDef()
+      .define(BROKER, Type.STRING, "localhost:9091", Importance.HIGH,
+          "Kafka bootstrap servers")
+      .define(APPLICATION_ID, Type.STRING, "trace-consuming", Importance.HIGH,
+          "Kafka Streams application id")
+      .define(REGISTRY_URL, Type.STRING, "http://localhost:8081", Importance.HIGH,
+          "Schema registry URL")
+      .define(IN_TOPIC, Type.STRING, "explorviz-traces", Importance.MEDIUM,
+          "Topic of reconstructed traces")
+      .define(DELTA_INPUT, Type.BOOLEAN, false, Importance.MEDIUM,
+          "Whether traces are reassembled from the deltas of the reconstructor's DELTA output")
+      .define(DELTA_IN_TOPIC, Type.STRING, "explorviz-trace-deltas", Importance.MEDIUM,
+          "Topic of trace deltas, read instead of the trace topic if delta.input is set")
+      .define(DELTA_RETENTION_MS, Type.LONG, 60_000L, Range.atLeast(1), Importance.LOW,
+          "Time after the end of a trace for which its spans are kept to apply further deltas")
+      .define(METRICS_PORT, Type.INT, 9103, Range.between(0, 65535), Importance.LOW,
+          "Port of the Prometheus metrics endpoint, 0 disables it")
+      .define(TUNING_PROFILE, Type.STRING, TuningProfile.DEFAULT.name(),
+          ValidString.in(TuningProfile.names()), Importance.MEDIUM,
+          "Producer and consumer settings that trade latency for throughput, see TuningProfile")
+      .define(TRACE_DUMP_SAMPLE_RATE, Type.DOUBLE, 1.0, Range.between(0, 1), Importance.MEDIUM,
+          "Fraction of trace ids whose consumed traces are logged, 0 disables the trace dump")
+      .define(TRACE_DUMP_MAX_PER_SECOND, Type.INT, 10, Range.atLeast(1), Importance.LOW,
+          "Maximum number of traces logged per second")
+      .define(TRACE_DUMP_QUEUE_SIZE, Type.INT, 1000, Range.atLeast(1), Importance.LOW,
+          "Maximum number of traces waiting to be logged, further traces are dropped");
+
+  /**
+   * Creates a configuration of the given values, missing values are set to their default.
+   *
+   * @param values configuration values, including pass-through Kafka Streams values
+   * @throws ConfigException if a value is invalid or a key is unknown
+   */
+  public TraceConsumerConfig(final Map<String, ?> values) {
+    super(CONFIG, values, false);
+
+    for (final String key : values.keySet()) {
+      if (!CONFIG.names().contains(key) && !key.startsWith(STREAMS_PREFIX)) {
+        throw new ConfigException("Unknown configuration key " + key);
+      }
+    }
+
+    // Fail on startup rather than on stream creation
+    StreamsConfig.configDef().parse(this.streamsProperties());
+  }
+
+  /**
+   * Loads the configuration from the properties file, environment variables and command line
+   * arguments, see {@link ConfigLoader}.
+   *
+   * @param args command line arguments
+   * @param env environment variables
+   * @return the configuration
+   * @throws ConfigException if the configuration cannot be read or is invalid
+   */
+  public static TraceConsumerConfig load(final String[] args, final Map<String, String> env) {
+    return new TraceConsumerConfig(ConfigLoader.load(args, env, ENV_PREFIX, CONFIG_FILE_ENV));
+  }
+
+  public Duration getDeltaRetention() {
+    return Duration.ofMillis(this.getLong(DELTA_RETENTION_MS));
+  }
+
+  /**
+   * Creates the trace dump, which starts logging in the background if it is enabled.
+   */
+  public TraceDump createTraceDump() {
+    return new TraceDump(this.getDouble(TRACE_DUMP_SAMPLE_RATE),
+        this.getInt(TRACE_DUMP_MAX_PER_SECOND), this.getInt(TRACE_DUMP_QUEUE_SIZE));
+  }
+
+  public TuningProfile getTuningProfile() {
+    return TuningProfile.valueOf(this.getString(TUNING_PROFILE));
+  }
+
+  /**
+   * Creates the Kafka Streams configuration, i.e., the connection settings of this
+   * configuration, the settings of the {@link TuningProfile} and all pass-through values with
+   * the {@value #STREAMS_PREFIX} prefix removed, which take precedence over the profile.
+   *
+   * @return the Kafka Streams properties
+   */
+  public Properties streamsProperties() {
+    final Properties props = new Properties();
+    props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, this.getString(BROKER));
+    props.put(StreamsConfig.APPLICATION_ID_CONFIG, this.getString(APPLICATION_ID));
+    props.put(REGISTRY_URL, this.getString(REGISTRY_URL));
+    props.putAll(this.getTuningProfile().streamsConfigs());
+    props.putAll(this.originalsWithPrefix(STREAMS_PREFIX));
+    return props;
+  }
+
+}
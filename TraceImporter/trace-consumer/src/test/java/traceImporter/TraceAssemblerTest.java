@@ -0,0 +1,118 @@
+package traceImporter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.confluent.kafka.schemaregistry.client.MockSchemaRegistryClient;
+import io.confluent.kafka.serializers.AbstractKafkaAvroSerDeConfig;
+import io.confluent.kafka.streams.serdes.avro.SpecificAvroSerde;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.processor.MockProcessorContext;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.apache.kafka.streams.state.Stores;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TraceAssemblerTest {
+
+  private static final String STORE = "assembled";
+
+  private static final String GROUP = "a3f4c8e2d1b09f77";
+
+  private MockProcessorContext context;
+
+  private KeyValueStore<String, TraceDelta> store;
+
+  private TraceAssembler assembler;
+
+  @BeforeEach
+  void setUp() {
+    final Properties props = new Properties();
+    props.put(StreamsConfig.APPLICATION_ID_CONFIG, "test");
+    props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:1234");
+    this.context = new MockProcessorContext(props);
+
+    final SpecificAvroSerde<TraceDelta> serde =
+        new SpecificAvroSerde<>(new MockSchemaRegistryClient());
+    serde.configure(
+        Map.of(AbstractKafkaAvroSerDeConfig.SCHEMA_REGISTRY_URL_CONFIG, "http://dummy"), false);
+    this.store = Stores.keyValueStoreBuilder(Stores.inMemoryKeyValueStore(STORE),
+        Serdes.String(), serde).withLoggingDisabled().build();
+    this.store.init(this.context, this.store);
+    this.context.register(this.store, null);
+
+    this.assembler = new TraceAssembler(STORE, Duration.ofSeconds(10));
+    this.assembler.init(this.context);
+  }
+
+  /**
+   * Deltas must replace the spans of the same operation and add the others, ordered by start.
+   */
+  @Test
+  void testApply() {
+    final TraceDelta snapshot = delta(0, true, span("OpB", 2, 1), span("OpA", 3, 1));
+    final TraceDelta assembled = TraceAssembler.apply(null, snapshot);
+    assertEquals(List.of(span("OpB", 2, 1), span("OpA", 3, 1)), assembled.getSpanList());
+
+    final TraceDelta next = TraceAssembler.apply(assembled,
+        delta(1, false, span("OpA", 3, 2), span("OpC", 1, 1)));
+    assertTrue(next.getSnapshot());
+    assertEquals(1, next.getSequence());
+    assertEquals(List.of(span("OpC", 1, 1), span("OpB", 2, 1), span("OpA", 3, 2)),
+        next.getSpanList());
+
+    // A snapshot replaces all spans
+    assertEquals(List.of(span("OpD", 4, 1)),
+        TraceAssembler.apply(next, delta(2, true, span("OpD", 4, 1))).getSpanList());
+  }
+
+  /**
+   * Deltas received again must be skipped, missed deltas must be counted.
+   */
+  @Test
+  void testDuplicatesAndGaps() {
+    final KeyValue<String, Trace> first =
+        this.assembler.transform("trace", delta(0, true, span("OpA", 1, 1)));
+    assertEquals("trace", first.key);
+    assertEquals(List.of(span("OpA", 1, 1)), first.value.getSpanList());
+
+    assertNull(this.assembler.transform("trace", delta(0, false, span("OpA", 1, 2))));
+    assertEquals(1.0, this.metricTotal(TraceAssembler.DUPLICATE_DELTAS));
+
+    final KeyValue<String, Trace> third =
+        this.assembler.transform("trace", delta(2, false, span("OpB", 2, 1)));
+    assertEquals(List.of(span("OpA", 1, 1), span("OpB", 2, 1)), third.value.getSpanList());
+    assertEquals(1.0, this.metricTotal(TraceAssembler.DELTA_GAPS));
+    assertEquals(2, this.store.get(GROUP).getSequence());
+  }
+
+  private double metricTotal(final String operation) {
+    return this.context.metrics().metrics().entrySet().stream()
+        .filter(e -> PipelineMetrics.METRICS_GROUP.equals(e.getKey().group())
+            && (operation + "-total").equals(e.getKey().name())
+            && TraceConsumer.STAGE.equals(e.getKey().tags().get(PipelineMetrics.STAGE_TAG)))
+        .mapToDouble(e -> (Double) e.getValue().metricValue())
+        .sum();
+  }
+
+  private static TraceDelta delta(final long sequence, final boolean snapshot,
+                                  final EVSpan... spans) {
+    return new TraceDelta("trace", GROUP, sequence, snapshot, new Timestamp(1L, 0), 5_000L,
+        4_000_000_000L, 1, 1, List.of(spans), new Timestamp(5L, 0), List.of());
+  }
+
+  private static EVSpan span(final String operationName, final long seconds,
+                             final int requestCount) {
+    return new EVSpan(operationName, "trace", new Timestamp(seconds, 0), seconds * 1000 + 10,
+        10L, operationName, requestCount, "samplehost", "sampleapp", null,
+        null, null, null, null, 10_000_000L);
+  }
+
+}
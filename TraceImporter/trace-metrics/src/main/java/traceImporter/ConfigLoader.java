@@ -0,0 +1,84 @@
+package traceImporter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import org.apache.kafka.common.config.ConfigException;
+
+/**
+ * Collects the configuration values of a service from a properties file, environment variables
+ * and command line arguments, in increasing order of precedence:
+ *
+ * <ul>
+ *   <li>the properties file is given by {@code --config=<path>} or the service's config file
+ *   variable</li>
+ *   <li>environment variables start with the service's prefix and use underscores instead of
+ *   dots, e.g., {@code TRACE_CONSUMER_TOPIC_IN} for {@code topic.in}</li>
+ *   <li>command line arguments have the form {@code --<key>=<value>}</li>
+ * </ul>
+ *
+ * <p>The values are not validated, which is left to the configuration of the service.
+ */
+public final class ConfigLoader {
+
+  /**
+   * Command line argument that names the properties file.
+   */
+  public static final String CONFIG_FILE_ARG = "config";
+
+  private ConfigLoader() {
+    // Utility class
+  }
+
+  /**
+   * Collects the configuration values.
+   *
+   * @param args command line arguments
+   * @param env environment variables
+   * @param envPrefix prefix of the environment variables of the service
+   * @param configFileEnv environment variable that names the properties file
+   * @return the configuration values by key
+   * @throws ConfigException if an argument is malformed or the file cannot be read
+   */
+  public static Map<String, String> load(final String[] args, final Map<String, String> env,
+                                         final String envPrefix, final String configFileEnv) {
+    final Map<String, String> cliValues = new HashMap<>();
+    for (final String arg : args) {
+      final int separator = arg.indexOf('=');
+      if (!arg.startsWith("--") || separator < 0) {
+        throw new ConfigException("Arguments must have the form --<key>=<value>, got " + arg);
+      }
+      cliValues.put(arg.substring(2, separator), arg.substring(separator + 1));
+    }
+
+    final Map<String, String> values = new HashMap<>();
+
+    final String configFile = cliValues.containsKey(CONFIG_FILE_ARG)
+        ? cliValues.remove(CONFIG_FILE_ARG) : env.get(configFileEnv);
+    if (configFile != null) {
+      final Properties fileValues = new Properties();
+      try (InputStream in = Files.newInputStream(Paths.get(configFile))) {
+        fileValues.load(in);
+      } catch (final IOException e) {
+        throw new ConfigException(CONFIG_FILE_ARG, configFile, "Cannot read file: " + e);
+      }
+      fileValues.stringPropertyNames().forEach(key -> values.put(key, fileValues.getProperty(key)));
+    }
+
+    env.forEach((name, value) -> {
+      if (name.startsWith(envPrefix) && !name.equals(configFileEnv)) {
+        values.put(name.substring(envPrefix.length()).toLowerCase(Locale.ROOT).replace('_', '.'),
+            value);
+      }
+    });
+
+    values.putAll(cliValues);
+    return values;
+  }
+
+}
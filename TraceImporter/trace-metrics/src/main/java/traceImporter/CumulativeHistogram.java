@@ -0,0 +1,121 @@
+package traceImporter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.metrics.CompoundStat;
+import org.apache.kafka.common.metrics.MetricConfig;
+
+/**
+ * Histogram of all values recorded since startup, with fixed bucket bounds. Each bucket is
+ * exposed as metric {@code <name>-bucket} with its upper bound as tag {@value #BOUND_TAG}, and
+ * counts all values up to this bound, as in the Prometheus exposition format. The sum and the
+ * count of all values are exposed as {@code <name>-sum} and {@code <name>-count}.
+ *
+ * <p>Unlike the sampled percentiles of Kafka, cumulative buckets can be summed up across threads
+ * and instances.
+ */
+public class CumulativeHistogram implements CompoundStat {
+
+  /**
+   * Tag of the upper bound of a bucket.
+   */
+  public static final String BOUND_TAG = "le";
+
+  public static final String BUCKET_SUFFIX = "-bucket";
+
+  public static final String SUM_SUFFIX = "-sum";
+
+  public static final String COUNT_SUFFIX = "-count";
+
+  private final String name;
+
+  private final String group;
+
+  private final Map<String, String> tags;
+
+  private final double[] bounds;
+
+  /**
+   * Number of values per bucket, the last bucket holds the values above all bounds.
+   */
+  private final long[] counts;
+
+  private double sum;
+
+  /**
+   * Creates a new histogram.
+   *
+   * @param name name of the histogram
+   * @param group group of the metrics
+   * @param tags tags of the metrics
+   * @param bounds ascending upper bounds of the buckets, a bucket for all larger values is added
+   */
+  public CumulativeHistogram(final String name, final String group,
+                             final Map<String, String> tags, final double... bounds) {
+    for (int i = 1; i < bounds.length; i++) {
+      if (bounds[i] <= bounds[i - 1]) {
+        throw new IllegalArgumentException("Bucket bounds must be ascending");
+      }
+    }
+    this.name = name;
+    this.group = group;
+    this.tags = tags;
+    this.bounds = bounds.clone();
+    this.counts = new long[bounds.length + 1];
+  }
+
+  /**
+   * Returns the name of the metric that counts all values.
+   */
+  public MetricName countMetricName() {
+    return new MetricName(this.name + COUNT_SUFFIX, this.group, "", this.tags);
+  }
+
+  @Override
+  public List<NamedMeasurable> stats() {
+    final List<NamedMeasurable> stats = new ArrayList<>(this.counts.length + 2);
+    for (int i = 0; i <= this.bounds.length; i++) {
+      final int bucket = i;
+      final Map<String, String> bucketTags = new HashMap<>(this.tags);
+      bucketTags.put(BOUND_TAG,
+          bucket < this.bounds.length ? Double.toString(this.bounds[bucket]) : "+Inf");
+      stats.add(new NamedMeasurable(
+          new MetricName(this.name + BUCKET_SUFFIX, this.group,
+              "Number of values up to the bound of the bucket", bucketTags),
+          (config, now) -> this.cumulativeCount(bucket)));
+    }
+    stats.add(new NamedMeasurable(
+        new MetricName(this.name + SUM_SUFFIX, this.group, "Sum of all values", this.tags),
+        (config, now) -> this.sum()));
+    stats.add(new NamedMeasurable(this.countMetricName(),
+        (config, now) -> this.cumulativeCount(this.bounds.length)));
+    return stats;
+  }
+
+  @Override
+  public synchronized void record(final MetricConfig config, final double value,
+                                  final long timeMs) {
+    int bucket = 0;
+    while (bucket < this.bounds.length && value > this.bounds[bucket]) {
+      bucket++;
+    }
+    this.counts[bucket]++;
+    this.sum += value;
+  }
+
+  private synchronized double cumulativeCount(final int bucket) {
+    long count = 0;
+    for (int i = 0; i <= bucket; i++) {
+      count += this.counts[i];
+    }
+    return count;
+  }
+
+  private synchronized double sum() {
+    return this.sum;
+  }
+
+}
@@ -0,0 +1,85 @@
+package traceImporter;
+
+import java.util.Map;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.metrics.Sensor;
+import org.apache.kafka.streams.StreamsMetrics;
+
+/**
+ * Sensors that describe the flow of spans and traces through the stages of the pipeline, i.e.,
+ * the span translation, the trace reconstruction and the trace consumption. All metrics are in
+ * group {@value #METRICS_GROUP}, tagged with the stage as {@value #STAGE_TAG}.
+ */
+public final class PipelineMetrics {
+
+  /**
+   * Scope of the throughput sensors, yields the metrics group {@value #METRICS_GROUP}.
+   */
+  public static final String SCOPE = "pipeline";
+
+  public static final String METRICS_GROUP = "stream-pipeline-metrics";
+
+  public static final String STAGE_TAG = "pipeline-id";
+
+  /**
+   * Upper bounds for latencies in milliseconds.
+   */
+  public static final double[] MILLIS_BUCKETS =
+      {1, 5, 10, 50, 100, 500, 1_000, 2_000, 5_000, 10_000, 30_000, 60_000};
+
+  /**
+   * Upper bounds for short latencies in microseconds.
+   */
+  public static final double[] MICROS_BUCKETS =
+      {10, 50, 100, 500, 1_000, 5_000, 10_000, 50_000, 100_000, 500_000, 1_000_000};
+
+  /**
+   * Upper bounds for numbers of spans.
+   */
+  public static final double[] SIZE_BUCKETS =
+      {1, 2, 5, 10, 20, 50, 100, 200, 500, 1_000, 5_000, 10_000};
+
+  private PipelineMetrics() {
+    // Utility class
+  }
+
+  /**
+   * Adds a sensor that measures the rate and the total of the recorded events.
+   *
+   * @param metrics the metrics of the stream
+   * @param stage the stage of the pipeline
+   * @param operation the counted events, e.g., spans
+   * @return the sensor, which is shared by all tasks of the thread
+   */
+  public static Sensor throughputSensor(final StreamsMetrics metrics, final String stage,
+                                        final String operation) {
+    return metrics.addThroughputSensor(SCOPE, stage, operation, Sensor.RecordingLevel.INFO);
+  }
+
+  /**
+   * Adds a sensor that records values in a {@link CumulativeHistogram}.
+   *
+   * @param metrics the metrics of the stream
+   * @param stage the stage of the pipeline
+   * @param name name of the histogram, including the unit, e.g., latency-ms
+   * @param bounds upper bounds of the buckets
+   * @return the sensor, which is shared by all threads and tasks of the stream
+   */
+  public static Sensor histogramSensor(final StreamsMetrics metrics, final String stage,
+                                       final String name, final double... bounds) {
+    final Sensor sensor =
+        metrics.addSensor(SCOPE + "." + stage + "." + name, Sensor.RecordingLevel.INFO);
+    final CumulativeHistogram histogram =
+        new CumulativeHistogram(name, METRICS_GROUP, Map.of(STAGE_TAG, stage), bounds);
+
+    // Adding the same metrics twice fails, and the processors of each task try to
+    synchronized (sensor) {
+      final MetricName countName = histogram.countMetricName();
+      if (!metrics.metrics().containsKey(countName)) {
+        sensor.add(histogram);
+      }
+    }
+    return sensor;
+  }
+
+}
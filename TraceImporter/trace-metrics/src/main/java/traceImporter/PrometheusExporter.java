@@ -0,0 +1,192 @@
+package traceImporter;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+
+/**
+ * Serves metrics in the Prometheus text exposition format at {@value #PATH}, i.e., the built-in
+ * metrics of Kafka Streams along with the {@link PipelineMetrics} and all other sensors registered
+ * with the stream.
+ *
+ * <p>Metric names are prefixed with their group, e.g., {@code spans-total} of group
+ * {@code stream-pipeline-metrics} is exposed as {@code stream_pipeline_metrics_spans_total}, and
+ * tags are exposed as labels. Metrics named {@code *-total} are counters, the buckets, sum and
+ * count of a {@link CumulativeHistogram} form a histogram, and all other numeric metrics are
+ * gauges.
+ */
+public class PrometheusExporter implements AutoCloseable {
+
+  public static final String PATH = "/metrics";
+
+  private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+  private final Supplier<Map<MetricName, ? extends Metric>> metrics;
+
+  private final int port;
+
+  private HttpServer server;
+
+  /**
+   * Creates a new exporter.
+   *
+   * @param port the port to listen on, or 0 for any free port
+   * @param metrics supplies the current metrics, e.g., {@code KafkaStreams::metrics}
+   */
+  public PrometheusExporter(final int port,
+                            final Supplier<Map<MetricName, ? extends Metric>> metrics) {
+    this.port = port;
+    this.metrics = metrics;
+  }
+
+  /**
+   * Starts serving the metrics in a background thread.
+   *
+   * @throws IllegalStateException if the port cannot be bound
+   */
+  public void start() {
+    try {
+      this.server = HttpServer.create(new InetSocketAddress(this.port), 0);
+    } catch (final IOException e) {
+      throw new IllegalStateException("Cannot serve metrics on port " + this.port, e);
+    }
+    this.server.createContext(PATH, this::handle);
+    this.server.start();
+  }
+
+  /**
+   * Returns the port the exporter listens on, which is chosen by the system if the configured
+   * port is 0.
+   */
+  public int getPort() {
+    return this.server.getAddress().getPort();
+  }
+
+  @Override
+  public void close() {
+    if (this.server != null) {
+      this.server.stop(0);
+    }
+  }
+
+  private void handle(final HttpExchange exchange) throws IOException {
+    final byte[] body = this.scrape().getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+    exchange.sendResponseHeaders(200, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  /**
+   * Renders the current metrics in the text exposition format.
+   */
+  public String scrape() {
+    final Map<MetricName, ? extends Metric> current = this.metrics.get();
+
+    // Histograms are recognized by their buckets
+    final Set<String> histograms = new HashSet<>();
+    for (final MetricName name : current.keySet()) {
+      if (name.name().endsWith(CumulativeHistogram.BUCKET_SUFFIX)
+          && name.tags().containsKey(CumulativeHistogram.BOUND_TAG)) {
+        histograms.add(familyName(name.group(), stripSuffix(name.name(),
+            CumulativeHistogram.BUCKET_SUFFIX)));
+      }
+    }
+
+    // Samples of a family must be adjacent
+    final Map<String, List<String>> families = new TreeMap<>();
+    for (final Map.Entry<MetricName, ? extends Metric> entry : current.entrySet()) {
+      final Object value = entry.getValue().metricValue();
+      if (!(value instanceof Number)) {
+        continue;
+      }
+      final MetricName name = entry.getKey();
+      families.computeIfAbsent(familyOf(name, histograms), f -> new ArrayList<>())
+          .add(familyName(name.group(), name.name()) + labels(name.tags()) + " "
+              + format(((Number) value).doubleValue()));
+    }
+
+    final StringBuilder text = new StringBuilder();
+    families.forEach((family, samples) -> {
+      final String type;
+      if (histograms.contains(family)) {
+        type = "histogram";
+      } else if (family.endsWith("_total")) {
+        type = "counter";
+      } else {
+        type = "gauge";
+      }
+      text.append("# TYPE ").append(family).append(' ').append(type).append('\n');
+      samples.stream().sorted().forEach(sample -> text.append(sample).append('\n'));
+    });
+    return text.toString();
+  }
+
+  /**
+   * Returns the family of a metric, i.e., the histogram it is part of or the metric itself.
+   */
+  private static String familyOf(final MetricName name, final Set<String> histograms) {
+    for (final String suffix : List.of(CumulativeHistogram.BUCKET_SUFFIX,
+        CumulativeHistogram.SUM_SUFFIX, CumulativeHistogram.COUNT_SUFFIX)) {
+      if (name.name().endsWith(suffix)) {
+        final String histogram = familyName(name.group(), stripSuffix(name.name(), suffix));
+        if (histograms.contains(histogram)) {
+          return histogram;
+        }
+      }
+    }
+    return familyName(name.group(), name.name());
+  }
+
+  private static String familyName(final String group, final String name) {
+    return sanitize(group + "_" + name);
+  }
+
+  private static String stripSuffix(final String name, final String suffix) {
+    return name.substring(0, name.length() - suffix.length());
+  }
+
+  private static String labels(final Map<String, String> tags) {
+    if (tags.isEmpty()) {
+      return "";
+    }
+    final StringBuilder labels = new StringBuilder("{");
+    new TreeMap<>(tags).forEach((key, value) -> {
+      if (labels.length() > 1) {
+        labels.append(',');
+      }
+      labels.append(sanitize(key)).append("=\"")
+          .append(value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+          .append('"');
+    });
+    return labels.append('}').toString();
+  }
+
+  private static String sanitize(final String name) {
+    return name.replaceAll("[^a-zA-Z0-9_]", "_");
+  }
+
+  private static String format(final double value) {
+    if (Double.isNaN(value)) {
+      return "NaN";
+    }
+    if (Double.isInfinite(value)) {
+      return value > 0 ? "+Inf" : "-Inf";
+    }
+    return Double.toString(value);
+  }
+
+}
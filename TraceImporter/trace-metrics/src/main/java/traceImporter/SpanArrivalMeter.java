@@ -0,0 +1,55 @@
+package traceImporter;
+
+import org.apache.kafka.common.metrics.Sensor;
+import org.apache.kafka.streams.processor.AbstractProcessor;
+import org.apache.kafka.streams.processor.ProcessorContext;
+
+/**
+ * Measures the spans that arrive at a stage, i.e., their throughput and their lateness, which is
+ * the time by which a span lags behind the latest span of its task. Windowed stages drop spans
+ * whose lateness exceeds their window and grace period.
+ *
+ * @param <K> key type
+ * @param <V> span type
+ */
+public class SpanArrivalMeter<K, V> extends AbstractProcessor<K, V> {
+
+  public static final String SPANS = "spans";
+
+  public static final String LATENESS = "span-lateness-ms";
+
+  private final String stage;
+
+  private Sensor spanSensor;
+
+  private Sensor latenessSensor;
+
+  private long streamTime = Long.MIN_VALUE;
+
+  /**
+   * Creates a new meter.
+   *
+   * @param stage the stage of the pipeline
+   */
+  public SpanArrivalMeter(final String stage) {
+    this.stage = stage;
+  }
+
+  @Override
+  public void init(final ProcessorContext context) {
+    super.init(context);
+    this.spanSensor = PipelineMetrics.throughputSensor(context.metrics(), this.stage, SPANS);
+    this.latenessSensor = PipelineMetrics.histogramSensor(context.metrics(), this.stage, LATENESS,
+        PipelineMetrics.MILLIS_BUCKETS);
+  }
+
+  @Override
+  public void process(final K key, final V span) {
+    final long timestamp = this.context().timestamp();
+    this.streamTime = Math.max(this.streamTime, timestamp);
+
+    this.spanSensor.record();
+    this.latenessSensor.record(this.streamTime - timestamp);
+  }
+
+}
@@ -0,0 +1,195 @@
+package traceImporter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import org.apache.kafka.streams.processor.AbstractProcessor;
+import org.apache.kafka.streams.processor.ProcessorSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes a sample of the traces that pass a stage to the log, for debugging without slowing down
+ * the stream.
+ *
+ * <p>Traces are sampled by their key, so that all updates of a sampled trace are written. At most
+ * {@code maxPerSecond} traces are written per second over all stream threads. Sampled traces are
+ * rendered on the stream thread, as they may be changed further downstream, and are written by a
+ * background thread. If its queue is full, traces are dropped rather than blocking the stream.
+ *
+ * <p>Each trace is written as one line, i.e., the JSON representation of Avro records, to the
+ * logger {@value #LOGGER}.
+ */
+public class TraceDump implements AutoCloseable {
+
+  public static final String LOGGER = "traceImporter.TraceDump";
+
+  /**
+   * Resolution of the sample rate.
+   */
+  private static final int SAMPLE_BUCKETS = 10_000;
+
+  private static final long CLOSE_TIMEOUT_MS = 1000;
+
+  private final int sampledBuckets;
+
+  private final int maxPerSecond;
+
+  private final BlockingQueue<String> queue;
+
+  private final Consumer<String> sink;
+
+  private final Thread writer;
+
+  private final AtomicLong dropped = new AtomicLong();
+
+  private long currentSecond = Long.MIN_VALUE;
+
+  private int writtenInSecond;
+
+  private volatile boolean closed;
+
+  /**
+   * Creates a new trace dump that writes to the log.
+   *
+   * @param sampleRate fraction of trace keys to write, 0 disables the dump
+   * @param maxPerSecond maximum number of traces to write per second
+   * @param queueSize maximum number of traces waiting to be written
+   */
+  public TraceDump(final double sampleRate, final int maxPerSecond, final int queueSize) {
+    this(sampleRate, maxPerSecond, queueSize, LoggerFactory.getLogger(LOGGER)::info);
+  }
+
+  /**
+   * Creates a new trace dump that writes to the given sink.
+   *
+   * @param sampleRate fraction of trace keys to write, 0 disables the dump
+   * @param maxPerSecond maximum number of traces to write per second
+   * @param queueSize maximum number of traces waiting to be written
+   * @param sink receives each written trace on the background thread
+   */
+  public TraceDump(final double sampleRate, final int maxPerSecond, final int queueSize,
+                   final Consumer<String> sink) {
+    if (sampleRate < 0 || sampleRate > 1) {
+      throw new IllegalArgumentException("Sample rate must be within [0, 1], got " + sampleRate);
+    }
+    this.sampledBuckets = (int) Math.round(sampleRate * SAMPLE_BUCKETS);
+    this.maxPerSecond = maxPerSecond;
+    this.queue = new ArrayBlockingQueue<>(queueSize);
+    this.sink = sink;
+
+    this.writer = new Thread(this::write, "trace-dump");
+    this.writer.setDaemon(true);
+    if (this.isEnabled()) {
+      this.writer.start();
+    }
+  }
+
+  /**
+   * Returns whether any traces are sampled.
+   */
+  public boolean isEnabled() {
+    return this.sampledBuckets > 0;
+  }
+
+  /**
+   * Returns the number of sampled traces that were dropped as the rate limit was exceeded or the
+   * queue was full.
+   */
+  public long getDropped() {
+    return this.dropped.get();
+  }
+
+  /**
+   * Creates processors that pass the sampled traces of a stream to this dump.
+   *
+   * @param <K> key type
+   * @param <V> trace type, rendered by its {@link Object#toString()}
+   * @return the processor supplier
+   */
+  public <K, V> ProcessorSupplier<K, V> processor() {
+    return () -> new AbstractProcessor<K, V>() {
+      @Override
+      public void process(final K key, final V trace) {
+        TraceDump.this.append(key, trace);
+      }
+    };
+  }
+
+  /**
+   * Passes a trace to the background thread if its key is sampled and the rate limit permits.
+   *
+   * @param key key of the trace
+   * @param trace the trace, rendered by its {@link Object#toString()}
+   * @return whether the trace is written
+   */
+  public boolean append(final Object key, final Object trace) {
+    if (!this.isSampled(key)) {
+      return false;
+    }
+    if (this.closed || !this.tryAcquire(System.currentTimeMillis() / 1000)
+        || !this.queue.offer(trace.toString())) {
+      this.dropped.incrementAndGet();
+      return false;
+    }
+    return true;
+  }
+
+  private boolean isSampled(final Object key) {
+    if (this.sampledBuckets >= SAMPLE_BUCKETS) {
+      return true;
+    }
+    // Spread the hash codes of similar keys, e.g., numbered trace ids
+    final int hash = key == null ? 0 : key.hashCode() * 0x9E3779B9;
+    return Math.floorMod(hash, SAMPLE_BUCKETS) < this.sampledBuckets;
+  }
+
+  private synchronized boolean tryAcquire(final long second) {
+    if (second != this.currentSecond) {
+      this.currentSecond = second;
+      this.writtenInSecond = 0;
+    }
+    if (this.writtenInSecond >= this.maxPerSecond) {
+      return false;
+    }
+    this.writtenInSecond++;
+    return true;
+  }
+
+  private void write() {
+    final List<String> batch = new ArrayList<>();
+    while (!this.closed || !this.queue.isEmpty()) {
+      try {
+        final String first = this.queue.poll(100, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+        this.queue.drainTo(batch);
+        batch.forEach(this.sink);
+        batch.clear();
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  /**
+   * Writes the remaining traces and stops the background thread.
+   */
+  @Override
+  public void close() {
+    this.closed = true;
+    try {
+      this.writer.join(CLOSE_TIMEOUT_MS);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+}
@@ -0,0 +1,70 @@
+package traceImporter;
+
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+import org.apache.kafka.common.metrics.Sensor;
+import org.apache.kafka.streams.processor.AbstractProcessor;
+import org.apache.kafka.streams.processor.ProcessorContext;
+
+/**
+ * Measures the traces that leave a stage, i.e., their throughput, their number of spans and their
+ * end-to-end latency, which is the wall clock time from the end of the latest span of a trace
+ * until the trace passes this meter.
+ *
+ * <p>The trace type is generated per service, hence its fields are read by the given functions.
+ *
+ * @param <K> key type
+ * @param <V> trace type
+ */
+public class TraceEmissionMeter<K, V> extends AbstractProcessor<K, V> {
+
+  public static final String TRACES = "traces";
+
+  public static final String SPANS_PER_TRACE = "spans-per-trace";
+
+  public static final String END_TO_END_LATENCY = "end-to-end-latency-ms";
+
+  private final String stage;
+
+  private final ToIntFunction<V> spanCount;
+
+  private final ToLongFunction<V> endMillis;
+
+  private Sensor traceSensor;
+
+  private Sensor spansPerTraceSensor;
+
+  private Sensor latencySensor;
+
+  /**
+   * Creates a new meter.
+   *
+   * @param stage the stage of the pipeline
+   * @param spanCount returns the number of spans of a trace
+   * @param endMillis returns the end time of a trace in epoch milliseconds
+   */
+  public TraceEmissionMeter(final String stage, final ToIntFunction<V> spanCount,
+                            final ToLongFunction<V> endMillis) {
+    this.stage = stage;
+    this.spanCount = spanCount;
+    this.endMillis = endMillis;
+  }
+
+  @Override
+  public void init(final ProcessorContext context) {
+    super.init(context);
+    this.traceSensor = PipelineMetrics.throughputSensor(context.metrics(), this.stage, TRACES);
+    this.spansPerTraceSensor = PipelineMetrics.histogramSensor(context.metrics(), this.stage,
+        SPANS_PER_TRACE, PipelineMetrics.SIZE_BUCKETS);
+    this.latencySensor = PipelineMetrics.histogramSensor(context.metrics(), this.stage,
+        END_TO_END_LATENCY, PipelineMetrics.MILLIS_BUCKETS);
+  }
+
+  @Override
+  public void process(final K key, final V trace) {
+    this.traceSensor.record();
+    this.spansPerTraceSensor.record(this.spanCount.applyAsInt(trace));
+    this.latencySensor.record(System.currentTimeMillis() - this.endMillis.applyAsLong(trace));
+  }
+
+}
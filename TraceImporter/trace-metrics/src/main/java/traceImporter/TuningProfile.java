@@ -0,0 +1,89 @@
+package traceImporter;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.streams.StreamsConfig;
+
+/**
+ * Named sets of producer and consumer settings that trade latency for throughput and bytes on
+ * the wire, selected by the {@code tuning.profile} option of each service. Settings passed on
+ * explicitly, e.g., as {@code streams.producer.linger.ms}, take precedence over the profile.
+ *
+ * <p>Spans and traces repeat the same operation, host and application names, hence they compress
+ * well once enough of them share a batch. Run the {@code ProducerProfileBenchmark} to compare
+ * the profiles.
+ */
+public enum TuningProfile {
+
+  /**
+   * Keeps the defaults of Kafka and Kafka Streams, i.e., uncompressed batches of up to 16 KB,
+   * which Kafka Streams producers fill for up to 100 ms.
+   */
+  DEFAULT(Map.of(), Map.of()),
+
+  /**
+   * Fills large, compressed batches for up to 100 ms, and fetches at least 64 KB or waits up to
+   * 500 ms, for the highest throughput and the fewest bytes on the wire.
+   */
+  THROUGHPUT(
+      Map.of(ProducerConfig.COMPRESSION_TYPE_CONFIG, "lz4",
+          ProducerConfig.LINGER_MS_CONFIG, 100,
+          ProducerConfig.BATCH_SIZE_CONFIG, 256 * 1024),
+      Map.of(ConsumerConfig.FETCH_MIN_BYTES_CONFIG, 64 * 1024,
+          ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG, 500)),
+
+  /**
+   * Sends each record immediately, compressed cheaply, and returns fetches as soon as any data
+   * is available, for the lowest latency.
+   */
+  LOW_LATENCY(
+      Map.of(ProducerConfig.COMPRESSION_TYPE_CONFIG, "lz4",
+          ProducerConfig.LINGER_MS_CONFIG, 0),
+      Map.of(ConsumerConfig.FETCH_MIN_BYTES_CONFIG, 1,
+          ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG, 10));
+
+  private final Map<String, Object> producerConfigs;
+
+  private final Map<String, Object> consumerConfigs;
+
+  TuningProfile(final Map<String, Object> producerConfigs,
+                final Map<String, Object> consumerConfigs) {
+    this.producerConfigs = producerConfigs;
+    this.consumerConfigs = consumerConfigs;
+  }
+
+  /**
+   * Returns the settings of plain producers, e.g., of dead letters.
+   */
+  public Map<String, Object> producerConfigs() {
+    return this.producerConfigs;
+  }
+
+  /**
+   * Returns the settings of Kafka Streams, i.e., the producer and consumer settings with the
+   * respective prefix.
+   */
+  public Map<String, Object> streamsConfigs() {
+    final Map<String, Object> configs = new HashMap<>();
+    this.producerConfigs.forEach((key, value) -> configs.put(StreamsConfig.producerPrefix(key),
+        value));
+    this.consumerConfigs.forEach((key, value) -> configs.put(StreamsConfig.consumerPrefix(key),
+        value));
+    return configs;
+  }
+
+  /**
+   * Returns the names of all profiles, e.g., to validate configuration values.
+   */
+  public static String[] names() {
+    final TuningProfile[] values = values();
+    final String[] names = new String[values.length];
+    for (int i = 0; i < values.length; i++) {
+      names[i] = values[i].name();
+    }
+    return names;
+  }
+
+}
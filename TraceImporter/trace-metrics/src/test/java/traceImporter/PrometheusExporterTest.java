@@ -0,0 +1,91 @@
+package traceImporter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.metrics.Sensor;
+import org.apache.kafka.common.metrics.stats.CumulativeCount;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class PrometheusExporterTest {
+
+  private Metrics metrics;
+
+  private PrometheusExporter exporter;
+
+  @BeforeEach
+  void setUp() {
+    this.metrics = new Metrics();
+    this.exporter = new PrometheusExporter(0, this.metrics::metrics);
+  }
+
+  @AfterEach
+  void tearDown() {
+    this.exporter.close();
+    this.metrics.close();
+  }
+
+  @Test
+  void testCountersAndHistograms() {
+    final Map<String, String> tags = Map.of(PipelineMetrics.STAGE_TAG, "test-stage");
+
+    final Sensor counter = this.metrics.sensor("spans");
+    counter.add(this.metrics.metricName("spans-total", PipelineMetrics.METRICS_GROUP, tags),
+        new CumulativeCount());
+    counter.record();
+    counter.record();
+
+    final Sensor histogram = this.metrics.sensor("latency");
+    histogram.add(new CumulativeHistogram("latency-ms", PipelineMetrics.METRICS_GROUP, tags,
+        10, 100));
+    histogram.record(5);
+    histogram.record(50);
+    histogram.record(500);
+
+    final String text = this.exporter.scrape();
+
+    assertTrue(text.contains("# TYPE stream_pipeline_metrics_spans_total counter\n"
+        + "stream_pipeline_metrics_spans_total{pipeline_id=\"test-stage\"} 2.0\n"), text);
+    assertTrue(text.contains("# TYPE stream_pipeline_metrics_latency_ms histogram\n"), text);
+    assertTrue(text.contains(
+        "stream_pipeline_metrics_latency_ms_bucket{le=\"10.0\",pipeline_id=\"test-stage\"} 1.0\n"),
+        text);
+    assertTrue(text.contains(
+        "stream_pipeline_metrics_latency_ms_bucket{le=\"100.0\",pipeline_id=\"test-stage\"} 2.0\n"),
+        text);
+    assertTrue(text.contains(
+        "stream_pipeline_metrics_latency_ms_bucket{le=\"+Inf\",pipeline_id=\"test-stage\"} 3.0\n"),
+        text);
+    assertTrue(text.contains(
+        "stream_pipeline_metrics_latency_ms_sum{pipeline_id=\"test-stage\"} 555.0\n"), text);
+    assertTrue(text.contains(
+        "stream_pipeline_metrics_latency_ms_count{pipeline_id=\"test-stage\"} 3.0\n"), text);
+  }
+
+  @Test
+  void testEndpoint() throws IOException {
+    this.exporter.start();
+
+    final URL url =
+        new URL("http://localhost:" + this.exporter.getPort() + PrometheusExporter.PATH);
+    final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    try (InputStream in = connection.getInputStream()) {
+      assertEquals(200, connection.getResponseCode());
+      assertTrue(connection.getContentType().startsWith("text/plain"));
+      // Metrics registers a count of its metrics by default
+      assertTrue(new String(in.readAllBytes(), StandardCharsets.UTF_8).contains("# TYPE "));
+    } finally {
+      connection.disconnect();
+    }
+  }
+
+}
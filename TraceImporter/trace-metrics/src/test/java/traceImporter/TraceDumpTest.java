@@ -0,0 +1,64 @@
+package traceImporter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.jupiter.api.Test;
+
+class TraceDumpTest {
+
+  private final List<String> written = new CopyOnWriteArrayList<>();
+
+  @Test
+  void testDisabled() {
+    try (TraceDump dump = new TraceDump(0, 10, 10, this.written::add)) {
+      assertFalse(dump.isEnabled());
+      assertFalse(dump.append("trace", "trace"));
+    }
+    assertTrue(this.written.isEmpty());
+  }
+
+  @Test
+  void testSampledByKey() {
+    final int keys = 10_000;
+    try (TraceDump dump = new TraceDump(0.1, Integer.MAX_VALUE, keys, this.written::add)) {
+      int sampled = 0;
+      for (int i = 0; i < keys; i++) {
+        final boolean first = dump.append("trace" + i, "first");
+        // All updates of a sampled trace are written
+        assertEquals(first, dump.append("trace" + i, "second"));
+        sampled += first ? 1 : 0;
+      }
+      assertEquals(keys / 10, sampled, keys / 100);
+    }
+  }
+
+  @Test
+  void testRateLimited() {
+    final TraceDump dump = new TraceDump(1, 5, 100, this.written::add);
+    for (int i = 0; i < 20; i++) {
+      dump.append("trace" + i, "trace" + i);
+    }
+    dump.close();
+
+    // Appending may have spanned two seconds
+    assertTrue(this.written.size() <= 10, "written " + this.written.size());
+    assertEquals(20, this.written.size() + dump.getDropped());
+  }
+
+  @Test
+  void testWritesRemainingTracesOnClose() {
+    final TraceDump dump = new TraceDump(1, 100, 100, this.written::add);
+    for (int i = 0; i < 50; i++) {
+      assertTrue(dump.append("trace" + i, "trace" + i));
+    }
+    dump.close();
+    assertEquals(50, this.written.size());
+    assertEquals("trace0", this.written.get(0));
+    assertFalse(dump.append("trace", "trace"));
+  }
+
+}
@@ -0,0 +1,175 @@
+package traceImporter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the call tree of a trace incrementally from the parent span ids of its calls, in any
+ * order of arrival. Calls are aggregated to one node per operation, the rows of the trace, and
+ * each pair of caller and callee operation to a {@link TraceStep} that counts the calls between
+ * them.
+ *
+ * <p>The {@link CallTree} maps the span id of each call to its row, such that a call whose parent
+ * arrived earlier is linked right away. Calls whose parent has not arrived yet wait in the pending
+ * calls under the parent's span id until the parent arrives. Thus each call is linked once, in
+ * constant time. Linking a call subtracts its duration from the exclusive duration of the caller,
+ * which is the time spent in the caller itself.
+ */
+final class CallTrees {
+
+  private CallTrees() {
+    // Utility class
+  }
+
+  /**
+   * The rows of a trace that the calls are linked between.
+   */
+  interface Rows {
+
+    /**
+     * Returns the span id of the aggregated span of a row, by which its steps refer to it.
+     */
+    String spanId(int row);
+
+    /**
+     * Subtracts the duration of a callee from the exclusive duration of a row.
+     */
+    void subtractExclusiveDuration(int row, long duration);
+  }
+
+  /**
+   * Returns the rows of a trace that are kept as a list of aggregated spans.
+   */
+  static Rows rows(final List<EVSpan> spans) {
+    return new Rows() {
+      @Override
+      public String spanId(final int row) {
+        return spans.get(row).getSpanId();
+      }
+
+      @Override
+      public void subtractExclusiveDuration(final int row, final long duration) {
+        final EVSpan span = spans.get(row);
+        span.setExclusiveDuration(exclusiveDuration(span) - duration);
+      }
+    };
+  }
+
+  static CallTree empty() {
+    return new CallTree(new HashMap<>(), new HashMap<>(), new HashMap<>());
+  }
+
+  /**
+   * Returns the exclusive duration of a span, which is its duration if it is a single call that
+   * was not aggregated yet.
+   */
+  static long exclusiveDuration(final EVSpan span) {
+    if (span.getExclusiveDuration() != null) {
+      return span.getExclusiveDuration();
+    }
+    return span.getLatency() != null
+        ? span.getLatency().getSumDuration() : Timestamps.durationNanos(span);
+  }
+
+  /**
+   * Links a single call that was folded into a row to its caller and its callees.
+   *
+   * @param tree the call tree of the trace
+   * @param steps the steps of the trace
+   * @param rows the rows of the trace
+   * @param row the row the call was folded into
+   * @param call the call
+   */
+  static void add(final CallTree tree, final List<TraceStep> steps, final Rows rows,
+                  final int row, final EVSpan call) {
+    tree.getSpanRows().put(call.getSpanId(), row);
+
+    final List<PendingCall> callees = tree.getPendingCalls().remove(call.getSpanId());
+    if (callees != null) {
+      for (final PendingCall callee : callees) {
+        link(tree, steps, rows, row, callee.getRow(), callee.getDuration(), 1);
+      }
+    }
+
+    final String parentSpanId = call.getParentSpanId();
+    if (parentSpanId != null) {
+      final Integer callerRow = tree.getSpanRows().get(parentSpanId);
+      if (callerRow != null) {
+        link(tree, steps, rows, callerRow, row, Timestamps.durationNanos(call), 1);
+      } else {
+        tree.getPendingCalls().computeIfAbsent(parentSpanId, id -> new ArrayList<>())
+            .add(new PendingCall(row, Timestamps.durationNanos(call)));
+      }
+    }
+  }
+
+  /**
+   * Merges the call tree of another part of the same trace, whose spans were already folded into
+   * the rows of the target, e.g., by the {@link IndexedTraceMerger}.
+   *
+   * @param target the call tree to update
+   * @param targetSteps the steps of the target
+   * @param rows the rows of the target
+   * @param source the call tree to merge, which is not modified
+   * @param sourceSteps the steps of the source
+   * @param rowMapping the target row of each source row
+   */
+  static void merge(final CallTree target, final List<TraceStep> targetSteps, final Rows rows,
+                    final CallTree source, final List<TraceStep> sourceSteps,
+                    final int[] rowMapping) {
+    for (final Map.Entry<String, Integer> call : source.getSpanRows().entrySet()) {
+      final int row = rowMapping[call.getValue()];
+      target.getSpanRows().put(call.getKey(), row);
+      final List<PendingCall> callees = target.getPendingCalls().remove(call.getKey());
+      if (callees != null) {
+        for (final PendingCall callee : callees) {
+          link(target, targetSteps, rows, row, callee.getRow(), callee.getDuration(), 1);
+        }
+      }
+    }
+
+    // The aggregated spans of the source are referred to by the span id of their first call
+    for (final TraceStep step : sourceSteps) {
+      final Integer callerRow = source.getSpanRows().get(step.getCallerSpanId());
+      final Integer calleeRow = source.getSpanRows().get(step.getCalleeSpanId());
+      if (callerRow != null && calleeRow != null) {
+        link(target, targetSteps, rows, rowMapping[callerRow], rowMapping[calleeRow], 0,
+            step.getRequestCount());
+      }
+    }
+
+    for (final Map.Entry<String, List<PendingCall>> pending
+        : source.getPendingCalls().entrySet()) {
+      final Integer callerRow = target.getSpanRows().get(pending.getKey());
+      for (final PendingCall callee : pending.getValue()) {
+        final int calleeRow = rowMapping[callee.getRow()];
+        if (callerRow != null) {
+          link(target, targetSteps, rows, callerRow, calleeRow, callee.getDuration(), 1);
+        } else {
+          target.getPendingCalls().computeIfAbsent(pending.getKey(), id -> new ArrayList<>())
+              .add(new PendingCall(calleeRow, callee.getDuration()));
+        }
+      }
+    }
+  }
+
+  private static void link(final CallTree tree, final List<TraceStep> steps, final Rows rows,
+                           final int callerRow, final int calleeRow, final long duration,
+                           final int requestCount) {
+    if (duration != 0) {
+      rows.subtractExclusiveDuration(callerRow, duration);
+    }
+    final String key = callerRow + ":" + calleeRow;
+    final Integer position = tree.getStepIndex().get(key);
+    if (position == null) {
+      tree.getStepIndex().put(key, steps.size());
+      steps.add(new TraceStep(rows.spanId(callerRow), rows.spanId(calleeRow), requestCount));
+    } else {
+      final TraceStep step = steps.get(position);
+      step.setRequestCount(step.getRequestCount() + requestCount);
+    }
+  }
+
+}
@@ -0,0 +1,159 @@
+package traceImporter;
+
+import java.util.Map;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.processor.StateStore;
+import org.apache.kafka.streams.state.KeyValueBytesStoreSupplier;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.apache.kafka.streams.state.StoreBuilder;
+import org.apache.kafka.streams.state.Stores;
+
+/**
+ * Changelogged key-value store for processors that keep their state in memory and write it to
+ * the store only on checkpoints. The checkpoint is run when Kafka Streams flushes the store, which
+ * it does on each commit before the offsets of the input are committed. Hence all input up to the
+ * committed offsets is covered by the changelog, and state that has not been checkpointed is
+ * re-read from the input on failover.
+ *
+ * @param <K> type of the keys
+ * @param <V> type of the values
+ */
+public class CheckpointStore<K, V> implements StateStore {
+
+  private final KeyValueStore<K, V> inner;
+
+  private Runnable checkpoint = () -> { };
+
+  private CheckpointStore(final KeyValueStore<K, V> inner) {
+    this.inner = inner;
+  }
+
+  /**
+   * Creates the builder of a persistent, changelogged store.
+   *
+   * @param supplier supplier of the underlying store, which determines its name
+   * @param keySerde serde of the keys
+   * @param valueSerde serde of the values
+   * @param <K> type of the keys
+   * @param <V> type of the values
+   * @return the store builder, to be added to the topology
+   */
+  public static <K, V> StoreBuilder<CheckpointStore<K, V>> builder(
+      final KeyValueBytesStoreSupplier supplier, final Serde<K> keySerde,
+      final Serde<V> valueSerde) {
+    return new Builder<>(Stores.keyValueStoreBuilder(supplier, keySerde, valueSerde));
+  }
+
+  /**
+   * Sets the checkpoint, which is run on each flush of the store before the store itself is
+   * flushed. It may write to the store.
+   *
+   * @param checkpoint the checkpoint
+   */
+  public void onFlush(final Runnable checkpoint) {
+    this.checkpoint = checkpoint;
+  }
+
+  public void put(final K key, final V value) {
+    this.inner.put(key, value);
+  }
+
+  public void delete(final K key) {
+    this.inner.delete(key);
+  }
+
+  public KeyValueIterator<K, V> all() {
+    return this.inner.all();
+  }
+
+  @Override
+  public String name() {
+    return this.inner.name();
+  }
+
+  @Override
+  public void init(final ProcessorContext context, final StateStore root) {
+    this.inner.init(context, root);
+  }
+
+  @Override
+  public void flush() {
+    this.checkpoint.run();
+    this.inner.flush();
+  }
+
+  @Override
+  public void close() {
+    this.inner.close();
+  }
+
+  @Override
+  public boolean persistent() {
+    return this.inner.persistent();
+  }
+
+  @Override
+  public boolean isOpen() {
+    return this.inner.isOpen();
+  }
+
+  /**
+   * Builds the checkpoint store around a key-value store, whose logging configuration it uses.
+   */
+  private static final class Builder<K, V> implements StoreBuilder<CheckpointStore<K, V>> {
+
+    private final StoreBuilder<KeyValueStore<K, V>> inner;
+
+    private Builder(final StoreBuilder<KeyValueStore<K, V>> inner) {
+      this.inner = inner;
+    }
+
+    @Override
+    public StoreBuilder<CheckpointStore<K, V>> withCachingEnabled() {
+      this.inner.withCachingEnabled();
+      return this;
+    }
+
+    @Override
+    public StoreBuilder<CheckpointStore<K, V>> withCachingDisabled() {
+      this.inner.withCachingDisabled();
+      return this;
+    }
+
+    @Override
+    public StoreBuilder<CheckpointStore<K, V>> withLoggingEnabled(
+        final Map<String, String> config) {
+      this.inner.withLoggingEnabled(config);
+      return this;
+    }
+
+    @Override
+    public StoreBuilder<CheckpointStore<K, V>> withLoggingDisabled() {
+      this.inner.withLoggingDisabled();
+      return this;
+    }
+
+    @Override
+    public CheckpointStore<K, V> build() {
+      return new CheckpointStore<>(this.inner.build());
+    }
+
+    @Override
+    public Map<String, String> logConfig() {
+      return this.inner.logConfig();
+    }
+
+    @Override
+    public boolean loggingEnabled() {
+      return this.inner.loggingEnabled();
+    }
+
+    @Override
+    public String name() {
+      return this.inner.name();
+    }
+  }
+
+}
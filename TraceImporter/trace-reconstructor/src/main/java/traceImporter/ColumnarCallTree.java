@@ -0,0 +1,311 @@
+package traceImporter;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The call tree of a {@link ColumnarTrace} in primitive arrays, linked exactly like the
+ * {@link CallTrees} link a {@link CallTree}, whose records are only created when the trace is
+ * materialised.
+ *
+ * <p>Calls are referred to by 64 bit keys of their span ids, i.e., the value of ids of 16 hex
+ * digits, as written by the translator, and a hash of any other id. A single open addressing
+ * table maps the key of each call that arrived to its row, and the key of each call that did not
+ * arrive yet to the first of the calls that wait for it. Waiting calls are chained in arrival
+ * order, and steps are held as caller row, callee row and request count, indexed by both rows.
+ */
+final class ColumnarCallTree {
+
+  private static final int INITIAL_CAPACITY = 8;
+
+  private static final int SPAN_ID_DIGITS = 16;
+
+  private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+  /**
+   * Calls by key, whose value is the row plus one of a call that arrived, or the negated position
+   * plus one of the first call that waits for it.
+   */
+  private final Table calls = new Table();
+
+  private int pendingSize;
+  private int[] pendingRows = new int[INITIAL_CAPACITY];
+  private long[] pendingDurations = new long[INITIAL_CAPACITY];
+  private int[] pendingNext = new int[INITIAL_CAPACITY];
+  private int[] pendingLast = new int[INITIAL_CAPACITY];
+
+  /**
+   * Steps by caller and callee row, whose value is the position plus one of the step.
+   */
+  private final Table stepIndex = new Table();
+
+  private int stepSize;
+  private int[] stepCallers = new int[INITIAL_CAPACITY];
+  private int[] stepCallees = new int[INITIAL_CAPACITY];
+  private int[] stepCounts = new int[INITIAL_CAPACITY];
+
+  /**
+   * Restores a call tree from its materialised form.
+   *
+   * @param tree the call tree, or null if it was not kept, in which case the calls are only known
+   *     by the span ids of the rows
+   * @param steps the steps of the trace
+   * @param rowSpanIds the span id of each row
+   * @param rowCount the number of rows
+   * @return the call tree
+   */
+  static ColumnarCallTree of(final CallTree tree, final List<TraceStep> steps,
+                             final String[] rowSpanIds, final int rowCount) {
+    final ColumnarCallTree callTree = new ColumnarCallTree();
+    if (tree == null) {
+      for (int row = 0; row < rowCount; row++) {
+        callTree.calls.put(keyOf(rowSpanIds[row]), row + 1);
+      }
+    } else {
+      for (final Map.Entry<String, Integer> call : tree.getSpanRows().entrySet()) {
+        callTree.calls.put(keyOf(call.getKey()), call.getValue() + 1);
+      }
+      for (final Map.Entry<String, List<PendingCall>> pending
+          : tree.getPendingCalls().entrySet()) {
+        final long parentKey = keyOf(pending.getKey());
+        for (final PendingCall callee : pending.getValue()) {
+          callTree.await(parentKey, callee.getRow(), callee.getDuration());
+        }
+      }
+    }
+    for (final TraceStep step : steps) {
+      final int caller = callTree.calls.get(keyOf(step.getCallerSpanId()));
+      final int callee = callTree.calls.get(keyOf(step.getCalleeSpanId()));
+      if (caller > 0 && callee > 0) {
+        callTree.link(caller - 1, callee - 1, 0, step.getRequestCount(), null);
+      }
+    }
+    return callTree;
+  }
+
+  /**
+   * Links a single call that was folded into a row to its caller and its callees.
+   *
+   * @param row the row the call was folded into
+   * @param call the call
+   * @param exclusiveDurations the exclusive duration of each row, from which the durations of the
+   *     linked callees are subtracted
+   */
+  void add(final int row, final EVSpan call, final long[] exclusiveDurations) {
+    final long key = keyOf(call.getSpanId());
+    final int previous = this.calls.put(key, row + 1);
+    for (int i = previous < 0 ? -previous - 1 : -1; i >= 0; i = this.pendingNext[i]) {
+      this.link(row, this.pendingRows[i], this.pendingDurations[i], 1, exclusiveDurations);
+    }
+
+    final String parentSpanId = call.getParentSpanId();
+    if (parentSpanId != null) {
+      final long parentKey = keyOf(parentSpanId);
+      final int caller = this.calls.get(parentKey);
+      if (caller > 0) {
+        this.link(caller - 1, row, Timestamps.durationNanos(call), 1, exclusiveDurations);
+      } else {
+        this.await(parentKey, row, Timestamps.durationNanos(call));
+      }
+    }
+  }
+
+  /**
+   * Materialises the steps of the trace.
+   *
+   * @param rowSpanIds the span id of each row, by which the steps refer to the rows
+   */
+  List<TraceStep> toSteps(final String[] rowSpanIds) {
+    final List<TraceStep> steps = new ArrayList<>(this.stepSize);
+    for (int i = 0; i < this.stepSize; i++) {
+      steps.add(new TraceStep(rowSpanIds[this.stepCallers[i]], rowSpanIds[this.stepCallees[i]],
+          this.stepCounts[i]));
+    }
+    return steps;
+  }
+
+  /**
+   * Materialises the calls of the trace, which refer to calls by the hex digits of their keys.
+   * The step index is left empty, as it is rebuilt from the steps on restore.
+   */
+  CallTree toCallTree() {
+    final Map<String, Integer> spanRows = new HashMap<>();
+    final Map<String, List<PendingCall>> pendingCalls = new HashMap<>();
+    for (int slot = 0; slot < this.calls.keys.length; slot++) {
+      final int value = this.calls.values[slot];
+      if (value > 0) {
+        spanRows.put(idOf(this.calls.keys[slot]), value - 1);
+      } else if (value < 0) {
+        final List<PendingCall> callees = new ArrayList<>();
+        for (int i = -value - 1; i >= 0; i = this.pendingNext[i]) {
+          callees.add(new PendingCall(this.pendingRows[i], this.pendingDurations[i]));
+        }
+        pendingCalls.put(idOf(this.calls.keys[slot]), callees);
+      }
+    }
+    return new CallTree(spanRows, pendingCalls, new HashMap<>());
+  }
+
+  /**
+   * Returns an estimate of the heap retained by the call tree.
+   */
+  long sizeInBytes() {
+    return 40 + this.calls.sizeInBytes() + this.stepIndex.sizeInBytes()
+        + ColumnarTrace.ARRAY_HEADER * 7 + this.pendingRows.length * (4L * 3 + 8L)
+        + this.stepCallers.length * 4L * 3;
+  }
+
+  /**
+   * Returns the key of a span id.
+   */
+  static long keyOf(final String spanId) {
+    if (spanId.length() == SPAN_ID_DIGITS) {
+      long key = 0;
+      int i = 0;
+      for (; i < SPAN_ID_DIGITS; i++) {
+        final char c = spanId.charAt(i);
+        if (c >= '0' && c <= '9') {
+          key = key << 4 | (c - '0');
+        } else if (c >= 'a' && c <= 'f') {
+          key = key << 4 | (c - 'a' + 10);
+        } else {
+          break;
+        }
+      }
+      if (i == SPAN_ID_DIGITS) {
+        return key;
+      }
+    }
+    return HASH_FUNCTION.hashString(spanId, StandardCharsets.UTF_8).asLong();
+  }
+
+  /**
+   * Returns the 16 hex digits of a key, which is the span id itself for ids of 16 hex digits.
+   */
+  static String idOf(final long key) {
+    final String digits = Long.toHexString(key);
+    return "0".repeat(SPAN_ID_DIGITS - digits.length()) + digits;
+  }
+
+  private void await(final long parentKey, final int row, final long duration) {
+    if (this.pendingSize == this.pendingRows.length) {
+      final int capacity = this.pendingSize * 2;
+      this.pendingRows = Arrays.copyOf(this.pendingRows, capacity);
+      this.pendingDurations = Arrays.copyOf(this.pendingDurations, capacity);
+      this.pendingNext = Arrays.copyOf(this.pendingNext, capacity);
+      this.pendingLast = Arrays.copyOf(this.pendingLast, capacity);
+    }
+    final int position = this.pendingSize++;
+    this.pendingRows[position] = row;
+    this.pendingDurations[position] = duration;
+    this.pendingNext[position] = -1;
+    this.pendingLast[position] = position;
+
+    final int first = this.calls.get(parentKey);
+    if (first < 0) {
+      final int head = -first - 1;
+      this.pendingNext[this.pendingLast[head]] = position;
+      this.pendingLast[head] = position;
+    } else {
+      this.calls.put(parentKey, -position - 1);
+    }
+  }
+
+  private void link(final int callerRow, final int calleeRow, final long duration,
+                    final int requestCount, final long[] exclusiveDurations) {
+    if (duration != 0) {
+      exclusiveDurations[callerRow] -= duration;
+    }
+    final long key = (long) callerRow << 32 | calleeRow;
+    final int position = this.stepIndex.get(key);
+    if (position > 0) {
+      this.stepCounts[position - 1] += requestCount;
+      return;
+    }
+    if (this.stepSize == this.stepCallers.length) {
+      final int capacity = this.stepSize * 2;
+      this.stepCallers = Arrays.copyOf(this.stepCallers, capacity);
+      this.stepCallees = Arrays.copyOf(this.stepCallees, capacity);
+      this.stepCounts = Arrays.copyOf(this.stepCounts, capacity);
+    }
+    this.stepCallers[this.stepSize] = callerRow;
+    this.stepCallees[this.stepSize] = calleeRow;
+    this.stepCounts[this.stepSize] = requestCount;
+    this.stepIndex.put(key, ++this.stepSize);
+  }
+
+  /**
+   * Open addressing table from long keys to non-zero int values, in which zero marks an empty
+   * slot.
+   */
+  private static final class Table {
+
+    private long[] keys = new long[INITIAL_CAPACITY * 2];
+    private int[] values = new int[INITIAL_CAPACITY * 2];
+    private int size;
+
+    /**
+     * Returns the value of a key, or zero if the key is absent.
+     */
+    int get(final long key) {
+      return this.values[this.slotOf(key)];
+    }
+
+    /**
+     * Sets the value of a key and returns its previous value, or zero if the key was absent.
+     */
+    int put(final long key, final int value) {
+      int slot = this.slotOf(key);
+      final int previous = this.values[slot];
+      if (previous == 0) {
+        // Keep the load factor at most one half
+        if (++this.size * 2 > this.keys.length) {
+          this.resize();
+          slot = this.slotOf(key);
+        }
+        this.keys[slot] = key;
+      }
+      this.values[slot] = value;
+      return previous;
+    }
+
+    long sizeInBytes() {
+      return 24 + ColumnarTrace.ARRAY_HEADER * 2 + this.keys.length * 12L;
+    }
+
+    private int slotOf(final long key) {
+      final int mask = this.keys.length - 1;
+      int slot = hash(key) & mask;
+      while (this.values[slot] != 0 && this.keys[slot] != key) {
+        slot = (slot + 1) & mask;
+      }
+      return slot;
+    }
+
+    private void resize() {
+      final long[] oldKeys = this.keys;
+      final int[] oldValues = this.values;
+      this.keys = new long[oldKeys.length * 2];
+      this.values = new int[oldValues.length * 2];
+      for (int slot = 0; slot < oldKeys.length; slot++) {
+        if (oldValues[slot] != 0) {
+          final int newSlot = this.slotOf(oldKeys[slot]);
+          this.keys[newSlot] = oldKeys[slot];
+          this.values[newSlot] = oldValues[slot];
+        }
+      }
+    }
+
+    private static int hash(final long key) {
+      final long h = key * 0x9E3779B97F4A7C15L;
+      return (int) (h ^ (h >>> 32));
+    }
+  }
+
+}
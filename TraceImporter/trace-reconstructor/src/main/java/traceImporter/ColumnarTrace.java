@@ -0,0 +1,413 @@
+package traceImporter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * An open trace whose spans are held in primitive columns rather than as {@link EVSpan} records,
+ * i.e., a handful of arrays per trace instead of several objects per span. Names are replaced by
+ * ids of a {@link StringPool} shared by all open traces of a task. The {@link Trace} is only
+ * materialised when the trace is emitted or checkpointed.
+ *
+ * <p>Spans are aggregated exactly like the {@link IndexedTraceAggregator} does, i.e., spans with
+ * the same operation are folded into one, summing their request count, keeping the earliest
+ * start and latest end time, and keeping the {@link LatencyStatistics} of their durations. The
+ * statistics are held in primitive columns as well, with a histogram array per aggregated row, and
+ * calls are linked to their callers by a {@link ColumnarCallTree}. Avro records are only created
+ * by {@link #toTrace()} and {@link #toIndexedTrace()}.
+ */
+final class ColumnarTrace {
+
+  private static final int INITIAL_CAPACITY = 4;
+
+  private static final int EMPTY = 0;
+
+  /**
+   * Object header plus the fields of this class and its bit set, estimated for compressed oops.
+   */
+  private static final long SHALLOW_SIZE = 160;
+
+  static final long ARRAY_HEADER = 16;
+
+  private final StringPool pool;
+
+  private final String traceId;
+
+  private long startSeconds;
+  private int startNanos;
+  private long endNanos;
+
+  private int size;
+
+  private String[] spanIds = new String[INITIAL_CAPACITY];
+  private String[] parentSpanIdColumn = new String[INITIAL_CAPACITY];
+  private long[] startSecondsColumn = new long[INITIAL_CAPACITY];
+  private int[] startNanosColumn = new int[INITIAL_CAPACITY];
+  private long[] endNanosColumn = new long[INITIAL_CAPACITY];
+  private long[] durationColumn = new long[INITIAL_CAPACITY];
+  private long[] durationNanosColumn = new long[INITIAL_CAPACITY];
+  private long[] exclusiveDurationColumn = new long[INITIAL_CAPACITY];
+  private int[] requestCountColumn = new int[INITIAL_CAPACITY];
+  private int[] operationKeyColumn = new int[INITIAL_CAPACITY];
+  private int[] operationColumn = new int[INITIAL_CAPACITY];
+  private int[] hostnameColumn = new int[INITIAL_CAPACITY];
+  private int[] appNameColumn = new int[INITIAL_CAPACITY];
+
+  /**
+   * Latency statistics of the rows that aggregate more than a single call, whose histogram counts
+   * are null for the others.
+   */
+  private long[] minDurationColumn = new long[INITIAL_CAPACITY];
+  private long[] maxDurationColumn = new long[INITIAL_CAPACITY];
+  private long[] sumDurationColumn = new long[INITIAL_CAPACITY];
+  private int[] histogramOffsetColumn = new int[INITIAL_CAPACITY];
+  private int[][] histogramColumn = new int[INITIAL_CAPACITY][];
+
+  /**
+   * Operation, host name and app name ids of dictionary encoded spans, three per row, which is
+   * only allocated once an encoded span arrives.
+   */
+  private long[] dictionaryIdColumn;
+  private final BitSet encodedRows = new BitSet();
+
+  /**
+   * Open addressing table from operation key ids to row numbers plus one.
+   */
+  private int[] operationIndex = new int[INITIAL_CAPACITY * 2];
+
+  private ColumnarCallTree callTree = new ColumnarCallTree();
+
+  /**
+   * Creates an empty trace.
+   *
+   * @param traceId id of the trace
+   * @param pool pool for the names of the spans
+   */
+  ColumnarTrace(final String traceId, final StringPool pool) {
+    this.traceId = traceId;
+    this.pool = pool;
+  }
+
+  /**
+   * Restores an open trace from its materialised form, e.g., a checkpoint.
+   *
+   * @param indexedTrace the materialised trace
+   * @param pool pool for the names of the spans
+   * @return the open trace
+   */
+  static ColumnarTrace of(final IndexedTrace indexedTrace, final StringPool pool) {
+    final Trace trace = indexedTrace.getTrace();
+    final ColumnarTrace columnarTrace = new ColumnarTrace(trace.getTraceId(), pool);
+    for (final EVSpan evSpan : trace.getSpanList()) {
+      columnarTrace.addRow(evSpan, pool.idOf(SpanDictionary.operationKey(evSpan)));
+    }
+    columnarTrace.startSeconds = trace.getStartTime().getSeconds();
+    columnarTrace.startNanos = trace.getStartTime().getNanoAdjust();
+    columnarTrace.endNanos = Timestamps.endNanos(trace);
+    columnarTrace.callTree = ColumnarCallTree.of(indexedTrace.getCallTree(), trace.getSteps(),
+        columnarTrace.spanIds, columnarTrace.size);
+    return columnarTrace;
+  }
+
+  /**
+   * Folds a span into the trace.
+   *
+   * @param evSpan the span, which is not retained
+   */
+  void add(final EVSpan evSpan) {
+    final boolean first = this.size == 0;
+    final long spanStartSeconds = evSpan.getStartTime().getSeconds();
+    final int spanStartNanos = evSpan.getStartTime().getNanoAdjust();
+    final long spanEndNanos = Timestamps.endNanos(evSpan);
+
+    final int operationKey = this.pool.idOf(SpanDictionary.operationKey(evSpan));
+    int row = this.rowOf(operationKey);
+    if (row < 0) {
+      row = this.addRow(evSpan, operationKey);
+    } else {
+      this.requestCountColumn[row]++;
+      this.exclusiveDurationColumn[row] += CallTrees.exclusiveDuration(evSpan);
+      this.addLatency(row, evSpan);
+      if (compare(spanStartSeconds, spanStartNanos, this.startSecondsColumn[row],
+          this.startNanosColumn[row]) < 0) {
+        this.startSecondsColumn[row] = spanStartSeconds;
+        this.startNanosColumn[row] = spanStartNanos;
+      }
+      this.endNanosColumn[row] = Math.max(this.endNanosColumn[row], spanEndNanos);
+    }
+
+    // Update trace values with the running minimum and maximum
+    if (first
+        || compare(spanStartSeconds, spanStartNanos, this.startSeconds, this.startNanos) < 0) {
+      this.startSeconds = spanStartSeconds;
+      this.startNanos = spanStartNanos;
+    }
+    this.endNanos = first ? spanEndNanos : Math.max(this.endNanos, spanEndNanos);
+
+    this.callTree.add(row, evSpan, this.exclusiveDurationColumn);
+  }
+
+  /**
+   * Returns the number of distinct spans of the trace.
+   */
+  int size() {
+    return this.size;
+  }
+
+  /**
+   * Materialises the trace.
+   *
+   * @return a new trace, which does not share any mutable state with this open trace
+   */
+  Trace toTrace() {
+    final List<EVSpan> spanList = new ArrayList<>(this.size);
+    for (int row = 0; row < this.size; row++) {
+      SpanDictionaryIds dictionaryIds = null;
+      if (this.encodedRows.get(row)) {
+        dictionaryIds = new SpanDictionaryIds(this.dictionaryIdColumn[row * 3],
+            this.dictionaryIdColumn[row * 3 + 1], this.dictionaryIdColumn[row * 3 + 2]);
+      }
+      final EVSpan evSpan = new EVSpan(this.spanIds[row], this.traceId,
+          new Timestamp(this.startSecondsColumn[row], this.startNanosColumn[row]), 0L,
+          this.durationColumn[row], this.pool.valueOf(this.operationColumn[row]),
+          this.requestCountColumn[row], this.pool.valueOf(this.hostnameColumn[row]),
+          this.pool.valueOf(this.appNameColumn[row]), dictionaryIds, null, this.latencyOf(row),
+          this.parentSpanIdColumn[row], this.exclusiveDurationColumn[row],
+          this.durationNanosColumn[row]);
+      Timestamps.setEnd(evSpan, this.endNanosColumn[row]);
+      spanList.add(evSpan);
+    }
+
+    final Trace trace = new Trace(this.traceId, new Timestamp(this.startSeconds, this.startNanos),
+        0L, 0L, 1, 1, spanList, false, 0, null, this.callTree.toSteps(this.spanIds));
+    Timestamps.setEnd(trace, this.endNanos);
+    return trace;
+  }
+
+  /**
+   * Materialises the trace together with its call tree, e.g., as a checkpoint. The operation index
+   * is left empty, as it is rebuilt from the spans on restore.
+   */
+  IndexedTrace toIndexedTrace() {
+    return new IndexedTrace(this.toTrace(), new HashMap<>(), this.callTree.toCallTree());
+  }
+
+  /**
+   * Returns an estimate of the heap retained by this trace, excluding the shared pool.
+   */
+  long sizeInBytes() {
+    long bytes = SHALLOW_SIZE
+        + ARRAY_HEADER * 19 + this.spanIds.length * 4L * 3
+        + this.startSecondsColumn.length * 8L * 8
+        + this.requestCountColumn.length * 4L * 7
+        + this.operationIndex.length * 4L
+        + stringSize(this.traceId)
+        + this.callTree.sizeInBytes();
+    if (this.dictionaryIdColumn != null) {
+      bytes += ARRAY_HEADER + this.dictionaryIdColumn.length * 8L;
+    }
+    for (int row = 0; row < this.size; row++) {
+      bytes += stringSize(this.spanIds[row]);
+      if (this.parentSpanIdColumn[row] != null) {
+        bytes += stringSize(this.parentSpanIdColumn[row]);
+      }
+      if (this.histogramColumn[row] != null) {
+        bytes += ARRAY_HEADER + this.histogramColumn[row].length * 4L;
+      }
+    }
+    return bytes;
+  }
+
+  /**
+   * Estimates the heap retained by a string of compact (Latin-1) characters.
+   */
+  static long stringSize(final String value) {
+    return 24 + ARRAY_HEADER + ((value.length() + 7) & ~7);
+  }
+
+  private int addRow(final EVSpan evSpan, final int operationKey) {
+    if (this.size == this.spanIds.length) {
+      this.grow();
+    }
+    final int row = this.size++;
+
+    this.spanIds[row] = evSpan.getSpanId();
+    this.parentSpanIdColumn[row] = evSpan.getParentSpanId();
+    this.startSecondsColumn[row] = evSpan.getStartTime().getSeconds();
+    this.startNanosColumn[row] = evSpan.getStartTime().getNanoAdjust();
+    this.endNanosColumn[row] = Timestamps.endNanos(evSpan);
+    this.durationColumn[row] = evSpan.getDuration();
+    this.durationNanosColumn[row] = Timestamps.durationNanos(evSpan);
+    this.exclusiveDurationColumn[row] = CallTrees.exclusiveDuration(evSpan);
+    this.requestCountColumn[row] = evSpan.getRequestCount();
+    this.operationKeyColumn[row] = operationKey;
+    this.operationColumn[row] = this.pool.idOf(evSpan.getOperationName());
+    this.hostnameColumn[row] = this.pool.idOf(evSpan.getHostname());
+    this.appNameColumn[row] = this.pool.idOf(evSpan.getAppName());
+    final LatencyStats latency = evSpan.getLatency();
+    if (latency != null) {
+      this.minDurationColumn[row] = latency.getMinDuration();
+      this.maxDurationColumn[row] = latency.getMaxDuration();
+      this.sumDurationColumn[row] = latency.getSumDuration();
+      this.histogramOffsetColumn[row] = latency.getHistogramOffset();
+      final List<Integer> counts = latency.getHistogram();
+      final int[] histogram = new int[counts.size()];
+      for (int i = 0; i < histogram.length; i++) {
+        histogram[i] = counts.get(i);
+      }
+      this.histogramColumn[row] = histogram;
+    } else {
+      this.histogramColumn[row] = null;
+    }
+
+    final SpanDictionaryIds ids = evSpan.getDictionaryIds();
+    if (ids != null) {
+      if (this.dictionaryIdColumn == null) {
+        this.dictionaryIdColumn = new long[this.spanIds.length * 3];
+      }
+      this.dictionaryIdColumn[row * 3] = ids.getOperationId();
+      this.dictionaryIdColumn[row * 3 + 1] = ids.getHostnameId();
+      this.dictionaryIdColumn[row * 3 + 2] = ids.getAppNameId();
+      this.encodedRows.set(row);
+    }
+
+    this.index(operationKey, row);
+    return row;
+  }
+
+  /**
+   * Folds the calls of a span into the latency statistics of a row, which are created from the
+   * duration of its first call if the row held a single call so far.
+   */
+  private void addLatency(final int row, final EVSpan evSpan) {
+    if (this.histogramColumn[row] == null) {
+      final long duration = Math.max(0, this.durationNanosColumn[row]);
+      this.minDurationColumn[row] = duration;
+      this.maxDurationColumn[row] = duration;
+      this.sumDurationColumn[row] = duration;
+      this.histogramOffsetColumn[row] = LatencyStatistics.bucket(duration);
+      this.histogramColumn[row] = new int[] {1};
+    }
+
+    final LatencyStats latency = evSpan.getLatency();
+    if (latency == null) {
+      final long duration = Math.max(0, Timestamps.durationNanos(evSpan));
+      this.minDurationColumn[row] = Math.min(this.minDurationColumn[row], duration);
+      this.maxDurationColumn[row] = Math.max(this.maxDurationColumn[row], duration);
+      this.sumDurationColumn[row] += duration;
+      this.count(row, LatencyStatistics.bucket(duration), 1);
+      return;
+    }
+    this.minDurationColumn[row] = Math.min(this.minDurationColumn[row], latency.getMinDuration());
+    this.maxDurationColumn[row] = Math.max(this.maxDurationColumn[row], latency.getMaxDuration());
+    this.sumDurationColumn[row] += latency.getSumDuration();
+    final List<Integer> counts = latency.getHistogram();
+    for (int i = 0; i < counts.size(); i++) {
+      if (counts.get(i) != 0) {
+        this.count(row, latency.getHistogramOffset() + i, counts.get(i));
+      }
+    }
+  }
+
+  /**
+   * Adds to the count of a bucket of the histogram of a row, extending the histogram to the
+   * bucket if necessary.
+   */
+  private void count(final int row, final int bucket, final int count) {
+    int[] histogram = this.histogramColumn[row];
+    final int offset = this.histogramOffsetColumn[row];
+    if (bucket < offset) {
+      final int[] extended = new int[histogram.length + offset - bucket];
+      System.arraycopy(histogram, 0, extended, offset - bucket, histogram.length);
+      histogram = extended;
+      this.histogramOffsetColumn[row] = bucket;
+    } else if (bucket - offset >= histogram.length) {
+      histogram = Arrays.copyOf(histogram, bucket - offset + 1);
+    }
+    this.histogramColumn[row] = histogram;
+    histogram[bucket - this.histogramOffsetColumn[row]] += count;
+  }
+
+  /**
+   * Materialises the latency statistics of a row.
+   */
+  private LatencyStats latencyOf(final int row) {
+    final int[] histogram = this.histogramColumn[row];
+    if (histogram == null) {
+      return LatencyStatistics.of(this.durationNanosColumn[row]);
+    }
+    final List<Integer> counts = new ArrayList<>(histogram.length);
+    for (final int count : histogram) {
+      counts.add(count);
+    }
+    return new LatencyStats(this.minDurationColumn[row], this.maxDurationColumn[row],
+        this.sumDurationColumn[row], this.histogramOffsetColumn[row], counts);
+  }
+
+  private int rowOf(final int operationKey) {
+    final int mask = this.operationIndex.length - 1;
+    for (int slot = hash(operationKey) & mask; this.operationIndex[slot] != EMPTY;
+         slot = (slot + 1) & mask) {
+      final int row = this.operationIndex[slot] - 1;
+      if (this.operationKeyColumn[row] == operationKey) {
+        return row;
+      }
+    }
+    return -1;
+  }
+
+  private void index(final int operationKey, final int row) {
+    final int mask = this.operationIndex.length - 1;
+    int slot = hash(operationKey) & mask;
+    while (this.operationIndex[slot] != EMPTY) {
+      slot = (slot + 1) & mask;
+    }
+    this.operationIndex[slot] = row + 1;
+  }
+
+  private void grow() {
+    final int capacity = this.spanIds.length * 2;
+    this.spanIds = Arrays.copyOf(this.spanIds, capacity);
+    this.parentSpanIdColumn = Arrays.copyOf(this.parentSpanIdColumn, capacity);
+    this.startSecondsColumn = Arrays.copyOf(this.startSecondsColumn, capacity);
+    this.startNanosColumn = Arrays.copyOf(this.startNanosColumn, capacity);
+    this.endNanosColumn = Arrays.copyOf(this.endNanosColumn, capacity);
+    this.durationColumn = Arrays.copyOf(this.durationColumn, capacity);
+    this.durationNanosColumn = Arrays.copyOf(this.durationNanosColumn, capacity);
+    this.exclusiveDurationColumn = Arrays.copyOf(this.exclusiveDurationColumn, capacity);
+    this.requestCountColumn = Arrays.copyOf(this.requestCountColumn, capacity);
+    this.operationKeyColumn = Arrays.copyOf(this.operationKeyColumn, capacity);
+    this.operationColumn = Arrays.copyOf(this.operationColumn, capacity);
+    this.hostnameColumn = Arrays.copyOf(this.hostnameColumn, capacity);
+    this.appNameColumn = Arrays.copyOf(this.appNameColumn, capacity);
+    this.minDurationColumn = Arrays.copyOf(this.minDurationColumn, capacity);
+    this.maxDurationColumn = Arrays.copyOf(this.maxDurationColumn, capacity);
+    this.sumDurationColumn = Arrays.copyOf(this.sumDurationColumn, capacity);
+    this.histogramOffsetColumn = Arrays.copyOf(this.histogramOffsetColumn, capacity);
+    this.histogramColumn = Arrays.copyOf(this.histogramColumn, capacity);
+    if (this.dictionaryIdColumn != null) {
+      this.dictionaryIdColumn = Arrays.copyOf(this.dictionaryIdColumn, capacity * 3);
+    }
+
+    // Keep the load factor of the index at most one half
+    this.operationIndex = new int[capacity * 2];
+    for (int row = 0; row < this.size; row++) {
+      this.index(this.operationKeyColumn[row], row);
+    }
+  }
+
+  private static int hash(final int id) {
+    final int h = id * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  private static int compare(final long seconds1, final int nanos1, final long seconds2,
+                             final int nanos2) {
+    final int bySeconds = Long.compare(seconds1, seconds2);
+    return bySeconds != 0 ? bySeconds : Integer.compare(nanos1, nanos2);
+  }
+
+}
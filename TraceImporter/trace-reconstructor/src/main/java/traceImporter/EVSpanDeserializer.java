@@ -0,0 +1,195 @@
+package traceImporter;
+
+import io.confluent.kafka.schemaregistry.client.SchemaRegistryClient;
+import io.confluent.kafka.schemaregistry.client.rest.exceptions.RestClientException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+
+/**
+ * Deserializes {@link EVSpan}s in the wire format of the Confluent Avro serializer. Spans written
+ * with the schema of this {@link EVSpan} class are decoded directly from the bytes, without the
+ * schema resolution of a generic Avro reader. Spans written with any other schema, e.g., an older
+ * or newer version, are passed to the given fallback deserializer.
+ *
+ * <p>Whether a schema id refers to the schema of this class is looked up once per id.
+ */
+public class EVSpanDeserializer implements Deserializer<EVSpan> {
+
+  private static final byte MAGIC_BYTE = 0;
+
+  private static final int HEADER_LENGTH = 5;
+
+  private final SchemaRegistryClient registry;
+
+  private final Deserializer<EVSpan> fallback;
+
+  private final Map<Integer, Boolean> directIds = new ConcurrentHashMap<>();
+
+  /**
+   * Creates a new deserializer.
+   *
+   * @param registry the schema registry
+   * @param fallback deserializes spans written with other schemas
+   */
+  public EVSpanDeserializer(final SchemaRegistryClient registry,
+                            final Deserializer<EVSpan> fallback) {
+    this.registry = registry;
+    this.fallback = fallback;
+  }
+
+  @Override
+  public void configure(final Map<String, ?> configs, final boolean isKey) {
+    this.fallback.configure(configs, isKey);
+  }
+
+  @Override
+  public EVSpan deserialize(final String topic, final byte[] data) {
+    if (data == null) {
+      return null;
+    }
+    if (data.length < HEADER_LENGTH || data[0] != MAGIC_BYTE) {
+      throw new SerializationException("Unknown magic byte");
+    }
+    final int schemaId = (data[1] & 0xFF) << 24 | (data[2] & 0xFF) << 16
+        | (data[3] & 0xFF) << 8 | data[4] & 0xFF;
+
+    if (!this.directIds.computeIfAbsent(schemaId, this::isOwnSchema)) {
+      return this.fallback.deserialize(topic, data);
+    }
+    try {
+      return new Reader(data, HEADER_LENGTH).readSpan();
+    } catch (final ArrayIndexOutOfBoundsException | IOException e) {
+      throw new SerializationException("Malformed span of schema " + schemaId, e);
+    }
+  }
+
+  private boolean isOwnSchema(final int schemaId) {
+    try {
+      return EVSpan.SCHEMA$.equals(this.registry.getById(schemaId));
+    } catch (final IOException | RestClientException e) {
+      throw new SerializationException("Cannot retrieve schema " + schemaId, e);
+    }
+  }
+
+  @Override
+  public void close() {
+    this.fallback.close();
+  }
+
+  /**
+   * Reads the Avro binary encoding of an {@link EVSpan}, field by field in the order of its
+   * schema.
+   */
+  private static class Reader {
+
+    private final byte[] data;
+
+    private int position;
+
+    Reader(final byte[] data, final int position) {
+      this.data = data;
+      this.position = position;
+    }
+
+    EVSpan readSpan() throws IOException {
+      final String spanId = this.readString();
+      final String traceId = this.readString();
+      final Timestamp startTime = new Timestamp(this.readLong(), this.readInt());
+      final long endTime = this.readLong();
+      final long duration = this.readLong();
+      final String operationName = this.readUnionBranch() ? this.readString() : null;
+      final int requestCount = this.readInt();
+      final String hostname = this.readUnionBranch() ? this.readString() : null;
+      final String appName = this.readUnionBranch() ? this.readString() : null;
+
+      final SpanDictionaryIds dictionaryIds =
+          this.readUnionBranch() ? new SpanDictionaryIds(this.readLong(), this.readLong(),
+              this.readLong()) : null;
+      final Timestamp endTimestamp =
+          this.readUnionBranch() ? new Timestamp(this.readLong(), this.readInt()) : null;
+      final LatencyStats latency = this.readUnionBranch() ? this.readLatency() : null;
+      final String parentSpanId = this.readUnionBranch() ? this.readString() : null;
+      final Long exclusiveDuration = this.readUnionBranch() ? this.readLong() : null;
+      final Long durationNanos = this.readUnionBranch() ? this.readLong() : null;
+
+      if (this.position != this.data.length) {
+        throw new IOException((this.data.length - this.position) + " trailing bytes");
+      }
+      return new EVSpan(spanId, traceId, startTime, endTime, duration, operationName,
+          requestCount, hostname, appName, dictionaryIds, endTimestamp, latency, parentSpanId,
+          exclusiveDuration, durationNanos);
+    }
+
+    private LatencyStats readLatency() throws IOException {
+      final long minDuration = this.readLong();
+      final long maxDuration = this.readLong();
+      final long sumDuration = this.readLong();
+      final int histogramOffset = this.readInt();
+
+      // Arrays are encoded in blocks, each prefixed by its item count and terminated by an empty
+      // block, a negative count is followed by the size of the block in bytes
+      final List<Integer> histogram = new ArrayList<>();
+      for (long count = this.readLong(); count != 0; count = this.readLong()) {
+        if (count < 0) {
+          count = -count;
+          this.readLong();
+        }
+        for (long i = 0; i < count; i++) {
+          histogram.add(this.readInt());
+        }
+      }
+      return new LatencyStats(minDuration, maxDuration, sumDuration, histogramOffset, histogram);
+    }
+
+    /**
+     * Reads the branch of a union of null and another type.
+     *
+     * @return whether a value follows
+     */
+    private boolean readUnionBranch() throws IOException {
+      final long branch = this.readLong();
+      if (branch != 0 && branch != 1) {
+        throw new IOException("Unknown union branch " + branch);
+      }
+      return branch == 1;
+    }
+
+    private long readLong() throws IOException {
+      long n = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+        final byte b = this.data[this.position++];
+        n |= (long) (b & 0x7F) << shift;
+        if (b >= 0) {
+          return (n >>> 1) ^ -(n & 1);
+        }
+      }
+      throw new IOException("Malformed varint");
+    }
+
+    private int readInt() throws IOException {
+      final long value = this.readLong();
+      if (value != (int) value) {
+        throw new IOException("Int out of range: " + value);
+      }
+      return (int) value;
+    }
+
+    private String readString() throws IOException {
+      final long length = this.readLong();
+      if (length < 0 || length > this.data.length - this.position) {
+        throw new IOException("String of " + length + " bytes is truncated");
+      }
+      final String value =
+          new String(this.data, this.position, (int) length, StandardCharsets.UTF_8);
+      this.position += (int) length;
+      return value;
+    }
+  }
+
+}
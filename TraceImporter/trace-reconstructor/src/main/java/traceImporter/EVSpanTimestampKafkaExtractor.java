@@ -3,21 +3,20 @@ package traceImporter;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.streams.processor.TimestampExtractor;
 
-import java.time.Instant;
-
 public class EVSpanTimestampKafkaExtractor implements TimestampExtractor {
 
     @Override
     public long extract(final ConsumerRecord<Object, Object> record, final long previousTimestamp) {
-        final EVSpan span = (EVSpan) record.value();
+        final EVSpan span;
+        if (record.value() instanceof EVSpanBatch) {
+            // A batch is stamped with the start of its earliest span
+            span = earliestSpan((EVSpanBatch) record.value());
+        } else {
+            span = (EVSpan) record.value();
+        }
 
         if (span != null) {
-            // timestamp = Duration.ofNanos(span.getStartTime()).toMillis();
-            // timestamp = Instant.ofEpochMilli(span.getStartTime()).toEpochMilli();
-            return Instant
-                .ofEpochSecond(span.getStartTime().getSeconds(),
-                    span.getStartTime().getNanoAdjust())
-                .toEpochMilli();
+            return startMillis(span);
         }
 
         // Invalid timestamp! Attempt to estimate a new timestamp,
@@ -31,5 +30,25 @@ public class EVSpanTimestampKafkaExtractor implements TimestampExtractor {
 
     }
 
+    /**
+     * Returns the start of a span in milliseconds since the epoch, its timestamp in the streams.
+     */
+    static long startMillis(final EVSpan span) {
+        return Timestamps.toMillis(span.getStartTime());
+    }
+
+    private static EVSpan earliestSpan(final EVSpanBatch batch) {
+        EVSpan earliest = null;
+        for (final EVSpan s : batch.getSpans()) {
+            if (earliest == null
+                || s.getStartTime().getSeconds() < earliest.getStartTime().getSeconds()
+                || s.getStartTime().getSeconds() == earliest.getStartTime().getSeconds()
+                && s.getStartTime().getNanoAdjust() < earliest.getStartTime().getNanoAdjust()) {
+                earliest = s;
+            }
+        }
+        return earliest;
+    }
+
 
 }
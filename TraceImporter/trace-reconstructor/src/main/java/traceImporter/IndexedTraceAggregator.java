@@ -0,0 +1,101 @@
+package traceImporter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.kafka.streams.kstream.Aggregator;
+
+/**
+ * Aggregates {@link EVSpan}s to an {@link IndexedTrace}. Spans are deduplicated via an index that
+ * maps each operation name to the position of its span in the trace's span list, and the start and
+ * end time of the trace are maintained as running minimum and maximum. The durations of the calls
+ * of each operation are kept as {@link LatencyStatistics}, and each span is linked to its caller
+ * and callees by the {@link CallTrees}. Thus, each span is folded into the trace in constant time,
+ * regardless of the number of distinct operations in the trace.
+ */
+public class IndexedTraceAggregator implements Aggregator<String, EVSpan, IndexedTrace> {
+
+  @Override
+  public IndexedTrace apply(final String traceId, final EVSpan evSpan,
+                            final IndexedTrace indexedTrace) {
+
+    final Trace trace = indexedTrace.getTrace();
+
+    if (trace == null) {
+      // Initialize trace according to first span of the trace
+      final long endNanos = Timestamps.endNanos(evSpan);
+      Timestamps.setEnd(evSpan, endNanos);
+      evSpan.setExclusiveDuration(CallTrees.exclusiveDuration(evSpan));
+      evSpan.setLatency(LatencyStatistics.of(evSpan));
+      final Trace newTrace = new Trace();
+      newTrace.setSpanList(new ArrayList<>());
+      newTrace.getSpanList().add(evSpan);
+      newTrace.setSteps(new ArrayList<>());
+
+      newTrace.setStartTime(evSpan.getStartTime());
+      newTrace.setOverallRequestCount(1);
+      Timestamps.setEnd(newTrace, endNanos);
+
+      newTrace.setTraceCount(1);
+
+      // set initial trace id - do not change, since this is the major key for kafka
+      // partitioning
+      newTrace.setTraceId(evSpan.getTraceId());
+
+      final Map<String, Integer> operationIndex = new HashMap<>();
+      operationIndex.put(SpanDictionary.operationKey(evSpan), 0);
+
+      indexedTrace.setTrace(newTrace);
+      indexedTrace.setOperationIndex(operationIndex);
+      indexedTrace.setCallTree(CallTrees.empty());
+      CallTrees.add(indexedTrace.getCallTree(), newTrace.getSteps(),
+          CallTrees.rows(newTrace.getSpanList()), 0, evSpan);
+      return indexedTrace;
+    }
+
+    // Find duplicates in Trace (via fqn), aggregate based on request count
+    final String operationKey = SpanDictionary.operationKey(evSpan);
+    final Integer position = indexedTrace.getOperationIndex().get(operationKey);
+    final long endNanos = Timestamps.endNanos(evSpan);
+    final int row;
+    if (position == null) {
+      Timestamps.setEnd(evSpan, endNanos);
+      evSpan.setExclusiveDuration(CallTrees.exclusiveDuration(evSpan));
+      evSpan.setLatency(LatencyStatistics.of(evSpan));
+      row = trace.getSpanList().size();
+      indexedTrace.getOperationIndex().put(operationKey, row);
+      trace.getSpanList().add(evSpan);
+    } else {
+      row = position;
+      final EVSpan s = trace.getSpanList().get(position);
+      s.setRequestCount(s.getRequestCount() + 1);
+      s.setExclusiveDuration(
+          CallTrees.exclusiveDuration(s) + CallTrees.exclusiveDuration(evSpan));
+      LatencyStatistics.add(s, evSpan);
+
+      if (Timestamps.compare(evSpan.getStartTime(), s.getStartTime()) < 0) {
+        s.setStartTime(evSpan.getStartTime());
+      }
+
+      if (endNanos > Timestamps.endNanos(s)) {
+        Timestamps.setEnd(s, endNanos);
+      }
+    }
+
+    // Update trace values with the running minimum and maximum
+    if (Timestamps.compare(evSpan.getStartTime(), trace.getStartTime()) < 0) {
+      trace.setStartTime(evSpan.getStartTime());
+    }
+    Timestamps.setEnd(trace, Math.max(Timestamps.endNanos(trace), endNanos));
+
+    // Traces aggregated before the call tree was kept start with an empty one
+    if (indexedTrace.getCallTree() == null) {
+      indexedTrace.setCallTree(CallTrees.empty());
+    }
+    CallTrees.add(indexedTrace.getCallTree(), trace.getSteps(),
+        CallTrees.rows(trace.getSpanList()), row, evSpan);
+
+    return indexedTrace;
+  }
+
+}
@@ -0,0 +1,76 @@
+package traceImporter;
+
+import org.apache.kafka.streams.kstream.Merger;
+
+/**
+ * Merges two {@link IndexedTrace}s of the same trace id, e.g., if a span bridges the inactivity gap
+ * between two sessions of the trace. The spans of the smaller trace are folded into the larger
+ * one, summing the request counts and merging the latency statistics of spans with the same
+ * operation. Calls that were pending in either session for a caller in the other are linked.
+ */
+public class IndexedTraceMerger implements Merger<String, IndexedTrace> {
+
+  @Override
+  public IndexedTrace apply(final String traceId, final IndexedTrace aggOne,
+                            final IndexedTrace aggTwo) {
+
+    if (aggOne.getTrace() == null) {
+      return aggTwo;
+    }
+    if (aggTwo.getTrace() == null) {
+      return aggOne;
+    }
+
+    final boolean oneIsLarger =
+        aggOne.getTrace().getSpanList().size() >= aggTwo.getTrace().getSpanList().size();
+    final IndexedTrace target = oneIsLarger ? aggOne : aggTwo;
+    final IndexedTrace sourceIndexedTrace = oneIsLarger ? aggTwo : aggOne;
+    final Trace source = sourceIndexedTrace.getTrace();
+    final Trace trace = target.getTrace();
+
+    final int[] rowMapping = new int[source.getSpanList().size()];
+    for (int sourceRow = 0; sourceRow < rowMapping.length; sourceRow++) {
+      final EVSpan evSpan = source.getSpanList().get(sourceRow);
+      final String operationKey = SpanDictionary.operationKey(evSpan);
+      final Integer position = target.getOperationIndex().get(operationKey);
+      if (position == null) {
+        evSpan.setExclusiveDuration(CallTrees.exclusiveDuration(evSpan));
+        evSpan.setLatency(LatencyStatistics.of(evSpan));
+        rowMapping[sourceRow] = trace.getSpanList().size();
+        target.getOperationIndex().put(operationKey, trace.getSpanList().size());
+        trace.getSpanList().add(evSpan);
+      } else {
+        rowMapping[sourceRow] = position;
+        final EVSpan s = trace.getSpanList().get(position);
+        s.setRequestCount(s.getRequestCount() + evSpan.getRequestCount());
+        s.setExclusiveDuration(
+            CallTrees.exclusiveDuration(s) + CallTrees.exclusiveDuration(evSpan));
+        LatencyStatistics.add(s, evSpan);
+
+        if (Timestamps.compare(evSpan.getStartTime(), s.getStartTime()) < 0) {
+          s.setStartTime(evSpan.getStartTime());
+        }
+
+        if (Timestamps.endNanos(evSpan) > Timestamps.endNanos(s)) {
+          Timestamps.setEnd(s, Timestamps.endNanos(evSpan));
+        }
+      }
+    }
+
+    if (Timestamps.compare(source.getStartTime(), trace.getStartTime()) < 0) {
+      trace.setStartTime(source.getStartTime());
+    }
+    Timestamps.setEnd(trace, Math.max(Timestamps.endNanos(trace), Timestamps.endNanos(source)));
+
+    if (target.getCallTree() == null) {
+      target.setCallTree(CallTrees.empty());
+    }
+    if (sourceIndexedTrace.getCallTree() != null) {
+      CallTrees.merge(target.getCallTree(), trace.getSteps(), CallTrees.rows(trace.getSpanList()),
+          sourceIndexedTrace.getCallTree(), source.getSteps(), rowMapping);
+    }
+
+    return target;
+  }
+
+}
@@ -8,13 +8,31 @@ public final class KafkaConfig {
 
   public static final String REGISTRY_URL = "http://localhost:8081";
 
-  public static final int COMMIT_INTERVAL_MS = 2 * 1000;
+  public static final long COMMIT_INTERVAL_MS = 2 * 1000;
+
+  public static final long WINDOW_SIZE_MS = 4 * 1000;
+
+  public static final long GRACE_PERIOD_MS = 2 * 1000;
+
+  public static final long INACTIVITY_GAP_MS = 1000;
+
+  public static final long TRACE_SHAPE_RETENTION_MS = 60 * 60 * 1000;
 
   public static final Class<EVSpanTimestampKafkaExtractor> TIMESTAMP_EXTRACTOR =
       EVSpanTimestampKafkaExtractor.class;
 
   public static final String IN_TOPIC = "explorviz-spans";
 
+  public static final String BATCH_IN_TOPIC = "explorviz-span-batches";
+
   public static final String OUT_TOPIC = "explorviz-traces";
 
+  public static final String DELTA_OUT_TOPIC = "explorviz-trace-deltas";
+
+  public static final String DICTIONARY_TOPIC = "explorviz-span-dictionary";
+
+  public static final String DICTIONARY_STORE = "span-dictionary";
+
+  public static final int METRICS_PORT = 9102;
+
 }
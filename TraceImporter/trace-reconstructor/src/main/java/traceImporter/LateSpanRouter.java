@@ -0,0 +1,151 @@
+package traceImporter;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import org.apache.avro.specific.SpecificRecord;
+import org.apache.kafka.common.metrics.Sensor;
+import org.apache.kafka.streams.kstream.TimeWindows;
+import org.apache.kafka.streams.kstream.ValueTransformerWithKey;
+import org.apache.kafka.streams.kstream.Window;
+import org.apache.kafka.streams.kstream.Windowed;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.processor.PunctuationType;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.KeyValueStore;
+
+/**
+ * Separates the spans that arrive after their tumbling window closed, which the windowed
+ * aggregation would drop, from the spans in time. The stream time and the close of windows are
+ * tracked like the windowed aggregation of the DSL does, thus the router must run in the same
+ * task as the aggregation.
+ *
+ * <p>Spans in time are passed on. Late spans are merged into a patch per trace and window in the
+ * store, by the {@link IndexedTraceAggregator}, and the patch is passed on as a {@link Trace}
+ * flagged as late that contains all late spans of the trace in the window so far. Spans that
+ * arrive later than the horizon after their window closed are dropped. The router is only
+ * installed with a horizon, without one the aggregation drops late spans itself. Patched and
+ * dropped spans are counted as {@value #PATCHED_LATE_SPANS} and
+ * {@value OpenTraceTransformer#DROPPED_LATE_SPANS} in the {@link PipelineMetrics} of the
+ * reconstruction stage.
+ */
+public class LateSpanRouter
+    implements ValueTransformerWithKey<String, EVSpan, Iterable<SpecificRecord>> {
+
+  /**
+   * Spans that arrived after their window closed, but within the horizon.
+   */
+  public static final String PATCHED_LATE_SPANS = "patched-late-spans";
+
+  private static final Comparator<EVSpan> START_TIME_ORDER =
+      Comparator.comparingLong(span -> Timestamps.toNanos(span.getStartTime()));
+
+  private final String storeName;
+
+  private final TimeWindows windows;
+
+  private final long windowSizeMs;
+
+  private final long gracePeriodMs;
+
+  private final long horizonMs;
+
+  private final IndexedTraceAggregator aggregator = new IndexedTraceAggregator();
+
+  private ProcessorContext context;
+
+  private KeyValueStore<Windowed<String>, IndexedTrace> patchStore;
+
+  private long streamTime = -1;
+
+  private Sensor patchedSpansSensor;
+
+  private Sensor droppedSpansSensor;
+
+  /**
+   * Creates a new router.
+   *
+   * @param storeName name of the store of the patches by trace id and window
+   * @param windowSize size of the tumbling windows
+   * @param gracePeriod time after the end of a window in which spans are still aggregated
+   * @param horizon time after the close of a window in which late spans are still patched, must
+   *        not be zero
+   */
+  public LateSpanRouter(final String storeName, final Duration windowSize,
+                        final Duration gracePeriod, final Duration horizon) {
+    this.storeName = storeName;
+    this.windows = TimeWindows.of(windowSize);
+    this.windowSizeMs = windowSize.toMillis();
+    this.gracePeriodMs = gracePeriod.toMillis();
+    this.horizonMs = horizon.toMillis();
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public void init(final ProcessorContext context) {
+    this.context = context;
+    this.patchedSpansSensor = PipelineMetrics.throughputSensor(context.metrics(),
+        SpanToTraceReconstructorStream.RECONSTRUCTION_STAGE, PATCHED_LATE_SPANS);
+    this.droppedSpansSensor = PipelineMetrics.throughputSensor(context.metrics(),
+        SpanToTraceReconstructorStream.RECONSTRUCTION_STAGE,
+        OpenTraceTransformer.DROPPED_LATE_SPANS);
+
+    this.patchStore =
+        (KeyValueStore<Windowed<String>, IndexedTrace>) context.getStateStore(this.storeName);
+    context.schedule(Duration.ofMillis(this.windowSizeMs), PunctuationType.STREAM_TIME,
+        this::expire);
+  }
+
+  @Override
+  public Iterable<SpecificRecord> transform(final String traceId, final EVSpan span) {
+    final long timestamp = this.context.timestamp();
+    this.streamTime = Math.max(this.streamTime, timestamp);
+
+    final Window window = this.windows.windowsFor(timestamp).values().iterator().next();
+    final long closeTime = window.end() + this.gracePeriodMs;
+    if (closeTime > this.streamTime) {
+      return List.of(span);
+    }
+    if (closeTime + this.horizonMs <= this.streamTime) {
+      this.droppedSpansSensor.record();
+      return List.of();
+    }
+
+    final Windowed<String> key = new Windowed<>(traceId, window);
+    IndexedTrace patch = this.patchStore.get(key);
+    if (patch == null) {
+      patch = new IndexedTrace();
+    }
+    patch = this.aggregator.apply(traceId, span, patch);
+    final Trace trace = patch.getTrace();
+    trace.setLate(true);
+    trace.setLateSpanCount(trace.getLateSpanCount() + 1);
+    this.patchStore.put(key, patch);
+    this.patchedSpansSensor.record();
+
+    final List<EVSpan> spans = new ArrayList<>(trace.getSpanList());
+    spans.sort(START_TIME_ORDER);
+    return List.of(Trace.newBuilder(trace).setSpanList(spans).build());
+  }
+
+  /**
+   * Removes the patches of windows that closed longer than the horizon ago.
+   */
+  private void expire(final long streamTime) {
+    final List<Windowed<String>> expired = new ArrayList<>();
+    try (KeyValueIterator<Windowed<String>, IndexedTrace> iterator = this.patchStore.all()) {
+      iterator.forEachRemaining(entry -> {
+        if (entry.key.window().end() + this.gracePeriodMs + this.horizonMs <= streamTime) {
+          expired.add(entry.key);
+        }
+      });
+    }
+    expired.forEach(this.patchStore::delete);
+  }
+
+  @Override
+  public void close() {
+  }
+
+}
@@ -0,0 +1,170 @@
+package traceImporter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming statistics of the durations of the calls that were folded into an aggregated
+ * {@link EVSpan}, i.e., its {@link LatencyStats}.
+ *
+ * <p>Durations in nanoseconds are counted in a log-linear histogram with {@value #SUB_BUCKETS}
+ * buckets per power of two, thus a bucket's bounds are within 25% of each other. Durations below
+ * {@value #SUB_BUCKETS} nanoseconds have a bucket each and negative durations count as zero. The
+ * histogram holds the counts of the consecutive buckets from its offset to the last non-empty
+ * bucket, such that a span of a single call carries a single count. Recording a duration and
+ * merging are bounded by the number of buckets, which is fixed, and histograms of the same
+ * operation merge by adding their counts, regardless of the order of the calls.
+ */
+final class LatencyStatistics {
+
+  private static final int SUB_BUCKET_BITS = 2;
+
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  private LatencyStatistics() {
+    // Utility class
+  }
+
+  /**
+   * Returns the statistics of a single call.
+   */
+  static LatencyStats of(final long duration) {
+    final long clamped = Math.max(0, duration);
+    final List<Integer> histogram = new ArrayList<>(1);
+    histogram.add(1);
+    return new LatencyStats(clamped, clamped, clamped, bucket(clamped), histogram);
+  }
+
+  /**
+   * Returns the statistics of a span, which are created from its duration if the span is a
+   * single call that was not aggregated yet.
+   */
+  static LatencyStats of(final EVSpan span) {
+    return span.getLatency() != null ? span.getLatency() : of(Timestamps.durationNanos(span));
+  }
+
+  /**
+   * Folds the calls of a span into an aggregated span of the same operation, whose statistics are
+   * created first if it was aggregated before they were kept.
+   *
+   * @param aggregated the span to update
+   * @param span a single call or an aggregated span, which is not modified
+   */
+  static void add(final EVSpan aggregated, final EVSpan span) {
+    final LatencyStats stats = of(aggregated);
+    aggregated.setLatency(stats);
+    add(stats, span);
+  }
+
+  /**
+   * Folds the calls of a span into the statistics of its operation.
+   *
+   * @param stats the statistics to update
+   * @param span a single call or an aggregated span, which is not modified
+   */
+  static void add(final LatencyStats stats, final EVSpan span) {
+    if (span.getLatency() != null) {
+      merge(stats, span.getLatency());
+      return;
+    }
+    final long duration = Math.max(0, Timestamps.durationNanos(span));
+    stats.setMinDuration(Math.min(stats.getMinDuration(), duration));
+    stats.setMaxDuration(Math.max(stats.getMaxDuration(), duration));
+    stats.setSumDuration(stats.getSumDuration() + duration);
+    increment(stats, bucket(duration), 1);
+  }
+
+  /**
+   * Adds the statistics of other calls of the same operation.
+   *
+   * @param target the statistics to update
+   * @param source the statistics to add, which are not modified
+   */
+  static void merge(final LatencyStats target, final LatencyStats source) {
+    target.setMinDuration(Math.min(target.getMinDuration(), source.getMinDuration()));
+    target.setMaxDuration(Math.max(target.getMaxDuration(), source.getMaxDuration()));
+    target.setSumDuration(target.getSumDuration() + source.getSumDuration());
+    final List<Integer> counts = source.getHistogram();
+    for (int i = 0; i < counts.size(); i++) {
+      if (counts.get(i) != 0) {
+        increment(target, source.getHistogramOffset() + i, counts.get(i));
+      }
+    }
+  }
+
+  /**
+   * Returns the number of calls counted by the statistics.
+   */
+  static long count(final LatencyStats stats) {
+    long count = 0;
+    for (final int bucketCount : stats.getHistogram()) {
+      count += bucketCount;
+    }
+    return count;
+  }
+
+  /**
+   * Estimates the duration within which the given fraction of the calls completed, i.e., the lower
+   * bound of the bucket that contains the quantile, clamped to the minimum and maximum.
+   *
+   * @param stats the statistics
+   * @param quantile fraction of the calls between zero and one
+   * @return the estimated duration in nanoseconds
+   */
+  static long quantile(final LatencyStats stats, final double quantile) {
+    final long rank = (long) Math.ceil(quantile * count(stats));
+    final List<Integer> counts = stats.getHistogram();
+    long seen = 0;
+    int index = 0;
+    while (index < counts.size() - 1 && (seen += counts.get(index)) < rank) {
+      index++;
+    }
+    final long lowerBound = lowerBound(stats.getHistogramOffset() + index);
+    return Math.min(stats.getMaxDuration(), Math.max(stats.getMinDuration(), lowerBound));
+  }
+
+  /**
+   * Returns the bucket of a non-negative duration.
+   */
+  static int bucket(final long duration) {
+    if (duration < SUB_BUCKETS) {
+      return (int) duration;
+    }
+    final int exponent = 63 - Long.numberOfLeadingZeros(duration);
+    final int subBucket = (int) (duration >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  /**
+   * Returns the smallest duration of a bucket.
+   */
+  static long lowerBound(final int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    final int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+    return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+  }
+
+  private static void increment(final LatencyStats stats, final int bucket, final int count) {
+    final List<Integer> counts = stats.getHistogram();
+    final int offset = stats.getHistogramOffset();
+    if (bucket < offset) {
+      // Prepend the empty buckets between the new first bucket and the previous one
+      final List<Integer> extended = new ArrayList<>(counts.size() + offset - bucket);
+      extended.add(count);
+      for (int i = bucket + 1; i < offset; i++) {
+        extended.add(0);
+      }
+      extended.addAll(counts);
+      stats.setHistogram(extended);
+      stats.setHistogramOffset(bucket);
+      return;
+    }
+    while (counts.size() <= bucket - offset) {
+      counts.add(0);
+    }
+    counts.set(bucket - offset, counts.get(bucket - offset) + count);
+  }
+
+}
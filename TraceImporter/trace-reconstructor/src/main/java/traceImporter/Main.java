@@ -3,14 +3,25 @@ package traceImporter;
 import io.confluent.kafka.schemaregistry.client.CachedSchemaRegistryClient;
 import io.confluent.kafka.schemaregistry.client.SchemaRegistryClient;
 import java.io.IOException;
+import org.apache.kafka.common.config.ConfigException;
 
 public class Main {
 
   public static void main(final String[] args) throws IOException, InterruptedException {
 
+    final ReconstructorConfig config;
+    try {
+      config = ReconstructorConfig.load(args, System.getenv());
+    } catch (final ConfigException e) {
+      System.err.println("Invalid configuration: " + e.getMessage());
+      System.exit(1);
+      return;
+    }
+
     // TODO set reasonable value
-    final SchemaRegistryClient src = new CachedSchemaRegistryClient(KafkaConfig.REGISTRY_URL, 20);
+    final SchemaRegistryClient src =
+        new CachedSchemaRegistryClient(config.getString(ReconstructorConfig.REGISTRY_URL), 20);
 
-    new SpanToTraceReconstructorStream(src).run();
+    new SpanToTraceReconstructorStream(src, config).run();
   }
 }
@@ -0,0 +1,223 @@
+package traceImporter;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.metrics.Sensor;
+import org.apache.kafka.common.metrics.stats.Value;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.kstream.TimeWindows;
+import org.apache.kafka.streams.kstream.Transformer;
+import org.apache.kafka.streams.kstream.Window;
+import org.apache.kafka.streams.kstream.Windowed;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.processor.PunctuationType;
+import org.apache.kafka.streams.state.KeyValueIterator;
+
+/**
+ * Aggregates spans to traces in tumbling windows, like the windowed aggregation of the DSL, but
+ * keeps the open traces of each window in memory as {@link ColumnarTrace}s instead of reading and
+ * writing them from and to a state store on each span. Each trace is emitted exactly once, when a
+ * stream-time punctuation finds its window closed.
+ *
+ * <p>For fault tolerance, traces that changed since the last checkpoint are written to a
+ * {@link CheckpointStore} when Kafka Streams commits, before the offsets of their spans are
+ * committed. Thus a trace is serialised at most once per commit, rather than once per span, and
+ * spans that have not been checkpointed are re-read from the input on failover. On startup, open
+ * traces are restored from this store.
+ *
+ * <p>The heap retained by the open traces of each task is reported in the metrics group
+ * {@value #METRICS_GROUP}, tagged with the task as {@value #TASK_TAG}.
+ */
+public class OpenTraceTransformer
+    implements Transformer<String, EVSpan, KeyValue<Windowed<String>, Trace>> {
+
+  /**
+   * Interval in stream time in which closed windows are emitted.
+   */
+  private static final Duration CLOSE_INTERVAL = Duration.ofSeconds(1);
+
+  public static final String METRICS_GROUP = "stream-open-trace-metrics";
+
+  public static final String TASK_TAG = "task-id";
+
+  /**
+   * Number of distinct spans of all open traces.
+   */
+  public static final String OPEN_SPANS = "open-spans";
+
+  /**
+   * Estimated heap retained by all open traces, including the names they share.
+   */
+  public static final String OPEN_TRACE_BYTES = "open-trace-bytes";
+
+  public static final String BYTES_PER_OPEN_SPAN = "bytes-per-open-span";
+
+  /**
+   * Spans that arrived after their window closed, counted in the {@link PipelineMetrics} of the
+   * reconstruction stage.
+   */
+  public static final String DROPPED_LATE_SPANS = "dropped-late-spans";
+
+  private final String storeName;
+
+  private final TimeWindows windows;
+
+  private final long windowSizeMs;
+
+  private final long gracePeriodMs;
+
+  private final StringPool pool = new StringPool();
+
+  /**
+   * Open traces by window start and trace id.
+   */
+  private final TreeMap<Long, Map<String, ColumnarTrace>> openTraces = new TreeMap<>();
+
+  /**
+   * Traces that changed since the last checkpoint.
+   */
+  private final Set<Windowed<String>> dirty = new HashSet<>();
+
+  private ProcessorContext context;
+
+  private CheckpointStore<Windowed<String>, IndexedTrace> checkpointStore;
+
+  private long streamTime = -1;
+
+  private Sensor openSpansSensor;
+
+  private Sensor openTraceBytesSensor;
+
+  private Sensor bytesPerOpenSpanSensor;
+
+  private Sensor droppedSpansSensor;
+
+  /**
+   * Creates a new transformer.
+   *
+   * @param storeName name of the {@link CheckpointStore} of open traces
+   * @param windowSize size of the tumbling windows
+   * @param gracePeriod time after the end of a window in which spans are still accepted
+   */
+  public OpenTraceTransformer(final String storeName, final Duration windowSize,
+                              final Duration gracePeriod) {
+    this.storeName = storeName;
+    this.windows = TimeWindows.of(windowSize);
+    this.windowSizeMs = windowSize.toMillis();
+    this.gracePeriodMs = gracePeriod.toMillis();
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public void init(final ProcessorContext context) {
+    this.context = context;
+    this.checkpointStore =
+        (CheckpointStore<Windowed<String>, IndexedTrace>) context.getStateStore(this.storeName);
+
+    try (KeyValueIterator<Windowed<String>, IndexedTrace> iterator = this.checkpointStore.all()) {
+      iterator.forEachRemaining(entry -> this.openTraces
+          .computeIfAbsent(entry.key.window().start(), start -> new HashMap<>())
+          .put(entry.key.key(), ColumnarTrace.of(entry.value, this.pool)));
+    }
+
+    final String taskId = context.taskId().toString();
+    this.openSpansSensor = this.addMemorySensor(taskId, OPEN_SPANS);
+    this.openTraceBytesSensor = this.addMemorySensor(taskId, OPEN_TRACE_BYTES);
+    this.bytesPerOpenSpanSensor = this.addMemorySensor(taskId, BYTES_PER_OPEN_SPAN);
+    this.droppedSpansSensor = PipelineMetrics.throughputSensor(context.metrics(),
+        SpanToTraceReconstructorStream.RECONSTRUCTION_STAGE, DROPPED_LATE_SPANS);
+
+    context.schedule(CLOSE_INTERVAL, PunctuationType.STREAM_TIME, this::closeWindows);
+    this.checkpointStore.onFlush(this::checkpoint);
+  }
+
+  @Override
+  public KeyValue<Windowed<String>, Trace> transform(final String traceId, final EVSpan evSpan) {
+    final long timestamp = this.context.timestamp();
+    this.streamTime = Math.max(this.streamTime, timestamp);
+
+    final Window window = this.windows.windowsFor(timestamp).values().iterator().next();
+    if (this.isClosed(window.start())) {
+      // Late span, same as the windowed aggregation of the DSL
+      this.droppedSpansSensor.record();
+      return null;
+    }
+
+    this.openTraces.computeIfAbsent(window.start(), start -> new HashMap<>())
+        .computeIfAbsent(traceId, id -> new ColumnarTrace(id, this.pool))
+        .add(evSpan);
+
+    this.dirty.add(new Windowed<>(traceId, window));
+    return null;
+  }
+
+  /**
+   * Emits and removes the traces of all windows that are closed at the given stream time.
+   */
+  private void closeWindows(final long timestamp) {
+    while (!this.openTraces.isEmpty() && this.isClosed(this.openTraces.firstKey())) {
+      final Map.Entry<Long, Map<String, ColumnarTrace>> closed = this.openTraces.pollFirstEntry();
+      final Window window = this.windows.windowsFor(closed.getKey()).values().iterator().next();
+
+      for (final Map.Entry<String, ColumnarTrace> entry : closed.getValue().entrySet()) {
+        final Windowed<String> key = new Windowed<>(entry.getKey(), window);
+        this.context.forward(key, entry.getValue().toTrace());
+
+        // An earlier version of the trace may have been checkpointed even if it changed since
+        this.dirty.remove(key);
+        this.checkpointStore.delete(key);
+      }
+    }
+  }
+
+  /**
+   * Writes all traces that changed since the last checkpoint to the store, and records the memory
+   * retained by the open traces. Runs when the store is flushed on commit.
+   */
+  private void checkpoint() {
+    for (final Windowed<String> key : this.dirty) {
+      final Map<String, ColumnarTrace> tracesOfWindow = this.openTraces.get(key.window().start());
+      this.checkpointStore.put(key, tracesOfWindow.get(key.key()).toIndexedTrace());
+    }
+    this.dirty.clear();
+
+    long spans = 0;
+    long bytes = this.pool.sizeInBytes();
+    for (final Map<String, ColumnarTrace> tracesOfWindow : this.openTraces.values()) {
+      for (final ColumnarTrace trace : tracesOfWindow.values()) {
+        spans += trace.size();
+        bytes += trace.sizeInBytes();
+      }
+    }
+    this.openSpansSensor.record(spans);
+    this.openTraceBytesSensor.record(bytes);
+    this.bytesPerOpenSpanSensor.record(spans == 0 ? 0 : (double) bytes / spans);
+  }
+
+  private Sensor addMemorySensor(final String taskId, final String name) {
+    final Sensor sensor = this.context.metrics()
+        .addSensor(taskId + "." + name, Sensor.RecordingLevel.INFO);
+    sensor.add(new MetricName(name, METRICS_GROUP, "Latest value of " + name,
+        Map.of(TASK_TAG, taskId)), new Value());
+    return sensor;
+  }
+
+  private boolean isClosed(final long windowStart) {
+    return windowStart + this.windowSizeMs + this.gracePeriodMs <= this.streamTime;
+  }
+
+  @Override
+  public void close() {
+    this.checkpoint();
+    // Sensors are named per task, thus they are removed when the task moves to another thread
+    this.context.metrics().removeSensor(this.openSpansSensor);
+    this.context.metrics().removeSensor(this.openTraceBytesSensor);
+    this.context.metrics().removeSensor(this.bytesPerOpenSpanSensor);
+  }
+
+}
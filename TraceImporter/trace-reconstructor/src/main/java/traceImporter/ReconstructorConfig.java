@@ -0,0 +1,327 @@
+package traceImporter;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Properties;
+import org.apache.kafka.common.config.AbstractConfig;
+import org.apache.kafka.common.config.ConfigDef;
+import org.apache.kafka.common.config.ConfigDef.Importance;
+import org.apache.kafka.common.config.ConfigDef.Range;
+import org.apache.kafka.common.config.ConfigDef.Type;
+import org.apache.kafka.common.config.ConfigDef.ValidString;
+import org.apache.kafka.common.config.ConfigException;
+import org.apache.kafka.streams.StreamsConfig;
+
+/**
+ * External configuration of the trace reconstructor. Defaults are taken from {@link KafkaConfig}
+ * and can be overridden, in increasing order of precedence, by a properties file, environment
+ * variables and command line arguments:
+ *
+ * <ul>
+ *   <li>the properties file is given by {@code --config=<path>} or {@value #CONFIG_FILE_ENV}</li>
+ *   <li>environment variables are prefixed with {@value #ENV_PREFIX} and use underscores instead
+ *   of dots, e.g., {@code TRACE_RECONSTRUCTOR_WINDOW_SIZE_MS} for {@value #WINDOW_SIZE_MS}</li>
+ *   <li>command line arguments have the form {@code --<key>=<value>}</li>
+ * </ul>
+ *
+ * <p>Keys starting with {@value #STREAMS_PREFIX} are passed on to Kafka Streams with the prefix
+ * removed, e.g., {@code streams.num.stream.threads} or {@code streams.producer.linger.ms}. Keys
+ * starting with {@value #TRANSLATOR_PREFIX} configure the translation of dumps in the
+ * {@link SpanToTraceReconstructorStream.InputMode#DUMPS} input mode, see
+ * {@link #createTranslatorConfig()}. All values are validated on construction, which throws a
+ * {@link ConfigException} otherwise.
+ */
+public class ReconstructorConfig extends AbstractConfig {
+
+  public static final String CONFIG_FILE_ARG = ConfigLoader.CONFIG_FILE_ARG;
+  public static final String CONFIG_FILE_ENV = "TRACE_RECONSTRUCTOR_CONFIG";
+  public static final String ENV_PREFIX = "TRACE_RECONSTRUCTOR_";
+  public static final String STREAMS_PREFIX = "streams.";
+  public static final String TRANSLATOR_PREFIX = "translator.";
+
+  public static final String BROKER = "broker";
+  public static final String APPLICATION_ID = "application.id";
+  public static final String REGISTRY_URL = "schema.registry.url";
+  public static final String IN_TOPIC = "topic.in";
+  public static final String BATCH_IN_TOPIC = "topic.batch.in";
+  public static final String OUT_TOPIC = "topic.out";
+  public static final String DELTA_OUT_TOPIC = "topic.delta.out";
+  public static final String DICTIONARY_TOPIC = "topic.dictionary";
+  public static final String TOPICS_PROVISION = "topics.provision";
+  public static final String TOPICS_PARTITIONS = "topics.partitions";
+  public static final String TOPICS_REPLICATION_FACTOR = "topics.replication.factor";
+  public static final String COMMIT_INTERVAL_MS = "commit.interval.ms";
+  public static final String METRICS_PORT = "metrics.port";
+  public static final String TUNING_PROFILE = "tuning.profile";
+  public static final String TRACE_DUMP_SAMPLE_RATE = "trace.dump.sample.rate";
+  public static final String TRACE_DUMP_MAX_PER_SECOND = "trace.dump.max.per.second";
+  public static final String TRACE_DUMP_QUEUE_SIZE = "trace.dump.queue.size";
+  public static final String WINDOW_SIZE_MS = "window.size.ms";
+  public static final String GRACE_PERIOD_MS = "window.grace.ms";
+  public static final String LATE_HORIZON_MS = "window.late.horizon.ms";
+  public static final String WINDOW_MODE = "window.mode";
+  public static final String INACTIVITY_GAP_MS = "window.inactivity.gap.ms";
+  public static final String AGGREGATION_MODE = "aggregation.mode";
+  public static final String TRACE_KEY_MODE = "trace.key.mode";
+  public static final String TRACE_SHAPE_RETENTION_MS = "trace.shape.retention.ms";
+  public static final String DICTIONARY_ENCODING = "dictionary.encoding";
+  public static final String SPAN_BATCHES = "span.batches";
+  public static final String OUTPUT_MODE = "output.mode";
+  public static final String INPUT_MODE = "input.mode";
+  public static final String SPANS_OUT = "spans.out";
+  public static final String SUPPRESSION_ENABLED = "suppression.enabled";
+  public static final String SUPPRESSION_MAX_RECORDS = "suppression.max.records";
+  public static final String SUPPRESSION_MAX_BYTES = "suppression.max.bytes";
+
+  private static final ConfigDef CONFIG = new ConfigDef()
+      .define(BROKER, Type.STRING, KafkaConfig.BROKER, Importance.HIGH,
+          "Kafka bootstrap servers")
+      .define(APPLICATION_ID, Type.STRING, KafkaConfig.APP_ID, Importance.HIGH,
+          "Kafka Streams application id")
+      .define(REGISTRY_URL, Type.STRING, KafkaConfig.REGISTRY_URL, Importance.HIGH,
+          "Schema registry URL")
+      .define(IN_TOPIC, Type.STRING, KafkaConfig.IN_TOPIC, Importance.MEDIUM,
+          "Topic of single spans")
+      .define(BATCH_IN_TOPIC, Type.STRING, KafkaConfig.BATCH_IN_TOPIC, Importance.MEDIUM,
+          "Topic of span batches")
+      .define(OUT_TOPIC, Type.STRING, KafkaConfig.OUT_TOPIC, Importance.MEDIUM,
+          "Topic of reconstructed traces")
+      .define(DELTA_OUT_TOPIC, Type.STRING, KafkaConfig.DELTA_OUT_TOPIC, Importance.MEDIUM,
+          "Topic of trace deltas, used instead of the trace topic in the DELTA output mode")
+      .define(DICTIONARY_TOPIC, Type.STRING, KafkaConfig.DICTIONARY_TOPIC, Importance.MEDIUM,
+          "Topic of span dictionary entries")
+      .define(TOPICS_PROVISION, Type.BOOLEAN, false, Importance.MEDIUM,
+          "Whether missing topics are created on startup, see TopicProvisioner")
+      .define(TOPICS_PARTITIONS, Type.INT, 1, Range.atLeast(1), Importance.MEDIUM,
+          "Number of partitions of provisioned topics, bounds the number of stream tasks")
+      .define(TOPICS_REPLICATION_FACTOR, Type.SHORT, (short) 1, Range.atLeast(1),
+          Importance.LOW, "Replication factor of provisioned topics")
+      .define(COMMIT_INTERVAL_MS, Type.LONG, KafkaConfig.COMMIT_INTERVAL_MS, Range.atLeast(0),
+          Importance.MEDIUM, "Commit interval, also bounds how long updates are cached")
+      .define(METRICS_PORT, Type.INT, KafkaConfig.METRICS_PORT, Range.between(0, 65535),
+          Importance.LOW, "Port of the Prometheus metrics endpoint, 0 disables it")
+      .define(TUNING_PROFILE, Type.STRING, TuningProfile.DEFAULT.name(),
+          ValidString.in(TuningProfile.names()), Importance.MEDIUM,
+          "Producer and consumer settings that trade latency for throughput, see TuningProfile")
+      .define(TRACE_DUMP_SAMPLE_RATE, Type.DOUBLE, 0.0, Range.between(0, 1), Importance.LOW,
+          "Fraction of trace ids whose emitted traces are logged, 0 disables the trace dump")
+      .define(TRACE_DUMP_MAX_PER_SECOND, Type.INT, 10, Range.atLeast(1), Importance.LOW,
+          "Maximum number of traces logged per second")
+      .define(TRACE_DUMP_QUEUE_SIZE, Type.INT, 1000, Range.atLeast(1), Importance.LOW,
+          "Maximum number of traces waiting to be logged, further traces are dropped")
+      .define(WINDOW_SIZE_MS, Type.LONG, KafkaConfig.WINDOW_SIZE_MS, Range.atLeast(1),
+          Importance.HIGH, "Size of the windows spans are aggregated in")
+      .define(GRACE_PERIOD_MS, Type.LONG, KafkaConfig.GRACE_PERIOD_MS, Range.atLeast(0),
+          Importance.HIGH, "Time that late spans are still accepted after a window ended")
+      .define(LATE_HORIZON_MS, Type.LONG, 0L, Range.atLeast(0), Importance.MEDIUM,
+          "Time after the grace period in which late spans are emitted as patches of their "
+              + "trace, 0 drops them")
+      .define(WINDOW_MODE, Type.STRING, SpanToTraceReconstructorStream.WindowMode.TUMBLING.name(),
+          ValidString.in(names(SpanToTraceReconstructorStream.WindowMode.values())),
+          Importance.HIGH, "Windows in which the spans of a trace are collected")
+      .define(INACTIVITY_GAP_MS, Type.LONG, KafkaConfig.INACTIVITY_GAP_MS, Range.atLeast(1),
+          Importance.HIGH, "Time without spans after which the session window of a trace closes")
+      .define(AGGREGATION_MODE, Type.STRING,
+          SpanToTraceReconstructorStream.AggregationMode.INDEXED.name(),
+          ValidString.in(names(SpanToTraceReconstructorStream.AggregationMode.values())),
+          Importance.LOW, "Strategy to aggregate spans to traces")
+      .define(TRACE_KEY_MODE, Type.STRING,
+          SpanToTraceReconstructorStream.TraceKeyMode.SPAN_LIST.name(),
+          ValidString.in(names(SpanToTraceReconstructorStream.TraceKeyMode.values())),
+          Importance.LOW, "Key to group traces of the same shape by")
+      .define(TRACE_SHAPE_RETENTION_MS, Type.LONG, KafkaConfig.TRACE_SHAPE_RETENTION_MS,
+          Range.atLeast(1), Importance.LOW,
+          "Time after which the shape of a fingerprint that is no longer emitted is forgotten")
+      .define(DICTIONARY_ENCODING, Type.BOOLEAN, false, Importance.MEDIUM,
+          "Whether incoming spans are dictionary encoded")
+      .define(SPAN_BATCHES, Type.BOOLEAN, false, Importance.MEDIUM,
+          "Whether span batches are consumed in addition to single spans")
+      .define(OUTPUT_MODE, Type.STRING, SpanToTraceReconstructorStream.OutputMode.FULL.name(),
+          ValidString.in(names(SpanToTraceReconstructorStream.OutputMode.values())),
+          Importance.MEDIUM, "Whether traces are emitted in full or as deltas of their spans")
+      .define(INPUT_MODE, Type.STRING, SpanToTraceReconstructorStream.InputMode.SPANS.name(),
+          ValidString.in(names(SpanToTraceReconstructorStream.InputMode.values())),
+          Importance.HIGH, "Whether translated spans or the span dumps of the collectors are read")
+      .define(SPANS_OUT, Type.BOOLEAN, false, Importance.MEDIUM,
+          "Whether spans translated from dumps are also written to the topic of single spans")
+      .define(SUPPRESSION_ENABLED, Type.BOOLEAN, false, Importance.MEDIUM,
+          "Whether intermediate trace updates are held back until their window closes")
+      .define(SUPPRESSION_MAX_RECORDS, Type.LONG, Long.MAX_VALUE, Range.atLeast(1),
+          Importance.LOW, "Maximum number of traces buffered per suppression")
+      .define(SUPPRESSION_MAX_BYTES, Type.LONG, Long.MAX_VALUE, Range.atLeast(1),
+          Importance.LOW, "Maximum number of bytes buffered per suppression");
+
+  /**
+   * Creates a configuration of the given values, missing values are set to their default.
+   *
+   * @param values configuration values, including pass-through Kafka Streams values
+   * @throws ConfigException if a value is invalid or a key is unknown
+   */
+  public ReconstructorConfig(final Map<String, ?> values) {
+    super(CONFIG, values, false);
+
+    for (final String key : values.keySet()) {
+      if (!CONFIG.names().contains(key) && !key.startsWith(STREAMS_PREFIX)
+          && !key.startsWith(TRANSLATOR_PREFIX)) {
+        throw new ConfigException("Unknown configuration key " + key);
+      }
+    }
+
+    if (this.getWindowMode() == SpanToTraceReconstructorStream.WindowMode.SESSION
+        && this.getAggregationMode() != SpanToTraceReconstructorStream.AggregationMode.INDEXED) {
+      throw new ConfigException(AGGREGATION_MODE, this.getString(AGGREGATION_MODE),
+          "Session windows require the INDEXED aggregation mode");
+    }
+
+    if (this.getWindowMode() == SpanToTraceReconstructorStream.WindowMode.SESSION
+        && !this.getLateHorizon().isZero()) {
+      throw new ConfigException(LATE_HORIZON_MS, this.getLong(LATE_HORIZON_MS),
+          "Late spans are only patched in tumbling windows");
+    }
+
+    // Dumps are repartitioned by trace id only after the late spans are routed, such that the
+    // router and a windowed aggregation would not share their stream time
+    if (this.getInputMode() == SpanToTraceReconstructorStream.InputMode.DUMPS
+        && this.getAggregationMode() != SpanToTraceReconstructorStream.AggregationMode.IN_MEMORY
+        && !this.getLateHorizon().isZero()) {
+      throw new ConfigException(LATE_HORIZON_MS, this.getLong(LATE_HORIZON_MS),
+          "Late spans of dumps are only patched in the IN_MEMORY aggregation mode");
+    }
+
+    if (this.getInputMode() == SpanToTraceReconstructorStream.InputMode.DUMPS) {
+      this.createTranslatorConfig();
+    }
+
+    // Fail on startup rather than on stream creation
+    StreamsConfig.configDef().parse(this.streamsProperties());
+  }
+
+  /**
+   * Loads the configuration from the properties file, environment variables and command line
+   * arguments, see {@link ConfigLoader}.
+   *
+   * @param args command line arguments
+   * @param env environment variables
+   * @return the configuration
+   * @throws ConfigException if the configuration cannot be read or is invalid
+   */
+  public static ReconstructorConfig load(final String[] args, final Map<String, String> env) {
+    return new ReconstructorConfig(ConfigLoader.load(args, env, ENV_PREFIX, CONFIG_FILE_ENV));
+  }
+
+  public Duration getWindowSize() {
+    return Duration.ofMillis(this.getLong(WINDOW_SIZE_MS));
+  }
+
+  public Duration getGracePeriod() {
+    return Duration.ofMillis(this.getLong(GRACE_PERIOD_MS));
+  }
+
+  public Duration getLateHorizon() {
+    return Duration.ofMillis(this.getLong(LATE_HORIZON_MS));
+  }
+
+  public SpanToTraceReconstructorStream.WindowMode getWindowMode() {
+    return SpanToTraceReconstructorStream.WindowMode.valueOf(this.getString(WINDOW_MODE));
+  }
+
+  public Duration getInactivityGap() {
+    return Duration.ofMillis(this.getLong(INACTIVITY_GAP_MS));
+  }
+
+  public Duration getTraceShapeRetention() {
+    return Duration.ofMillis(this.getLong(TRACE_SHAPE_RETENTION_MS));
+  }
+
+  public SpanToTraceReconstructorStream.AggregationMode getAggregationMode() {
+    return SpanToTraceReconstructorStream.AggregationMode.valueOf(
+        this.getString(AGGREGATION_MODE));
+  }
+
+  public SpanToTraceReconstructorStream.TraceKeyMode getTraceKeyMode() {
+    return SpanToTraceReconstructorStream.TraceKeyMode.valueOf(this.getString(TRACE_KEY_MODE));
+  }
+
+  public SpanToTraceReconstructorStream.OutputMode getOutputMode() {
+    return SpanToTraceReconstructorStream.OutputMode.valueOf(this.getString(OUTPUT_MODE));
+  }
+
+  public SpanToTraceReconstructorStream.InputMode getInputMode() {
+    return SpanToTraceReconstructorStream.InputMode.valueOf(this.getString(INPUT_MODE));
+  }
+
+  public TraceSuppression getSuppression() {
+    if (!this.getBoolean(SUPPRESSION_ENABLED)) {
+      return TraceSuppression.disabled();
+    }
+    final long maxRecords = this.getLong(SUPPRESSION_MAX_RECORDS);
+    final long maxBytes = this.getLong(SUPPRESSION_MAX_BYTES);
+    return maxRecords == Long.MAX_VALUE && maxBytes == Long.MAX_VALUE
+        ? TraceSuppression.unbounded()
+        : TraceSuppression.bounded(maxRecords, maxBytes);
+  }
+
+  /**
+   * Creates the trace dump, which starts logging in the background if it is enabled.
+   */
+  public TraceDump createTraceDump() {
+    return new TraceDump(this.getDouble(TRACE_DUMP_SAMPLE_RATE),
+        this.getInt(TRACE_DUMP_MAX_PER_SECOND), this.getInt(TRACE_DUMP_QUEUE_SIZE));
+  }
+
+  /**
+   * Creates the configuration of the translation of dumps, i.e., all values with the
+   * {@value #TRANSLATOR_PREFIX} prefix removed, e.g., {@code translator.topic.in} for the topic
+   * of dumps or {@code translator.topic.dead.letter}.
+   *
+   * @throws ConfigException if a translator value is invalid or a translator key is unknown
+   */
+  public DumpTranslationConfig createTranslatorConfig() {
+    return new DumpTranslationConfig(this.originalsWithPrefix(TRANSLATOR_PREFIX));
+  }
+
+  /**
+   * Creates the queue of dumps and spans that cannot be translated. Its producer connects to the
+   * same broker as the streams and is tuned like the streams' producers, such that the dead
+   * letters are produced like the spans.
+   *
+   * @throws ConfigException if a translator value is invalid or a translator key is unknown
+   */
+  public DeadLetterQueue createDeadLetterQueue() {
+    return this.createTranslatorConfig().createDeadLetterQueue(this.getString(BROKER),
+        this.getString(APPLICATION_ID), this.getTuningProfile(),
+        this.originalsWithPrefix(STREAMS_PREFIX + StreamsConfig.PRODUCER_PREFIX));
+  }
+
+  public TuningProfile getTuningProfile() {
+    return TuningProfile.valueOf(this.getString(TUNING_PROFILE));
+  }
+
+  /**
+   * Creates the Kafka Streams configuration, i.e., the connection settings of this
+   * configuration, the settings of the {@link TuningProfile} and all pass-through values with
+   * the {@value #STREAMS_PREFIX} prefix removed, which take precedence over the profile.
+   *
+   * @return the Kafka Streams properties
+   */
+  public Properties streamsProperties() {
+    final Properties props = new Properties();
+    props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, this.getString(BROKER));
+    props.put(StreamsConfig.APPLICATION_ID_CONFIG, this.getString(APPLICATION_ID));
+    props.put(StreamsConfig.COMMIT_INTERVAL_MS_CONFIG, this.getLong(COMMIT_INTERVAL_MS));
+    props.put(StreamsConfig.DEFAULT_TIMESTAMP_EXTRACTOR_CLASS_CONFIG,
+        KafkaConfig.TIMESTAMP_EXTRACTOR);
+    props.putAll(this.getTuningProfile().streamsConfigs());
+    props.putAll(this.originalsWithPrefix(STREAMS_PREFIX));
+    return props;
+  }
+
+  private static String[] names(final Enum<?>[] values) {
+    final String[] names = new String[values.length];
+    for (int i = 0; i < values.length; i++) {
+      names[i] = values[i].name();
+    }
+    return names;
+  }
+
+}
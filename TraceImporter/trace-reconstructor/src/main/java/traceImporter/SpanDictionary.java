@@ -0,0 +1,63 @@
+package traceImporter;
+
+import org.apache.kafka.streams.processor.AbstractProcessor;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.state.KeyValueStore;
+
+/**
+ * Helpers for spans whose operation name, host name and app name have been replaced by dictionary
+ * ids by the span translator.
+ */
+public final class SpanDictionary {
+
+  /**
+   * Prefix of operation keys of encoded spans, which never occurs in an operation name.
+   */
+  private static final char ENCODED_KEY_PREFIX = '#';
+
+  private SpanDictionary() {
+    // Utility class
+  }
+
+  /**
+   * Returns the key that identifies the operation of a span within a trace, i.e., the operation
+   * name or, if the span is dictionary encoded, the operation id.
+   *
+   * @param span the span
+   * @return the operation key
+   */
+  public static String operationKey(final EVSpan span) {
+    final SpanDictionaryIds ids = span.getDictionaryIds();
+    if (ids == null) {
+      return span.getOperationName();
+    }
+    return ENCODED_KEY_PREFIX + Long.toString(ids.getOperationId());
+  }
+
+  /**
+   * Writes the entries of the dictionary topic to the (global) dictionary store.
+   */
+  public static class StoreUpdater extends AbstractProcessor<Long, String> {
+
+    private final String storeName;
+
+    private KeyValueStore<Long, String> dictionaryStore;
+
+    public StoreUpdater(final String storeName) {
+      this.storeName = storeName;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void init(final ProcessorContext context) {
+      super.init(context);
+      this.dictionaryStore = (KeyValueStore<Long, String>) context.getStateStore(this.storeName);
+    }
+
+    @Override
+    public void process(final Long id, final String value) {
+      this.dictionaryStore.put(id, value);
+    }
+  }
+
+}
@@ -0,0 +1,129 @@
+package traceImporter;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.kstream.Transformer;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.processor.PunctuationType;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.KeyValueStore;
+
+/**
+ * Resolves the dictionary ids of the spans of a {@link Trace} back to operation names, host names
+ * and app names, using the global dictionary store.
+ *
+ * <p>The dictionary entries of a span are written ahead of it, but the global store may not have
+ * read them yet when the trace is complete. A trace with ids that are not yet known is held back
+ * in a local store and retried in a fixed interval of wall-clock time, such that no trace is
+ * emitted with unresolved names. A held back trace is replaced by later updates of the same key,
+ * thus updates are emitted in order.
+ *
+ * @param <K> type of the key of the traces
+ */
+public class SpanDictionaryResolver<K> implements Transformer<K, Trace, KeyValue<K, Trace>> {
+
+  /**
+   * Interval in wall-clock time in which held back traces are resolved again.
+   */
+  private static final Duration RETRY_INTERVAL = Duration.ofSeconds(1);
+
+  private final String dictionaryStoreName;
+
+  private final String pendingStoreName;
+
+  private ProcessorContext context;
+
+  private KeyValueStore<Long, String> dictionaryStore;
+
+  private KeyValueStore<K, Trace> pendingStore;
+
+  /**
+   * Creates a new resolver.
+   *
+   * @param dictionaryStoreName name of the global dictionary store
+   * @param pendingStoreName name of the store of traces that are held back
+   */
+  public SpanDictionaryResolver(final String dictionaryStoreName,
+                                final String pendingStoreName) {
+    this.dictionaryStoreName = dictionaryStoreName;
+    this.pendingStoreName = pendingStoreName;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public void init(final ProcessorContext context) {
+    this.context = context;
+    this.dictionaryStore =
+        (KeyValueStore<Long, String>) context.getStateStore(this.dictionaryStoreName);
+    this.pendingStore = (KeyValueStore<K, Trace>) context.getStateStore(this.pendingStoreName);
+
+    context.schedule(RETRY_INTERVAL, PunctuationType.WALL_CLOCK_TIME, timestamp -> this.retry());
+  }
+
+  @Override
+  public KeyValue<K, Trace> transform(final K key, final Trace trace) {
+    if (!this.resolve(trace)) {
+      this.pendingStore.put(key, trace);
+      return null;
+    }
+
+    if (this.pendingStore.get(key) != null) {
+      // Supersedes an older update that is still held back
+      this.pendingStore.delete(key);
+    }
+    return KeyValue.pair(key, trace);
+  }
+
+  /**
+   * Emits all held back traces whose ids are known by now.
+   */
+  private void retry() {
+    final List<KeyValue<K, Trace>> resolved = new ArrayList<>();
+    try (KeyValueIterator<K, Trace> iterator = this.pendingStore.all()) {
+      iterator.forEachRemaining(entry -> {
+        if (this.resolve(entry.value)) {
+          resolved.add(entry);
+        }
+      });
+    }
+
+    for (final KeyValue<K, Trace> entry : resolved) {
+      this.pendingStore.delete(entry.key);
+      this.context.forward(entry.key, entry.value);
+    }
+  }
+
+  /**
+   * Replaces the ids of all spans of the trace by their names, unless an id is not yet known.
+   *
+   * @return whether the trace has been resolved
+   */
+  private boolean resolve(final Trace trace) {
+    for (final EVSpan span : trace.getSpanList()) {
+      final SpanDictionaryIds ids = span.getDictionaryIds();
+      if (ids != null && (this.dictionaryStore.get(ids.getOperationId()) == null
+          || this.dictionaryStore.get(ids.getHostnameId()) == null
+          || this.dictionaryStore.get(ids.getAppNameId()) == null)) {
+        return false;
+      }
+    }
+
+    for (final EVSpan span : trace.getSpanList()) {
+      final SpanDictionaryIds ids = span.getDictionaryIds();
+      if (ids != null) {
+        span.setOperationName(this.dictionaryStore.get(ids.getOperationId()));
+        span.setHostname(this.dictionaryStore.get(ids.getHostnameId()));
+        span.setAppName(this.dictionaryStore.get(ids.getAppNameId()));
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public void close() {
+    // Held back traces remain in the store
+  }
+
+}
@@ -0,0 +1,36 @@
+package traceImporter;
+
+import org.apache.avro.specific.SpecificRecord;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.kstream.Transformer;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.processor.To;
+
+/**
+ * Stamps each span translated from a dump with its start time, like the
+ * {@link EVSpanTimestampKafkaExtractor} stamps the spans read from the span topic, such that
+ * spans are windowed by their start time rather than by the time of their dump.
+ */
+public class SpanTimestampAssigner
+    implements Transformer<String, SpecificRecord, KeyValue<String, EVSpan>> {
+
+  private ProcessorContext context;
+
+  @Override
+  public void init(final ProcessorContext context) {
+    this.context = context;
+  }
+
+  @Override
+  public KeyValue<String, EVSpan> transform(final String traceId, final SpecificRecord value) {
+    final EVSpan span = (EVSpan) value;
+    this.context.forward(traceId, span,
+        To.all().withTimestamp(EVSpanTimestampKafkaExtractor.startMillis(span)));
+    return null;
+  }
+
+  @Override
+  public void close() {
+  }
+
+}
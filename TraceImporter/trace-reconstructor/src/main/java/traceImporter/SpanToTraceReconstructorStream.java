@@ -6,37 +6,252 @@ import io.confluent.kafka.streams.serdes.avro.SpecificAvroSerde;
 import org.apache.avro.specific.SpecificRecord;
 import org.apache.kafka.common.serialization.Serde;
 import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.utils.Bytes;
 import org.apache.kafka.streams.*;
 import org.apache.kafka.streams.kstream.*;
+import org.apache.kafka.streams.processor.UsePreviousTimeOnInvalidTimestamp;
+import org.apache.kafka.streams.state.Stores;
+import org.apache.kafka.streams.state.WindowStore;
 
 import java.time.Duration;
-import java.time.Instant;
 import java.util.*;
 
 /**
- * Collects spans for 10 seconds, grouped by the trace id, and forwards the resulting batch to the
- * topic 'span-batches'
+ * Reconstructs traces from spans. The spans of each trace id are collected in windows and folded
+ * into a {@link Trace} per window, traces of the same shape are reduced per window to a single
+ * trace that counts them, and the reduced traces are written to the trace topic. Where the spans
+ * come from, how they are windowed and aggregated, how shapes are keyed and in which form traces
+ * are emitted is configured by the {@link InputMode}, {@link WindowMode},
+ * {@link AggregationMode}, {@link TraceKeyMode} and {@link OutputMode}, see
+ * {@link ReconstructorConfig}.
  */
 public class SpanToTraceReconstructorStream {
 
-  private static final Duration WINDOW_SIZE = Duration.ofSeconds(4);
-  private static final Duration GRACE_PERIOD = Duration.ofSeconds(2);
+  /**
+   * Strategies to aggregate the spans of a trace.
+   */
+  public enum AggregationMode {
+    /**
+     * Scans the span list of the trace for duplicates and recomputes the start and end time of the
+     * trace on each span, i.e., linear time per span. Calls are not linked to their callers,
+     * thus traces have no steps and the exclusive duration of each span is its total duration.
+     */
+    SCAN,
+    /**
+     * Maintains an operation name index and the running start and end time of the trace
+     * alongside the trace, i.e., constant time per span.
+     */
+    INDEXED,
+    /**
+     * Like {@link #INDEXED}, but keeps open traces in memory, in primitive columns rather than
+     * as records, and checkpoints changed traces to the {@link #OPEN_TRACE_STORE} on each commit
+     * instead of serialising them on each span. Each trace is emitted once, when its window
+     * closes, see {@link OpenTraceTransformer}.
+     */
+    IN_MEMORY
+  }
+
+  /**
+   * Windows in which the spans of a trace are collected.
+   */
+  public enum WindowMode {
+    /**
+     * Fixed windows of the configured size, a trace that spans a window boundary is split.
+     */
+    TUMBLING,
+    /**
+     * One window per trace that closes after the configured inactivity gap, i.e., traces are
+     * never split and short traces complete early. Traces are reduced with similar traces whose
+     * session starts in the same fixed window of the configured size.
+     */
+    SESSION
+  }
+
+  /**
+   * Keys by which traces of the same shape are grouped and reduced.
+   */
+  public enum TraceKeyMode {
+    /**
+     * Groups by an {@link EVSpanKey} that contains the operation, host and application of every
+     * span of the trace.
+     */
+    SPAN_LIST,
+    /**
+     * Groups by a 128 bit {@link TraceFingerprint} of the trace's shape and stores each full shape
+     * of the emitted traces only once in the {@link #TRACE_SHAPE_STORE}, see
+     * {@link TraceShapeRecorder}.
+     */
+    FINGERPRINT
+  }
+
+  /**
+   * Forms in which reconstructed traces are emitted.
+   */
+  public enum OutputMode {
+    /**
+     * Emits each update of a trace with all of its spans to the trace topic, in order per trace.
+     */
+    FULL,
+    /**
+     * Emits each update of a trace as a {@link TraceDelta} to the delta topic, which contains
+     * only the spans that changed since the previous update, see {@link TraceDeltaTransformer}.
+     */
+    DELTA
+  }
+
+  /**
+   * Sources of the spans that are reconstructed to traces.
+   */
+  public enum InputMode {
+    /**
+     * Reads the spans written to the span topic by the span translator.
+     */
+    SPANS,
+    /**
+     * Reads the span dumps of the collectors and translates them in the same topology, with the
+     * {@link DumpTranslator} of the span translator, which saves writing and reading every span
+     * once. The translated spans are still repartitioned by trace id unless they are aggregated
+     * {@link AggregationMode#IN_MEMORY}, which requires the dumps to be partitioned such that
+     * all spans of a trace end up in the same partition. Late spans are routed ahead of the
+     * repartition, thus they are only patched in that mode.
+     */
+    DUMPS
+  }
+
+  /**
+   * Name of the store that maps trace fingerprints to the shape they represent.
+   */
+  public static final String TRACE_SHAPE_STORE = "trace-shapes";
+
+  /**
+   * Name of the store that checkpoints the open traces of the {@link AggregationMode#IN_MEMORY}
+   * aggregation.
+   */
+  public static final String OPEN_TRACE_STORE = "open-traces";
+
+  /**
+   * Name of the store of the patches of late spans per trace and window, see
+   * {@link LateSpanRouter}.
+   */
+  public static final String LATE_SPAN_STORE = "late-spans";
+
+  /**
+   * Name of the store of the spans last emitted per trace and window in the
+   * {@link OutputMode#DELTA} output.
+   */
+  public static final String TRACE_DELTA_STORE = "trace-deltas";
+
+  /**
+   * Name of the store of the latest update per trace and window, and of the topic through which
+   * the updates are repartitioned by trace id.
+   */
+  public static final String TRACE_UPDATE_STORE = "trace-updates";
+
+  /**
+   * Name of the store of reduced traces whose dictionary ids are not yet known, see
+   * {@link SpanDictionaryResolver}.
+   */
+  public static final String UNRESOLVED_TRACE_STORE = "unresolved-traces";
+
+  /**
+   * Name of the store of patches whose dictionary ids are not yet known.
+   */
+  public static final String UNRESOLVED_PATCH_STORE = "unresolved-patches";
+
+  /**
+   * Stage that aggregates spans to traces, used to tag the {@link TraceUpdateCounter} metrics.
+   */
+  public static final String AGGREGATION_STAGE = "span-aggregation";
 
-  private final Properties streamsConfig = new Properties();
+  /**
+   * Stage that reduces traces of the same shape, used to tag the {@link TraceUpdateCounter}
+   * metrics.
+   */
+  public static final String REDUCTION_STAGE = "trace-reduction";
+
+  /**
+   * Stage of the pipeline as a whole, used to tag its {@link PipelineMetrics}.
+   */
+  public static final String RECONSTRUCTION_STAGE = "trace-reconstruction";
+
+  private final Properties streamsConfig;
 
   private final Topology topology;
 
   private final SchemaRegistryClient registryClient;
 
+  private final ReconstructorConfig config;
+
+  private final Duration windowSize;
+
+  private final Duration gracePeriod;
+
+  private final WindowMode windowMode;
+
+  private final Duration inactivityGap;
+
+  private final AggregationMode aggregationMode;
+
+  private final TraceKeyMode traceKeyMode;
+
+  private final boolean dictionaryEncoding;
+
+  private final boolean spanBatches;
+
+  private final OutputMode outputMode;
+
+  private final InputMode inputMode;
+
+  private final DumpDecoder decoder;
+
+  private final SpanValidator validator;
+
+  private final DeadLetterQueue deadLetters;
+
+  private final TraceSuppression suppression;
+
+  private final TraceDump traceDump;
+
   public SpanToTraceReconstructorStream(final SchemaRegistryClient schemaRegistryClient) {
+    this(schemaRegistryClient, new ReconstructorConfig(Map.of()));
+  }
 
-    this.streamsConfig.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, KafkaConfig.BROKER);
-    this.streamsConfig.put(StreamsConfig.COMMIT_INTERVAL_MS_CONFIG, KafkaConfig.COMMIT_INTERVAL_MS);
-    this.streamsConfig.put(StreamsConfig.DEFAULT_TIMESTAMP_EXTRACTOR_CLASS_CONFIG,
-        KafkaConfig.TIMESTAMP_EXTRACTOR);
-    this.streamsConfig.put(StreamsConfig.APPLICATION_ID_CONFIG, KafkaConfig.APP_ID);
+  /**
+   * Creates a new reconstructor.
+   *
+   * @param schemaRegistryClient the schema registry
+   * @param config the configuration, which selects the source of spans, the topics, the windows
+   *        and the strategies to aggregate and reduce traces, see {@link ReconstructorConfig}
+   */
+  public SpanToTraceReconstructorStream(final SchemaRegistryClient schemaRegistryClient,
+                                        final ReconstructorConfig config) {
+
+    this.streamsConfig = config.streamsProperties();
 
     this.registryClient = schemaRegistryClient;
+    this.config = config;
+    this.windowSize = config.getWindowSize();
+    this.gracePeriod = config.getGracePeriod();
+    this.windowMode = config.getWindowMode();
+    this.inactivityGap = config.getInactivityGap();
+    this.aggregationMode = config.getAggregationMode();
+    this.traceKeyMode = config.getTraceKeyMode();
+    this.dictionaryEncoding = config.getBoolean(ReconstructorConfig.DICTIONARY_ENCODING);
+    this.spanBatches = config.getBoolean(ReconstructorConfig.SPAN_BATCHES);
+    this.outputMode = config.getOutputMode();
+    this.inputMode = config.getInputMode();
+    if (this.inputMode == InputMode.DUMPS) {
+      final DumpTranslationConfig translatorConfig = config.createTranslatorConfig();
+      this.decoder = translatorConfig.createDumpDecoder();
+      this.validator = translatorConfig.createSpanValidator();
+      this.deadLetters = config.createDeadLetterQueue();
+    } else {
+      this.decoder = null;
+      this.validator = null;
+      this.deadLetters = null;
+    }
+    this.suppression = config.getSuppression();
+    this.traceDump = config.createTraceDump();
 
     this.topology = this.buildTopology();
   }
@@ -49,110 +264,299 @@ public class SpanToTraceReconstructorStream {
   private Topology buildTopology() {
     final StreamsBuilder builder = new StreamsBuilder();
 
-    final KStream<String, EVSpan> explSpanStream = builder.stream(KafkaConfig.IN_TOPIC,
-        Consumed.with(Serdes.String(), this.getAvroSerde(false)));
-
-    // Window spans in 4s intervals with 2s grace period
-    final TimeWindowedKStream<String, EVSpan> windowedEvStream =
-        explSpanStream.groupByKey().windowedBy(TimeWindows.of(WINDOW_SIZE).grace(GRACE_PERIOD));
+    final KStream<String, EVSpan> singleSpanStream;
+    if (this.inputMode == InputMode.DUMPS) {
+      singleSpanStream = this.translateDumps(builder);
+    } else {
+      singleSpanStream = builder.stream(this.config.getString(ReconstructorConfig.IN_TOPIC),
+          Consumed.with(Serdes.String(), this.getSpanSerde()));
+    }
+
+    final KStream<String, EVSpan> explSpanStream;
+    if (this.spanBatches) {
+      // Spans of a batch share the timestamp of the batch
+      final KStream<String, EVSpanBatch> batchStream = builder.stream(
+          this.config.getString(ReconstructorConfig.BATCH_IN_TOPIC),
+          Consumed.with(Serdes.String(), this.getAvroSerde(false)));
+      explSpanStream = singleSpanStream.merge(batchStream.flatMapValues(EVSpanBatch::getSpans));
+    } else {
+      explSpanStream = singleSpanStream;
+    }
+    explSpanStream.process(() -> new SpanArrivalMeter<>(RECONSTRUCTION_STAGE));
 
     // Aggregate Spans to traces and deduplicate similar spans of a trace
-    final KTable<Windowed<String>, Trace> traceTable =
-        windowedEvStream.aggregate(Trace::new, (traceId, evSpan, trace) -> {
-
-          // Initialize Span according to first span of the trace
-          final long evSpanEndTime = evSpan.getEndTime();
-          if (trace.getSpanList() == null) {
-            trace.setSpanList(new ArrayList<>());
-            trace.getSpanList().add(evSpan);
-
-            trace.setStartTime(evSpan.getStartTime());
-            trace.setEndTime(evSpanEndTime);
-            trace.setOverallRequestCount(1);
-            trace.setDuration(Duration
-                .between(tsToInstant(trace.getStartTime()), Instant.ofEpochMilli(evSpanEndTime))
-                .toNanos());
-
-            trace.setTraceCount(1);
-
-            // set initial trace id - do not change, since this is the major key for kafka
-            // partitioning
-            trace.setTraceId(evSpan.getTraceId());
-          } else {
-
-            // TODO
-            // Implement
-            // - traceDuration
-            // - Tracesteps with caller callee each = EVSpan
-
-
-            // Find duplicates in Trace (via fqn), aggregate based on request count
-            // Furthermore, potentially update trace values
-            trace
-                .getSpanList()
-                .stream()
-                .filter(s -> s.getOperationName().contentEquals(evSpan.getOperationName()))
-                .findAny()
-                .ifPresentOrElse(s -> {
-                  s.setRequestCount(s.getRequestCount() + 1);
-
-                  if (tsToInstant(evSpan.getStartTime()).isBefore(tsToInstant(s.getStartTime()))) {
-                    s.setStartTime(evSpan.getStartTime());
-                  }
-
-                  s.setEndTime(Math.max(s.getEndTime(), evSpan.getEndTime()));
-                }, () -> trace.getSpanList().add(evSpan));
-            trace
-                .getSpanList()
-                .stream()
-                .map(s -> tsToInstant(s.getStartTime()))
-                .min(Instant::compareTo)
-                .ifPresent(s -> trace.setStartTime(new Timestamp(s.getEpochSecond(), s.getNano())));
-            trace
-                .getSpanList()
-                .stream()
-                .mapToLong(EVSpan::getEndTime)
-                .max()
-                .ifPresent(trace::setEndTime);
-            long duration = Duration
-                .between(tsToInstant(trace.getStartTime()),
-                    Instant.ofEpochMilli(trace.getEndTime()))
-                .toNanos();
-            trace.setDuration(duration);
-
-
-          }
-          return trace;
-        }, Materialized.with(Serdes.String(), this.getAvroSerde(false)));
+    final KStream<Windowed<String>, Trace> traceStream;
+    if (this.windowMode == WindowMode.SESSION) {
+      traceStream = this.aggregateBySession(explSpanStream);
+    } else if (this.aggregationMode == AggregationMode.IN_MEMORY) {
+      traceStream = this.aggregateInMemory(builder, this.routeLateSpans(builder, explSpanStream));
+    } else {
+      // Window spans in intervals of the configured size (default 4s) and grace period (2s)
+      final TimeWindowedKStream<String, EVSpan> windowedEvStream = this
+          .routeLateSpans(builder, explSpanStream)
+          .groupByKey(Grouped.with(Serdes.String(), this.getSpanSerde()))
+          .windowedBy(TimeWindows.of(this.windowSize).grace(this.gracePeriod));
+
+      if (this.aggregationMode == AggregationMode.INDEXED) {
+        final KTable<Windowed<String>, IndexedTrace> indexedTraceTable = windowedEvStream
+            .aggregate(IndexedTrace::new, new IndexedTraceAggregator(),
+                Materialized.with(Serdes.String(), this.getAvroSerde(false)));
+        traceStream = this.suppressIntermediateTraces(indexedTraceTable, AGGREGATION_STAGE)
+            .mapValues(IndexedTrace::getTrace);
+      } else {
+        traceStream = this.suppressIntermediateTraces(this.aggregateByScan(windowedEvStream),
+            AGGREGATION_STAGE);
+      }
+    }
+
+
+    // Map traces to a new key that resembles all included spans and
+    // reduce similar Traces of one window to a single Trace
+    if (this.traceKeyMode == TraceKeyMode.FINGERPRINT) {
+      final KStream<Windowed<String>, Trace> fingerprintStream = traceStream
+          .map((key, trace) -> KeyValue
+              .pair(new Windowed<>(TraceFingerprint.of(trace), key.window()), trace));
+
+      this.emitTraces(builder, fingerprintStream,
+          new WindowedSerdes.TimeWindowedSerde<>(Serdes.String(), this.windowSize.toMillis()));
+    } else {
+      final KStream<Windowed<EVSpanKey>, Trace> traceIdSpanStream = traceStream
+          .map((key, trace) -> KeyValue
+              .pair(new Windowed<>(TraceFingerprint.shapeOf(trace), key.window()), trace));
+
+      this.emitTraces(builder, traceIdSpanStream, this.getWindowedAvroSerde(this.windowSize));
+    }
 
-    final KStream<Windowed<String>, Trace> traceStream = traceTable.toStream();
+    return builder.build();
+  }
 
+  /**
+   * Reads the span dumps and translates them to spans keyed by trace id, like the span translator
+   * does, stamped with their start time. The spans are also written to the topic of single spans
+   * if configured, e.g., for other consumers of spans.
+   *
+   * @param builder builder to read the dumps with
+   * @return stream of spans, keyed by trace id
+   */
+  private KStream<String, EVSpan> translateDumps(final StreamsBuilder builder) {
+    final DumpTranslationConfig translatorConfig = this.config.createTranslatorConfig();
+
+    // The default extractor reads spans, dumps keep the timestamp of their record instead
+    final KStream<String, EVSpan> spanStream = builder
+        .stream(translatorConfig.getString(DumpTranslationConfig.IN_TOPIC),
+            Consumed.with(Serdes.ByteArray(), Serdes.ByteArray())
+                .withTimestampExtractor(new UsePreviousTimeOnInvalidTimestamp()))
+        .flatTransform(
+            () -> new DumpTranslator(false, this.decoder, this.validator, this.deadLetters))
+        .transform(SpanTimestampAssigner::new);
+
+    if (this.config.getBoolean(ReconstructorConfig.SPANS_OUT)) {
+      spanStream.to(this.config.getString(ReconstructorConfig.IN_TOPIC),
+          Produced.with(Serdes.String(), this.getSpanSerde()));
+    }
+    return spanStream;
+  }
 
-    // Map traces to a new key that resembles all included spans
-    final KStream<Windowed<EVSpanKey>, Trace> traceIdSpanStream =
-        traceStream.flatMap((key, trace) -> {
+  /**
+   * Passes on the spans whose tumbling window is still open and writes the spans that arrived
+   * after their window closed, but within the configured horizon, as patches to the trace topic,
+   * see {@link LateSpanRouter}. Patches are not reduced with similar traces, and are written to
+   * the trace topic in any {@link OutputMode}. Without a horizon, late spans are left to the
+   * aggregation, which drops them, thus no router is installed.
+   *
+   * <p>The router tells late spans by its own stream time, thus it must run in the task of the
+   * aggregation. Spans of the span topic are keyed by trace id and aggregated in the task that
+   * reads them, whereas translated dumps are repartitioned by trace id ahead of a DSL
+   * aggregation, hence their late spans are only patched {@link AggregationMode#IN_MEMORY}, see
+   * {@link ReconstructorConfig}.
+   *
+   * @param builder builder to register the patch store with
+   * @param spanStream stream of spans, keyed by trace id
+   * @return stream of the spans in time, keyed by trace id
+   */
+  private KStream<String, EVSpan> routeLateSpans(final StreamsBuilder builder,
+                                                 final KStream<String, EVSpan> spanStream) {
+    final Duration horizon = this.config.getLateHorizon();
+    if (horizon.isZero()) {
+      return spanStream;
+    }
+
+    builder.addStateStore(Stores.keyValueStoreBuilder(
+        Stores.persistentKeyValueStore(LATE_SPAN_STORE),
+        new WindowedSerdes.TimeWindowedSerde<>(Serdes.String(), this.windowSize.toMillis()),
+        this.<IndexedTrace>getAvroSerde(false)));
+
+    @SuppressWarnings("unchecked")
+    final KStream<String, SpecificRecord>[] branches = spanStream
+        .flatTransformValues(() -> new LateSpanRouter(LATE_SPAN_STORE, this.windowSize,
+            this.gracePeriod, horizon), LATE_SPAN_STORE)
+        .branch((traceId, value) -> value instanceof Trace, (traceId, value) -> true);
+
+    KStream<String, Trace> patchStream = branches[0].mapValues(value -> (Trace) value);
+    if (this.dictionaryEncoding) {
+      // The dictionary store is registered with the emission of the reduced traces
+      builder.addStateStore(Stores.keyValueStoreBuilder(
+          Stores.persistentKeyValueStore(UNRESOLVED_PATCH_STORE), Serdes.String(),
+          this.<Trace>getAvroSerde(false)));
+      patchStream = patchStream.transform(() -> new SpanDictionaryResolver<>(
+          KafkaConfig.DICTIONARY_STORE, UNRESOLVED_PATCH_STORE), UNRESOLVED_PATCH_STORE);
+    }
+    patchStream.to(this.config.getString(ReconstructorConfig.OUT_TOPIC),
+        Produced.with(Serdes.String(), this.getAvroSerde(false)));
 
-          final List<KeyValue<Windowed<EVSpanKey>, Trace>> result = new LinkedList<>();
+    return branches[1].mapValues(value -> (EVSpan) value);
+  }
 
-          final List<EVSpanData> spanDataList = new ArrayList<>();
+  /**
+   * Reduces traces of the same shape, completes them and writes them to the output topic, in
+   * full or as deltas per group of the configured {@link OutputMode}.
+   *
+   * @param builder builder to register the stores with
+   * @param shapeKeyedTraceStream stream of traces keyed by their windowed shape
+   * @param windowedKeySerde serde for the windowed shape key
+   * @param <K> type of the shape key
+   */
+  private <K> void emitTraces(final StreamsBuilder builder,
+                              final KStream<Windowed<K>, Trace> shapeKeyedTraceStream,
+                              final Serde<Windowed<K>> windowedKeySerde) {
+
+    KStream<Windowed<K>, Trace> similarTraceStream =
+        this.reduceSimilarTraces(shapeKeyedTraceStream, windowedKeySerde);
+
+    if (this.traceKeyMode == TraceKeyMode.FINGERPRINT) {
+      // Record the shapes of emitted traces only, i.e., final shapes if updates are suppressed
+      builder.addStateStore(Stores.timestampedKeyValueStoreBuilder(
+          Stores.persistentTimestampedKeyValueStore(TRACE_SHAPE_STORE), Serdes.String(),
+          this.<EVSpanKey>getAvroSerde(false)));
+      final Duration retention = this.config.getTraceShapeRetention();
+      similarTraceStream = similarTraceStream.transformValues(
+          () -> new TraceShapeRecorder<K>(TRACE_SHAPE_STORE, retention), TRACE_SHAPE_STORE);
+    }
+
+    // Resolve dictionary ids of spans only now that traces are complete
+    final KStream<Windowed<K>, Trace> reducedTraceStream;
+    if (this.dictionaryEncoding) {
+      builder.addGlobalStore(Stores.keyValueStoreBuilder(
+          Stores.inMemoryKeyValueStore(KafkaConfig.DICTIONARY_STORE), Serdes.Long(),
+          Serdes.String()).withLoggingDisabled(),
+          this.config.getString(ReconstructorConfig.DICTIONARY_TOPIC),
+          Consumed.with(Serdes.Long(), Serdes.String()),
+          () -> new SpanDictionary.StoreUpdater(KafkaConfig.DICTIONARY_STORE));
+
+      builder.addStateStore(Stores.keyValueStoreBuilder(
+          Stores.persistentKeyValueStore(UNRESOLVED_TRACE_STORE), windowedKeySerde,
+          this.<Trace>getAvroSerde(false)));
+      reducedTraceStream = similarTraceStream.transform(() -> new SpanDictionaryResolver<>(
+          KafkaConfig.DICTIONARY_STORE, UNRESOLVED_TRACE_STORE), UNRESOLVED_TRACE_STORE);
+    } else {
+      reducedTraceStream = similarTraceStream;
+    }
 
-          for (final EVSpan span : trace.getSpanList()) {
-            spanDataList.add(
-                new EVSpanData(span.getOperationName(), span.getHostname(), span.getAppName()));
-          }
+    // Sort spans in each trace based of start time
+    reducedTraceStream.peek((key, trace) -> trace.getSpanList()
+        .sort((s1, s2) -> Timestamps.compare(s1.getStartTime(), s2.getStartTime())));
+
+    // Key the updates by the trace whose update they are
+    final KStream<Windowed<String>, Trace> traceUpdateStream;
+    if (this.emitsFinalTraces()) {
+      // Each trace is emitted once, thus in order
+      traceUpdateStream = reducedTraceStream.map((key, trace) -> KeyValue
+          .pair(new Windowed<>(TraceWindowAssigner.updatedTraceId(trace), key.window()), trace));
+    } else {
+      traceUpdateStream = this.orderUpdates(reducedTraceStream);
+    }
+
+    // Key the reduced traces by the id of the first trace of their group
+    final KStream<String, Trace> reducedIdTraceStream =
+        traceUpdateStream.map((key, trace) -> KeyValue.pair(trace.getTraceId(), trace));
+
+    reducedIdTraceStream.process(() -> new TraceEmissionMeter<>(RECONSTRUCTION_STAGE,
+        trace -> trace.getSpanList().size(), Trace::getEndTime));
+
+    if (this.traceDump.isEnabled()) {
+      reducedIdTraceStream.process(this.traceDump.processor());
+    }
+
+    if (this.outputMode == OutputMode.DELTA) {
+      // Deltas are computed per trace and window, whose updates all end up in the same task
+      builder.addStateStore(Stores.keyValueStoreBuilder(
+          Stores.persistentKeyValueStore(TRACE_DELTA_STORE),
+          new WindowedSerdes.TimeWindowedSerde<>(Serdes.String(), this.windowSize.toMillis()),
+          this.<TraceDeltaState>getAvroSerde(false)));
+
+      final Duration retention = this.timeToClose().multipliedBy(2);
+      traceUpdateStream
+          .transform(() -> new TraceDeltaTransformer(TRACE_DELTA_STORE, retention),
+              TRACE_DELTA_STORE)
+          .to(this.config.getString(ReconstructorConfig.DELTA_OUT_TOPIC),
+              Produced.with(Serdes.String(), this.getAvroSerde(false)));
+    } else {
+      reducedIdTraceStream.to(this.config.getString(ReconstructorConfig.OUT_TOPIC),
+          Produced.with(Serdes.String(), this.getAvroSerde(false)));
+    }
+  }
 
-          final EVSpanKey newKey = new EVSpanKey(spanDataList);
+  /**
+   * Brings the intermediate updates of each trace back in order. As a trace grows, its updates
+   * are reduced with different shape keys, possibly in different tasks, thus they are
+   * repartitioned by the id of the trace whose update they are and reduced per reduction window
+   * to the most progressed update, i.e., the one with the most spans and calls. A stale update
+   * emits that update again rather than itself.
+   *
+   * @param reducedTraceStream stream of reduced traces, keyed by their windowed shape
+   * @param <K> type of the shape key
+   * @return stream of the updates in order per trace, keyed by the trace id and reduction window
+   */
+  private <K> KStream<Windowed<String>, Trace> orderUpdates(
+      final KStream<Windowed<K>, Trace> reducedTraceStream) {
+
+    // Updates may arrive until the reduction window closed, after the time to close of both the
+    // aggregation and the reduction
+    final Duration grace = this.timeToClose().multipliedBy(2);
+
+    return reducedTraceStream
+        .transform(TraceWindowAssigner::new)
+        .groupByKey(Grouped.with(TRACE_UPDATE_STORE, Serdes.String(), this.getAvroSerde(false)))
+        .windowedBy(TimeWindows.of(this.windowSize).grace(grace))
+        .reduce((latest, update) -> progressOf(update) >= progressOf(latest) ? update : latest,
+            Materialized.<String, Trace, WindowStore<Bytes, byte[]>>as(TRACE_UPDATE_STORE)
+                .withKeySerde(Serdes.String())
+                .withValueSerde(this.getAvroSerde(false))
+                .withRetention(this.windowSize.plus(grace)))
+        .toStream();
+  }
 
-          final Windowed<EVSpanKey> newWindowedKey = new Windowed<>(newKey, key.window());
+  /**
+   * Returns how far a trace has progressed, spans and calls are only ever added to a trace.
+   */
+  private static long progressOf(final Trace trace) {
+    long calls = 0;
+    for (final EVSpan span : trace.getSpanList()) {
+      calls += span.getRequestCount();
+    }
+    return (long) trace.getSpanList().size() << 32 | calls;
+  }
 
-          result.add(KeyValue.pair(newWindowedKey, trace));
-          return result;
-        });
+  /**
+   * Reduces traces with the same (windowed) shape key to a single trace, which carries the id of
+   * the first trace of the group and the spans and steps of the latest one. If the traces are
+   * final, the durations of the spans of all traces of the group are merged.
+   *
+   * @param shapeKeyedTraceStream stream of traces keyed by their windowed shape
+   * @param windowedKeySerde serde for the windowed shape key
+   * @param <K> type of the shape key
+   * @return stream of reduced traces, keyed by their windowed shape
+   */
+  private <K> KStream<Windowed<K>, Trace> reduceSimilarTraces(
+      final KStream<Windowed<K>, Trace> shapeKeyedTraceStream,
+      final Serde<Windowed<K>> windowedKeySerde) {
 
+    // Durations are only merged if every trace arrives once, otherwise the intermediate
+    // updates of a trace would be counted repeatedly
+    final boolean finalTraces = this.emitsFinalTraces();
 
-    // Reduce similar Traces of one window to a single Trace
-    final KTable<Windowed<EVSpanKey>, Trace> reducedTraceTable = traceIdSpanStream
-        .groupByKey(Grouped.with(getWindowedAvroSerde(WINDOW_SIZE), getAvroSerde(false)))
+    final KTable<Windowed<K>, Trace> reducedTraceTable = shapeKeyedTraceStream
+        .groupByKey(Grouped.with(windowedKeySerde, this.getAvroSerde(false)))
         .aggregate(Trace::new, (sharedTraceKey, trace, reducedTrace) -> {
 
 
@@ -160,73 +564,264 @@ public class SpanToTraceReconstructorStream {
             reducedTrace = trace;
           } else {
             reducedTrace.setTraceCount(reducedTrace.getTraceCount() + 1);
-            // Use the Span list of the latest trace in the group
+            // Use the Span list and steps of the latest trace in the group
             // Do so since span list only grow but never loose elements
+            // The durations of all traces in the group are kept however
+            if (finalTraces) {
+              mergeDurations(trace.getSpanList(), reducedTrace.getSpanList());
+            }
             reducedTrace.setSpanList(trace.getSpanList());
+            reducedTrace.setSteps(trace.getSteps());
 
             // Update start and end time of the trace
 
-            if (tsToInstant(trace.getStartTime()).isBefore(
-                tsToInstant(reducedTrace.getStartTime()))) {
+            if (Timestamps.compare(trace.getStartTime(), reducedTrace.getStartTime()) < 0) {
               reducedTrace.setStartTime(trace.getStartTime());
             }
 
 
-            reducedTrace.setEndTime(Math.max(trace.getEndTime(), reducedTrace.getEndTime()));
+            Timestamps.setEnd(reducedTrace,
+                Math.max(Timestamps.endNanos(trace), Timestamps.endNanos(reducedTrace)));
           }
 
           return reducedTrace;
-        }, Materialized.with(this.getWindowedAvroSerde(WINDOW_SIZE), this.getAvroSerde(false)));
-    // .suppress(Suppressed.untilWindowCloses(Suppressed.BufferConfig.unbounded()));
+        }, Materialized.with(windowedKeySerde, this.getAvroSerde(false)));
 
-    final KStream<Windowed<EVSpanKey>, Trace> reducedTraceStream = reducedTraceTable.toStream();
-
-    final KStream<String, Trace> reducedIdTraceStream = reducedTraceStream.flatMap((key, value) -> {
-
-      final List<KeyValue<String, Trace>> result = new LinkedList<>();
-
-      result.add(KeyValue.pair(value.getTraceId(), value));
-      return result;
-    });
-
-    reducedIdTraceStream.foreach((key, trace) -> {
+    return this.suppressIntermediateTraces(reducedTraceTable, REDUCTION_STAGE);
+  }
 
-      final List<EVSpan> list = trace.getSpanList();
-      System.out.println("Trace with id " + trace.getTraceId());
-      list.forEach((val) -> {
-        System.out.println(
-            tsToInstant(val.getStartTime()).toEpochMilli() + " : " + val.getEndTime() + " für " + val.getOperationName()
-                + " mit Anzahl " + val.getRequestCount());
-      });
+  /**
+   * Merges the exclusive durations and latency statistics of the spans of a reduced trace into
+   * the spans of the same operations of the next trace of its group.
+   *
+   * @param spans spans of the next trace, which are updated
+   * @param reducedSpans spans of the reduced trace
+   */
+  private static void mergeDurations(final List<EVSpan> spans, final List<EVSpan> reducedSpans) {
+    final Map<String, EVSpan> reducedByOperation = new HashMap<>();
+    for (final EVSpan reducedSpan : reducedSpans) {
+      reducedByOperation.put(SpanDictionary.operationKey(reducedSpan), reducedSpan);
+    }
+    for (final EVSpan span : spans) {
+      final EVSpan reducedSpan = reducedByOperation.get(SpanDictionary.operationKey(span));
+      if (reducedSpan != null) {
+        span.setExclusiveDuration(
+            CallTrees.exclusiveDuration(span) + CallTrees.exclusiveDuration(reducedSpan));
+        LatencyStatistics.add(span, reducedSpan);
+      }
+    }
+  }
 
-    });
+  /**
+   * Holds back intermediate updates of the windowed table until their window closes if
+   * suppression is enabled, and counts the updates before and the emits after the suppression.
+   * The table must be the result of an aggregation, whose serdes are used for the suppression
+   * buffer. Traces aggregated {@link AggregationMode#IN_MEMORY} are not windowed by the DSL,
+   * hence their suppression waits for the time to close instead of the window close time.
+   *
+   * @param table windowed table of traces
+   * @param stage name of the stage, used for the suppression and its metrics
+   * @param <K> type of the windowed key
+   * @param <V> type of the traces
+   * @return stream of the (final) traces
+   */
+  private <K, V> KStream<Windowed<K>, V> suppressIntermediateTraces(
+      final KTable<Windowed<K>, V> table, final String stage) {
+
+    table.toStream()
+        .process(() -> new TraceUpdateCounter<>(stage, TraceUpdateCounter.UPDATES));
+
+    final KStream<Windowed<K>, V> finalStream;
+    if (this.suppression.isEnabled()) {
+      finalStream = table
+          .suppress(this.suppression.toSuppressed(this.timeToClose(), stage + "-suppress",
+              this.aggregationMode != AggregationMode.IN_MEMORY))
+          .toStream();
+    } else {
+      finalStream = table.toStream();
+    }
+    finalStream.process(() -> new TraceUpdateCounter<>(stage, TraceUpdateCounter.EMITS));
+    return finalStream;
+  }
 
+  /**
+   * Aggregates spans to traces in session windows per trace id. Each trace is then assigned to the
+   * fixed window of the configured size its session ends in, such that similar traces can be
+   * reduced per window. Unlike its start, the end of a session does not move as out-of-order spans
+   * extend the session backwards, and the reduction window does not close before the session.
+   *
+   * @param spanStream stream of spans, keyed by trace id
+   * @return stream of traces
+   */
+  private KStream<Windowed<String>, Trace> aggregateBySession(
+      final KStream<String, EVSpan> spanStream) {
+
+    final KTable<Windowed<String>, IndexedTrace> sessionTable = spanStream
+        .groupByKey(Grouped.with(Serdes.String(), this.getSpanSerde()))
+        .windowedBy(SessionWindows.with(this.inactivityGap).grace(this.gracePeriod))
+        .aggregate(IndexedTrace::new, new IndexedTraceAggregator(), new IndexedTraceMerger(),
+            Materialized.with(Serdes.String(), this.getAvroSerde(false)));
+
+    final TimeWindows reductionWindows = TimeWindows.of(this.windowSize);
+
+    return this.suppressIntermediateTraces(sessionTable, AGGREGATION_STAGE)
+        // Sessions that were merged into another session are deleted
+        .filter((session, indexedTrace) -> indexedTrace != null)
+        .map((session, indexedTrace) -> KeyValue.pair(new Windowed<>(session.key(),
+                reductionWindows.windowsFor(session.window().end()).values().iterator().next()),
+            indexedTrace.getTrace()));
+  }
 
+  /**
+   * Aggregates spans to traces in tumbling windows, keeping open traces in memory until their
+   * window closes. The emitted traces are final, hence they are never suppressed.
+   *
+   * @param builder builder to register the checkpoint store with
+   * @param spanStream stream of spans, keyed by trace id
+   * @return stream of traces
+   */
+  private KStream<Windowed<String>, Trace> aggregateInMemory(
+      final StreamsBuilder builder, final KStream<String, EVSpan> spanStream) {
+
+    builder.addStateStore(CheckpointStore.builder(
+        Stores.persistentKeyValueStore(OPEN_TRACE_STORE),
+        new WindowedSerdes.TimeWindowedSerde<>(Serdes.String(), this.windowSize.toMillis()),
+        this.<IndexedTrace>getAvroSerde(false)));
+
+    final KStream<Windowed<String>, Trace> traceStream = spanStream.transform(
+        () -> new OpenTraceTransformer(OPEN_TRACE_STORE, this.windowSize, this.gracePeriod),
+        OPEN_TRACE_STORE);
+    traceStream.process(
+        () -> new TraceUpdateCounter<>(AGGREGATION_STAGE, TraceUpdateCounter.EMITS));
+    return traceStream;
+  }
 
-    // Sort spans in each trace based of start time
-    reducedIdTraceStream.peek((key, trace) -> trace.getSpanList().sort((s1, s2) -> {
-      Instant instant1 = tsToInstant(s1.getStartTime());
-      Instant instant2 = tsToInstant(s2.getStartTime());
-      return instant1.compareTo(instant2);
-    }));
+  /**
+   * Returns whether every trace is aggregated once, rather than in intermediate updates.
+   */
+  private boolean emitsFinalTraces() {
+    return this.aggregationMode == AggregationMode.IN_MEMORY
+        || this.suppression.isEnabled() && !this.suppression.isBounded();
+  }
 
-    // TODO implement count attribute in Trace -> number of similar traces
-    // TODO Reduce traceIdAndAllTracesStream to similiar traces stream (map and reduce)
-    // use something like hash for trace
-    // https://docs.confluent.io/current/streams/quickstart.html#purpose
+  /**
+   * Returns the longest time a window may stay open after one of its updates.
+   */
+  private Duration timeToClose() {
+    return (this.windowMode == WindowMode.SESSION ? this.inactivityGap : this.windowSize)
+        .plus(this.gracePeriod);
+  }
 
-    reducedIdTraceStream.to(KafkaConfig.OUT_TOPIC,
-        Produced.with(Serdes.String(), this.getAvroSerde(false)));
-    return builder.build();
+  /**
+   * Aggregates spans to traces by scanning the span list of the trace for each span.
+   *
+   * @param windowedEvStream windowed stream of spans, grouped by trace id
+   * @return table of traces
+   */
+  private KTable<Windowed<String>, Trace> aggregateByScan(
+      final TimeWindowedKStream<String, EVSpan> windowedEvStream) {
+    return windowedEvStream.aggregate(Trace::new, (traceId, evSpan, trace) -> {
+
+      // Initialize Span according to first span of the trace
+      final long evSpanEndNanos = Timestamps.endNanos(evSpan);
+      if (trace.getSpanList() == null) {
+        Timestamps.setEnd(evSpan, evSpanEndNanos);
+        evSpan.setExclusiveDuration(CallTrees.exclusiveDuration(evSpan));
+        evSpan.setLatency(LatencyStatistics.of(evSpan));
+        trace.setSpanList(new ArrayList<>());
+        trace.getSpanList().add(evSpan);
+        trace.setSteps(new ArrayList<>());
+
+        trace.setStartTime(evSpan.getStartTime());
+        trace.setOverallRequestCount(1);
+        Timestamps.setEnd(trace, evSpanEndNanos);
+
+        trace.setTraceCount(1);
+
+        // set initial trace id - do not change, since this is the major key for kafka
+        // partitioning
+        trace.setTraceId(evSpan.getTraceId());
+      } else {
+
+        // Find duplicates in Trace (via operation key), aggregate based on request count
+        // Furthermore, potentially update trace values
+        trace
+            .getSpanList()
+            .stream()
+            .filter(s -> SpanDictionary.operationKey(s).equals(SpanDictionary.operationKey(evSpan)))
+            .findAny()
+            .ifPresentOrElse(s -> {
+              s.setRequestCount(s.getRequestCount() + 1);
+              s.setExclusiveDuration(
+                  CallTrees.exclusiveDuration(s) + CallTrees.exclusiveDuration(evSpan));
+              LatencyStatistics.add(s, evSpan);
+
+              if (Timestamps.compare(evSpan.getStartTime(), s.getStartTime()) < 0) {
+                s.setStartTime(evSpan.getStartTime());
+              }
+
+              if (evSpanEndNanos > Timestamps.endNanos(s)) {
+                Timestamps.setEnd(s, evSpanEndNanos);
+              }
+            }, () -> {
+              Timestamps.setEnd(evSpan, evSpanEndNanos);
+              evSpan.setExclusiveDuration(CallTrees.exclusiveDuration(evSpan));
+              evSpan.setLatency(LatencyStatistics.of(evSpan));
+              trace.getSpanList().add(evSpan);
+            });
+        trace
+            .getSpanList()
+            .stream()
+            .map(EVSpan::getStartTime)
+            .min(Timestamps::compare)
+            .ifPresent(trace::setStartTime);
+        trace
+            .getSpanList()
+            .stream()
+            .mapToLong(Timestamps::endNanos)
+            .max()
+            .ifPresent(endNanos -> Timestamps.setEnd(trace, endNanos));
+
+
+      }
+      return trace;
+    }, Materialized.with(Serdes.String(), this.getAvroSerde(false)));
   }
 
-  public void run() {
+  /**
+   * Provisions the topics if configured, starts the stream and serves its metrics on the
+   * configured port, see {@link PrometheusExporter}. Scale out by configuring
+   * {@code streams.num.stream.threads} and by starting further instances with the same
+   * application id, up to the number of partitions of the input topics.
+   *
+   * @return the running stream
+   */
+  public KafkaStreams run() {
+
+    if (this.config.getBoolean(ReconstructorConfig.TOPICS_PROVISION)) {
+      new TopicProvisioner(this.config).provision();
+    }
 
     final KafkaStreams streams = new KafkaStreams(this.topology, this.streamsConfig);
     streams.cleanUp();
     streams.start();
 
-    Runtime.getRuntime().addShutdownHook(new Thread(streams::close));
+    final int metricsPort = this.config.getInt(ReconstructorConfig.METRICS_PORT);
+    final PrometheusExporter exporter = new PrometheusExporter(metricsPort, streams::metrics);
+    if (metricsPort > 0) {
+      exporter.start();
+    }
+
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      exporter.close();
+      streams.close();
+      this.traceDump.close();
+      if (this.inputMode == InputMode.DUMPS) {
+        this.decoder.close();
+        this.deadLetters.close();
+      }
+    }));
+    return streams;
   }
 
   /**
@@ -239,12 +834,25 @@ public class SpanToTraceReconstructorStream {
   private <T extends SpecificRecord> SpecificAvroSerde<T> getAvroSerde(final boolean forKey) {
     final SpecificAvroSerde<T> serde = new SpecificAvroSerde<>(this.registryClient);
     serde.configure(
-        Map.of(AbstractKafkaAvroSerDeConfig.SCHEMA_REGISTRY_URL_CONFIG, KafkaConfig.REGISTRY_URL),
+        Map.of(AbstractKafkaAvroSerDeConfig.SCHEMA_REGISTRY_URL_CONFIG,
+            this.config.getString(ReconstructorConfig.REGISTRY_URL)),
         forKey);
 
     return serde;
   }
 
+  /**
+   * Creates a {@link Serde} for spans, which decodes spans of the current schema directly, see
+   * {@link EVSpanDeserializer}.
+   *
+   * @return a Serde
+   */
+  private Serde<EVSpan> getSpanSerde() {
+    final SpecificAvroSerde<EVSpan> serde = this.getAvroSerde(false);
+    return Serdes.serdeFrom(serde.serializer(),
+        new EVSpanDeserializer(this.registryClient, serde.deserializer()));
+  }
+
   /**
    * Creates a new Serde for windowed keys of specific avro records
    *
@@ -259,10 +867,6 @@ public class SpanToTraceReconstructorStream {
     return new WindowedSerdes.TimeWindowedSerde<>(keySerde, windowSizeInMs.toMillis());
   }
 
-  private Instant tsToInstant(Timestamp ts) {
-    return Instant.ofEpochSecond(ts.getSeconds(), ts.getNanoAdjust());
-  }
-
 
 }
 
@@ -0,0 +1,48 @@
+package traceImporter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns dense int ids to strings, such that the operation, host and app names of open traces are
+ * held once per task instead of once per span. Ids are never released, which is fine for the
+ * bounded number of distinct names of a monitored landscape.
+ */
+final class StringPool {
+
+  private final Map<String, Integer> ids = new HashMap<>();
+
+  private final List<String> values = new ArrayList<>();
+
+  private long sizeInBytes;
+
+  /**
+   * Returns the id of the given string, assigning a new one if the string is not pooled yet.
+   */
+  int idOf(final String value) {
+    final Integer id = this.ids.get(value);
+    if (id != null) {
+      return id;
+    }
+    final int newId = this.values.size();
+    this.ids.put(value, newId);
+    this.values.add(value);
+    // String, map entry, boxed id and list slot
+    this.sizeInBytes += ColumnarTrace.stringSize(value) + 32 + 16 + 4;
+    return newId;
+  }
+
+  String valueOf(final int id) {
+    return this.values.get(id);
+  }
+
+  /**
+   * Returns an estimate of the heap retained by the pool.
+   */
+  long sizeInBytes() {
+    return this.sizeInBytes;
+  }
+
+}
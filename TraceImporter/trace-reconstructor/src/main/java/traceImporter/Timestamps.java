@@ -0,0 +1,72 @@
+package traceImporter;
+
+/**
+ * Arithmetic on {@link Timestamp}s in primitive epoch nanoseconds, without {@code Instant}s.
+ *
+ * <p>End times are read from the {@code endTimestamp} of spans and traces, which has nanosecond
+ * precision, and from the {@code endTime} in milliseconds of records written before the end
+ * timestamp was added. Both are written, such that readers of either field see the same end.
+ * Likewise, span durations are read from {@code durationNanos} and fall back to the
+ * {@code duration} in milliseconds.
+ */
+final class Timestamps {
+
+  private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+  private static final long NANOS_PER_MILLI = 1_000_000L;
+
+  private Timestamps() {
+    // Utility class
+  }
+
+  static int compare(final Timestamp t1, final Timestamp t2) {
+    final int bySeconds = Long.compare(t1.getSeconds(), t2.getSeconds());
+    return bySeconds != 0 ? bySeconds : Integer.compare(t1.getNanoAdjust(), t2.getNanoAdjust());
+  }
+
+  static long toNanos(final Timestamp timestamp) {
+    return timestamp.getSeconds() * NANOS_PER_SECOND + timestamp.getNanoAdjust();
+  }
+
+  static long toMillis(final Timestamp timestamp) {
+    return Math.floorDiv(toNanos(timestamp), NANOS_PER_MILLI);
+  }
+
+  static Timestamp ofNanos(final long nanos) {
+    return new Timestamp(Math.floorDiv(nanos, NANOS_PER_SECOND),
+        (int) Math.floorMod(nanos, NANOS_PER_SECOND));
+  }
+
+  static long endNanos(final EVSpan span) {
+    final Timestamp end = span.getEndTimestamp();
+    return end != null ? toNanos(end) : span.getEndTime() * NANOS_PER_MILLI;
+  }
+
+  static long durationNanos(final EVSpan span) {
+    final Long nanos = span.getDurationNanos();
+    return nanos != null ? nanos : span.getDuration() * NANOS_PER_MILLI;
+  }
+
+  static long endNanos(final Trace trace) {
+    final Timestamp end = trace.getEndTimestamp();
+    return end != null ? toNanos(end) : trace.getEndTime() * NANOS_PER_MILLI;
+  }
+
+  /**
+   * Sets the end of a span in both precisions.
+   */
+  static void setEnd(final EVSpan span, final long endNanos) {
+    span.setEndTime(Math.floorDiv(endNanos, NANOS_PER_MILLI));
+    span.setEndTimestamp(ofNanos(endNanos));
+  }
+
+  /**
+   * Sets the end of a trace in both precisions and its duration since its start.
+   */
+  static void setEnd(final Trace trace, final long endNanos) {
+    trace.setEndTime(Math.floorDiv(endNanos, NANOS_PER_MILLI));
+    trace.setEndTimestamp(ofNanos(endNanos));
+    trace.setDuration(endNanos - toNanos(trace.getStartTime()));
+  }
+
+}
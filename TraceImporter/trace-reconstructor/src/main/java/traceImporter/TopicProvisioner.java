@@ -0,0 +1,115 @@
+package traceImporter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.admin.TopicDescription;
+import org.apache.kafka.common.KafkaFuture;
+import org.apache.kafka.common.config.TopicConfig;
+import org.apache.kafka.common.errors.TopicExistsException;
+
+/**
+ * Creates the topics of the reconstructor with the configured number of partitions, such that
+ * spans can be processed by multiple stream threads and instances. Spans are keyed by trace id,
+ * hence all spans of a trace end up in the same partition and thus the same stream task.
+ *
+ * <p>Existing topics are left untouched, as adding partitions would move trace ids that are
+ * currently being aggregated to other partitions.
+ */
+public class TopicProvisioner {
+
+  private final ReconstructorConfig config;
+
+  public TopicProvisioner(final ReconstructorConfig config) {
+    this.config = config;
+  }
+
+  /**
+   * Creates all missing topics and verifies that the topics of single spans and span batches are
+   * co-partitioned.
+   *
+   * @throws IllegalStateException if the topics cannot be created or are not co-partitioned
+   */
+  public void provision() {
+    final Properties adminProps = new Properties();
+    adminProps.put(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG,
+        this.config.getString(ReconstructorConfig.BROKER));
+
+    try (AdminClient admin = AdminClient.create(adminProps)) {
+      for (final Map.Entry<String, KafkaFuture<Void>> result : admin.createTopics(this.topics())
+          .values().entrySet()) {
+        try {
+          result.getValue().get();
+        } catch (final ExecutionException e) {
+          if (!(e.getCause() instanceof TopicExistsException)) {
+            throw new IllegalStateException("Cannot create topic " + result.getKey(), e);
+          }
+        }
+      }
+
+      if (this.config.getBoolean(ReconstructorConfig.SPAN_BATCHES)) {
+        // Spans and batches are aggregated by the same task, hence a trace id must be assigned
+        // to the same partition in both topics
+        final String inTopic = this.config.getString(ReconstructorConfig.IN_TOPIC);
+        final String batchInTopic = this.config.getString(ReconstructorConfig.BATCH_IN_TOPIC);
+        final Map<String, TopicDescription> descriptions =
+            admin.describeTopics(List.of(inTopic, batchInTopic)).all().get();
+        if (descriptions.get(inTopic).partitions().size()
+            != descriptions.get(batchInTopic).partitions().size()) {
+          throw new IllegalStateException(
+              inTopic + " and " + batchInTopic + " must have the same number of partitions");
+        }
+      }
+    } catch (final ExecutionException e) {
+      throw new IllegalStateException("Cannot describe topics", e);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while provisioning topics", e);
+    }
+  }
+
+  private Collection<NewTopic> topics() {
+    final int partitions = this.config.getInt(ReconstructorConfig.TOPICS_PARTITIONS);
+    final short replicationFactor =
+        this.config.getShort(ReconstructorConfig.TOPICS_REPLICATION_FACTOR);
+
+    final List<NewTopic> topics = new ArrayList<>();
+    if (this.config.getInputMode() == SpanToTraceReconstructorStream.InputMode.DUMPS) {
+      topics.add(new NewTopic(this.config.createTranslatorConfig()
+          .getString(DumpTranslationConfig.IN_TOPIC), partitions, replicationFactor));
+    }
+    if (this.config.getInputMode() == SpanToTraceReconstructorStream.InputMode.SPANS
+        || this.config.getBoolean(ReconstructorConfig.SPANS_OUT)) {
+      topics.add(new NewTopic(this.config.getString(ReconstructorConfig.IN_TOPIC), partitions,
+          replicationFactor));
+    }
+    if (this.config.getOutputMode() == SpanToTraceReconstructorStream.OutputMode.DELTA) {
+      topics.add(new NewTopic(this.config.getString(ReconstructorConfig.DELTA_OUT_TOPIC),
+          partitions, replicationFactor));
+    }
+    // Patches of late spans are written to the trace topic in any output mode
+    if (this.config.getOutputMode() == SpanToTraceReconstructorStream.OutputMode.FULL
+        || !this.config.getLateHorizon().isZero()) {
+      topics.add(new NewTopic(this.config.getString(ReconstructorConfig.OUT_TOPIC), partitions,
+          replicationFactor));
+    }
+    if (this.config.getBoolean(ReconstructorConfig.SPAN_BATCHES)) {
+      topics.add(new NewTopic(this.config.getString(ReconstructorConfig.BATCH_IN_TOPIC),
+          partitions, replicationFactor));
+    }
+    if (this.config.getBoolean(ReconstructorConfig.DICTIONARY_ENCODING)) {
+      // Read as a whole by every instance, thus a single partition suffices
+      topics.add(new NewTopic(this.config.getString(ReconstructorConfig.DICTIONARY_TOPIC), 1,
+          replicationFactor)
+          .configs(Map.of(TopicConfig.CLEANUP_POLICY_CONFIG, TopicConfig.CLEANUP_POLICY_COMPACT)));
+    }
+    return topics;
+  }
+
+}
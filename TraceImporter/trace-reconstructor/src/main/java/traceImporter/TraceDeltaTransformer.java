@@ -0,0 +1,187 @@
+package traceImporter;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.kstream.Transformer;
+import org.apache.kafka.streams.kstream.Windowed;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.processor.PunctuationType;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.KeyValueStore;
+
+/**
+ * Emits each update of a trace as a {@link TraceDelta} that contains only the spans that were
+ * added or changed since the previous update of the trace in its window, numbered by a sequence
+ * per group of trace and window. As a trace grows, its updates are reduced with different
+ * shapes, but the deltas of the trace still only contain its new spans. Spans are matched by
+ * their {@link SpanDictionary#operationKey(EVSpan)} and compared by a 64 bit hash of their
+ * fields, which the store keeps per group. The steps of the trace are small compared to its
+ * spans and are always sent in full.
+ *
+ * <p>The first emission of a group is a snapshot with all spans, as is any emission that lacks a
+ * previously emitted span. Deltas are keyed by the id of their trace, such that they stay in order
+ * in the delta topic, and carry the id of the first trace of the reduced group like full traces.
+ * A group is forgotten once the stream time passed its last emission by the retention, after
+ * which it would start over with a snapshot.
+ */
+public class TraceDeltaTransformer
+    implements Transformer<Windowed<String>, Trace, KeyValue<String, TraceDelta>> {
+
+  private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+  private final String storeName;
+
+  private final Duration retention;
+
+  private ProcessorContext context;
+
+  private KeyValueStore<Windowed<String>, TraceDeltaState> stateStore;
+
+  /**
+   * Creates a new transformer.
+   *
+   * @param storeName name of the store of the emitted spans per trace and window
+   * @param retention time after its last emission for which a group is kept, must exceed the time
+   *        a trace may be updated
+   */
+  public TraceDeltaTransformer(final String storeName, final Duration retention) {
+    this.storeName = storeName;
+    this.retention = retention;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public void init(final ProcessorContext context) {
+    this.context = context;
+    this.stateStore =
+        (KeyValueStore<Windowed<String>, TraceDeltaState>) context.getStateStore(this.storeName);
+    context.schedule(this.retention, PunctuationType.STREAM_TIME, this::expire);
+  }
+
+  @Override
+  public KeyValue<String, TraceDelta> transform(final Windowed<String> key, final Trace trace) {
+    final TraceDeltaState previous = this.stateStore.get(key);
+
+    final Map<String, Long> spanHashes = new HashMap<>();
+    final List<EVSpan> changedSpans = new ArrayList<>();
+    for (final EVSpan span : trace.getSpanList()) {
+      final String operationKey = SpanDictionary.operationKey(span);
+      final long hash = hash(span);
+      spanHashes.put(operationKey, hash);
+      final Long previousHash =
+          previous == null ? null : previous.getSpanHashes().get(operationKey);
+      if (previousHash == null || previousHash != hash) {
+        changedSpans.add(span);
+      }
+    }
+
+    final boolean snapshot = previous == null
+        || spanHashes.size() != trace.getSpanList().size()
+        || !spanHashes.keySet().containsAll(previous.getSpanHashes().keySet());
+
+    final TraceDeltaState state;
+    if (previous == null) {
+      state = new TraceDeltaState(groupId(key), 0L, 0L, spanHashes);
+    } else {
+      state = previous;
+      state.setSequence(previous.getSequence() + 1);
+      state.setSpanHashes(spanHashes);
+    }
+    state.setEmittedAt(this.context.timestamp());
+    this.stateStore.put(key, state);
+
+    return KeyValue.pair(key.key(), new TraceDelta(trace.getTraceId(),
+        state.getGroupId(), state.getSequence(), snapshot, trace.getStartTime(),
+        trace.getEndTime(), trace.getDuration(), trace.getOverallRequestCount(),
+        trace.getTraceCount(), snapshot ? trace.getSpanList() : changedSpans,
+        trace.getEndTimestamp(), trace.getSteps()));
+  }
+
+  /**
+   * Removes the groups that were last emitted before the retention.
+   */
+  private void expire(final long streamTime) {
+    final List<Windowed<String>> expired = new ArrayList<>();
+    try (KeyValueIterator<Windowed<String>, TraceDeltaState> iterator =
+             this.stateStore.all()) {
+      iterator.forEachRemaining(entry -> {
+        if (entry.value.getEmittedAt() < streamTime - this.retention.toMillis()) {
+          expired.add(entry.key);
+        }
+      });
+    }
+    expired.forEach(this.stateStore::delete);
+  }
+
+  /**
+   * Identifies a group by a 64 bit hash of the start of its window and its trace id.
+   */
+  private static String groupId(final Windowed<String> key) {
+    return String.format("%016x", HASH_FUNCTION.newHasher()
+        .putLong(key.window().start())
+        .putString(key.key(), StandardCharsets.UTF_8)
+        .hash().asLong());
+  }
+
+  /**
+   * Hashes all fields of a span, such that any change of the span changes the hash.
+   */
+  static long hash(final EVSpan span) {
+    final Hasher hasher = HASH_FUNCTION.newHasher();
+    putString(hasher, span.getSpanId());
+    putString(hasher, span.getTraceId());
+    hasher.putLong(span.getStartTime().getSeconds())
+        .putInt(span.getStartTime().getNanoAdjust())
+        .putLong(Timestamps.endNanos(span))
+        .putLong(span.getDuration())
+        .putLong(Timestamps.durationNanos(span));
+    putString(hasher, span.getOperationName());
+    hasher.putInt(span.getRequestCount());
+    putString(hasher, span.getHostname());
+    putString(hasher, span.getAppName());
+
+    final SpanDictionaryIds ids = span.getDictionaryIds();
+    if (ids != null) {
+      hasher.putLong(ids.getOperationId()).putLong(ids.getHostnameId())
+          .putLong(ids.getAppNameId());
+    }
+
+    if (span.getParentSpanId() != null) {
+      putString(hasher, span.getParentSpanId());
+    }
+    if (span.getExclusiveDuration() != null) {
+      hasher.putLong(span.getExclusiveDuration());
+    }
+
+    final LatencyStats latency = span.getLatency();
+    if (latency != null) {
+      hasher.putLong(latency.getMinDuration())
+          .putLong(latency.getMaxDuration())
+          .putLong(latency.getSumDuration())
+          .putInt(latency.getHistogramOffset());
+      latency.getHistogram().forEach(hasher::putInt);
+    }
+    return hasher.hash().asLong();
+  }
+
+  private static void putString(final Hasher hasher, final String value) {
+    if (value == null) {
+      hasher.putInt(-1);
+    } else {
+      hasher.putInt(value.length()).putString(value, StandardCharsets.UTF_8);
+    }
+  }
+
+  @Override
+  public void close() {
+  }
+
+}
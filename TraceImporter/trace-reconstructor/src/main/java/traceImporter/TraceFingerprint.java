@@ -0,0 +1,75 @@
+package traceImporter;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Computes compact fingerprints of the shape of a {@link Trace}, i.e., of the operation, host and
+ * application of all of its spans. Traces with the same shape, i.e., the same {@link EVSpanKey}
+ * regardless of the order of the spans, share the same fingerprint.
+ */
+public final class TraceFingerprint {
+
+  private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+  private TraceFingerprint() {
+    // Utility class
+  }
+
+  /**
+   * Computes the 128 bit fingerprint of the shape of the given trace.
+   *
+   * @param trace the trace
+   * @return hex representation of the fingerprint
+   */
+  public static String of(final Trace trace) {
+    final List<HashCode> spanHashes = new ArrayList<>(trace.getSpanList().size());
+    for (final EVSpan span : trace.getSpanList()) {
+      final Hasher hasher = HASH_FUNCTION.newHasher();
+      putString(hasher, span.getOperationName());
+      putString(hasher, span.getHostname());
+      putString(hasher, span.getAppName());
+
+      final SpanDictionaryIds ids = span.getDictionaryIds();
+      if (ids != null) {
+        hasher.putLong(ids.getOperationId()).putLong(ids.getHostnameId())
+            .putLong(ids.getAppNameId());
+      }
+      spanHashes.add(hasher.hash());
+    }
+    // Canonicalise by combining independently of the order of the spans
+    return Hashing.combineUnordered(spanHashes).toString();
+  }
+
+  /**
+   * Hashes a name, which is null if the span is dictionary encoded.
+   */
+  private static void putString(final Hasher hasher, final String value) {
+    if (value == null) {
+      hasher.putInt(-1);
+    } else {
+      hasher.putInt(value.length()).putString(value, StandardCharsets.UTF_8);
+    }
+  }
+
+  /**
+   * Extracts the full shape of the given trace.
+   *
+   * @param trace the trace
+   * @return the shape as {@link EVSpanKey}
+   */
+  public static EVSpanKey shapeOf(final Trace trace) {
+    final List<EVSpanData> spanDataList = new ArrayList<>(trace.getSpanList().size());
+    for (final EVSpan span : trace.getSpanList()) {
+      spanDataList.add(new EVSpanData(span.getOperationName(), span.getHostname(),
+          span.getAppName(), span.getDictionaryIds()));
+    }
+    return new EVSpanKey(spanDataList);
+  }
+
+}
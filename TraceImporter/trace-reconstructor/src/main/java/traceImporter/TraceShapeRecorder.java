@@ -0,0 +1,117 @@
+package traceImporter;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.kafka.streams.kstream.ValueTransformerWithKey;
+import org.apache.kafka.streams.kstream.Windowed;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.processor.PunctuationType;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.TimestampedKeyValueStore;
+import org.apache.kafka.streams.state.ValueAndTimestamp;
+
+/**
+ * Records the full shape of the reduced traces keyed by their {@link TraceFingerprint} in a
+ * dictionary store, such that each shape is stored only once. Traces are passed on unchanged.
+ *
+ * <p>Shapes are recorded as traces are emitted, thus only final shapes are recorded if
+ * intermediate updates are suppressed. Each shape keeps the stream time it was last emitted at,
+ * which is refreshed at most twice per retention, and is forgotten once the stream time passed it
+ * by the retention.
+ *
+ * @param <K> type of the shape key, the fingerprint
+ */
+public class TraceShapeRecorder<K> implements ValueTransformerWithKey<Windowed<K>, Trace, Trace> {
+
+  private static final int RECENTLY_RECORDED_CAPACITY = 10_000;
+
+  private final String storeName;
+
+  private final long retentionMs;
+
+  private ProcessorContext context;
+
+  private TimestampedKeyValueStore<String, EVSpanKey> shapeStore;
+
+  /**
+   * Stream time at which fingerprints that are known to be in the store were last recorded,
+   * avoids reading the store on each update.
+   */
+  private final Map<String, Long> recentlyRecorded =
+      new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, Long> eldest) {
+          return this.size() > RECENTLY_RECORDED_CAPACITY;
+        }
+      };
+
+  /**
+   * Creates a new recorder.
+   *
+   * @param storeName name of the store of shapes by fingerprint
+   * @param retention time after its last emission for which a shape is kept
+   */
+  public TraceShapeRecorder(final String storeName, final Duration retention) {
+    this.storeName = storeName;
+    this.retentionMs = retention.toMillis();
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public void init(final ProcessorContext context) {
+    this.context = context;
+    this.shapeStore =
+        (TimestampedKeyValueStore<String, EVSpanKey>) context.getStateStore(this.storeName);
+    context.schedule(Duration.ofMillis(Math.max(1, this.retentionMs / 2)),
+        PunctuationType.STREAM_TIME, this::expire);
+  }
+
+  @Override
+  public Trace transform(final Windowed<K> fingerprint, final Trace trace) {
+    final String key = fingerprint.key().toString();
+    final long timestamp = this.context.timestamp();
+
+    final Long recordedAt = this.recentlyRecorded.get(key);
+    if (recordedAt != null && timestamp - recordedAt < this.retentionMs / 2) {
+      return trace;
+    }
+
+    final ValueAndTimestamp<EVSpanKey> stored = this.shapeStore.get(key);
+    if (stored == null || timestamp - stored.timestamp() >= this.retentionMs / 2) {
+      this.shapeStore.put(key, ValueAndTimestamp.make(
+          stored == null ? TraceFingerprint.shapeOf(trace) : stored.value(), timestamp));
+      this.recentlyRecorded.put(key, timestamp);
+    } else {
+      this.recentlyRecorded.put(key, stored.timestamp());
+    }
+    return trace;
+  }
+
+  /**
+   * Removes the shapes that were last emitted before the retention.
+   */
+  private void expire(final long streamTime) {
+    final List<String> expired = new ArrayList<>();
+    try (KeyValueIterator<String, ValueAndTimestamp<EVSpanKey>> iterator =
+             this.shapeStore.all()) {
+      iterator.forEachRemaining(entry -> {
+        if (entry.value.timestamp() < streamTime - this.retentionMs) {
+          expired.add(entry.key);
+        }
+      });
+    }
+    expired.forEach(key -> {
+      this.shapeStore.delete(key);
+      this.recentlyRecorded.remove(key);
+    });
+  }
+
+  @Override
+  public void close() {
+    this.recentlyRecorded.clear();
+  }
+
+}
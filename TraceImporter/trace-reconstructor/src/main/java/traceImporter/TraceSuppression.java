@@ -0,0 +1,101 @@
+package traceImporter;
+
+import java.time.Duration;
+import org.apache.kafka.streams.kstream.Suppressed;
+import org.apache.kafka.streams.kstream.Suppressed.BufferConfig;
+import org.apache.kafka.streams.kstream.Windowed;
+
+/**
+ * Configures whether intermediate updates of windowed traces are held back until their window
+ * closes, such that each window emits each trace only once.
+ *
+ * <p>An unbounded buffer guarantees final results. A bounded buffer emits its oldest traces
+ * early, i.e., before their window closes, if it runs full, which may produce additional
+ * intermediate results but never blocks or fails the stream.
+ */
+public final class TraceSuppression {
+
+  private static final long UNBOUNDED = Long.MAX_VALUE;
+
+  private static final TraceSuppression DISABLED = new TraceSuppression(false, UNBOUNDED,
+      UNBOUNDED);
+
+  private final boolean enabled;
+
+  private final long maxRecords;
+
+  private final long maxBytes;
+
+  private TraceSuppression(final boolean enabled, final long maxRecords, final long maxBytes) {
+    this.enabled = enabled;
+    this.maxRecords = maxRecords;
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Every update of a trace is forwarded.
+   */
+  public static TraceSuppression disabled() {
+    return DISABLED;
+  }
+
+  /**
+   * Updates are buffered until the window closes, without any bound on the buffer.
+   */
+  public static TraceSuppression unbounded() {
+    return new TraceSuppression(true, UNBOUNDED, UNBOUNDED);
+  }
+
+  /**
+   * Updates are buffered until the window closes or the buffer exceeds one of the given bounds.
+   *
+   * @param maxRecords maximum number of traces in the buffer
+   * @param maxBytes maximum size of the buffer in bytes
+   * @return the suppression configuration
+   */
+  public static TraceSuppression bounded(final long maxRecords, final long maxBytes) {
+    if (maxRecords <= 0 || maxBytes <= 0) {
+      throw new IllegalArgumentException("Suppression buffer bounds must be positive");
+    }
+    return new TraceSuppression(true, maxRecords, maxBytes);
+  }
+
+  public boolean isEnabled() {
+    return this.enabled;
+  }
+
+  public boolean isBounded() {
+    return this.maxRecords != UNBOUNDED || this.maxBytes != UNBOUNDED;
+  }
+
+  /**
+   * Creates the suppression for a windowed table.
+   *
+   * @param timeToClose the longest time a window may stay open after one of its updates, i.e.,
+   *        window size plus grace period for time windows and inactivity gap plus grace period for
+   *        session windows
+   * @param name name of the suppression, must be unique within the topology
+   * @param windowed whether the table stems from a windowed aggregation of the DSL, otherwise
+   *        windows do not define a close time and the suppression waits for the time to close
+   * @return the suppression
+   */
+  @SuppressWarnings("rawtypes")
+  Suppressed<Windowed> toSuppressed(final Duration timeToClose, final String name,
+                                    final boolean windowed) {
+    if (!this.isBounded()) {
+      if (windowed) {
+        return Suppressed.untilWindowCloses(BufferConfig.unbounded()).withName(name);
+      }
+      final Suppressed<Windowed> suppressed =
+          Suppressed.untilTimeLimit(timeToClose, BufferConfig.unbounded());
+      return suppressed.withName(name);
+    }
+
+    // Windows close only with strict buffers, so bounded buffers wait for the longest time a
+    // window may stay open after an update instead
+    final Suppressed<Windowed> suppressed = Suppressed.untilTimeLimit(timeToClose,
+        BufferConfig.maxRecords(this.maxRecords).withMaxBytes(this.maxBytes).emitEarlyWhenFull());
+    return suppressed.withName(name);
+  }
+
+}
@@ -0,0 +1,64 @@
+package traceImporter;
+
+import org.apache.kafka.common.metrics.Sensor;
+import org.apache.kafka.streams.processor.AbstractProcessor;
+import org.apache.kafka.streams.processor.ProcessorContext;
+
+/**
+ * Counts the traces that pass a point of the topology in the Kafka Streams metrics of the
+ * application.
+ *
+ * <p>Counting the updates before and the emits after a {@link TraceSuppression} of the same stage
+ * yields the number of intermediate updates absorbed by the suppression, i.e.,
+ * {@code updates-total - emits-total} of group {@value #METRICS_GROUP}, tagged with the stage as
+ * {@value #STAGE_TAG}.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class TraceUpdateCounter<K, V> extends AbstractProcessor<K, V> {
+
+  /**
+   * Scope of the sensors, yields the metrics group {@value #METRICS_GROUP}.
+   */
+  public static final String SCOPE = "trace-suppression";
+
+  public static final String METRICS_GROUP = "stream-trace-suppression-metrics";
+
+  public static final String STAGE_TAG = "trace-suppression-id";
+
+  public static final String UPDATES = "updates";
+
+  public static final String EMITS = "emits";
+
+  private final String stage;
+
+  private final String operation;
+
+  private Sensor sensor;
+
+  /**
+   * Creates a new counter.
+   *
+   * @param stage the stage of the topology, e.g., the aggregation
+   * @param operation either {@link #UPDATES} or {@link #EMITS}
+   */
+  public TraceUpdateCounter(final String stage, final String operation) {
+    this.stage = stage;
+    this.operation = operation;
+  }
+
+  @Override
+  public void init(final ProcessorContext context) {
+    super.init(context);
+    // Sensors are shared by all tasks of a thread, thus they are not removed on close
+    this.sensor = context.metrics().addThroughputSensor(SCOPE, this.stage, this.operation,
+        Sensor.RecordingLevel.INFO);
+  }
+
+  @Override
+  public void process(final K key, final V value) {
+    this.sensor.record();
+  }
+
+}
@@ -0,0 +1,46 @@
+package traceImporter;
+
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.kstream.Transformer;
+import org.apache.kafka.streams.kstream.Windowed;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.processor.To;
+
+/**
+ * Keys each reduced trace by the id of the trace that updated it and stamps it with the start of
+ * its window, such that the updates of a trace can be windowed by their reduction window again.
+ *
+ * <p>A reduced trace carries the id of the first trace of its group, but the spans of the latest
+ * one, i.e., the spans of the trace whose update it is.
+ *
+ * @param <K> type of the shape key
+ */
+public class TraceWindowAssigner<K>
+    implements Transformer<Windowed<K>, Trace, KeyValue<String, Trace>> {
+
+  private ProcessorContext context;
+
+  @Override
+  public void init(final ProcessorContext context) {
+    this.context = context;
+  }
+
+  @Override
+  public KeyValue<String, Trace> transform(final Windowed<K> key, final Trace trace) {
+    this.context.forward(updatedTraceId(trace), trace,
+        To.all().withTimestamp(key.window().start()));
+    return null;
+  }
+
+  /**
+   * Returns the id of the trace that updated a reduced trace.
+   */
+  static String updatedTraceId(final Trace trace) {
+    return trace.getSpanList().get(0).getTraceId();
+  }
+
+  @Override
+  public void close() {
+  }
+
+}
@@ -0,0 +1,69 @@
+package traceImporter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class ColumnarTraceTest {
+
+  private static final String TRACE_ID = "50c246ad9c9883d1558df9f19b9ae7a6";
+
+  /**
+   * A trace restored from its checkpoint must continue to aggregate and link calls like the trace
+   * it was checkpointed from, and like the {@link IndexedTraceAggregator}, for span ids of 16 hex
+   * digits and any other span ids alike.
+   */
+  @Test
+  void testRestoreFromCheckpoint() {
+    // A calls B twice and the first B calls C. C and the first B arrive before their callers
+    final List<EVSpan> spans = List.of(
+        span("c", "00000000000000b1", "OpC", 100L),
+        span("00000000000000b1", "a-span", "OpB", 300L),
+        span("a-span", null, "OpA", 1000L),
+        span("00000000000000b2", "a-span", "OpB", 200L));
+
+    final StringPool pool = new StringPool();
+    final ColumnarTrace trace = new ColumnarTrace(TRACE_ID, pool);
+    final IndexedTraceAggregator aggregator = new IndexedTraceAggregator();
+    IndexedTrace indexedTrace = new IndexedTrace();
+    ColumnarTrace restored = null;
+    for (int i = 0; i < spans.size(); i++) {
+      if (i == 2) {
+        restored = ColumnarTrace.of(trace.toIndexedTrace(), new StringPool());
+        assertEquals(trace.toTrace(), restored.toTrace());
+      }
+      trace.add(spans.get(i));
+      if (restored != null) {
+        restored.add(spans.get(i));
+      }
+      indexedTrace = aggregator.apply(TRACE_ID, EVSpan.newBuilder(spans.get(i)).build(),
+          indexedTrace);
+    }
+
+    final Trace expected = indexedTrace.getTrace();
+    expected.setTraceId(TRACE_ID);
+    assertEquals(expected, trace.toTrace());
+    assertEquals(expected, restored.toTrace());
+    assertEquals(3, trace.size());
+    assertEquals(2, LatencyStatistics.count(trace.toTrace().getSpanList().get(1).getLatency()));
+  }
+
+  private static EVSpan span(final String spanId, final String parentSpanId,
+                             final String operationName, final long durationNanos) {
+    return EVSpan.newBuilder()
+        .setSpanId(spanId)
+        .setTraceId(TRACE_ID)
+        .setStartTime(new Timestamp(10L, 0))
+        .setEndTime(10_001L)
+        .setDuration(1L)
+        .setOperationName(operationName)
+        .setRequestCount(1)
+        .setHostname("samplehost")
+        .setAppName("sampleapp")
+        .setParentSpanId(parentSpanId)
+        .setDurationNanos(durationNanos)
+        .build();
+  }
+
+}
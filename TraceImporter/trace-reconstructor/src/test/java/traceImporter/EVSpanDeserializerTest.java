@@ -0,0 +1,118 @@
+package traceImporter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import io.confluent.kafka.schemaregistry.client.MockSchemaRegistryClient;
+import io.confluent.kafka.schemaregistry.client.rest.exceptions.RestClientException;
+import io.confluent.kafka.serializers.AbstractKafkaAvroSerDeConfig;
+import io.confluent.kafka.streams.serdes.avro.SpecificAvroSerde;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.avro.Schema;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class EVSpanDeserializerTest {
+
+  private static final String TOPIC = "spans";
+
+  private MockSchemaRegistryClient mockSRC;
+
+  private Serializer<EVSpan> serializer;
+
+  private final AtomicInteger fallbacks = new AtomicInteger();
+
+  private EVSpanDeserializer deserializer;
+
+  @BeforeEach
+  void setUp() {
+    this.mockSRC = new MockSchemaRegistryClient();
+    final SpecificAvroSerde<EVSpan> serde = new SpecificAvroSerde<>(this.mockSRC);
+    serde.configure(
+        Map.of(AbstractKafkaAvroSerDeConfig.SCHEMA_REGISTRY_URL_CONFIG, "http://dummy"), false);
+    this.serializer = serde.serializer();
+
+    final Deserializer<EVSpan> fallback = serde.deserializer();
+    this.deserializer = new EVSpanDeserializer(this.mockSRC, (topic, data) -> {
+      this.fallbacks.incrementAndGet();
+      return fallback.deserialize(topic, data);
+    });
+  }
+
+  @Test
+  void testDirectDecoding() {
+    final EVSpan span = new EVSpan("7ef83c66eabd5fbb", "50c246ad9c9883d1558df9f19b9ae7a6",
+        new Timestamp(1581938395L, 702319100), 1581938395705L, 3L, "net.explorviz.Opération",
+        1, "samplehost", "sampleapp", null, null, null, null, null, null);
+    final EVSpan encodedSpan = EVSpan.newBuilder(span)
+        .setOperationName(null)
+        .setDictionaryIds(new SpanDictionaryIds(1L, -2L, 300_000_000_000L))
+        .setEndTimestamp(new Timestamp(1581938395L, 705981005))
+        .setLatency(new LatencyStats(3L, 3_000_000L, 4_500_003L, 3,
+            new ArrayList<>(List.of(1, 0, 0, 2))))
+        .setParentSpanId("0123456789abcdef")
+        .setExclusiveDuration(1_500_003L)
+        .setDurationNanos(3_661_905L)
+        .build();
+
+    assertEquals(span, this.deserializer.deserialize(TOPIC, this.serializer.serialize(TOPIC, span)));
+    assertEquals(encodedSpan,
+        this.deserializer.deserialize(TOPIC, this.serializer.serialize(TOPIC, encodedSpan)));
+    assertEquals(0, this.fallbacks.get());
+  }
+
+  @Test
+  void testFallbackForOtherSchemas() throws IOException, RestClientException {
+    // A later version of the schema, with an additional field
+    final List<Schema.Field> fields = new ArrayList<>();
+    for (final Schema.Field field : EVSpan.SCHEMA$.getFields()) {
+      fields.add(new Schema.Field(field, field.schema()));
+    }
+    fields.add(new Schema.Field("comment", Schema.create(Schema.Type.STRING), null, ""));
+    final Schema evolved = Schema.createRecord(EVSpan.SCHEMA$.getName(), null,
+        EVSpan.SCHEMA$.getNamespace(), false, fields);
+    final int evolvedId = this.mockSRC.register(TOPIC + "-value", evolved);
+
+    // Registering the schema of this class for the first time assigns the next id
+    final EVSpan span = new EVSpan("7ef83c66eabd5fbb", "50c246ad9c9883d1558df9f19b9ae7a6",
+        new Timestamp(1581938395L, 702319100), 1581938395705L, 3L, "op", 1, "samplehost",
+        "sampleapp", null, null, null, null, null, 3661905L);
+    final byte[] bytes = this.serializer.serialize(TOPIC, span);
+    assertEquals(evolvedId + 1, bytes[4]);
+
+    // Relabel the span as written with the evolved schema, to which it is not compatible
+    final byte[] relabeled = Arrays.copyOf(bytes, bytes.length);
+    relabeled[4] = (byte) evolvedId;
+    assertThrows(SerializationException.class,
+        () -> this.deserializer.deserialize(TOPIC, relabeled));
+    assertEquals(1, this.fallbacks.get());
+
+    assertEquals(span, this.deserializer.deserialize(TOPIC, bytes));
+    assertEquals(1, this.fallbacks.get());
+  }
+
+  @Test
+  void testMalformed() {
+    final EVSpan span = new EVSpan("7ef83c66eabd5fbb", "50c246ad9c9883d1558df9f19b9ae7a6",
+        new Timestamp(1581938395L, 702319100), 1581938395705L, 3L, "op", 1, "samplehost",
+        "sampleapp", null, null, null, null, null, 3661905L);
+    final byte[] bytes = this.serializer.serialize(TOPIC, span);
+
+    assertThrows(SerializationException.class,
+        () -> this.deserializer.deserialize(TOPIC, Arrays.copyOf(bytes, bytes.length - 1)));
+    assertThrows(SerializationException.class,
+        () -> this.deserializer.deserialize(TOPIC, Arrays.copyOf(bytes, bytes.length + 1)));
+    bytes[0] = 1;
+    assertThrows(SerializationException.class,
+        () -> this.deserializer.deserialize(TOPIC, bytes));
+  }
+
+}
@@ -0,0 +1,107 @@
+package traceImporter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Properties;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.config.ConfigException;
+import org.apache.kafka.streams.StreamsConfig;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ReconstructorConfigTest {
+
+  /**
+   * Tests whether command line arguments override environment variables, which override the
+   * properties file, which overrides the defaults.
+   */
+  @Test
+  void testPrecedence(@TempDir final Path dir) throws IOException {
+    final Path file = dir.resolve("reconstructor.properties");
+    final Properties fileValues = new Properties();
+    fileValues.setProperty(ReconstructorConfig.WINDOW_SIZE_MS, "1000");
+    fileValues.setProperty(ReconstructorConfig.GRACE_PERIOD_MS, "1000");
+    fileValues.setProperty(ReconstructorConfig.COMMIT_INTERVAL_MS, "1000");
+    try (Writer out = Files.newBufferedWriter(file)) {
+      fileValues.store(out, null);
+    }
+
+    final ReconstructorConfig config = ReconstructorConfig.load(
+        new String[] {"--config=" + file, "--window.size.ms=3000",
+            "--streams.num.stream.threads=4"},
+        Map.of("TRACE_RECONSTRUCTOR_WINDOW_SIZE_MS", "2000",
+            "TRACE_RECONSTRUCTOR_WINDOW_GRACE_MS", "2000", "PATH", "/usr/bin"));
+
+    assertEquals(Duration.ofSeconds(3), config.getWindowSize());
+    assertEquals(Duration.ofSeconds(2), config.getGracePeriod());
+    assertEquals(1000L, config.getLong(ReconstructorConfig.COMMIT_INTERVAL_MS));
+    assertEquals(KafkaConfig.IN_TOPIC, config.getString(ReconstructorConfig.IN_TOPIC));
+
+    final Properties streamsProps = config.streamsProperties();
+    assertEquals("4", streamsProps.get(StreamsConfig.NUM_STREAM_THREADS_CONFIG));
+    assertEquals(1000L, streamsProps.get(StreamsConfig.COMMIT_INTERVAL_MS_CONFIG));
+  }
+
+  /**
+   * Tests whether the tuning profile configures the clients of Kafka Streams, unless the
+   * settings are passed on explicitly.
+   */
+  @Test
+  void testTuningProfile() {
+    final Properties streamsProps = new ReconstructorConfig(Map.of(
+        ReconstructorConfig.TUNING_PROFILE, TuningProfile.THROUGHPUT.name(),
+        "streams.producer.linger.ms", "20")).streamsProperties();
+
+    assertEquals("lz4",
+        streamsProps.get(StreamsConfig.producerPrefix(ProducerConfig.COMPRESSION_TYPE_CONFIG)));
+    assertEquals("20",
+        streamsProps.get(StreamsConfig.producerPrefix(ProducerConfig.LINGER_MS_CONFIG)));
+    assertEquals(64 * 1024,
+        streamsProps.get(StreamsConfig.consumerPrefix(ConsumerConfig.FETCH_MIN_BYTES_CONFIG)));
+
+    assertEquals(Map.of(), new ReconstructorConfig(Map.of()).getTuningProfile().streamsConfigs());
+  }
+
+  /**
+   * Tests whether invalid values, unknown keys and invalid Kafka Streams values are rejected.
+   */
+  @Test
+  void testValidation() {
+    assertThrows(ConfigException.class,
+        () -> new ReconstructorConfig(Map.of(ReconstructorConfig.WINDOW_SIZE_MS, "0")));
+    assertThrows(ConfigException.class,
+        () -> new ReconstructorConfig(Map.of(ReconstructorConfig.AGGREGATION_MODE, "FAST")));
+    assertThrows(ConfigException.class,
+        () -> new ReconstructorConfig(Map.of(ReconstructorConfig.TUNING_PROFILE, "FASTEST")));
+    assertThrows(ConfigException.class,
+        () -> new ReconstructorConfig(Map.of("window.size", "4000")));
+    assertThrows(ConfigException.class,
+        () -> new ReconstructorConfig(Map.of("streams.num.stream.threads", "many")));
+    assertThrows(ConfigException.class,
+        () -> ReconstructorConfig.load(new String[] {"window.size.ms"}, Map.of()));
+    assertThrows(ConfigException.class,
+        () -> new ReconstructorConfig(Map.of(ReconstructorConfig.WINDOW_MODE, "SESSION",
+            ReconstructorConfig.AGGREGATION_MODE, "SCAN")));
+    assertThrows(ConfigException.class,
+        () -> new ReconstructorConfig(Map.of(ReconstructorConfig.WINDOW_MODE, "SESSION",
+            ReconstructorConfig.LATE_HORIZON_MS, "10000")));
+    assertThrows(ConfigException.class,
+        () -> new ReconstructorConfig(Map.of(ReconstructorConfig.INPUT_MODE, "DUMPS",
+            ReconstructorConfig.LATE_HORIZON_MS, "10000")));
+    assertThrows(ConfigException.class,
+        () -> new ReconstructorConfig(Map.of(ReconstructorConfig.INPUT_MODE, "DUMPS",
+            ReconstructorConfig.TRANSLATOR_PREFIX + "batching", "true")));
+    assertThrows(ConfigException.class,
+        () -> new ReconstructorConfig(Map.of(ReconstructorConfig.INPUT_MODE, "DUMPS",
+            ReconstructorConfig.TRANSLATOR_PREFIX + "topic", "dumps")));
+  }
+
+}
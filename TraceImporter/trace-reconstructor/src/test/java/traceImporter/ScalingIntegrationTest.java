@@ -0,0 +1,190 @@
+package traceImporter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.confluent.kafka.schemaregistry.client.MockSchemaRegistryClient;
+import io.confluent.kafka.serializers.AbstractKafkaAvroSerDeConfig;
+import io.confluent.kafka.streams.serdes.avro.SpecificAvroSerde;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.streams.KafkaStreams;
+import org.apache.kafka.streams.integration.utils.EmbeddedKafkaCluster;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Verifies against an embedded broker that traces are reconstructed correctly if their spans are
+ * processed by multiple instances with multiple stream threads each.
+ */
+@Tag("integration")
+class ScalingIntegrationTest {
+
+  private static final int PARTITIONS = 4;
+  private static final int INSTANCES = 2;
+  private static final int THREADS = 2;
+
+  private static final int TRACES = 40;
+  private static final int SPANS_PER_TRACE = 10;
+
+  private static final Duration TIMEOUT = Duration.ofSeconds(60);
+
+  private StoppableKafkaCluster cluster;
+
+  private MockSchemaRegistryClient mockSRC;
+
+  private final List<KafkaStreams> instances = new ArrayList<>();
+
+  @BeforeEach
+  void setUp() throws Exception {
+    this.cluster = new StoppableKafkaCluster();
+    this.cluster.start();
+    this.mockSRC = new MockSchemaRegistryClient();
+  }
+
+  @AfterEach
+  void tearDown() {
+    this.instances.forEach(streams -> streams.close(TIMEOUT));
+    this.cluster.stop();
+  }
+
+  @Test
+  void testReconstructionWithMultipleThreadsAndInstances(@TempDir final Path stateDir)
+      throws Exception {
+
+    for (int i = 0; i < INSTANCES; i++) {
+      final Map<String, Object> values = new HashMap<>();
+      values.put(ReconstructorConfig.BROKER, this.cluster.bootstrapServers());
+      values.put(ReconstructorConfig.TOPICS_PROVISION, true);
+      values.put(ReconstructorConfig.TOPICS_PARTITIONS, PARTITIONS);
+      values.put(ReconstructorConfig.COMMIT_INTERVAL_MS, 100L);
+      // Instances would compete for the same metrics port
+      values.put(ReconstructorConfig.METRICS_PORT, 0);
+      values.put("streams.num.stream.threads", THREADS);
+      values.put("streams.state.dir", stateDir.resolve("instance-" + i).toString());
+      this.instances.add(
+          new SpanToTraceReconstructorStream(this.mockSRC, new ReconstructorConfig(values)).run());
+    }
+    this.awaitRunning();
+
+    // Interleave the spans of all traces, all within the same window
+    final long windowStart = System.currentTimeMillis() / 4000 * 4000;
+    try (KafkaProducer<String, EVSpan> producer = this.createProducer()) {
+      for (int s = 0; s < SPANS_PER_TRACE; s++) {
+        for (int t = 0; t < TRACES; t++) {
+          final String traceId = "trace" + t;
+          final long startMillis = windowStart + s;
+          final Timestamp start = new Timestamp(startMillis / 1000,
+              (int) (startMillis % 1000) * 1_000_000);
+          // Operations differ between traces, so that traces are not reduced with each other
+          final EVSpan span = new EVSpan("span" + s, traceId, start, startMillis + 1, 1L,
+              "Op" + t + "-" + s, 1, "samplehost", "sampleapp", null, null, null, null, null,
+              1_000_000L);
+          producer.send(new ProducerRecord<>(KafkaConfig.IN_TOPIC, traceId, span));
+        }
+      }
+    }
+
+    final Map<String, Trace> latestTraces = this.consumeLatestTraces();
+
+    assertEquals(TRACES, latestTraces.size());
+    latestTraces.forEach((traceId, trace) -> {
+      assertEquals(SPANS_PER_TRACE, trace.getSpanList().size(), traceId);
+      trace.getSpanList().forEach(span -> assertEquals(traceId, span.getTraceId()));
+    });
+
+    // Each instance must have done its share of the work
+    for (final KafkaStreams streams : this.instances) {
+      assertFalse(streams.localThreadsMetadata().stream()
+          .allMatch(thread -> thread.activeTasks().isEmpty()));
+    }
+  }
+
+  private void awaitRunning() throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + TIMEOUT.toMillis();
+    while (!this.instances.stream().allMatch(s -> s.state() == KafkaStreams.State.RUNNING)) {
+      assertTrue(System.currentTimeMillis() < deadline, "Streams did not start");
+      Thread.sleep(100);
+    }
+  }
+
+  /**
+   * Consumes traces until the latest trace of each trace id contains all of its spans.
+   */
+  private Map<String, Trace> consumeLatestTraces() {
+    final Properties props = new Properties();
+    props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, this.cluster.bootstrapServers());
+    props.put(ConsumerConfig.GROUP_ID_CONFIG, UUID.randomUUID().toString());
+    props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+
+    final Deserializer<Trace> traceDeserializer =
+        new SpecificAvroSerde<Trace>(this.mockSRC).deserializer();
+    traceDeserializer.configure(
+        Map.of(AbstractKafkaAvroSerDeConfig.SCHEMA_REGISTRY_URL_CONFIG, "http://dummy"), false);
+
+    final Map<String, Trace> latestTraces = new HashMap<>();
+    try (KafkaConsumer<String, Trace> consumer =
+        new KafkaConsumer<>(props, Serdes.String().deserializer(), traceDeserializer)) {
+      consumer.subscribe(List.of(KafkaConfig.OUT_TOPIC));
+
+      final long deadline = System.currentTimeMillis() + TIMEOUT.toMillis();
+      while (!this.isComplete(latestTraces) && System.currentTimeMillis() < deadline) {
+        for (final ConsumerRecord<String, Trace> record : consumer.poll(Duration.ofMillis(200))) {
+          latestTraces.put(record.key(), record.value());
+        }
+      }
+    }
+    return latestTraces;
+  }
+
+  private boolean isComplete(final Map<String, Trace> latestTraces) {
+    return latestTraces.size() == TRACES && latestTraces.values().stream()
+        .allMatch(trace -> trace.getSpanList().size() == SPANS_PER_TRACE);
+  }
+
+  private KafkaProducer<String, EVSpan> createProducer() {
+    final Properties props = new Properties();
+    props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, this.cluster.bootstrapServers());
+
+    final Serializer<EVSpan> evSpanSerializer =
+        new SpecificAvroSerde<EVSpan>(this.mockSRC).serializer();
+    evSpanSerializer.configure(
+        Map.of(AbstractKafkaAvroSerDeConfig.SCHEMA_REGISTRY_URL_CONFIG, "http://dummy"), false);
+
+    return new KafkaProducer<>(props, Serdes.String().serializer(), evSpanSerializer);
+  }
+
+  /**
+   * Embedded single broker cluster that can be stopped outside of a JUnit 4 rule.
+   */
+  private static class StoppableKafkaCluster extends EmbeddedKafkaCluster {
+
+    StoppableKafkaCluster() {
+      super(1);
+    }
+
+    void stop() {
+      this.after();
+    }
+  }
+
+}
@@ -1,22 +1,34 @@
 package traceImporter;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import com.google.protobuf.ByteString;
 import io.confluent.kafka.schemaregistry.client.MockSchemaRegistryClient;
 import io.confluent.kafka.schemaregistry.client.rest.exceptions.RestClientException;
 import io.confluent.kafka.serializers.AbstractKafkaAvroSerDeConfig;
 import io.confluent.kafka.streams.serdes.avro.SpecificAvroSerde;
+import io.opencensus.proto.dump.DumpSpans;
+import io.opencensus.proto.trace.v1.AttributeValue;
+import io.opencensus.proto.trace.v1.Span;
+import io.opencensus.proto.trace.v1.TruncatableString;
 
 import java.io.IOException;
-import java.sql.Time;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Random;
+import java.util.stream.Collectors;
 
+import org.apache.avro.specific.SpecificRecord;
 import org.apache.kafka.common.serialization.Deserializer;
 import org.apache.kafka.common.serialization.Serdes;
 import org.apache.kafka.common.serialization.Serializer;
@@ -24,61 +36,44 @@ import org.apache.kafka.streams.KeyValue;
 import org.apache.kafka.streams.StreamsConfig;
 import org.apache.kafka.streams.TestInputTopic;
 import org.apache.kafka.streams.TestOutputTopic;
-import org.apache.kafka.streams.Topology;
 import org.apache.kafka.streams.TopologyTestDriver;
+import org.apache.kafka.streams.kstream.Windowed;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.apache.kafka.streams.state.ValueAndTimestamp;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 class SpanToTraceReconstructorStreamTest {
 
+  private static final Map<String, String> SERDE_CONFIG =
+      Map.of(AbstractKafkaAvroSerDeConfig.SCHEMA_REGISTRY_URL_CONFIG, "http://dummy");
 
-  private TopologyTestDriver testDriver;
-  private TestInputTopic<String, EVSpan> inputTopic;
-  private TestOutputTopic<String, Trace> outputTopic;
+  private MockSchemaRegistryClient mockSRC;
 
-  @BeforeEach
-  void setUp() throws IOException, RestClientException {
-
-    final MockSchemaRegistryClient mockSRC = new MockSchemaRegistryClient();
-    mockSRC.register(KafkaConfig.OUT_TOPIC + "-value", Trace.SCHEMA$);
-    mockSRC.register(KafkaConfig.IN_TOPIC + "-key", EVSpanKey.SCHEMA$);
-    mockSRC.register(KafkaConfig.IN_TOPIC + "-value", EVSpan.SCHEMA$);
-
-
-    final Topology topo = new SpanToTraceReconstructorStream(mockSRC).getTopology();
-
-    final Serializer<EVSpan> evSpanSerializer = new SpecificAvroSerde<EVSpan>(mockSRC).serializer();
-    final Deserializer<Trace> traceDeserializer =
-        new SpecificAvroSerde<Trace>(mockSRC).deserializer();
+  private final List<Pipeline> pipelines = new ArrayList<>();
 
-    final Properties props = new Properties();
-    props.put(StreamsConfig.APPLICATION_ID_CONFIG, "test");
-    props.put(StreamsConfig.DEFAULT_TIMESTAMP_EXTRACTOR_CLASS_CONFIG,
-        KafkaConfig.TIMESTAMP_EXTRACTOR);
-    props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:1234");
+  private int spanIds;
 
-    final Map<String, String> conf =
-        Map.of(AbstractKafkaAvroSerDeConfig.SCHEMA_REGISTRY_URL_CONFIG, "http://dummy");
-    evSpanSerializer.configure(conf, false);
-
-    traceDeserializer.configure(conf, false);
-
-    this.testDriver = new TopologyTestDriver(topo, props);
+  /**
+   * Pipeline of the default configuration.
+   */
+  private Pipeline pipeline;
 
-    this.inputTopic =
-        this.testDriver.createInputTopic(KafkaConfig.IN_TOPIC, Serdes.String().serializer(),
-            evSpanSerializer);
-    this.outputTopic =
-        this.testDriver.createOutputTopic(KafkaConfig.OUT_TOPIC, Serdes.String().deserializer(),
-            traceDeserializer);
+  @BeforeEach
+  void setUp() throws IOException, RestClientException {
+    this.mockSRC = new MockSchemaRegistryClient();
+    this.mockSRC.register(KafkaConfig.OUT_TOPIC + "-value", Trace.SCHEMA$);
+    this.mockSRC.register(KafkaConfig.IN_TOPIC + "-key", EVSpanKey.SCHEMA$);
+    this.mockSRC.register(KafkaConfig.IN_TOPIC + "-value", EVSpan.SCHEMA$);
 
-    mockSRC.getAllSubjects().forEach(System.out::println);
+    this.pipeline = this.start(Map.of());
   }
 
   @AfterEach
   void afterEach() {
-    this.testDriver.close();
+    this.pipelines.forEach(Pipeline::close);
   }
 
 
@@ -88,34 +83,20 @@ class SpanToTraceReconstructorStreamTest {
    */
   @Test
   void testSpanDeduplication() {
-
-    final String traceId = "testtraceid";
-    final String operationName = "OpName";
-
-    Timestamp start1 = new Timestamp(10L, 0);
-    final long end1 = 20L;
-
-
-    Timestamp start2 = new Timestamp(10L, 2323);
+    final Timestamp start1 = new Timestamp(10L, 0);
     final long end2 = 80L;
+    this.pipeline.pipe(
+        this.span("testtraceid", "OpName", start1, 20L).setDurationNanos(10L).build());
+    this.pipeline.pipe(
+        this.span("testtraceid", "OpName", new Timestamp(10L, 2323), end2).setDurationNanos(40L)
+            .build());
 
-
-    final EVSpan evSpan1 =
-        new EVSpan("1", traceId, start1, end1, 10L, operationName, 1, "samplehost", "sampleapp");
-    final EVSpan evSpan2 =
-        new EVSpan("2", traceId, start2, end2, 40L, operationName, 1, "samplehost", "sampleapp");
-
-
-    this.inputTopic.pipeInput(evSpan1.getTraceId(), evSpan1);
-    this.inputTopic.pipeInput(evSpan2.getTraceId(), evSpan2);
-
-
-    final List<KeyValue<String, Trace>> records = this.outputTopic.readKeyValuesToList();
+    final List<KeyValue<String, Trace>> records = this.pipeline.traces.readKeyValuesToList();
 
     assertEquals(2, records.size());
 
-    assertEquals(traceId, records.get(0).key);
-    assertEquals(traceId, records.get(1).key);
+    assertEquals("testtraceid", records.get(0).key);
+    assertEquals("testtraceid", records.get(1).key);
 
     // Trace is "completed" after two updates, thus take the second record
     final Trace trace = records.get(1).value;
@@ -126,7 +107,6 @@ class SpanToTraceReconstructorStreamTest {
     // Deduplication
     assertEquals(1, trace.getSpanList().size());
     assertEquals(2, trace.getSpanList().get(0).getRequestCount());
-
   }
 
 
@@ -135,33 +115,21 @@ class SpanToTraceReconstructorStreamTest {
    */
   @Test
   void testOrdering() {
+    this.pipeline.pipe(
+        this.span("testtraceid", "OpB", new Timestamp(5L, 13), 20L).setDurationNanos(10L).build());
+    this.pipeline.pipe(
+        this.span("testtraceid", "OpA", new Timestamp(5L, 0), 10L).setDurationNanos(5L).build());
 
-
-    Timestamp start1 = new Timestamp(5L, 13);
-
-    Timestamp start2 = new Timestamp(5L, 0);
-    final String traceId = "testtraceid";
-
-    final EVSpan evSpan1 =
-        new EVSpan("1", traceId, start1, 20L, 10L, "OpB", 1, "samplehost", "sampleapp");
-    final EVSpan evSpan2 =
-        new EVSpan("2", traceId, start2, 10L, 5L, "OpA", 1, "samplehost", "sampleapp");
-
-    this.inputTopic.pipeInput(evSpan1.getTraceId(), evSpan1);
-    this.inputTopic.pipeInput(evSpan2.getTraceId(), evSpan2);
-
-    final Trace trace = this.outputTopic.readKeyValuesToList().get(1).value;
+    final Trace trace = this.pipeline.traces.readKeyValuesToList().get(1).value;
 
     // Trace must contain both spans
     assertEquals(2, trace.getSpanList().size());
 
     // Spans in span list must be sorted by start time
-
     Instant instant1 = timestampToInstant(trace.getSpanList().get(0).getStartTime());
     Instant instant2 = timestampToInstant(trace.getSpanList().get(1).getStartTime());
 
     assertTrue(instant1.isBefore(instant2));
-
   }
 
 
@@ -170,25 +138,40 @@ class SpanToTraceReconstructorStreamTest {
    */
   @Test
   void testTraceCreation() {
-    final String traceId = "testtraceid";
-    Timestamp start = new Timestamp(10L, 0);
-
-    long end = timestampToInstant(start).toEpochMilli() +  17;
-
+    final Timestamp start = new Timestamp(10L, 0);
     final EVSpan span =
-        new EVSpan("1", traceId, start, end, getDuration(start, end), "OpB", 1, "samplehost", "sampleapp");
-    this.inputTopic.pipeInput(span.getTraceId(), span);
+        this.span("testtraceid", "OpB", start, timestampToInstant(start).toEpochMilli() + 17)
+            .build();
+    this.pipeline.pipe(span);
 
-    final Trace trace = this.outputTopic.readValue();
+    final Trace trace = this.pipeline.traces.readValue();
     assertNotNull(trace);
 
-    assertEquals(traceId, trace.getTraceId());
-    assertEquals(span.getDuration(), trace.getDuration());
+    assertEquals("testtraceid", trace.getTraceId());
+    assertEquals(span.getDurationNanos(), trace.getDuration());
     assertEquals(span.getStartTime(), trace.getStartTime());
     assertEquals(span.getEndTime(), trace.getEndTime());
     assertEquals(1, trace.getTraceCount());
     assertEquals(1, trace.getSpanList().size());
+  }
 
+  /**
+   * Tests that end times and durations below a millisecond survive the aggregation.
+   */
+  @Test
+  void testNanosecondPrecision() {
+    this.pipeline.pipe(this.span("testtraceid", "OpA", new Timestamp(10L, 100), 10_000L)
+        .setDurationNanos(300L).setEndTimestamp(new Timestamp(10L, 400)).build());
+    this.pipeline.pipe(this.span("testtraceid", "OpB", new Timestamp(10L, 200), 10_000L)
+        .setDurationNanos(700L).setEndTimestamp(new Timestamp(10L, 900)).build());
+
+    final Trace trace = this.pipeline.traces.readKeyValuesToList().get(1).value;
+    assertEquals(new Timestamp(10L, 100), trace.getStartTime());
+    assertEquals(new Timestamp(10L, 900), trace.getEndTimestamp());
+    assertEquals(10_000L, (long) trace.getEndTime());
+    assertEquals(800L, (long) trace.getDuration());
+    assertEquals(new Timestamp(10L, 400), trace.getSpanList().get(0).getEndTimestamp());
+    assertEquals(300L, (long) trace.getSpanList().get(0).getDurationNanos());
   }
 
 
@@ -199,41 +182,20 @@ class SpanToTraceReconstructorStreamTest {
    */
   @Test
   void testWindowing() {
-    final String traceId = "testtraceid";
-
-    Timestamp start1 = new Timestamp(1584093875L, 0);
-
-    final long end1 = 1584093891;
-
-    final Timestamp start2 = new Timestamp(1584093875L, 2398423);
+    final Timestamp start1 = new Timestamp(1584093875L, 0);
     final long end2 = 1584093893;
-
     final Timestamp start3 = new Timestamp(1584093875L + 7, 0);
     final long end3 = 1584093875L + 8;
 
+    this.pipeline.pipe(this.span("testtraceid", "OpA", start1, 1584093891).build());
+    this.pipeline.pipe(
+        this.span("testtraceid", "OpB", new Timestamp(1584093875L, 2398423), end2).build());
+    // This Span's timestamp is after closing the window containing the first two spans
+    this.pipeline.pipe(this.span("testtraceid", "OpC", start3, end3).build());
 
+    assertEquals(3, this.pipeline.traces.getQueueSize());
 
-    final EVSpan evSpan1 =
-        new EVSpan("1", traceId, start1, end1, getDuration(start1, end1), "OpA", 1, "samplehost",
-            "sampleapp");
-    final EVSpan evSpan2 =
-        new EVSpan("2", traceId, start2, end2, getDuration(start2, end2), "OpB", 1, "samplehost",
-            "sampleapp");
-
-    // This Span's timestamp is after closing the window containing
-    // the first two spans
-    final EVSpan evSpan3 =
-        new EVSpan("3", traceId, start3, end3, getDuration(start3, end3), "OpC", 1, "samplehost",
-            "sampleapp");
-
-
-    this.inputTopic.pipeInput(evSpan1.getTraceId(), evSpan1);
-    this.inputTopic.pipeInput(evSpan2.getTraceId(), evSpan2);
-    this.inputTopic.pipeInput(evSpan3.getTraceId(), evSpan3);
-
-    assertEquals(3, this.outputTopic.getQueueSize());
-
-    final List<KeyValue<String, Trace>> records = this.outputTopic.readKeyValuesToList();
+    final List<KeyValue<String, Trace>> records = this.pipeline.traces.readKeyValuesToList();
 
     // First 'complete' Trace should encompass first two spans
     final Trace trace = records.get(1).value;
@@ -257,28 +219,14 @@ class SpanToTraceReconstructorStreamTest {
    */
   @Test
   void testTraceReduction() {
-    final String operationName = "OpName";
-
-    Timestamp start1 = new Timestamp(10L, 0);
-    final long end1 = 20L;
-
-    Timestamp start2 = new Timestamp(11L, 12983);
+    final Timestamp start1 = new Timestamp(10L, 0);
     final long end2 = 80L;
 
-    final String firstTraceId = "trace1";
+    this.pipeline.pipe(this.span("trace1", "OpName", start1, 20L).build());
+    this.pipeline.pipe(this.span("trace2", "OpName", new Timestamp(11L, 12983), end2)
+        .setRequestCount(265).build());
 
-    final EVSpan evSpan1 =
-        new EVSpan("1", firstTraceId, start1, end1, getDuration(start1, end1), operationName, 1,
-            "samplehost", "sampleapp");
-    final EVSpan evSpan2 =
-        new EVSpan("2", "trace2", start2, end2, getDuration(start2, end2), operationName, 265,
-            "samplehost", "sampleapp");
-
-
-    this.inputTopic.pipeInput(evSpan1.getTraceId(), evSpan1);
-    this.inputTopic.pipeInput(evSpan2.getTraceId(), evSpan2);
-
-    final List<KeyValue<String, Trace>> records = this.outputTopic.readKeyValuesToList();
+    final List<KeyValue<String, Trace>> records = this.pipeline.traces.readKeyValuesToList();
 
     assertEquals(2, records.size());
 
@@ -296,8 +244,26 @@ class SpanToTraceReconstructorStreamTest {
     assertEquals(265, trace.getSpanList().get(0).getRequestCount());
 
     // Trace id of the reduced trace should be equal to the trace id of the first trace
-    assertEquals(firstTraceId, trace.getTraceId());
+    assertEquals("trace1", trace.getTraceId());
+  }
 
+  /**
+   * Updates of a group must be emitted even if the first trace of the group has since grown into
+   * another group, in which it is also the first trace
+   */
+  @Test
+  void testUpdatesOfGroupsWithSameFirstTrace() {
+    this.pipeline.pipe(this.span("trace1", "OpA", 10_000L).build());
+    this.pipeline.pipe(this.span("trace1", "OpB", 10_000L).build());
+    this.pipeline.pipe(this.span("trace2", "OpA", 10_000L).build());
+
+    final List<KeyValue<String, Trace>> records = this.pipeline.traces.readKeyValuesToList();
+    assertEquals(3, records.size());
+
+    final KeyValue<String, Trace> record = records.get(2);
+    assertEquals("trace1", record.key);
+    assertEquals(2, record.value.getTraceCount());
+    assertEquals(1, record.value.getSpanList().size());
   }
 
   /**
@@ -305,45 +271,771 @@ class SpanToTraceReconstructorStreamTest {
    */
   @Test
   void testTraceReductionWindowing() {
+    final Timestamp start1 = new Timestamp(10L, 0);
+    final Instant start1plusWindow = timestampToInstant(start1).plusSeconds(7);
+    final Timestamp start2 =
+        new Timestamp(start1plusWindow.getEpochSecond(), start1plusWindow.getNano());
 
-    final String traceId1 = "trace1";
-    final String traceId2 = "trace2";
-    final String operationName = "OpName";
+    this.pipeline.pipe(this.span("trace1", "OpName", start1, 20L).build());
+    this.pipeline.pipe(this.span("trace2", "OpName", start2,
+        timestampToInstant(start1).plusMillis(100).toEpochMilli()).build());
 
-    Timestamp start1 = new Timestamp(10L, 0);
-    final long end1 = 20L;
+    final List<Trace> traces = this.pipeline.traces.readValuesToList();
 
-    Instant start1plusWindow = timestampToInstant(start1).plusSeconds(7);
+    assertEquals("trace1", traces.get(0).getTraceId());
+    assertEquals("trace2", traces.get(1).getTraceId());
+  }
 
-    Timestamp start2 = new Timestamp(start1plusWindow.getEpochSecond(), start1plusWindow.getNano());
-    final long end2 = timestampToInstant(start1).plusMillis(100).toEpochMilli();
+  /**
+   * The indexed aggregation must produce exactly the same traces as scanning the span list for
+   * duplicates
+   */
+  @Test
+  void testIndexedAggregationEqualsScan() {
+    final Pipeline scan = this.start(Map.of(ReconstructorConfig.AGGREGATION_MODE, "SCAN"));
 
+    for (final EVSpan span : this.randomSpans(500, 3, 50)) {
+      this.pipeline.pipe(span);
+      scan.pipe(span);
+    }
 
-    final EVSpan evSpan1 =
-        new EVSpan("1", traceId1, start1, end1, getDuration(start1, end1), operationName, 1, "samplehost",
-            "sampleapp");
-    final EVSpan evSpan2 =
-        new EVSpan("2", traceId2, start2, end2, getDuration(start2, end2), operationName, 1, "samplehost",
-            "sampleapp");
+    final List<KeyValue<String, Trace>> expected = scan.traces.readKeyValuesToList();
+    assertFalse(expected.isEmpty());
+    assertEquals(expected, this.pipeline.traces.readKeyValuesToList());
+  }
 
-    inputTopic.pipeInput(evSpan1.getTraceId(), evSpan1);
-    inputTopic.pipeInput(evSpan2.getTraceId(), evSpan2);
+  /**
+   * Traces of the same shape must be reduced when grouping by fingerprint, regardless of the order
+   * in which their spans arrived, and each shape must be stored once
+   */
+  @Test
+  void testFingerprintTraceReduction() {
+    final Pipeline fingerprint =
+        this.start(Map.of(ReconstructorConfig.TRACE_KEY_MODE, "FINGERPRINT"));
 
-    List<Trace> traces = outputTopic.readValuesToList();
+    final Timestamp start = new Timestamp(10L, 0);
+    fingerprint.pipe(this.span("trace1", "OpA", start, 10_050L).build());
+    fingerprint.pipe(this.span("trace1", "OpB", start, 10_050L).build());
+    fingerprint.pipe(this.span("trace2", "OpB", start, 10_050L).build());
+    fingerprint.pipe(this.span("trace2", "OpA", start, 10_050L).build());
 
-    traces.forEach(System.out::println);
+    final List<KeyValue<String, Trace>> records = fingerprint.traces.readKeyValuesToList();
+    assertEquals(4, records.size());
 
-    assertEquals(traceId1, traces.get(0).getTraceId());
-    assertEquals(traceId2, traces.get(1).getTraceId());
+    final Trace trace = records.get(3).value;
+    assertEquals("trace1", trace.getTraceId());
+    assertEquals(2, trace.getTraceCount());
+    assertEquals(2, trace.getSpanList().size());
 
+    final KeyValueStore<String, ValueAndTimestamp<EVSpanKey>> shapeStore = fingerprint.driver
+        .getTimestampedKeyValueStore(SpanToTraceReconstructorStream.TRACE_SHAPE_STORE);
+    assertEquals(2, shapeStore.get(TraceFingerprint.of(trace)).value().getSpanList().size());
   }
 
-  private Instant timestampToInstant(Timestamp ts) {
+  /**
+   * Only the shapes of emitted traces must be recorded, i.e., no intermediate shapes if updates
+   * are suppressed, and shapes that are no longer emitted must be forgotten after the retention
+   */
+  @Test
+  void testTraceShapeRetention() {
+    final Pipeline fingerprint = this.start(Map.of(
+        ReconstructorConfig.TRACE_KEY_MODE, "FINGERPRINT",
+        ReconstructorConfig.SUPPRESSION_ENABLED, true,
+        ReconstructorConfig.TRACE_SHAPE_RETENTION_MS, 60_000));
+    final KeyValueStore<String, ValueAndTimestamp<EVSpanKey>> shapeStore = fingerprint.driver
+        .getTimestampedKeyValueStore(SpanToTraceReconstructorStream.TRACE_SHAPE_STORE);
+
+    fingerprint.pipe(this.span("trace1", "OpA", 10_000L).build());
+    fingerprint.pipe(this.span("trace1", "OpB", 10_000L).build());
+
+    // Advance stream time such that the window of the trace closes in both stages
+    fingerprint.advanceTo(20L, 40L);
+    final Trace trace = fingerprint.traces.readValuesToList().get(0);
+    assertEquals(2, trace.getSpanList().size());
+
+    // Only the final shape {OpA, OpB}, not {OpA}
+    try (final KeyValueIterator<String, ValueAndTimestamp<EVSpanKey>> shapes = shapeStore.all()) {
+      shapes.forEachRemaining(shape -> assertTrue(shape.value.value().getSpanList().stream()
+          .noneMatch(span -> "OpA".equals(span.getOperationName()))
+          || shape.value.value().getSpanList().size() == 2));
+    }
+    final String finalShape = TraceFingerprint.of(trace);
+    assertNotNull(shapeStore.get(finalShape));
+
+    // Advance stream time beyond the retention of the shape
+    fingerprint.advanceTo(200L, 400L);
+    assertNull(shapeStore.get(finalShape));
+  }
+
+  /**
+   * Dictionary encoded spans must be deduplicated by their operation id and resolved to names
+   * when the trace is emitted, traces with unknown ids must be held back until they are known
+   */
+  @Test
+  void testDictionaryResolution() {
+    final Pipeline dictionary = this.start(Map.of(ReconstructorConfig.DICTIONARY_ENCODING, true));
+    final TestInputTopic<Long, String> dictionaryTopic = dictionary.driver.createInputTopic(
+        KafkaConfig.DICTIONARY_TOPIC, Serdes.Long().serializer(), Serdes.String().serializer());
+
+    dictionaryTopic.pipeInput(0L, "OpA");
+    dictionaryTopic.pipeInput(2L, "samplehost");
+    dictionaryTopic.pipeInput(3L, "sampleapp");
+
+    for (final long operationId : new long[] {0L, 1L, 0L}) {
+      dictionary.pipe(this.span("trace1", null, 10_000L).setHostname(null).setAppName(null)
+          .setDictionaryIds(new SpanDictionaryIds(operationId, 2L, 3L)).build());
+    }
+
+    // The id of OpB is not yet known
+    dictionary.traces.readValuesToList().forEach(trace -> trace.getSpanList()
+        .forEach(span -> assertNotNull(span.getOperationName())));
+
+    dictionaryTopic.pipeInput(1L, "OpB");
+    dictionary.driver.advanceWallClockTime(Duration.ofSeconds(1));
+
+    final List<Trace> traces = dictionary.traces.readValuesToList();
+    assertFalse(traces.isEmpty());
+    final Trace trace = traces.get(traces.size() - 1);
+
+    assertEquals(2, trace.getSpanList().size());
+    assertEquals("OpA", trace.getSpanList().get(0).getOperationName());
+    assertEquals(2, trace.getSpanList().get(0).getRequestCount());
+    assertEquals("OpB", trace.getSpanList().get(1).getOperationName());
+    assertEquals("samplehost", trace.getSpanList().get(1).getHostname());
+    assertEquals("sampleapp", trace.getSpanList().get(1).getAppName());
+  }
+
+  /**
+   * Batches of spans must be reconstructed to the same trace as the corresponding single spans
+   */
+  @Test
+  void testSpanBatches() {
+    final Pipeline batch = this.start(Map.of(ReconstructorConfig.SPAN_BATCHES, true));
+    final TestInputTopic<String, EVSpanBatch> batchInputTopic = batch.driver.createInputTopic(
+        KafkaConfig.BATCH_IN_TOPIC, Serdes.String().serializer(), this.serializer());
+
+    final Timestamp start1 = new Timestamp(10L, 0);
+    batchInputTopic.pipeInput("testtraceid", new EVSpanBatch("testtraceid", List.of(
+        this.span("testtraceid", "OpA", new Timestamp(10L, 2323), 10_080L).build(),
+        this.span("testtraceid", "OpB", start1, 10_080L).build(),
+        this.span("testtraceid", "OpA", start1, 10_080L).build())));
+
+    // All spans of a batch are folded within one record, so a single update is emitted
+    final List<Trace> traces = batch.traces.readValuesToList();
+    assertEquals(1, traces.size());
+
+    final Trace trace = traces.get(0);
+    assertEquals("testtraceid", trace.getTraceId());
+    assertEquals(start1, trace.getStartTime());
+    assertEquals(2, trace.getSpanList().size());
+    assertEquals(3, trace.getSpanList().stream().mapToInt(EVSpan::getRequestCount).sum());
+  }
+
+  /**
+   * Tests whether suppression emits each trace only once, after its window closed, and counts the
+   * intermediate updates it absorbed.
+   */
+  @Test
+  void testSuppressionUntilWindowCloses() {
+    final Pipeline suppressed = this.start(Map.of(ReconstructorConfig.SUPPRESSION_ENABLED, true,
+        ReconstructorConfig.SUPPRESSION_MAX_RECORDS, 1000,
+        ReconstructorConfig.SUPPRESSION_MAX_BYTES, 10 * 1024 * 1024));
+
+    for (int i = 0; i < 5; i++) {
+      suppressed.pipe(this.span("testtraceid", "Op" + i, new Timestamp(10L, i * 1000), 10_080L)
+          .build());
+    }
+    assertTrue(suppressed.traces.isEmpty());
+
+    // Advance stream time such that the window of the first trace closes in both stages
+    suppressed.advanceTo(20L, 40L);
+
+    final List<Trace> traces = suppressed.traces.readValuesToList();
+    assertEquals(1, traces.size());
+    assertEquals("testtraceid", traces.get(0).getTraceId());
+    assertEquals(5, traces.get(0).getSpanList().size());
+
+    // Each span updated the trace of its window, but only two windows closed so far
+    assertEquals(7.0, suppressed.updateTotal(SpanToTraceReconstructorStream.AGGREGATION_STAGE,
+        TraceUpdateCounter.UPDATES));
+    assertEquals(2.0, suppressed.updateTotal(SpanToTraceReconstructorStream.AGGREGATION_STAGE,
+        TraceUpdateCounter.EMITS));
+  }
+
+  /**
+   * Tests whether session windows collect all spans of a trace that crosses fixed window
+   * boundaries into a single trace.
+   */
+  @Test
+  void testSessionWindows() {
+    final Pipeline session = this.start(Map.of(ReconstructorConfig.WINDOW_MODE, "SESSION",
+        ReconstructorConfig.INACTIVITY_GAP_MS, 4000,
+        ReconstructorConfig.SUPPRESSION_ENABLED, true));
+
+    // Spans fall into three different 4s windows. The first two spans are further apart than
+    // the inactivity gap, the last span bridges the gap such that their sessions are merged
+    for (final long startMillis : new long[] {10_000L, 15_000L, 12_500L}) {
+      session.pipe(this.span("testtraceid", "Op" + startMillis, startMillis).build());
+    }
+
+    // Advance stream time such that the session of the trace closes in both stages
+    session.advanceTo(40L, 80L);
+
+    final List<Trace> traces = session.traces.readValuesToList();
+    assertEquals(1, traces.size());
+
+    final Trace trace = traces.get(0);
+    assertEquals("testtraceid", trace.getTraceId());
+    assertEquals(3, trace.getSpanList().size());
+    assertEquals(new Timestamp(10L, 0), trace.getStartTime());
+    assertEquals(15_080L, trace.getEndTime());
+  }
+
+  /**
+   * Tests whether a session that is extended backwards by out-of-order spans is reduced in the
+   * window it ends in, rather than in the already closed window its start moved into.
+   */
+  @Test
+  void testSessionExtendedBackwards() {
+    final Pipeline session = this.start(Map.of(ReconstructorConfig.WINDOW_MODE, "SESSION",
+        ReconstructorConfig.INACTIVITY_GAP_MS, 4000,
+        ReconstructorConfig.SUPPRESSION_ENABLED, true));
+
+    // The short trace is reduced in the window [8s, 12s), which closes once the other trace
+    // arrives. The spans of the long trace then arrive backwards, such that its session is
+    // extended from 21s back to 10.5s
+    session.pipe(this.span("shorttraceid", "OpA", 10_000L).build());
+    session.pipe(this.span("othertraceid", "OpB", 16_000L).build());
+    for (final long startMillis : new long[] {21_000L, 17_500L, 14_000L, 10_500L}) {
+      session.pipe(this.span("longtraceid", "OpA", startMillis).build());
+    }
+
+    // Advance stream time such that the session of the long trace closes in both stages
+    session.advanceTo(40L, 80L);
+
+    final Map<String, List<Trace>> tracesById = new HashMap<>();
+    session.traces.readKeyValuesToList().forEach(record ->
+        tracesById.computeIfAbsent(record.key, id -> new ArrayList<>()).add(record.value));
+
+    // Each trace is emitted once, in its own reduction window
+    assertEquals(1, tracesById.get("shorttraceid").size());
+    assertEquals(1, tracesById.get("shorttraceid").get(0).getTraceCount());
+    assertEquals(1, tracesById.get("longtraceid").size());
+
+    final Trace longTrace = tracesById.get("longtraceid").get(0);
+    assertEquals(1, longTrace.getTraceCount());
+    assertEquals(new Timestamp(10L, 500_000_000), longTrace.getStartTime());
+    assertEquals(4, longTrace.getSpanList().get(0).getRequestCount());
+  }
+
+  /**
+   * Traces aggregated in memory must equal the final traces of the store based aggregation.
+   */
+  @Test
+  void testInMemoryAggregationEqualsIndexed() {
+    final Pipeline indexed = this.start(Map.of(ReconstructorConfig.SUPPRESSION_ENABLED, true));
+    final Pipeline inMemory = this.start(Map.of(ReconstructorConfig.AGGREGATION_MODE, "IN_MEMORY",
+        ReconstructorConfig.SUPPRESSION_ENABLED, true));
+
+    for (final EVSpan span : this.randomSpans(500, 3, 50)) {
+      indexed.pipe(span);
+      inMemory.pipe(span);
+    }
+
+    // Advance stream time such that all windows close in both stages
+    indexed.advanceTo(BASE_SECONDS + 40, BASE_SECONDS + 80);
+    inMemory.advanceTo(BASE_SECONDS + 40, BASE_SECONDS + 80);
+
+    final List<KeyValue<String, Trace>> expected = indexed.traces.readKeyValuesToList();
+    final List<KeyValue<String, Trace>> actual = inMemory.traces.readKeyValuesToList();
+
+    // Windows may close in a different order
+    assertFalse(expected.isEmpty());
+    assertEquals(expected.size(), actual.size());
+    assertTrue(actual.containsAll(expected));
+  }
+
+  /**
+   * Open traces must be checkpointed on each commit, which the test driver runs after each record,
+   * and removed once emitted, even if they changed since their last checkpoint.
+   */
+  @Test
+  void testInMemoryAggregationCheckpoints() {
+    final Pipeline inMemory =
+        this.start(Map.of(ReconstructorConfig.AGGREGATION_MODE, "IN_MEMORY"));
+    @SuppressWarnings("unchecked")
+    final CheckpointStore<Windowed<String>, IndexedTrace> store =
+        (CheckpointStore<Windowed<String>, IndexedTrace>) inMemory.driver.getStateStore(
+            SpanToTraceReconstructorStream.OPEN_TRACE_STORE);
+
+    for (int i = 0; i < 3; i++) {
+      inMemory.pipe(this.span("testtraceid", "Op" + i, new Timestamp(10L, i * 1000), 10_080L)
+          .build());
+
+      try (final KeyValueIterator<Windowed<String>, IndexedTrace> iterator = store.all()) {
+        assertEquals(i + 1, iterator.next().value.getTrace().getSpanList().size());
+        assertFalse(iterator.hasNext());
+      }
+    }
+    assertEquals(3.0, inMemory.openTraceMetric(OpenTraceTransformer.OPEN_SPANS));
+    assertTrue(inMemory.openTraceMetric(OpenTraceTransformer.BYTES_PER_OPEN_SPAN) > 0);
+
+    // Close the window of the trace
+    inMemory.advanceTo(20L);
+
+    try (final KeyValueIterator<Windowed<String>, IndexedTrace> iterator = store.all()) {
+      assertEquals(Pipeline.LATER_TRACE_ID + 20L, iterator.next().key.key());
+      assertFalse(iterator.hasNext());
+    }
+  }
+
+  /**
+   * The durations of the calls of an operation must be kept as statistics within a trace and
+   * merged across final traces of the same shape.
+   */
+  @Test
+  void testLatencyStatistics() {
+    final Pipeline inMemory =
+        this.start(Map.of(ReconstructorConfig.AGGREGATION_MODE, "IN_MEMORY"));
+
+    final long[][] durations = {{100L, 200L, 300L}, {1000L}};
+    for (int trace = 0; trace < durations.length; trace++) {
+      for (int i = 0; i < durations[trace].length; i++) {
+        inMemory.pipe(this.span("trace" + trace, "OpA", new Timestamp(10L, i * 1000), 10_001L)
+            .setDurationNanos(durations[trace][i]).build());
+      }
+    }
+    // Close the window of the traces
+    inMemory.advanceTo(20L);
+
+    final List<Trace> traces = inMemory.traces.readValuesToList();
+    assertEquals(2, traces.size());
+
+    // The traces of a window are emitted in no particular order
+    final Trace first = traces.get(0);
+    final long[] firstDurations = durations[first.getTraceId().equals("trace0") ? 0 : 1];
+    final LatencyStats firstLatency = first.getSpanList().get(0).getLatency();
+    assertEquals(Arrays.stream(firstDurations).min().getAsLong(),
+        (long) firstLatency.getMinDuration());
+    assertEquals(Arrays.stream(firstDurations).max().getAsLong(),
+        (long) firstLatency.getMaxDuration());
+    assertEquals(Arrays.stream(firstDurations).sum(), (long) firstLatency.getSumDuration());
+    assertEquals(firstDurations.length, LatencyStatistics.count(firstLatency));
+
+    final Trace reduced = traces.get(1);
+    assertEquals(2, reduced.getTraceCount());
+    final LatencyStats merged = reduced.getSpanList().get(0).getLatency();
+    assertEquals(100L, (long) merged.getMinDuration());
+    assertEquals(1000L, (long) merged.getMaxDuration());
+    assertEquals(1600L, (long) merged.getSumDuration());
+    assertEquals(4, LatencyStatistics.count(merged));
+    assertEquals(LatencyStatistics.lowerBound(LatencyStatistics.bucket(200L)),
+        LatencyStatistics.quantile(merged, 0.5));
+    assertEquals(LatencyStatistics.lowerBound(LatencyStatistics.bucket(1000L)),
+        LatencyStatistics.quantile(merged, 1.0));
+  }
+
+  /**
+   * Calls must be linked to their callers regardless of the order in which they arrive, by the
+   * store based, the in memory and the session window aggregation alike.
+   */
+  @Test
+  void testCallTree() {
+    final Map<String, Map<String, ?>> configs = Map.of(
+        "indexed", Map.of(),
+        "in memory", Map.of(ReconstructorConfig.AGGREGATION_MODE, "IN_MEMORY"),
+        "session", Map.of(ReconstructorConfig.WINDOW_MODE, "SESSION",
+            ReconstructorConfig.INACTIVITY_GAP_MS, 4000,
+            ReconstructorConfig.SUPPRESSION_ENABLED, true));
+
+    for (final Map.Entry<String, Map<String, ?>> config : configs.entrySet()) {
+      final Pipeline calls = this.start(config.getValue());
+
+      // A calls B twice and the first B calls C. Callees arrive before their callers, and for
+      // session windows C and the first B fall into separate sessions until A bridges the gap
+      final String[][] spans = {{"c", "b1", "OpC"}, {"b1", "a", "OpB"}, {"a", null, "OpA"},
+          {"b2", "a", "OpB"}};
+      final long[] durations = {100L, 300L, 1000L, 200L};
+      final long[] startMillis = "session".equals(config.getKey())
+          ? new long[] {10_000L, 15_000L, 12_500L, 12_600L}
+          : new long[] {10_000L, 10_100L, 10_200L, 10_300L};
+      for (int i = 0; i < spans.length; i++) {
+        calls.pipe(this.span("testtraceid", spans[i][2], startMillis[i])
+            .setSpanId(spans[i][0]).setParentSpanId(spans[i][1]).setDurationNanos(durations[i])
+            .build());
+      }
+
+      // Close the window or session of the trace in both stages
+      calls.advanceTo(40L, 80L);
+
+      final List<Trace> traces = calls.traces.readValuesToList().stream()
+          .filter(t -> t.getTraceId().equals("testtraceid")).collect(Collectors.toList());
+      final Trace trace = traces.get(traces.size() - 1);
+
+      // Steps refer to the aggregated spans by the span id of one of their calls
+      final Map<String, EVSpan> spansById = new HashMap<>();
+      final Map<String, EVSpan> spansByOperation = new HashMap<>();
+      for (final EVSpan span : trace.getSpanList()) {
+        spansById.put(span.getSpanId(), span);
+        spansByOperation.put(span.getOperationName(), span);
+      }
+      final Map<String, Integer> steps = new HashMap<>();
+      for (final TraceStep step : trace.getSteps()) {
+        steps.put(spansById.get(step.getCallerSpanId()).getOperationName() + "->"
+            + spansById.get(step.getCalleeSpanId()).getOperationName(), step.getRequestCount());
+      }
+      assertEquals(Map.of("OpA->OpB", 2, "OpB->OpC", 1), steps, config.getKey());
+
+      assertEquals(500L, (long) spansByOperation.get("OpA").getExclusiveDuration());
+      assertEquals(400L, (long) spansByOperation.get("OpB").getExclusiveDuration());
+      assertEquals(100L, (long) spansByOperation.get("OpC").getExclusiveDuration());
+    }
+  }
+
+  /**
+   * Spans that enter and traces that leave the reconstruction must be measured.
+   */
+  @Test
+  void testPipelineMetrics() {
+    // The second span is one second late
+    this.pipeline.pipe(this.span("testtraceid", "Op10", 10_000L).build());
+    this.pipeline.pipe(this.span("testtraceid", "Op9", 9_000L).build());
+    final List<Trace> traces = this.pipeline.traces.readValuesToList();
+
+    assertEquals(2.0, this.pipeline.pipelineMetric(SpanArrivalMeter.SPANS + "-total", null));
+    assertEquals(1.0, this.pipeline.pipelineMetric(SpanArrivalMeter.LATENESS + "-bucket", "1000.0")
+        - this.pipeline.pipelineMetric(SpanArrivalMeter.LATENESS + "-bucket", "500.0"));
+    assertEquals(traces.size(),
+        this.pipeline.pipelineMetric(TraceEmissionMeter.TRACES + "-total", null));
+    assertEquals(traces.size(),
+        this.pipeline.pipelineMetric(TraceEmissionMeter.END_TO_END_LATENCY + "-count", null));
+    assertEquals(traces.stream().mapToInt(trace -> trace.getSpanList().size()).sum(),
+        this.pipeline.pipelineMetric(TraceEmissionMeter.SPANS_PER_TRACE + "-sum", null));
+  }
+
+  /**
+   * Spans that arrive after their window closed must be emitted as patches within the horizon and
+   * dropped afterwards, both counted.
+   */
+  @Test
+  void testLateSpanPatches() {
+    for (final String aggregationMode : new String[] {"INDEXED", "IN_MEMORY"}) {
+      final Pipeline late = this.start(Map.of(ReconstructorConfig.AGGREGATION_MODE,
+          aggregationMode, ReconstructorConfig.LATE_HORIZON_MS, 10_000L));
+
+      // The window [100s, 104s) closes at 106s, the horizon ends at 116s
+      final long[][] spans = {{100, 1}, {110, 2}, {101, 1}, {102, 1}, {120, 3}, {103, 1}};
+      for (int i = 0; i < spans.length; i++) {
+        late.pipe(this.span("testtraceid" + spans[i][1], "Op" + i, spans[i][0] * 1000).build());
+      }
+
+      final List<Trace> patches = late.traces.readValuesToList().stream()
+          .filter(Trace::getLate).collect(Collectors.toList());
+      assertEquals(2, patches.size());
+      assertEquals(1, patches.get(0).getLateSpanCount());
+      final Trace patch = patches.get(1);
+      assertEquals("testtraceid1", patch.getTraceId());
+      assertEquals(2, patch.getLateSpanCount());
+      assertEquals(List.of("Op2", "Op3"), patch.getSpanList().stream()
+          .map(EVSpan::getOperationName).collect(Collectors.toList()));
+      assertEquals(new Timestamp(101L, 0), patch.getStartTime());
+
+      assertEquals(2.0, late.pipelineMetric(LateSpanRouter.PATCHED_LATE_SPANS + "-total", null));
+      assertEquals(1.0,
+          late.pipelineMetric(OpenTraceTransformer.DROPPED_LATE_SPANS + "-total", null));
+    }
+  }
+
+  /**
+   * Deltas must contain only the changed spans of each update and reassemble to the full traces.
+   */
+  @Test
+  void testDeltaOutput() {
+    final Pipeline delta = this.start(Map.of(ReconstructorConfig.OUTPUT_MODE, "DELTA"));
+    final Deserializer<TraceDelta> deltaDeserializer = this.deserializer();
+
+    // A trace of ten operations that are called repeatedly
+    final int operations = 10;
+    for (int i = 0; i < 50; i++) {
+      final EVSpan span = this.span("testtraceid", "Op" + i % operations,
+          new Timestamp(10L, i * 1000), 10_080L).build();
+      this.pipeline.pipe(span);
+      delta.pipe(span);
+    }
+
+    final List<byte[]> fullValues = this.pipeline.driver
+        .createOutputTopic(KafkaConfig.OUT_TOPIC, Serdes.String().deserializer(),
+            Serdes.ByteArray().deserializer()).readValuesToList();
+    final List<byte[]> deltaValues = delta.driver
+        .createOutputTopic(KafkaConfig.DELTA_OUT_TOPIC, Serdes.String().deserializer(),
+            Serdes.ByteArray().deserializer()).readValuesToList();
+    assertEquals(50, fullValues.size());
+    assertEquals(fullValues.size(), deltaValues.size());
+
+    // Only the first update is a snapshot, although new operations change the shape of the trace
+    final Deserializer<Trace> traceDeserializer = this.deserializer();
+    final Map<String, Map<String, EVSpan>> assembled = new HashMap<>();
+    for (int i = 0; i < deltaValues.size(); i++) {
+      final TraceDelta traceDelta =
+          deltaDeserializer.deserialize(KafkaConfig.DELTA_OUT_TOPIC, deltaValues.get(i));
+      final Trace trace = traceDeserializer.deserialize(KafkaConfig.OUT_TOPIC, fullValues.get(i));
+
+      assertEquals(i == 0, traceDelta.getSnapshot());
+      assertEquals(i, traceDelta.getSequence());
+      assertEquals(1, traceDelta.getSpanList().size());
+
+      final Map<String, EVSpan> spans = traceDelta.getSnapshot()
+          ? new HashMap<>() : assembled.get(traceDelta.getGroupId());
+      traceDelta.getSpanList().forEach(span -> spans.put(span.getOperationName(), span));
+      assembled.put(traceDelta.getGroupId(), spans);
+
+      assertEquals(trace.getTraceId(), traceDelta.getTraceId());
+      assertEquals(trace.getTraceCount(), traceDelta.getTraceCount());
+      assertEquals(trace.getEndTime(), traceDelta.getEndTime());
+      assertEquals(trace.getSpanList().size(), spans.size());
+      trace.getSpanList().forEach(span -> assertEquals(span, spans.get(span.getOperationName())));
+    }
+    assertEquals(1, assembled.size());
+
+    final int fullBytes = fullValues.stream().mapToInt(value -> value.length).sum();
+    final int deltaBytes = deltaValues.stream().mapToInt(value -> value.length).sum();
+    assertTrue(deltaBytes * 3 < fullBytes, deltaBytes + " of " + fullBytes + " bytes");
+  }
+
+  /**
+   * A trace that grows must be emitted as a delta of its new span, although it changes its shape.
+   */
+  @Test
+  void testDeltaOfGrowingTrace() {
+    final Pipeline delta = this.start(Map.of(ReconstructorConfig.OUTPUT_MODE, "DELTA"));
+    final TestOutputTopic<String, TraceDelta> deltas = delta.driver.createOutputTopic(
+        KafkaConfig.DELTA_OUT_TOPIC, Serdes.String().deserializer(), this.deserializer());
+
+    delta.pipe(this.span("testtraceid", "OpA", 10_000L).build());
+    delta.pipe(this.span("testtraceid", "OpB", 10_100L).build());
+
+    final List<KeyValue<String, TraceDelta>> records = deltas.readKeyValuesToList();
+    assertEquals(2, records.size());
+    assertEquals("testtraceid", records.get(1).key);
+
+    final TraceDelta second = records.get(1).value;
+    assertFalse(second.getSnapshot());
+    assertEquals(records.get(0).value.getGroupId(), second.getGroupId());
+    assertEquals(1, second.getSequence());
+    assertEquals(List.of("OpB"), second.getSpanList().stream()
+        .map(EVSpan::getOperationName).collect(Collectors.toList()));
+  }
+
+  /**
+   * Dumps translated in the topology of the reconstructor must be reconstructed to the same
+   * traces as their spans, which are also written if configured.
+   */
+  @Test
+  void testDumpInput() {
+    final Random random = new Random(42);
+    final DumpSpans.Builder dump = DumpSpans.newBuilder();
+    for (int i = 0; i < 200; i++) {
+      final int startNanos = random.nextInt(1_000_000_000);
+      final long startSeconds = BASE_SECONDS + random.nextInt(10);
+      dump.addSpans(Span.newBuilder()
+          .setTraceId(ByteString.copyFrom(new byte[] {(byte) random.nextInt(3), 1, 2, 3, 4, 5, 6,
+              7, 8, 9, 10, 11, 12, 13, 14, 15}))
+          .setSpanId(ByteString.copyFrom(new byte[] {(byte) i, 1, 2, 3, 4, 5, 6, 7}))
+          .setStartTime(com.google.protobuf.Timestamp.newBuilder()
+              .setSeconds(startSeconds).setNanos(startNanos))
+          .setEndTime(com.google.protobuf.Timestamp.newBuilder()
+              .setSeconds(startSeconds).setNanos(startNanos + random.nextInt(1000)))
+          .setAttributes(Span.Attributes.newBuilder()
+              .putAttributeMap(SpanExtractor.OPERATION_NAME, stringValue("Op" + random.nextInt(20)))
+              .putAttributeMap(SpanExtractor.HOSTNAME, stringValue("samplehost"))
+              .putAttributeMap(SpanExtractor.APP_NAME, stringValue("sampleapp"))));
+    }
+
+    final Pipeline dumps = this.start(Map.of(ReconstructorConfig.INPUT_MODE, "DUMPS",
+        ReconstructorConfig.SPANS_OUT, true,
+        ReconstructorConfig.TRANSLATOR_PREFIX + DumpTranslationConfig.DEAD_LETTER_TOPIC, ""));
+
+    final List<KeyValue<String, EVSpan>> spans = dump.getSpansList().stream()
+        .map(SpanConverter::toEVSpan)
+        .map(span -> KeyValue.pair(span.getTraceId(), span))
+        .collect(Collectors.toList());
+    spans.forEach(span -> this.pipeline.pipe(span.value));
+
+    dumps.driver.createInputTopic(DumpTranslationConfig.DEFAULT_IN_TOPIC,
+        Serdes.ByteArray().serializer(), Serdes.ByteArray().serializer())
+        .pipeInput(dump.build().toByteArray());
+
+    final List<KeyValue<String, Trace>> expected = this.pipeline.traces.readKeyValuesToList();
+    assertFalse(expected.isEmpty());
+    assertEquals(expected, dumps.traces.readKeyValuesToList());
+    assertEquals(spans, dumps.driver.createOutputTopic(KafkaConfig.IN_TOPIC,
+        Serdes.String().deserializer(), this.<EVSpan>deserializer()).readKeyValuesToList());
+  }
+
+  private static final long BASE_SECONDS = 1584093875L;
+
+  /**
+   * Returns a builder of a span of the given trace and operation, called once on the sample host
+   * and app, with a new span id and the duration between its start and end.
+   */
+  private EVSpan.Builder span(final String traceId, final String operationName,
+                              final Timestamp start, final long endMillis) {
+    return EVSpan.newBuilder()
+        .setSpanId(String.valueOf(this.spanIds++))
+        .setTraceId(traceId)
+        .setStartTime(start)
+        .setEndTime(endMillis)
+        .setDuration(getDuration(start, endMillis).toMillis())
+        .setDurationNanos(getDuration(start, endMillis).toNanos())
+        .setOperationName(operationName)
+        .setRequestCount(1)
+        .setHostname("samplehost")
+        .setAppName("sampleapp");
+  }
+
+  /**
+   * Returns a builder of a span like {@link #span(String, String, Timestamp, long)} that starts
+   * at the given epoch milliseconds and lasts 80ms.
+   */
+  private EVSpan.Builder span(final String traceId, final String operationName,
+                              final long startMillis) {
+    return this.span(traceId, operationName,
+        new Timestamp(startMillis / 1000, (int) (startMillis % 1000) * 1_000_000),
+        startMillis + 80);
+  }
+
+  /**
+   * Returns random spans of the given number of traces and operations within ten seconds.
+   */
+  private List<EVSpan> randomSpans(final int count, final int traces, final int operations) {
+    final Random random = new Random(42);
+    final List<EVSpan> spans = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      final Timestamp start =
+          new Timestamp(BASE_SECONDS + random.nextInt(10), random.nextInt(1_000_000_000));
+      final long end = timestampToInstant(start).toEpochMilli() + random.nextInt(100);
+      spans.add(this.span("trace" + random.nextInt(traces), "Op" + random.nextInt(operations),
+          start, end).build());
+    }
+    return spans;
+  }
+
+  private static AttributeValue stringValue(final String value) {
+    return AttributeValue.newBuilder()
+        .setStringValue(TruncatableString.newBuilder().setValue(value))
+        .build();
+  }
+
+  /**
+   * Starts the topology of the given configuration in a new test driver, which is closed after
+   * the test.
+   */
+  private Pipeline start(final Map<String, ?> config) {
+    final Pipeline started = new Pipeline(new SpanToTraceReconstructorStream(this.mockSRC,
+        new ReconstructorConfig(config)), "test-" + this.pipelines.size());
+    this.pipelines.add(started);
+    return started;
+  }
+
+  private <T extends SpecificRecord> Serializer<T> serializer() {
+    final Serializer<T> serializer = new SpecificAvroSerde<T>(this.mockSRC).serializer();
+    serializer.configure(SERDE_CONFIG, false);
+    return serializer;
+  }
+
+  private <T extends SpecificRecord> Deserializer<T> deserializer() {
+    final Deserializer<T> deserializer = new SpecificAvroSerde<T>(this.mockSRC).deserializer();
+    deserializer.configure(SERDE_CONFIG, false);
+    return deserializer;
+  }
+
+  private static Instant timestampToInstant(final Timestamp ts) {
     return Instant.ofEpochSecond(ts.getSeconds(), ts.getNanoAdjust());
   }
 
-  private long getDuration(Timestamp start, long end) {
-    return Duration.between(timestampToInstant(start), Instant.ofEpochMilli(end)).toNanos();
+  private static Duration getDuration(final Timestamp start, final long end) {
+    return Duration.between(timestampToInstant(start), Instant.ofEpochMilli(end));
+  }
+
+  /**
+   * A reconstruction topology in a test driver, with the topics of spans and traces.
+   */
+  private final class Pipeline implements AutoCloseable {
+
+    /**
+     * Prefix of the ids of the traces that only advance the stream time.
+     */
+    static final String LATER_TRACE_ID = "latertraceid";
+
+    final TopologyTestDriver driver;
+
+    final TestInputTopic<String, EVSpan> spans;
+
+    final TestOutputTopic<String, Trace> traces;
+
+    Pipeline(final SpanToTraceReconstructorStream stream, final String applicationId) {
+      final Properties props = new Properties();
+      props.put(StreamsConfig.APPLICATION_ID_CONFIG, applicationId);
+      props.put(StreamsConfig.DEFAULT_TIMESTAMP_EXTRACTOR_CLASS_CONFIG,
+          KafkaConfig.TIMESTAMP_EXTRACTOR);
+      props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:1234");
+      this.driver = new TopologyTestDriver(stream.getTopology(), props);
+
+      final SpanToTraceReconstructorStreamTest test = SpanToTraceReconstructorStreamTest.this;
+      this.spans = this.driver.createInputTopic(KafkaConfig.IN_TOPIC,
+          Serdes.String().serializer(), test.serializer());
+      this.traces = this.driver.createOutputTopic(KafkaConfig.OUT_TOPIC,
+          Serdes.String().deserializer(), test.deserializer());
+    }
+
+    void pipe(final EVSpan span) {
+      this.spans.pipeInput(span.getTraceId(), span);
+    }
+
+    /**
+     * Advances the stream time to each of the given seconds in turn, by a span of another trace.
+     */
+    void advanceTo(final long... seconds) {
+      for (final long second : seconds) {
+        this.pipe(SpanToTraceReconstructorStreamTest.this
+            .span(LATER_TRACE_ID + second, "OpLater", second * 1000).build());
+      }
+    }
+
+    double pipelineMetric(final String name, final String bound) {
+      return this.driver.metrics().entrySet().stream()
+          .filter(e -> PipelineMetrics.METRICS_GROUP.equals(e.getKey().group())
+              && name.equals(e.getKey().name())
+              && SpanToTraceReconstructorStream.RECONSTRUCTION_STAGE
+              .equals(e.getKey().tags().get(PipelineMetrics.STAGE_TAG))
+              && (bound == null
+              || bound.equals(e.getKey().tags().get(CumulativeHistogram.BOUND_TAG))))
+          .mapToDouble(e -> (Double) e.getValue().metricValue())
+          .sum();
+    }
+
+    double openTraceMetric(final String name) {
+      return this.driver.metrics().entrySet().stream()
+          .filter(e -> OpenTraceTransformer.METRICS_GROUP.equals(e.getKey().group())
+              && name.equals(e.getKey().name()))
+          .mapToDouble(e -> (Double) e.getValue().metricValue())
+          .sum();
+    }
+
+    double updateTotal(final String stage, final String operation) {
+      return this.driver.metrics().entrySet().stream()
+          .filter(e -> TraceUpdateCounter.METRICS_GROUP.equals(e.getKey().group())
+              && (operation + "-total").equals(e.getKey().name())
+              && stage.equals(e.getKey().tags().get(TraceUpdateCounter.STAGE_TAG)))
+          .mapToDouble(e -> (Double) e.getValue().metricValue())
+          .sum();
+    }
+
+    @Override
+    public void close() {
+      this.driver.close();
+    }
+
   }
 
 }